@@ -5,17 +5,20 @@
 # For more details, see
 #   http://developer.android.com/guide/developing/tools/proguard.html
 
-# If your project uses WebView with JS, uncomment the following
-# and specify the fully qualified class name to the JavaScript interface
-# class:
-#-keepclassmembers class fqcn.of.javascript.interface.for.webview {
-#   public *;
-#}
+# script.js calls the bridge methods by name; WebView finds them by their
+# @JavascriptInterface annotation, which R8 strips unless annotations are kept
+-keepattributes RuntimeVisibleAnnotations
+-keepclassmembers class com.labelapp.printer.MainActivity$WebAppInterface {
+    @android.webkit.JavascriptInterface public <methods>;
+}
 
-# Uncomment this to preserve the line number information for
-# debugging stack traces.
-#-keepattributes SourceFile,LineNumberTable
+# The Brother SDK (app/libs) calls back into its print engine from native code
+# and looks the model and setting classes up by name; only those packages are
+# kept as shipped, the rest of the library is shrunk like the app
+-keep class com.brother.sdk.lmprinter.** { *; }
+-keep class com.brother.ptouch.sdk.** { *; }
+-dontwarn com.brother.**
 
-# If you keep the line number information, uncomment this to
-# hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+# Readable stack traces from the tablets
+-keepattributes SourceFile,LineNumberTable
+-renamesourcefileattribute SourceFile
\ No newline at end of file
@@ -47,22 +47,15 @@ const manufacturerDropdown = document.getElementById('manufacturerDropdown');
 const importerDropdown = document.getElementById('importerDropdown');
 const productDropdown = document.getElementById('productDropdown');
 
+// Materials and countries, shared with native through catalog.json (see LabelCatalog.java)
+const catalog = loadCatalog();
+
+// Label layout printed by native (see LabelTemplate.java); null falls back to the built-in preview
+let labelTemplate = loadLabelTemplate();
+
 // Material options
-const materialOptions = [
-    { value: '', text: 'Изберете материал...' },
-    { value: 'Памук', text: 'Памук' },
-    { value: 'Полиестер', text: 'Полиестер' },
-    { value: 'Еластан', text: 'Еластан' },
-    { value: 'Вискоза', text: 'Вискоза' },
-    { value: 'Вълна', text: 'Вълна' },
-    { value: 'Найлон', text: 'Найлон' },
-    { value: 'Коприна', text: 'Коприна' },
-    { value: 'Лен', text: 'Лен' },
-    { value: 'Акрил', text: 'Акрил' },
-    { value: 'Металик', text: 'Металик' },
-    { value: 'Спандекс', text: 'Спандекс' },
-    { value: 'Полиамид', text: 'Полиамид' }
-];
+const materialOptions = [{ value: '', text: 'Изберете материал...' }]
+    .concat(catalog.materials.map(name => ({ value: name, text: name })));
 
 // Material row counter
 let materialRowCounter = 0;
@@ -73,6 +66,9 @@ let pageInitializing = true;
 // Track when we're auto-focusing a new material field (to prevent keyboard scroll conflict)
 let autoFocusingMaterial = false;
 
+// The last job stopped before printing all its labels; its queue waits for a resume
+let queueStopped = false;
+
 // Exchange rate (EUR to BGN)
 const EUR_TO_BGN_RATE = 1.9558;
 
@@ -81,6 +77,7 @@ document.addEventListener('DOMContentLoaded', function() {
     // Ensure page starts at the top
     window.scrollTo(0, 0);
     
+    populateOriginOptions();
     setupEventListeners();
     initializeMaterialRows();
     initializeSizeRows();
@@ -94,6 +91,68 @@ document.addEventListener('DOMContentLoaded', function() {
 });
 
 
+// Read the catalog from Android, or from the file next to this page in a browser
+function loadCatalog() {
+    let loaded = null;
+    try {
+        if (typeof Android !== 'undefined' && Android.getCatalog) {
+            loaded = JSON.parse(Android.getCatalog());
+        } else {
+            const request = new XMLHttpRequest();
+            request.open('GET', 'catalog.json', false);
+            request.send();
+            loaded = JSON.parse(request.responseText);
+        }
+    } catch (e) {
+        console.error('Catalog could not be loaded', e);
+    }
+    return {
+        materials: (loaded && loaded.materials) || [],
+        origins: (loaded && loaded.origins) || []
+    };
+}
+
+// Read the label template from Android, or from the file next to this page in a browser
+function loadLabelTemplate() {
+    try {
+        if (typeof Android !== 'undefined' && Android.getLabelTemplate) {
+            return JSON.parse(Android.getLabelTemplate());
+        }
+        const request = new XMLHttpRequest();
+        request.open('GET', 'label_template.json', false);
+        request.send();
+        return JSON.parse(request.responseText);
+    } catch (e) {
+        console.error('Label template could not be loaded', e);
+        return null;
+    }
+}
+
+// Save a shop's own layout; returns the reason it was rejected, or '' once it is in use
+function saveLabelTemplate(templateJson) {
+    const error = Android.setLabelTemplate(templateJson);
+    if (!error) {
+        labelTemplate = JSON.parse(templateJson);
+    }
+    return error;
+}
+
+function resetLabelTemplate() {
+    Android.resetLabelTemplate();
+    labelTemplate = loadLabelTemplate();
+}
+
+// Catalog countries go between the placeholder and "Друго"
+function populateOriginOptions() {
+    const otherOption = originSelect.querySelector('option[value="Друго"]');
+    catalog.origins.forEach(name => {
+        const option = document.createElement('option');
+        option.value = name;
+        option.textContent = name;
+        originSelect.insertBefore(option, otherOption);
+    });
+}
+
 // Mobile keyboard handling for better UX
 function setupMobileKeyboardHandling() {
     // Estimated keyboard height on mobile devices
@@ -268,7 +327,7 @@ function updateHighlight(items, highlightedIndex) {
 // Called from Android to save history values after successful print
 function saveToHistory(manufacturer, importer, product) {
     if (typeof Android !== 'undefined' && Android.saveHistoryValues) {
-        Android.saveHistoryValues(manufacturer || '', importer || '', product || '');
+        callNative('saveHistoryValues', manufacturer || '', importer || '', product || '');
     }
 }
 
@@ -306,6 +365,11 @@ function setupEventListeners() {
         }
     });
 
+    // Barcode value is only asked for once a type is chosen
+    document.getElementById('barcodeType').addEventListener('change', function() {
+        document.getElementById('barcodeValueGroup').style.display = this.value ? 'block' : 'none';
+    });
+
     // Currency auto-conversion (BGN to EUR only)
     priceBgn.addEventListener('input', function() {
         if (this.value) {
@@ -327,6 +391,25 @@ function setupEventListeners() {
     // Button events
     previewBtn.addEventListener('click', previewLabel);
     printBtn.addEventListener('click', handlePrint);
+    document.getElementById('importBtn').addEventListener('click', handleImport);
+    document.getElementById('exportDataBtn').addEventListener('click', handleExportData);
+    document.getElementById('importDataBtn').addEventListener('click', handleImportData);
+
+    // Print queue
+    document.getElementById('resumeQueueBtn').addEventListener('click', handleResumeQueue);
+    updateQueueStatus();
+
+    // Print settings
+    setupPrintSettings();
+
+    // Saved templates
+    const templateSearch = document.getElementById('templateSearch');
+    templateSearch.addEventListener('input', function() {
+        showTemplates(this.value.trim());
+    });
+    templateSearch.addEventListener('focus', function() {
+        showTemplates(this.value.trim());
+    });
 
     // Form reset
     form.addEventListener('reset', function() {
@@ -842,6 +925,10 @@ function collectFormData() {
     data.priceEur = formData.get('priceEur') ? parseFloat(formData.get('priceEur')).toFixed(2) : '';
     data.priceBgn = formData.get('priceBgn') ? parseFloat(formData.get('priceBgn')).toFixed(2) : '';
     
+    // Optional barcode
+    data.barcodeType = formData.get('barcodeType') || '';
+    data.barcodeValue = data.barcodeType ? (formData.get('barcodeValue') || '').trim() : '';
+    
     return data;
 }
 
@@ -881,6 +968,9 @@ function validateForm() {
         errors.push('Цената в BGN е задължителна');
     }
     
+    const barcodeError = validateBarcode(data.barcodeType, data.barcodeValue);
+    if (barcodeError) errors.push(barcodeError);
+    
     return {
         isValid: errors.length === 0,
         errors: errors,
@@ -888,6 +978,36 @@ function validateForm() {
     };
 }
 
+// Same rules as Barcode.create on the Android side
+const QR_MAX_BYTES = 213; // Version 10, level M
+
+function validateBarcode(type, value) {
+    if (!type) return null;
+    if (!value) return 'Въведете стойност на баркода';
+    switch (type) {
+        case 'EAN13':
+            if (!/^\d{12,13}$/.test(value)) return 'EAN-13 кодът трябва да е от 12 или 13 цифри';
+            if (value.length === 13 && ean13CheckDigit(value.substring(0, 12)) !== Number(value[12])) {
+                return 'Невалидна контролна цифра на EAN-13 кода';
+            }
+            return null;
+        case 'CODE128':
+            if (!/^[\x20-\x7E]{1,20}$/.test(value)) return 'Code 128 приема до 20 знака: латински букви, цифри, интервал и символи от клавиатурата (ASCII)';
+            return null;
+        default:
+            if (new TextEncoder().encode(value).length > QR_MAX_BYTES) return 'Текстът е твърде дълъг за QR код';
+            return null;
+    }
+}
+
+function ean13CheckDigit(digits) {
+    let sum = 0;
+    for (let i = 0; i < 12; i++) {
+        sum += Number(digits[i]) * (i % 2 === 0 ? 1 : 3);
+    }
+    return (10 - sum % 10) % 10;
+}
+
 function generateMultipleLabelsHTML(data) {
     // Calculate total number of labels
     const totalLabels = data.sizes.reduce((sum, sizeObj) => sum + sizeObj.quantity, 0);
@@ -915,6 +1035,10 @@ function generateMultipleLabelsHTML(data) {
 }
 
 function generateSingleLabelHTML(data) {
+    if (labelTemplate) {
+        return generateTemplateLabelHTML(labelTemplate, data);
+    }
+
     // Create materials list with smart column layout
     let materialsHTML = '';
     
@@ -1020,6 +1144,10 @@ function generateSingleLabelHTML(data) {
                 </div>
             </div>
             
+            ${data.barcodeType ? `<div class="label-section barcode-section">
+                <div class="section-content">${data.barcodeType === 'QR' ? 'QR код' : data.barcodeValue}</div>
+            </div>` : ''}
+            
             <div class="label-footer">
                 ${priceHTML}
             </div>
@@ -1027,6 +1155,121 @@ function generateSingleLabelHTML(data) {
     `;
 }
 
+// Section lengths the template leaves out; the same defaults as LabelTemplate.Kind
+const TEMPLATE_DEFAULTS = {
+    badge: { paddingX: 6, paddingY: 2, radius: 3, marginBottom: 6, rule: 2, ruleMargin: 4 },
+    field: { marginTop: 2, padding: 6, titleGap: 2, marginBottom: 2 },
+    materials: { marginTop: 2, rule: 2, ruleMargin: 4, titleGap: 2, lineGap: 5, singleColumnMax: 3, columnGap: 8, divider: 1, marginBottom: 2 },
+    barcode: { marginTop: 4, barHeight: 34, qrSize: 80, textGap: 2, marginBottom: 2 },
+    price: { marginTop: 4, rule: 2, ruleMargin: 1, titleTop: 2, lineGap: 4, valueGap: 6, sidePadding: 3, fitMargin: 6, marginBottom: 1 }
+};
+
+// Measures price text for autofit, as LabelDrawPlan does with its paints
+const templateMeasure = document.createElement('canvas').getContext('2d');
+
+function escapeTemplateText(text) {
+    return String(text == null ? '' : text).replace(/[&<>"]/g, c => ({ '&': '&amp;', '<': '&lt;', '>': '&gt;', '"': '&quot;' })[c]);
+}
+
+function templateFontStyle(font, size) {
+    return `font-family: sans-serif; font-weight: ${font.bold ? 'bold' : 'normal'}; font-size: ${size}px; `
+        + `color: ${font.color || '#000000'}; letter-spacing: ${font.letterSpacing || 0}em; line-height: 1.15; white-space: nowrap;`;
+}
+
+function templateFieldValue(field, data) {
+    switch (field) {
+        case 'size': return data.size;
+        case 'product': return data.product;
+        case 'origin': return data.origin.toUpperCase();
+        case 'manufacturer': return data.manufacturer;
+        default: return data.importer;
+    }
+}
+
+// The same sections, fonts and spacing the printer draws, laid out with inline styles
+function generateTemplateLabelHTML(template, data) {
+    const padding = template.padding || 0;
+    const rule = (width, margin) => width > 0
+        ? `<div style="border-top: ${width}px solid #000; margin-bottom: ${margin}px;"></div>` : '';
+    let html = '';
+
+    template.sections.forEach(section => {
+        const m = { ...TEMPLATE_DEFAULTS[section.type], ...section };
+        const font = template.fonts[section.font];
+        const titleFont = section.titleFont ? template.fonts[section.titleFont] : null;
+        const align = section.align === 'center' ? 'center' : 'left';
+
+        if (section.type === 'badge') {
+            html += `<div style="text-align: ${align}; margin-bottom: ${m.marginBottom}px;">
+                <span style="display: inline-block; background: #000; border-radius: ${m.radius}px; padding: ${m.paddingY}px ${m.paddingX}px; ${templateFontStyle(font, font.size)}">${escapeTemplateText((section.prefix || '') + templateFieldValue(section.field, data))}</span>
+            </div>${rule(m.rule, m.ruleMargin)}`;
+        } else if (section.type === 'field') {
+            html += `<div style="margin: ${m.marginTop}px 0 ${m.marginBottom}px; padding: ${m.padding}px; text-align: ${align};">
+                <div style="${templateFontStyle(titleFont, titleFont.size)} margin-bottom: ${m.titleGap}px;">${escapeTemplateText(section.title)}</div>
+                <div style="${templateFontStyle(font, font.size)}">${escapeTemplateText(templateFieldValue(section.field, data))}</div>
+            </div>`;
+        } else if (section.type === 'materials') {
+            const lines = data.materials.map(material => `${material.percentage}% ${material.type.toUpperCase()}`);
+            const column = items => `<div style="flex: 1;">${items.map(line =>
+                `<div style="${templateFontStyle(font, font.size)} margin-bottom: ${m.lineGap}px;">${escapeTemplateText(line)}</div>`).join('')}</div>`;
+            let columns;
+            if (lines.length <= m.singleColumnMax) {
+                columns = column(lines);
+            } else {
+                const midpoint = Math.ceil(lines.length / 2);
+                const divider = m.divider > 0 ? `border-left: ${m.divider}px solid #DDDDDD; ` : '';
+                columns = `${column(lines.slice(0, midpoint))}<div style="${divider}margin: 0 ${m.columnGap / 2}px;"></div>${column(lines.slice(midpoint))}`;
+            }
+            html += `<div style="margin: ${m.marginTop}px 0 ${m.marginBottom}px;">${rule(m.rule, m.ruleMargin)}
+                <div style="${templateFontStyle(titleFont, titleFont.size)} margin-bottom: ${m.titleGap}px;">${escapeTemplateText(section.title)}</div>
+                <div style="display: flex;">${columns}</div>
+            </div>`;
+        } else if (section.type === 'barcode' && data.barcodeType) {
+            html += `<div style="margin: ${m.marginTop}px 0 ${m.marginBottom}px; text-align: center;">
+                ${data.barcodeType === 'QR'
+                    ? `<div style="display: inline-block; width: ${m.qrSize}px; height: ${m.qrSize}px; border: 1px dashed #000; line-height: ${m.qrSize}px;">QR код</div>`
+                    : `<div style="height: ${m.barHeight}px; background: repeating-linear-gradient(90deg, #000 0 2px, #fff 2px 4px);"></div>
+                       <div style="${templateFontStyle(font, font.size)} margin-top: ${m.textGap}px;">${escapeTemplateText(data.barcodeValue)}</div>`}
+            </div>`;
+        } else if (section.type === 'price') {
+            html += `<div style="margin-top: ${m.marginTop + m.ruleMargin}px;">${rule(m.rule, m.ruleMargin)}</div>`;
+            const bgn = data.priceBgn ? data.priceBgn + (section.bgnSuffix || '') : null;
+            const eur = data.priceEur ? data.priceEur + (section.eurSuffix || '') : null;
+            if (!bgn && !eur) {
+                return;
+            }
+
+            // Largest size whose text fits, like the printed label
+            const separatorFont = template.fonts[section.separatorFont];
+            const sizes = [font.size].concat(font.autofit || []);
+            const separatorSizes = [separatorFont.size].concat(separatorFont.autofit || []);
+            const fitText = bgn && eur ? `${bgn} ${section.separator} ${eur}` : (eur || bgn);
+            let step = 0;
+            while (step < sizes.length - 1) {
+                templateMeasure.font = `${font.bold ? 'bold ' : ''}${sizes[step]}px sans-serif`;
+                if (templateMeasure.measureText(fitText).width <= template.width - m.fitMargin) {
+                    break;
+                }
+                step++;
+            }
+            const valueStyle = templateFontStyle(font, sizes[step]);
+            const separatorStyle = templateFontStyle(separatorFont, separatorSizes[Math.min(step, separatorSizes.length - 1)]);
+            const row = bgn && eur
+                ? `<span style="${valueStyle}">${escapeTemplateText(bgn)}</span><span style="${separatorStyle} margin: 0 ${m.valueGap}px;">${escapeTemplateText(section.separator)}</span><span style="${valueStyle}">${escapeTemplateText(eur)}</span>`
+                : `<span style="${valueStyle}">${escapeTemplateText(eur || bgn)}</span>`;
+            html += `<div style="padding-top: ${m.titleTop}px; text-align: center;">
+                <div style="${templateFontStyle(titleFont, titleFont.size)} margin-bottom: ${m.lineGap}px;">${escapeTemplateText(section.title)}</div>
+                <div style="margin: 0 -${padding - m.sidePadding}px ${m.marginBottom}px;">${row}</div>
+            </div>`;
+        }
+    });
+
+    const border = template.border || {};
+    return `<div class="garment-label" style="width: ${template.width}px; min-height: ${template.minHeight || 0}px; box-sizing: border-box; `
+        + `padding: ${padding}px ${padding}px ${template.paddingBottom != null ? template.paddingBottom : padding}px; `
+        + `border: ${border.width || 0}px solid #000; border-radius: ${border.radius || 0}px; background: #fff;">${html}</div>`;
+}
+
 function previewLabel() {
     const validation = validateForm();
     
@@ -1049,6 +1292,50 @@ function previewLabel() {
 }
 
 
+// Compact print payload for the Android bridge (see LabelPayload.java).
+// Fields are separated by US, list items by GS; one size entry per printed copy.
+// The barcode field is type GS value, or empty for none.
+const PAYLOAD_VERSION = 'L2';
+const PAYLOAD_FIELD_SEPARATOR = '\u001F';
+const PAYLOAD_ITEM_SEPARATOR = '\u001D';
+
+function payloadText(value) {
+    // Separator characters cannot appear inside a field
+    return String(value == null ? '' : value).replace(/[\u001C-\u001F]/g, ' ');
+}
+
+function encodeLabelPayload(data) {
+    // Flatten size quantities into one entry per copy
+    const sizes = [];
+    data.sizes.forEach(sizeObj => {
+        if (typeof sizeObj === 'string') {
+            sizes.push(payloadText(sizeObj));
+            return;
+        }
+        for (let i = 0; i < sizeObj.quantity; i++) {
+            sizes.push(payloadText(sizeObj.size));
+        }
+    });
+    
+    const materials = [];
+    data.materials.forEach(material => {
+        materials.push(parseInt(material.percentage) || 0, payloadText(material.type));
+    });
+    
+    return [
+        PAYLOAD_VERSION,
+        payloadText(data.product),
+        payloadText(data.origin),
+        payloadText(data.manufacturer),
+        payloadText(data.importer),
+        payloadText(data.priceEur),
+        payloadText(data.priceBgn),
+        materials.join(PAYLOAD_ITEM_SEPARATOR),
+        sizes.join(PAYLOAD_ITEM_SEPARATOR),
+        data.barcodeType ? data.barcodeType + PAYLOAD_ITEM_SEPARATOR + payloadText(data.barcodeValue) : ''
+    ].join(PAYLOAD_FIELD_SEPARATOR);
+}
+
 function handlePrint() {
     const validation = validateForm();
     
@@ -1062,17 +1349,9 @@ function handlePrint() {
     
     // Call Android bridge for printing
     if (typeof Android !== 'undefined' && Android.printLabel) {
-        // Convert sizes array to Android-compatible format (flatten quantities)
-        const androidData = { ...validation.data };
-        androidData.sizes = [];
-        
-        validation.data.sizes.forEach(sizeObj => {
-            for (let i = 0; i < sizeObj.quantity; i++) {
-                androidData.sizes.push(sizeObj.size);
-            }
-        });
-        
-        Android.printLabel(JSON.stringify(androidData));
+        callNative('printLabel', encodeLabelPayload(validation.data));
+        // A new job resumes a stopped queue
+        queueStopped = false;
     } else {
         // Fallback for web testing
         previewLabel();
@@ -1080,11 +1359,273 @@ function handlePrint() {
 }
 
 
+function handleImport() {
+    if (typeof Android !== 'undefined' && Android.importCsv) {
+        callNative('importCsv');
+    } else {
+        alert('Импортът е достъпен само в приложението');
+    }
+}
+
+// Suggestion history and saved templates, to set up another tablet; the result comes as importFinished
+function handleExportData() {
+    if (typeof Android !== 'undefined' && Android.exportSnapshot) {
+        callNative('exportSnapshot');
+    } else {
+        alert('Експортът е достъпен само в приложението');
+    }
+}
+
+function handleImportData() {
+    if (typeof Android !== 'undefined' && Android.importSnapshot) {
+        callNative('importSnapshot');
+    } else {
+        alert('Импортът е достъпен само в приложението');
+    }
+}
+
+// Fill the print settings from Android and send each change back as it is made
+function setupPrintSettings() {
+    const panel = document.getElementById('printSettings');
+    if (typeof Android === 'undefined' || !Android.getPrintSettings) {
+        panel.style.display = 'none';
+        return;
+    }
+
+    const directRaster = document.getElementById('directRaster');
+    const highResolution = document.getElementById('highResolution');
+    const networkPrinters = document.getElementById('networkPrinters');
+    const cutMode = document.getElementById('cutMode');
+    const cutEvery = document.getElementById('cutEvery');
+    const cutEveryGroup = document.getElementById('cutEveryGroup');
+    const gangColumns = document.getElementById('gangColumns');
+    const gangGutter = document.getElementById('gangGutter');
+    const rasterCacheBudget = document.getElementById('rasterCacheBudget');
+
+    const settings = JSON.parse(Android.getPrintSettings());
+    directRaster.checked = settings.directRaster;
+    highResolution.checked = settings.highResolution;
+    networkPrinters.value = (settings.networkPrinters || []).join('\n');
+    cutMode.value = settings.cutMode;
+    cutEvery.value = settings.cutEvery;
+    gangColumns.value = settings.gangColumns;
+    gangGutter.value = settings.gangGutterMm;
+    rasterCacheBudget.value = settings.rasterCacheBudgetMb;
+
+    // High resolution and ganging only apply on the direct raster path
+    function updateRasterOptions() {
+        highResolution.disabled = !directRaster.checked;
+        gangColumns.disabled = !directRaster.checked;
+        gangGutter.disabled = !directRaster.checked;
+        cutEveryGroup.style.display = cutMode.value === 'EVERY_N' ? 'block' : 'none';
+    }
+    updateRasterOptions();
+
+    directRaster.addEventListener('change', function() {
+        callNative('setDirectRasterEnabled', this.checked);
+        updateRasterOptions();
+    });
+    highResolution.addEventListener('change', function() {
+        callNative('setHighResolutionEnabled', this.checked);
+    });
+    networkPrinters.addEventListener('change', function() {
+        const addresses = this.value.split(/[\s,]+/).filter(address => address.length > 0);
+        callNative('setNetworkPrinters', JSON.stringify(addresses));
+    });
+    function sendCutPolicy() {
+        const everyN = Math.max(1, parseInt(cutEvery.value, 10) || 1);
+        cutEvery.value = everyN;
+        callNative('setCutPolicy', cutMode.value, everyN);
+        updateRasterOptions();
+    }
+    cutMode.addEventListener('change', sendCutPolicy);
+    cutEvery.addEventListener('change', sendCutPolicy);
+    gangColumns.addEventListener('change', function() {
+        const columns = Math.min(3, Math.max(1, parseInt(this.value, 10) || 1));
+        this.value = columns;
+        callNative('setGangColumns', columns);
+    });
+    gangGutter.addEventListener('change', function() {
+        const millimetres = Math.max(0, parseFloat(this.value) || 0);
+        this.value = millimetres;
+        callNative('setGangGutter', millimetres);
+    });
+    rasterCacheBudget.addEventListener('change', function() {
+        const megabytes = Math.max(0, parseInt(this.value, 10) || 0);
+        this.value = megabytes;
+        callNative('setRasterCacheBudget', megabytes);
+    });
+}
+
+// Called from Android while a CSV import is streaming
+function onImportProgress(rowsRead, labelCount) {
+    const status = document.getElementById('importStatus');
+    status.textContent = `Импортиране... ${rowsRead} реда, ${labelCount} етикета`;
+    status.style.display = 'block';
+}
+
+// Called from Android when the import ends; details lists rejected rows
+function onImportFinished(summary, details) {
+    const status = document.getElementById('importStatus');
+    status.textContent = details ? `${summary}\n${details}` : summary;
+    status.style.display = 'block';
+}
+
+// Android hands the page a message port after each load (PageChannel.java); events arrive on
+// it as one JSON array per frame. Without a port they come through onNativeEvents directly.
+let nativePort = null;
+
+window.addEventListener('message', function(event) {
+    if (event.data !== 'labelapp-events' || !event.ports || event.ports.length === 0) {
+        return;
+    }
+    const port = event.ports[0];
+    port.onmessage = message => onNativeEvents(message.data);
+    port.postMessage(JSON.stringify({ type: 'ready' }));
+    nativePort = port;
+});
+
+// Bridge methods that return nothing go back through the port; without one, or in a browser
+// with the bridge, they are called on it directly
+function callNative(method, ...args) {
+    if (nativePort) {
+        nativePort.postMessage(JSON.stringify({ type: 'call', method: method, args: args }));
+    } else if (typeof Android !== 'undefined' && Android[method]) {
+        Android[method](...args);
+    }
+}
+
+function onNativeEvents(json) {
+    JSON.parse(json).forEach(event => {
+        switch (event.type) {
+            case 'printer':
+                onPrinterState(event.state, event.message);
+                break;
+            case 'progress':
+                showJobStatus(`Печат... ${event.printed}/${event.total} етикета`);
+                queueStopped = false;
+                updateQueueStatus();
+                break;
+            case 'job':
+                queueStopped = event.status === 'failed';
+                updateQueueStatus();
+                if (event.status === 'complete') {
+                    showJobStatus(`Отпечатани ${event.total} етикета`);
+                } else if (event.status === 'dropped') {
+                    showJobStatus(`Заданието е премахнато след ${event.printed}/${event.total} етикета: ${event.error || ''}`);
+                } else {
+                    showJobStatus(`Печатът спря след ${event.printed}/${event.total} етикета: ${event.error || ''}`);
+                }
+                break;
+            case 'history':
+                onHistoryAdded(event.field);
+                break;
+            case 'importProgress':
+                onImportProgress(event.rows, event.labels);
+                break;
+            case 'importFinished':
+                onImportFinished(event.summary, event.details);
+                updateQueueStatus();
+                break;
+        }
+    });
+}
+
+function onPrinterState(state, message) {
+    const status = document.getElementById('printerStatus');
+    status.textContent = message;
+    status.className = 'import-status printer-' + state.toLowerCase();
+    status.style.display = 'block';
+}
+
+function showJobStatus(text) {
+    const status = document.getElementById('jobStatus');
+    status.textContent = text;
+    status.style.display = 'block';
+}
+
+// Number of queued jobs, with the resume button while the queue is stopped
+function updateQueueStatus() {
+    if (typeof Android === 'undefined' || !Android.getQueuedJobCount) {
+        return;
+    }
+    const count = Android.getQueuedJobCount();
+    document.getElementById('queuedJobs').textContent = `Задания в опашката: ${count}`;
+    document.getElementById('resumeQueueBtn').style.display = queueStopped ? 'inline-block' : 'none';
+    document.getElementById('queueStatus').style.display = count > 0 ? 'flex' : 'none';
+}
+
+function handleResumeQueue() {
+    queueStopped = false;
+    updateQueueStatus();
+    callNative('resumePrintQueue');
+}
+
+// A new suggestion was saved; refresh the open dropdown of that field
+function onHistoryAdded(fieldType) {
+    const inputs = { MANUFACTURER: manufacturerInput, IMPORTER: importerInput, PRODUCT: productInput };
+    const input = inputs[fieldType];
+    if (input && document.activeElement === input && input.value.trim().length > 0) {
+        input.dispatchEvent(new Event('input'));
+    }
+}
+
+// Templates matching the query (latest first when empty), each with reprint and delete
+function showTemplates(query) {
+    const results = document.getElementById('templateResults');
+    results.innerHTML = '';
+    if (typeof Android === 'undefined' || !Android.searchTemplates) {
+        return;
+    }
+    
+    const templates = JSON.parse(Android.searchTemplates(query));
+    if (templates.length === 0) {
+        if (query) {
+            const empty = document.createElement('div');
+            empty.className = 'template-item no-results';
+            empty.textContent = 'Няма намерени шаблони';
+            results.appendChild(empty);
+        }
+        return;
+    }
+    
+    templates.forEach(template => {
+        const item = document.createElement('div');
+        item.className = 'template-item';
+        
+        const info = document.createElement('div');
+        info.className = 'template-info';
+        const price = template.priceBgn ? `, ${template.priceBgn} лв` : '';
+        info.textContent = `${template.product} - ${template.manufacturer}\n${template.sizes.join(', ')}${price}`;
+        
+        const printButton = document.createElement('button');
+        printButton.type = 'button';
+        printButton.className = 'btn btn-primary btn-template';
+        printButton.textContent = 'Печат';
+        printButton.addEventListener('click', () => callNative('reprintTemplate', template.id));
+        
+        const deleteButton = document.createElement('button');
+        deleteButton.type = 'button';
+        deleteButton.className = 'btn btn-tertiary btn-template';
+        deleteButton.textContent = '✕';
+        deleteButton.title = 'Изтрий шаблона';
+        deleteButton.addEventListener('click', () => {
+            Android.deleteTemplate(template.id);
+            showTemplates(query);
+        });
+        
+        item.appendChild(info);
+        item.appendChild(printButton);
+        item.appendChild(deleteButton);
+        results.appendChild(item);
+    });
+}
+
 // Utility function for Android bridge (when integrated)
 function printLabel(data) {
     if (typeof Android !== 'undefined' && Android.printLabel) {
         // Called from Android WebView
-        Android.printLabel(JSON.stringify(data));
+        callNative('printLabel', encodeLabelPayload(data));
     } else {
         // Called from regular browser - show preview instead
         previewLabel();
@@ -1095,17 +1636,7 @@ function printLabel(data) {
 window.printLabelData = function() {
     const validation = validateForm();
     if (validation.isValid) {
-        // Convert sizes array to Android-compatible format (flatten quantities)
-        const androidData = { ...validation.data };
-        androidData.sizes = [];
-        
-        validation.data.sizes.forEach(sizeObj => {
-            for (let i = 0; i < sizeObj.quantity; i++) {
-                androidData.sizes.push(sizeObj.size);
-            }
-        });
-        
-        return JSON.stringify(androidData);
+        return encodeLabelPayload(validation.data);
     }
     return null;
 };
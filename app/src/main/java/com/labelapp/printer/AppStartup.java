@@ -0,0 +1,169 @@
+package com.labelapp.printer;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * AppStartup - Loads the app's disk-backed state on a background thread at launch
+ * The catalog, label template, suggestion history, saved templates and the raster cache index are read while
+ * the welcome screen detects the printer and the WebView starts, instead of on the main thread.
+ * The accessors wait for the load, which has normally finished before the form is first used.
+ */
+final class AppStartup {
+
+    private static final String TAG = "AppStartup";
+
+    private static final String TEMPLATE_ASSET = "label_template.json";
+    // A shop's own layout, saved through the bridge; the asset is used without it
+    private static final String TEMPLATE_FILE = "label_template.json";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    // Guarded by AppStartup.class
+    private static Future<RasterCache> loaded;
+
+    private AppStartup() {
+    }
+
+    /**
+     * Start loading unless already started. Call after PrinterManager.getInstance on the main thread.
+     */
+    static synchronized void begin(Context context) {
+        if (loaded != null) {
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        loaded = executor.submit(() -> {
+            // The catalog first - saved templates decode labels through it
+            try (InputStream in = appContext.getAssets().open("catalog.json")) {
+                LabelCatalog.install(LabelCatalog.read(in));
+            } catch (IOException e) {
+                // Labels still print; catalog text is just uppercased per label
+                Log.e(TAG, "Catalog could not be loaded", e);
+            }
+            LabelTemplate.install(loadLabelTemplate(appContext));
+
+            // The first read waits for the preferences file
+            HistoryManager.getInstance(appContext).getAllValues(HistoryManager.FieldType.PRODUCT);
+            TemplateManager.getInstance(appContext);
+            return new RasterCache(new File(appContext.getCacheDir(), "rasters"), LabelDrawer.LAYOUT_VERSION,
+                PrinterManager.getInstance(appContext).getSettings().getRasterCacheBudget());
+        });
+        executor.shutdown();
+    }
+
+    static HistoryManager getHistoryManager(Context context) {
+        await(context);
+        return HistoryManager.getInstance(context);
+    }
+
+    static TemplateManager getTemplateManager(Context context) {
+        await(context);
+        return TemplateManager.getInstance(context);
+    }
+
+    static RasterCache getRasterCache(Context context) {
+        return await(context);
+    }
+
+    /**
+     * Materials and countries for the native form, once loaded
+     */
+    static LabelCatalog getCatalog(Context context) {
+        await(context);
+        return LabelCatalog.get();
+    }
+
+    /**
+     * Template labels are drawn with
+     */
+    static LabelTemplate getLabelTemplate(Context context) {
+        await(context);
+        return LabelTemplate.get();
+    }
+
+    /**
+     * Keep a shop's own template and draw every following label with it
+     */
+    static void saveLabelTemplate(Context context, LabelTemplate template) throws IOException {
+        await(context);
+        File file = new File(context.getFilesDir(), TEMPLATE_FILE);
+        File tmp = new File(context.getFilesDir(), TEMPLATE_FILE + TMP_SUFFIX);
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(template.toJson().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Шаблонът не може да бъде записан");
+        }
+        LabelTemplate.install(template);
+    }
+
+    /**
+     * Drop the shop's own template and go back to the built-in one
+     */
+    static void resetLabelTemplate(Context context) throws IOException {
+        await(context);
+        new File(context.getFilesDir(), TEMPLATE_FILE).delete();
+        try (InputStream in = context.getAssets().open(TEMPLATE_ASSET)) {
+            LabelTemplate.install(LabelTemplate.read(in));
+        }
+    }
+
+    /**
+     * The saved template, or the built-in one when there is none or it no longer parses.
+     * Without the built-in one labels cannot be drawn, so its failure fails startup.
+     */
+    private static LabelTemplate loadLabelTemplate(Context context) throws IOException {
+        File saved = new File(context.getFilesDir(), TEMPLATE_FILE);
+        if (saved.isFile()) {
+            try (InputStream in = new FileInputStream(saved)) {
+                return LabelTemplate.read(in);
+            } catch (IOException e) {
+                Log.e(TAG, "Saved label template ignored", e);
+            }
+        }
+        try (InputStream in = context.getAssets().open(TEMPLATE_ASSET)) {
+            return LabelTemplate.read(in);
+        }
+    }
+
+    private static RasterCache await(Context context) {
+        Future<RasterCache> future;
+        synchronized (AppStartup.class) {
+            begin(context);
+            future = loaded;
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // Finish waiting; callers cannot work without the state
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Startup loading failed", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
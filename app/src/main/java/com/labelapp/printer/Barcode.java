@@ -0,0 +1,121 @@
+package com.labelapp.printer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Barcode - The code printed in a label's barcode section
+ * Encoded patterns are cached per value: an article's labels share one Barcode, and the same
+ * EAN comes back in every delivery, so each value is encoded once per process.
+ */
+final class Barcode {
+
+    enum Type {
+        EAN_13("EAN13"),
+        CODE_128("CODE128"),
+        QR("QR");
+
+        // Name in the print payload and script.js
+        final String code;
+
+        Type(String code) {
+            this.code = code;
+        }
+
+        static Type fromCode(String code) {
+            for (Type type : values()) {
+                if (type.code.equals(code)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Неподдържан тип баркод: " + code);
+        }
+    }
+
+    private static final int MAX_CACHED_PATTERNS = 64;
+
+    // Guarded by itself. Type code + value to pattern, least recently used first.
+    private static final Map<String, BarcodePattern> patterns = new LinkedHashMap<String, BarcodePattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BarcodePattern> eldest) {
+            return size() > MAX_CACHED_PATTERNS;
+        }
+    };
+
+    final Type type;
+    final String value;
+
+    private Barcode(Type type, String value) {
+        this.type = type;
+        this.value = value;
+    }
+
+    /**
+     * Validate a barcode from the form or a CSV import. An EAN-13 may be given without
+     * its check digit, which is then appended.
+     *
+     * @throws IllegalArgumentException with a message for the user
+     */
+    static Barcode create(Type type, String value) {
+        String trimmed = value.trim();
+        switch (type) {
+            case EAN_13:
+                if (trimmed.length() == 12 && trimmed.matches("\\d{12}")) {
+                    trimmed += Ean13Encoder.checkDigit(trimmed);
+                }
+                if (!Ean13Encoder.isValid(trimmed)) {
+                    throw new IllegalArgumentException("Невалиден EAN-13 код: " + value);
+                }
+                break;
+            case CODE_128:
+                if (!Code128Encoder.isValid(trimmed)) {
+                    throw new IllegalArgumentException("Code 128 приема до " + Code128Encoder.MAX_LENGTH
+                        + " знака: латински букви, цифри, интервал и символи от клавиатурата (ASCII)");
+                }
+                break;
+            default:
+                if (!QrEncoder.isValid(trimmed)) {
+                    throw new IllegalArgumentException("Текстът е твърде дълъг за QR код");
+                }
+                break;
+        }
+        return new Barcode(type, trimmed);
+    }
+
+    /**
+     * Encoded modules, from the cache when this value was encoded before
+     */
+    BarcodePattern getPattern() {
+        String key = type.code + ':' + value;
+        synchronized (patterns) {
+            BarcodePattern pattern = patterns.get(key);
+            if (pattern != null) {
+                return pattern;
+            }
+        }
+
+        BarcodePattern pattern;
+        switch (type) {
+            case EAN_13:
+                pattern = Ean13Encoder.encode(value);
+                break;
+            case CODE_128:
+                pattern = Code128Encoder.encode(value);
+                break;
+            default:
+                pattern = QrEncoder.encode(value);
+                break;
+        }
+        synchronized (patterns) {
+            patterns.put(key, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Human-readable text printed under linear codes; QR codes have none
+     */
+    String getText() {
+        return type == Type.QR ? null : value;
+    }
+}
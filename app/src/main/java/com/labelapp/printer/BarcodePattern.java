@@ -0,0 +1,77 @@
+package com.labelapp.printer;
+
+/**
+ * BarcodePattern - The dark and light modules of an encoded barcode
+ * Linear codes are one row of modules whose bars span the full height; QR codes are a
+ * square matrix. Patterns carry no quiet zone - callers leave QUIET_ZONE modules free.
+ *
+ * Drawing emits one integer rectangle per bar (per horizontal run for QR), in whole
+ * device pixels, so every module covers the same number of printer dots and edges never
+ * fall between dots.
+ */
+final class BarcodePattern {
+
+    /**
+     * Receives the dark rectangles of a pattern, in the pattern's own pixel coordinates
+     */
+    interface RectSink {
+        void fillRect(int left, int top, int right, int bottom);
+    }
+
+    final int width;
+    final int height;
+    // Quiet zone the symbology needs on each side, in modules
+    final int quietZone;
+    // Row-major, true for dark
+    private final boolean[] modules;
+
+    BarcodePattern(int width, int height, int quietZone, boolean[] modules) {
+        if (modules.length != width * height) {
+            throw new IllegalArgumentException("Pattern size mismatch");
+        }
+        this.width = width;
+        this.height = height;
+        this.quietZone = quietZone;
+        this.modules = modules;
+    }
+
+    /**
+     * Sink for a pattern drawn on the tape, where the label is turned a quarter: pattern x
+     * runs up the feed from line tapeBottom, pattern y across the roll from dot tapeLeft.
+     */
+    static RectSink onTape(RectSink tape, int tapeLeft, int tapeBottom) {
+        return (left, top, right, bottom) -> tape.fillRect(tapeLeft + top, tapeBottom - right, tapeLeft + bottom, tapeBottom - left);
+    }
+
+    boolean isLinear() {
+        return height == 1;
+    }
+
+    boolean isDark(int x, int y) {
+        return modules[y * width + x];
+    }
+
+    /**
+     * Emit the dark modules at the given module size. Linear patterns are drawn barHeight
+     * pixels tall; matrix patterns use moduleHeight per row and ignore barHeight.
+     */
+    void draw(RectSink sink, int moduleWidth, int moduleHeight, int barHeight) {
+        int rowHeight = isLinear() ? barHeight : moduleHeight;
+        for (int y = 0; y < height; y++) {
+            int top = y * rowHeight;
+            int x = 0;
+            while (x < width) {
+                if (!isDark(x, y)) {
+                    x++;
+                    continue;
+                }
+                // Merge a run of dark modules into one rectangle
+                int runStart = x;
+                while (x < width && isDark(x, y)) {
+                    x++;
+                }
+                sink.fillRect(runStart * moduleWidth, top, x * moduleWidth, top + rowHeight);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.labelapp.printer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * BulkLabelFile - Labels of an imported delivery, read from disk on demand
+ * The file holds one LabelPayload line per article (written by CsvLabelImporter). Opening it
+ * only indexes where each line starts and how many copies it has; a line is decoded when one
+ * of its labels is rendered. Printer workers move through the file in order, so the last
+ * decoded line is kept and reused by the following copies.
+ */
+class BulkLabelFile implements LabelSource {
+
+    private final RandomAccessFile file;
+    private final int lineCount;
+    private final long[] lineOffsets;   // lineCount + 1 entries, the last is the file length
+    private final int[] firstLabel;     // lineCount + 1 entries, the last is the label count
+
+    // Guarded by this
+    private int cachedLine = -1;
+    private LabelPayload cachedPayload;
+
+    private BulkLabelFile(RandomAccessFile file, int lineCount, long[] lineOffsets, int[] firstLabel) {
+        this.file = file;
+        this.lineCount = lineCount;
+        this.lineOffsets = lineOffsets;
+        this.firstLabel = firstLabel;
+    }
+
+    static BulkLabelFile open(File source) throws IOException {
+        long[] offsets = new long[256];
+        int[] labels = new int[256];
+        int lines = 0;
+        int labelCount = 0;
+
+        // Copies per line = items in the sizes field (the ninth). Separator bytes never occur
+        // inside multi-byte UTF-8 sequences, so the raw bytes can be scanned.
+        try (InputStream in = new BufferedInputStream(new FileInputStream(source))) {
+            long position = 0;
+            long lineStart = 0;
+            int sizeItems = 0;
+            boolean inSizes = false;
+            int fields = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == LabelPayload.FIELD_SEPARATOR) {
+                    fields++;
+                    inSizes = fields == 8;
+                } else if (b == '\n') {
+                    if (lines + 1 >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                        labels = Arrays.copyOf(labels, labels.length * 2);
+                    }
+                    offsets[lines] = lineStart;
+                    labels[lines] = labelCount;
+                    labelCount += sizeItems;
+                    lines++;
+
+                    lineStart = position;
+                    fields = 0;
+                    sizeItems = 0;
+                    inSizes = false;
+                } else if (inSizes && (b == LabelPayload.ITEM_SEPARATOR || sizeItems == 0)) {
+                    sizeItems++;
+                }
+            }
+            offsets[lines] = lineStart;
+            labels[lines] = labelCount;
+        }
+
+        return new BulkLabelFile(new RandomAccessFile(source, "r"), lines, offsets, labels);
+    }
+
+    @Override
+    public int getLabelCount() {
+        return firstLabel[lineCount];
+    }
+
+    @Override
+    public synchronized LabelData getLabel(int index) throws IOException {
+        if (index < 0 || index >= getLabelCount()) {
+            throw new IndexOutOfBoundsException("Label " + index + " of " + getLabelCount());
+        }
+
+        // Last line whose first label is <= index
+        int line = Arrays.binarySearch(firstLabel, 0, lineCount, index);
+        if (line < 0) {
+            line = -line - 2;
+        } else {
+            // Skip lines without labels that start at the same index
+            while (line + 1 < lineCount && firstLabel[line + 1] == index) {
+                line++;
+            }
+        }
+
+        if (line != cachedLine) {
+            int length = (int) (lineOffsets[line + 1] - lineOffsets[line] - 1);
+            byte[] bytes = new byte[length];
+            file.seek(lineOffsets[line]);
+            file.readFully(bytes);
+            try {
+                cachedPayload = LabelPayload.decode(new String(bytes, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Повреден ред " + (line + 1) + " в импортирания файл", e);
+            }
+            cachedLine = line;
+        }
+        return cachedPayload.getLabel(index - firstLabel[line]);
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // Ignore - read only
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.labelapp.printer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Code128Encoder - Code 128 bar patterns for printable ASCII
+ * Text is encoded in code set B; runs of digits switch to code set C, which packs two
+ * digits per symbol and keeps numeric article codes short enough for a narrow label.
+ */
+final class Code128Encoder {
+
+    static final int QUIET_ZONE = 10;
+
+    // Longest value that still fits a label at one dot per module
+    static final int MAX_LENGTH = 20;
+
+    private static final int START_B = 104;
+    private static final int START_C = 105;
+    private static final int CODE_B = 100;
+    private static final int CODE_C = 99;
+    private static final int STOP = 106;
+
+    private static final int SYMBOL_MODULES = 11;
+    private static final int STOP_MODULES = 13;
+
+    // Bar and space widths of each symbol value, bar first
+    private static final int[] PATTERNS = {
+        212222, 222122, 222221, 121223, 121322, 131222, 122213, 122312, 132212, 221213,
+        221312, 231212, 112232, 122132, 122231, 113222, 123122, 123221, 223211, 221132,
+        221231, 213212, 223112, 312131, 311222, 321122, 321221, 312212, 322112, 322211,
+        212123, 212321, 232121, 111323, 131123, 131321, 112313, 132113, 132311, 211313,
+        231113, 231311, 112133, 112331, 132131, 113123, 113321, 133121, 313121, 211331,
+        231131, 213113, 213311, 213131, 311123, 311321, 331121, 312113, 312311, 332111,
+        314111, 221411, 431111, 111224, 111422, 121124, 121421, 141122, 141221, 112214,
+        112412, 122114, 122411, 142112, 142211, 241211, 221114, 413111, 241112, 134111,
+        111242, 121142, 121241, 114212, 124112, 124211, 411212, 421112, 421211, 212141,
+        214121, 412121, 111143, 111341, 131141, 114113, 114311, 411113, 411311, 113141,
+        114131, 311141, 411131, 211412, 211214, 211232, 2331112
+    };
+
+    private Code128Encoder() {
+    }
+
+    static boolean isValid(String value) {
+        if (value.isEmpty() || value.length() > MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 32 || c > 126) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static BarcodePattern encode(String value) {
+        if (!isValid(value)) {
+            throw new IllegalArgumentException("Невалиден Code 128: " + value);
+        }
+
+        List<Integer> symbols = new ArrayList<>(value.length() + 4);
+        int codeSet = 0;
+        int i = 0;
+        while (i < value.length()) {
+            int digits = countDigits(value, i);
+            // Set C pays off for 4 digits at either end, 6 in the middle
+            boolean atEnd = i == 0 || i + digits == value.length();
+            if (digits >= (atEnd ? 4 : 6)) {
+                if (codeSet != START_C) {
+                    symbols.add(codeSet == 0 ? START_C : CODE_C);
+                    codeSet = START_C;
+                }
+                for (int pairs = digits / 2; pairs > 0; pairs--) {
+                    symbols.add((value.charAt(i) - '0') * 10 + (value.charAt(i + 1) - '0'));
+                    i += 2;
+                }
+            } else {
+                if (codeSet != START_B) {
+                    symbols.add(codeSet == 0 ? START_B : CODE_B);
+                    codeSet = START_B;
+                }
+                symbols.add(value.charAt(i) - 32);
+                i++;
+            }
+        }
+
+        int checksum = symbols.get(0);
+        for (int k = 1; k < symbols.size(); k++) {
+            checksum += k * symbols.get(k);
+        }
+        symbols.add(checksum % 103);
+
+        int width = symbols.size() * SYMBOL_MODULES + STOP_MODULES;
+        boolean[] modules = new boolean[width];
+        int x = 0;
+        for (int symbol : symbols) {
+            x = appendSymbol(modules, x, PATTERNS[symbol]);
+        }
+        appendSymbol(modules, x, PATTERNS[STOP]);
+        return new BarcodePattern(width, 1, QUIET_ZONE, modules);
+    }
+
+    private static int countDigits(String value, int start) {
+        int end = start;
+        while (end < value.length() && value.charAt(end) >= '0' && value.charAt(end) <= '9') {
+            end++;
+        }
+        return end - start;
+    }
+
+    /**
+     * Widths are decimal digits, most significant first, alternating bar and space
+     */
+    private static int appendSymbol(boolean[] modules, int x, int pattern) {
+        boolean bar = true;
+        for (int divisor = pattern >= 1000000 ? 1000000 : 100000; divisor > 0; divisor /= 10) {
+            int width = pattern / divisor % 10;
+            for (int w = 0; w < width; w++) {
+                modules[x++] = bar;
+            }
+            bar = !bar;
+        }
+        return x;
+    }
+}
@@ -0,0 +1,315 @@
+package com.labelapp.printer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CsvLabelImporter - Turns a supplier delivery CSV into print-ready label records
+ * One CSV row is one article in one size with a quantity. Rows are streamed: each is parsed,
+ * validated with the form's rules (LabelValidator) and written out as one LabelPayload line,
+ * so memory use does not grow with the file. Invalid rows are skipped and reported.
+ *
+ * Columns are matched by header name (Bulgarian or English, any order):
+ *   Артикул, Произход, Производител, Вносител, Материали ("95% Памук, 5% Еластан"),
+ *   Размер, Количество (default 1), Цена BGN, Цена EUR (default: BGN / 1.9558),
+ *   EAN (optional, printed as an EAN-13 barcode)
+ */
+class CsvLabelImporter {
+
+    static final int PROGRESS_INTERVAL_ROWS = 250;
+    static final int MAX_REPORTED_ERRORS = 20;
+
+    // Copies of one row, and labels of one file; a stray cell must not make the job unprintable
+    static final int MAX_ROW_QUANTITY = 1000;
+    static final int MAX_LABELS = 200000;
+
+    // Same rate as EUR_TO_BGN_RATE in script.js
+    private static final double EUR_TO_BGN_RATE = 1.9558;
+
+    private static final int COLUMN_PRODUCT = 0;
+    private static final int COLUMN_ORIGIN = 1;
+    private static final int COLUMN_MANUFACTURER = 2;
+    private static final int COLUMN_IMPORTER = 3;
+    private static final int COLUMN_MATERIALS = 4;
+    private static final int COLUMN_SIZE = 5;
+    private static final int COLUMN_QUANTITY = 6;
+    private static final int COLUMN_PRICE_BGN = 7;
+    private static final int COLUMN_PRICE_EUR = 8;
+    private static final int COLUMN_EAN = 9;
+    private static final int COLUMN_COUNT = 10;
+
+    private static final String[] COLUMN_NAMES = {
+        "Артикул", "Произход", "Производител", "Вносител", "Материали", "Размер", "Количество", "Цена BGN", "Цена EUR", "EAN"
+    };
+
+    private static final Map<String, Integer> HEADER_ALIASES = new HashMap<>();
+    static {
+        alias(COLUMN_PRODUCT, "артикул", "продукт", "product");
+        alias(COLUMN_ORIGIN, "произход", "origin");
+        alias(COLUMN_MANUFACTURER, "производител", "manufacturer");
+        alias(COLUMN_IMPORTER, "вносител", "importer");
+        alias(COLUMN_MATERIALS, "материали", "състав", "materials");
+        alias(COLUMN_SIZE, "размер", "size");
+        alias(COLUMN_QUANTITY, "количество", "брой", "бр", "quantity", "qty");
+        alias(COLUMN_PRICE_BGN, "цена bgn", "цена в bgn", "цена лв", "цена", "bgn", "лв", "price bgn", "pricebgn");
+        alias(COLUMN_PRICE_EUR, "цена eur", "цена в eur", "eur", "price eur", "priceeur");
+        alias(COLUMN_EAN, "ean", "ean-13", "ean13", "баркод", "barcode");
+    }
+
+    // "95% Памук", "95 % Памук" or "Памук 95%"
+    private static final Pattern MATERIAL_PERCENTAGE = Pattern.compile("(\\d+)\\s*%?");
+    private static final Pattern MATERIAL_SEPARATORS = Pattern.compile("[,;/+\\n]");
+    // Separators of the payload format and line breaks cannot appear inside a field
+    private static final Pattern PAYLOAD_RESERVED = Pattern.compile("[\\u001C-\\u001F\\r\\n]");
+
+    interface ProgressListener {
+        void onProgress(int rowsRead, int labelCount);
+    }
+
+    static class Result {
+        int rowsRead = 0;
+        int rowsImported = 0;
+        int rowsRejected = 0;
+        int labelCount = 0;
+        // First MAX_REPORTED_ERRORS problems, "Ред N: ..."
+        final List<String> errors = new ArrayList<>();
+    }
+
+    private static void alias(int column, String... names) {
+        for (String name : names) {
+            HEADER_ALIASES.put(name, column);
+        }
+    }
+
+    /**
+     * Read every row from in and write one LabelPayload line per valid row to labelsOut
+     *
+     * @throws IOException on read/write failure or when a required column is missing
+     */
+    Result importCsv(Reader in, Writer labelsOut, ProgressListener listener) throws IOException {
+        CsvReader reader = new CsvReader(in);
+        Result result = new Result();
+
+        List<String> header = reader.readRecord();
+        if (header == null) {
+            throw new IOException("Файлът е празен");
+        }
+        int[] columns = mapHeader(header);
+
+        List<String> record;
+        while ((record = reader.readRecord()) != null) {
+            if (isBlank(record)) {
+                continue;
+            }
+            result.rowsRead++;
+
+            List<String> errors = new ArrayList<>();
+            int quantity = parseQuantity(field(record, columns, COLUMN_QUANTITY), errors);
+            if ((long) result.labelCount + quantity > MAX_LABELS) {
+                errors.add("Файлът надхвърля " + MAX_LABELS + " етикета");
+            }
+            String line = toPayloadLine(record, columns, quantity, errors);
+            if (line == null) {
+                result.rowsRejected++;
+                if (result.errors.size() < MAX_REPORTED_ERRORS) {
+                    result.errors.add("Ред " + reader.getRecordLine() + ": " + join(errors));
+                }
+            } else {
+                labelsOut.write(line);
+                labelsOut.write('\n');
+                result.rowsImported++;
+                result.labelCount += quantity;
+            }
+
+            if (listener != null && result.rowsRead % PROGRESS_INTERVAL_ROWS == 0) {
+                listener.onProgress(result.rowsRead, result.labelCount);
+            }
+        }
+
+        labelsOut.flush();
+        if (listener != null) {
+            listener.onProgress(result.rowsRead, result.labelCount);
+        }
+        return result;
+    }
+
+    /**
+     * Column index in the file for each COLUMN_ constant, -1 when absent
+     */
+    private static int[] mapHeader(List<String> header) throws IOException {
+        int[] columns = new int[COLUMN_COUNT];
+        Arrays.fill(columns, -1);
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i).trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+            Integer column = HEADER_ALIASES.get(name);
+            if (column != null && columns[column] == -1) {
+                columns[column] = i;
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (int column : new int[] {COLUMN_PRODUCT, COLUMN_ORIGIN, COLUMN_MANUFACTURER, COLUMN_IMPORTER,
+                COLUMN_MATERIALS, COLUMN_SIZE, COLUMN_PRICE_BGN}) {
+            if (columns[column] == -1) {
+                missing.add(COLUMN_NAMES[column]);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IOException("Липсващи колони: " + join(missing));
+        }
+        return columns;
+    }
+
+    /**
+     * Validate one row and encode it, or return null and fill errors
+     *
+     * @param quantity Copies from parseQuantity, 0 if invalid
+     */
+    private static String toPayloadLine(List<String> record, int[] columns, int quantity, List<String> errors) {
+        List<Material> materials = parseMaterials(field(record, columns, COLUMN_MATERIALS), errors);
+        String priceBgn = parsePrice(field(record, columns, COLUMN_PRICE_BGN), "BGN", errors);
+        String priceEur = parsePrice(field(record, columns, COLUMN_PRICE_EUR), "EUR", errors);
+        if (priceEur == null && priceBgn != null) {
+            priceEur = formatPrice(Double.parseDouble(priceBgn) / EUR_TO_BGN_RATE);
+        }
+
+        Barcode barcode = null;
+        String ean = field(record, columns, COLUMN_EAN);
+        if (!ean.isEmpty()) {
+            try {
+                barcode = Barcode.create(Barcode.Type.EAN_13, ean);
+            } catch (IllegalArgumentException e) {
+                errors.add(e.getMessage());
+            }
+        }
+
+        String size = field(record, columns, COLUMN_SIZE);
+        LabelData label = new LabelData(size,
+            field(record, columns, COLUMN_PRODUCT),
+            field(record, columns, COLUMN_ORIGIN),
+            materials,
+            field(record, columns, COLUMN_MANUFACTURER),
+            field(record, columns, COLUMN_IMPORTER),
+            priceEur, priceBgn, barcode);
+
+        errors.addAll(LabelValidator.validate(label, size.isEmpty() ? 0 : quantity));
+        if (!errors.isEmpty()) {
+            return null;
+        }
+        return LabelPayload.encode(label, Collections.nCopies(quantity, size));
+    }
+
+    private static String field(List<String> record, int[] columns, int column) {
+        int index = columns[column];
+        if (index < 0 || index >= record.size()) {
+            return "";
+        }
+        return PAYLOAD_RESERVED.matcher(record.get(index)).replaceAll(" ").trim();
+    }
+
+    private static List<Material> parseMaterials(String value, List<String> errors) {
+        List<Material> materials = new ArrayList<>();
+        for (String part : MATERIAL_SEPARATORS.split(value)) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            Matcher matcher = MATERIAL_PERCENTAGE.matcher(part);
+            if (!matcher.find()) {
+                errors.add("Невалиден материал: " + part);
+                continue;
+            }
+            String type = (part.substring(0, matcher.start()) + " " + part.substring(matcher.end())).trim().replaceAll("\\s+", " ");
+            if (type.isEmpty()) {
+                errors.add("Невалиден материал: " + part);
+                continue;
+            }
+            int percentage;
+            try {
+                percentage = Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException e) {
+                // More digits than an int holds
+                percentage = Integer.MAX_VALUE;
+            }
+            if (percentage > 100) {
+                errors.add("Невалиден материал: " + part);
+                continue;
+            }
+            materials.add(new Material(percentage, type));
+        }
+        return materials;
+    }
+
+    /**
+     * Quantity of copies; an empty cell means 1. Invalid values add an error and count as 0.
+     */
+    private static int parseQuantity(String value, List<String> errors) {
+        if (value.isEmpty()) {
+            return 1;
+        }
+        try {
+            int quantity = Integer.parseInt(value);
+            if (quantity > MAX_ROW_QUANTITY) {
+                errors.add("Количеството не може да превишава " + MAX_ROW_QUANTITY + ": " + value);
+                return 0;
+            }
+            if (quantity >= 1) {
+                return quantity;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        errors.add("Невалидно количество: " + value);
+        return 0;
+    }
+
+    /**
+     * Normalize "12,5 лв" to "12.50" like the form's toFixed(2); null when empty or invalid
+     */
+    private static String parsePrice(String value, String currency, List<String> errors) {
+        String cleaned = value.replace("лв.", "").replace("лв", "").replace("€", "").replace(" ", "").replace(',', '.');
+        if (cleaned.isEmpty()) {
+            return null;
+        }
+        try {
+            return formatPrice(Double.parseDouble(cleaned));
+        } catch (NumberFormatException e) {
+            errors.add("Невалидна цена в " + currency + ": " + value);
+            return null;
+        }
+    }
+
+    private static String formatPrice(double price) {
+        return String.format(Locale.US, "%.2f", price);
+    }
+
+    private static boolean isBlank(List<String> record) {
+        for (String value : record) {
+            if (!value.trim().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder out = new StringBuilder();
+        for (String value : values) {
+            if (out.length() > 0) {
+                out.append("; ");
+            }
+            out.append(value);
+        }
+        return out.toString();
+    }
+}
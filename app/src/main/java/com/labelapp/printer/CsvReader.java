@@ -0,0 +1,193 @@
+package com.labelapp.printer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvReader - Streaming CSV record reader (RFC 4180 quoting, quoted line breaks)
+ * Holds one record at a time, so files of any length are read in bounded memory.
+ * The delimiter (',' ';' or tab, as spreadsheet exports vary by locale) is taken from the header line.
+ */
+class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private char delimiter = 0;
+    private int lineNumber = 0;
+    private int recordLine = 0;
+
+    CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Next record, or null at end of input. Blank lines are skipped.
+     */
+    List<String> readRecord() throws IOException {
+        while (true) {
+            int first = peek();
+            if (first == -1) {
+                return null;
+            }
+            if (first == '\r' || first == '\n') {
+                consumeLineBreak();
+                continue;
+            }
+            break;
+        }
+
+        recordLine = lineNumber + 1;
+        if (delimiter == 0) {
+            delimiter = detectDelimiter();
+        }
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStart = true;
+
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                fields.add(field.toString());
+                lineNumber++;
+                return fields;
+            }
+
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                }
+                continue;
+            }
+
+            if (c == '"' && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStart = true;
+            } else if (c == '\r' || c == '\n') {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                fields.add(field.toString());
+                lineNumber++;
+                return fields;
+            } else {
+                if (c == BYTE_ORDER_MARK && recordLine == 1 && fields.isEmpty() && field.length() == 0) {
+                    continue;
+                }
+                field.append((char) c);
+                fieldStart = false;
+            }
+        }
+    }
+
+    /**
+     * 1-based line on which the last returned record started
+     */
+    int getRecordLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Pick the delimiter that occurs most often outside quotes in the buffered first line
+     */
+    private char detectDelimiter() throws IOException {
+        fill();
+        int commas = 0;
+        int semicolons = 0;
+        int tabs = 0;
+        boolean quoted = false;
+        for (int i = position; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (c == '\n' || c == '\r') {
+                    break;
+                }
+                if (c == ',') commas++;
+                else if (c == ';') semicolons++;
+                else if (c == '\t') tabs++;
+            }
+        }
+        if (semicolons > commas && semicolons >= tabs) {
+            return ';';
+        }
+        if (tabs > commas) {
+            return '\t';
+        }
+        return ',';
+    }
+
+    private void consumeLineBreak() throws IOException {
+        int c = read();
+        if (c == '\r' && peek() == '\n') {
+            read();
+        }
+        lineNumber++;
+    }
+
+    private int peek() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Top up the buffer, keeping unread characters
+     */
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < buffer.length) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                break;
+            }
+            limit += read;
+            if (read > 0) {
+                break;
+            }
+        }
+        return limit > position;
+    }
+}
@@ -0,0 +1,122 @@
+package com.labelapp.printer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CutPolicy - When the cutter fires during a print job
+ * Cutting after every label costs a cutter cycle per label and wears the blade; between cuts
+ * the tape feeds on and printed cut marks separate the labels. The last label of a job is
+ * always cut.
+ *
+ * Stored in the printer settings as "MODE" or "EVERY_N:n".
+ */
+final class CutPolicy {
+
+    enum Mode {
+        EVERY_LABEL,
+        EVERY_N,
+        // Whenever the next label has another size
+        SIZE_GROUP,
+        END_OF_JOB
+    }
+
+    /**
+     * Group key of a job item - the size of a label, or the sizes of a ganged strip.
+     * Called from printer worker threads.
+     */
+    interface GroupSource {
+        String groupOf(int item) throws Exception;
+    }
+
+    static final CutPolicy EVERY_LABEL = new CutPolicy(Mode.EVERY_LABEL, 1);
+
+    final Mode mode;
+    // Labels per cut in EVERY_N mode
+    final int everyN;
+
+    CutPolicy(Mode mode, int everyN) {
+        if (mode == Mode.EVERY_N && everyN < 1) {
+            throw new IllegalArgumentException("Cut interval must be at least 1, got " + everyN);
+        }
+        this.mode = mode;
+        this.everyN = mode == Mode.EVERY_N ? everyN : 1;
+    }
+
+    /**
+     * Read a policy written by toString; unknown values fall back to cutting every label
+     */
+    static CutPolicy parse(String value) {
+        if (value == null) {
+            return EVERY_LABEL;
+        }
+        try {
+            int colon = value.indexOf(':');
+            if (colon < 0) {
+                return new CutPolicy(Mode.valueOf(value), 1);
+            }
+            return new CutPolicy(Mode.valueOf(value.substring(0, colon)), Integer.parseInt(value.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            return EVERY_LABEL;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.EVERY_N ? mode.name() + ':' + everyN : mode.name();
+    }
+
+    /**
+     * The same policy for a job printed as strips of several labels (LabelImposer):
+     * intervals are counted in labels, the scheduler counts strips
+     */
+    CutPolicy forColumns(int columns) {
+        return mode == Mode.EVERY_N ? new CutPolicy(mode, Math.max(1, everyN / columns)) : this;
+    }
+
+    /**
+     * Cut decisions for the items of one run of a job, in the order they are queued
+     *
+     * @param groups Only read in SIZE_GROUP mode, lazily for each printed item and its successor
+     */
+    Plan plan(List<Integer> items, GroupSource groups) {
+        return new Plan(items, groups);
+    }
+
+    final class Plan {
+        private final List<Integer> items;
+        private final GroupSource groups;
+        // Item to its position in the run
+        private final Map<Integer, Integer> positions;
+
+        private Plan(List<Integer> items, GroupSource groups) {
+            this.items = items;
+            this.groups = groups;
+            this.positions = new HashMap<>(items.size() * 2);
+            for (int i = 0; i < items.size(); i++) {
+                positions.put(items.get(i), i);
+            }
+        }
+
+        /**
+         * Whether the cutter fires after this item
+         */
+        boolean cutAfter(int item) throws Exception {
+            Integer position = positions.get(item);
+            if (position == null || position == items.size() - 1) {
+                return true;
+            }
+            switch (mode) {
+                case EVERY_LABEL:
+                    return true;
+                case EVERY_N:
+                    return (position + 1) % everyN == 0;
+                case SIZE_GROUP:
+                    return !groups.groupOf(item).equals(groups.groupOf(items.get(position + 1)));
+                default:
+                    return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.labelapp.printer;
+
+/**
+ * Ean13Encoder - EAN-13 bar patterns
+ * 95 modules: start guard, six left digits in L or G code (the parity of the six encodes
+ * the first digit), centre guard, six right digits in R code, end guard.
+ */
+final class Ean13Encoder {
+
+    static final int QUIET_ZONE = 11;
+
+    private static final int MODULES = 95;
+
+    // L code per digit, 7 modules, most significant bit first; R is its complement, G its reversed complement
+    private static final int[] L_CODES = {
+        0x0D, 0x19, 0x13, 0x3D, 0x23, 0x31, 0x2F, 0x3B, 0x37, 0x0B
+    };
+
+    // Parity of the six left digits per first digit, bit 5 = second digit, 1 for G
+    private static final int[] FIRST_DIGIT_PARITY = {
+        0x00, 0x0B, 0x0D, 0x0E, 0x13, 0x19, 0x1C, 0x15, 0x16, 0x1A
+    };
+
+    private Ean13Encoder() {
+    }
+
+    /**
+     * @param digits 13 digits with a valid check digit
+     */
+    static BarcodePattern encode(String digits) {
+        if (!isValid(digits)) {
+            throw new IllegalArgumentException("Невалиден EAN-13: " + digits);
+        }
+
+        boolean[] modules = new boolean[MODULES];
+        int x = appendBits(modules, 0, 0x5, 3); // start guard 101
+
+        int parity = FIRST_DIGIT_PARITY[digits.charAt(0) - '0'];
+        for (int i = 1; i <= 6; i++) {
+            int code = L_CODES[digits.charAt(i) - '0'];
+            if ((parity & (1 << (6 - i))) != 0) {
+                code = reverse7(~code & 0x7F);
+            }
+            x = appendBits(modules, x, code, 7);
+        }
+
+        x = appendBits(modules, x, 0x0A, 5); // centre guard 01010
+
+        for (int i = 7; i <= 12; i++) {
+            x = appendBits(modules, x, ~L_CODES[digits.charAt(i) - '0'] & 0x7F, 7);
+        }
+
+        appendBits(modules, x, 0x5, 3);
+        return new BarcodePattern(MODULES, 1, QUIET_ZONE, modules);
+    }
+
+    /**
+     * Check digit for the first 12 digits
+     */
+    static int checkDigit(CharSequence digits) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = digits.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    static boolean isValid(String digits) {
+        if (digits.length() != 13) {
+            return false;
+        }
+        for (int i = 0; i < 13; i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return checkDigit(digits) == digits.charAt(12) - '0';
+    }
+
+    private static int appendBits(boolean[] modules, int x, int bits, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            modules[x++] = (bits & (1 << i)) != 0;
+        }
+        return x;
+    }
+
+    private static int reverse7(int bits) {
+        return Integer.reverse(bits) >>> 25;
+    }
+}
@@ -0,0 +1,39 @@
+package com.labelapp.printer;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * FormMode - Whether MainActivity shows the WebView form or the native one (NativeLabelForm)
+ * Chosen on the welcome screen and kept across launches. Low-RAM devices start with the native
+ * form, which leaves Chromium out of the process. The benchmark picks the mode with the
+ * NATIVE_FORM launch extra.
+ */
+final class FormMode {
+
+    static final String EXTRA_NATIVE_FORM = "NATIVE_FORM";
+
+    private static final String PREFS_NAME = "form_settings";
+    private static final String KEY_NATIVE_FORM = "native_form";
+
+    private FormMode() {
+    }
+
+    static boolean isNative(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .getBoolean(KEY_NATIVE_FORM, MemoryGovernor.isLowRamDevice(context));
+    }
+
+    static void setNative(Context context, boolean nativeForm) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putBoolean(KEY_NATIVE_FORM, nativeForm)
+            .apply();
+    }
+
+    /**
+     * The mode a launch intent asks for, or the saved one
+     */
+    static boolean isNative(Context context, Intent intent) {
+        return intent.getBooleanExtra(EXTRA_NATIVE_FORM, isNative(context));
+    }
+}
@@ -0,0 +1,158 @@
+package com.labelapp.printer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GlyphAtlas - 1-bit glyphs of one font at one print size, packed into a single raster
+ * Label text on the monochrome print path is blitted from here a byte at a time instead
+ * of being drawn anti-aliased and thresholded with the rest of the label on every print.
+ * Each glyph is rasterized and thresholded once, so thin Cyrillic strokes keep the same
+ * dots on every label.
+ *
+ * The characters labels use - Cyrillic, digits, "лв", "€", "%" and punctuation - are
+ * rasterized up front; anything else (Latin product names) is added on first use.
+ * Glyphs are packed left to right on shelves; the atlas grows downwards when full.
+ * Thread-safe: printer threads share the atlases of a draw plan.
+ */
+final class GlyphAtlas {
+
+    // Rasterized when the atlas is created
+    static final String PRELOADED_CHARACTERS = "АБВГДЕЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЬЮЯабвгдежзийклмнопрстуфхцчшщъьюя"
+        + "0123456789%€.,:;-/|()+ ";
+
+    // Atlas row width in dots; a few dozen glyphs per shelf at label sizes
+    private static final int ATLAS_WIDTH = 512;
+    private static final int INITIAL_HEIGHT = 64;
+
+    // Characters up to this code point are looked up by index, others by map
+    private static final int DIRECT_LOOKUP = 0x500;
+
+    /**
+     * Rasterizes the glyphs of one font at one size
+     */
+    interface GlyphSource {
+        /**
+         * Black dots of a character, or null when it has none (a space)
+         *
+         * @param offset Receives the raster's left edge from the pen position and its top
+         *               edge from the baseline (negative above it)
+         */
+        MonoRaster rasterize(char c, int[] offset);
+
+        /**
+         * Pen advance after the character, in dots
+         */
+        float advance(char c);
+    }
+
+    static final class Glyph {
+        final int atlasX;
+        final int atlasY;
+        final int width;
+        final int height;
+        final int left;
+        final int top;
+        final float advance;
+
+        Glyph(int atlasX, int atlasY, int width, int height, int left, int top, float advance) {
+            this.atlasX = atlasX;
+            this.atlasY = atlasY;
+            this.width = width;
+            this.height = height;
+            this.left = left;
+            this.top = top;
+            this.advance = advance;
+        }
+    }
+
+    private final GlyphSource source;
+    private final Glyph[] directGlyphs = new Glyph[DIRECT_LOOKUP];
+    private final Map<Character, Glyph> otherGlyphs = new HashMap<>();
+    private final int[] offset = new int[2];
+
+    private MonoRaster atlas = new MonoRaster(ATLAS_WIDTH, INITIAL_HEIGHT);
+    // Packing cursor: next free x on the current shelf, its top and its height so far
+    private int shelfX = 0;
+    private int shelfY = 0;
+    private int shelfHeight = 0;
+
+    GlyphAtlas(GlyphSource source) {
+        this.source = source;
+        for (int i = 0; i < PRELOADED_CHARACTERS.length(); i++) {
+            glyph(PRELOADED_CHARACTERS.charAt(i));
+        }
+    }
+
+    /**
+     * Blit text with its baseline at y, setting its dots (black) or clearing them
+     * (white text on a filled area). Dots outside the target are dropped.
+     *
+     * @return Pen position after the text
+     */
+    synchronized float drawText(MonoRaster target, String text, float x, int baseline, boolean black) {
+        for (int i = 0; i < text.length(); i++) {
+            Glyph glyph = glyph(text.charAt(i));
+            if (glyph.width > 0) {
+                target.blit(atlas, glyph.atlasX, glyph.atlasY, glyph.width, glyph.height,
+                    Math.round(x) + glyph.left, baseline + glyph.top, black);
+            }
+            x += glyph.advance;
+        }
+        return x;
+    }
+
+    synchronized float measureText(String text) {
+        float width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            width += glyph(text.charAt(i)).advance;
+        }
+        return width;
+    }
+
+    /**
+     * Bytes held by the packed glyphs
+     */
+    synchronized int getByteCount() {
+        return atlas.data.length;
+    }
+
+    private Glyph glyph(char c) {
+        Glyph glyph = c < DIRECT_LOOKUP ? directGlyphs[c] : otherGlyphs.get(c);
+        if (glyph == null) {
+            glyph = add(c);
+            if (c < DIRECT_LOOKUP) {
+                directGlyphs[c] = glyph;
+            } else {
+                otherGlyphs.put(c, glyph);
+            }
+        }
+        return glyph;
+    }
+
+    private Glyph add(char c) {
+        float advance = source.advance(c);
+        MonoRaster bits = source.rasterize(c, offset);
+        if (bits == null) {
+            return new Glyph(0, 0, 0, 0, 0, 0, advance);
+        }
+
+        int width = Math.min(bits.width, ATLAS_WIDTH);
+        if (shelfX + width > ATLAS_WIDTH) {
+            shelfY += shelfHeight;
+            shelfX = 0;
+            shelfHeight = 0;
+        }
+        if (shelfY + bits.height > atlas.height) {
+            MonoRaster grown = new MonoRaster(ATLAS_WIDTH, Math.max(atlas.height * 2, shelfY + bits.height));
+            grown.draw(atlas, 0, 0);
+            atlas = grown;
+        }
+        atlas.blit(bits, 0, 0, width, bits.height, shelfX, shelfY, true);
+
+        Glyph glyph = new Glyph(shelfX, shelfY, width, bits.height, offset[0], offset[1], advance);
+        shelfX += width;
+        shelfHeight = Math.max(shelfHeight, bits.height);
+        return glyph;
+    }
+}
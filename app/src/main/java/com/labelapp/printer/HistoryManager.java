@@ -5,9 +5,10 @@ import android.content.SharedPreferences;
 import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Set;
 
 /**
@@ -30,9 +31,6 @@ public class HistoryManager {
     private static final String KEY_IMPORTER_DISPLAY = "importer_display";
     private static final String KEY_PRODUCT_DISPLAY = "product_display";
     
-    // Bulgarian locale for proper text normalization
-    private static final Locale BULGARIAN_LOCALE = new Locale("bg", "BG");
-    
     // Singleton instance
     private static HistoryManager instance;
     private SharedPreferences prefs;
@@ -60,15 +58,20 @@ public class HistoryManager {
     /**
      * Add a value to history for the specified field type
      * Only adds if the value is not empty and not already present
+     *
+     * @return Whether the value was new
      */
-    public void addValue(FieldType fieldType, String value) {
-        if (value == null || value.trim().isEmpty()) {
-            return;
-        }
-        
-        String trimmedValue = value.trim();
-        String normalizedValue = normalizeText(trimmedValue);
-        
+    public boolean addValue(FieldType fieldType, String value) {
+        return !addValues(fieldType, Collections.singletonList(value)).isEmpty();
+    }
+    
+    /**
+     * Add several values to one field with a single write. Called from bridge and import
+     * threads at once, so every read-modify-write of the stored sets holds this lock.
+     *
+     * @return The values that were new, trimmed
+     */
+    public synchronized List<String> addValues(FieldType fieldType, Collection<String> values) {
         String searchKey = getSearchKey(fieldType);
         String displayKey = getDisplayKey(fieldType);
         
@@ -76,14 +79,22 @@ public class HistoryManager {
         Set<String> searchValues = new HashSet<>(prefs.getStringSet(searchKey, new HashSet<>()));
         Set<String> displayValues = new HashSet<>(prefs.getStringSet(displayKey, new HashSet<>()));
         
-        // Check if normalized value already exists
-        if (searchValues.contains(normalizedValue)) {
-            return; // Duplicate found, don't add
+        List<String> added = new ArrayList<>();
+        for (String value : values) {
+            if (value == null || value.trim().isEmpty()) {
+                continue;
+            }
+            String trimmedValue = value.trim();
+            
+            // Skip values whose normalized form already exists
+            if (searchValues.add(normalizeText(trimmedValue))) {
+                displayValues.add(trimmedValue);
+                added.add(trimmedValue);
+            }
+        }
+        if (added.isEmpty()) {
+            return added;
         }
-        
-        // Add new values
-        searchValues.add(normalizedValue);
-        displayValues.add(trimmedValue);
         
         // Limit size (remove oldest if needed)
         // Note: Sets don't maintain order, so we'll just trim by conversion to list
@@ -101,6 +112,7 @@ public class HistoryManager {
         editor.putStringSet(searchKey, searchValues);
         editor.putStringSet(displayKey, displayValues);
         editor.apply();
+        return added;
     }
     
     /**
@@ -136,12 +148,10 @@ public class HistoryManager {
             
             if (fieldType == FieldType.PRODUCT) {
                 // Product field: Word-boundary matching (any word can start with input)
-                isMatch = matchesAnyWord(normalizedDisplayValue, normalizedInput);
+                isMatch = TextSearch.matchesAnyWord(normalizedDisplayValue, normalizedInput);
             } else {
                 // Manufacturer/Importer: Character-by-character from beginning
-                String normalizedInputNoSpaces = normalizedInput.replaceAll("\\s", "");
-                String searchValueNoSpaces = normalizedDisplayValue.replaceAll("\\s", "");
-                isMatch = searchValueNoSpaces.startsWith(normalizedInputNoSpaces);
+                isMatch = TextSearch.matchesFromStart(normalizedDisplayValue, normalizedInput);
             }
             
             if (isMatch) {
@@ -164,7 +174,7 @@ public class HistoryManager {
     /**
      * Clear history for a specific field type
      */
-    public void clearHistory(FieldType fieldType) {
+    public synchronized void clearHistory(FieldType fieldType) {
         SharedPreferences.Editor editor = prefs.edit();
         editor.remove(getSearchKey(fieldType));
         editor.remove(getDisplayKey(fieldType));
@@ -174,42 +184,18 @@ public class HistoryManager {
     /**
      * Clear all history
      */
-    public void clearAllHistory() {
+    public synchronized void clearAllHistory() {
         SharedPreferences.Editor editor = prefs.edit();
         editor.clear();
         editor.apply();
     }
     
     
-    /**
-     * Check if user input matches the beginning of any word in the text
-     * Used for product field to allow matching "Панталон" in "Мъжки Панталон"
-     */
-    private boolean matchesAnyWord(String text, String userInput) {
-        if (text == null || userInput == null || userInput.isEmpty()) {
-            return false;
-        }
-        
-        // Split text into words and check each word
-        String[] words = text.split("\\s+");
-        for (String word : words) {
-            if (word.startsWith(userInput)) {
-                return true;
-            }
-        }
-        
-        return false;
-    }
-    
     /**
      * Normalize text for searching - handles Bulgarian Cyrillic properly
      */
     private String normalizeText(String text) {
-        if (text == null) {
-            return "";
-        }
-        
-        return text.toLowerCase(BULGARIAN_LOCALE).trim();
+        return TextSearch.normalize(text);
     }
     
     /**
@@ -0,0 +1,169 @@
+package com.labelapp.printer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * LabelBitmapPool - Size-bucketed pool of mutable bitmaps for label rasters
+ * Rendered labels are leased from the pool and released once the printer driver is done with them.
+ * A hard byte cap on leased bitmaps blocks the renderer until the print path catches up.
+ */
+class LabelBitmapPool {
+
+    // Default cap fits two full-size ARGB scratch rasters (702 x 3600 x 4 bytes each)
+    static final long DEFAULT_MAX_BYTES = 24L * 1024 * 1024;
+
+    // Bitmaps are grouped by allocation size in 1 MB buckets
+    private static final int BUCKET_BYTES = 1024 * 1024;
+
+    // Guarded by this; lowered by MemoryGovernor under memory pressure
+    private long maxBytes;
+
+    // Free bitmaps keyed by bucket index (allocation size / BUCKET_BYTES)
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> freeBuckets = new TreeMap<>();
+
+    private long pooledBytes = 0;
+    private long leasedBytes = 0;
+
+    LabelBitmapPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    LabelBitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Lease a white bitmap of the requested size.
+     * Blocks while the leased bytes would exceed the cap, so the renderer cannot run ahead of the printer.
+     */
+    synchronized Bitmap acquire(int width, int height, Bitmap.Config config) throws InterruptedException {
+        long needed = bytesFor(width, height, config);
+
+        // Backpressure: wait for the print path to hand bitmaps back.
+        // A single oversized request is still served when nothing else is leased.
+        while (leasedBytes > 0 && leasedBytes + needed > maxBytes) {
+            wait();
+        }
+
+        Bitmap bitmap = takeFree(needed);
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, config);
+        } else {
+            // Make room for a fresh allocation by dropping idle bitmaps first
+            evictFree(maxBytes - leasedBytes - needed);
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+
+        leasedBytes += bitmap.getAllocationByteCount();
+        bitmap.eraseColor(Color.WHITE);
+        return bitmap;
+    }
+
+    /**
+     * Return a leased bitmap to the pool. Safe to call from any thread.
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
+        int allocation = bitmap.getAllocationByteCount();
+        leasedBytes = Math.max(0, leasedBytes - allocation);
+
+        if (bitmap.isMutable() && pooledBytes + leasedBytes + allocation <= maxBytes) {
+            int bucket = allocation / BUCKET_BYTES;
+            ArrayDeque<Bitmap> free = freeBuckets.get(bucket);
+            if (free == null) {
+                free = new ArrayDeque<>();
+                freeBuckets.put(bucket, free);
+            }
+            free.push(bitmap);
+            pooledBytes += allocation;
+        } else {
+            bitmap.recycle();
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Change the cap. Bitmaps leased beyond a lower cap stay valid; new leases wait for them.
+     */
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evictFree(maxBytes - leasedBytes);
+        notifyAll();
+    }
+
+    /**
+     * Drop all idle bitmaps. Leased bitmaps are unaffected.
+     */
+    synchronized void clear() {
+        evictFree(0);
+    }
+
+    synchronized long getLeasedBytes() {
+        return leasedBytes;
+    }
+
+    synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * Find the smallest idle bitmap whose allocation can hold the requested size
+     */
+    private Bitmap takeFree(long needed) {
+        int bucket = (int) (needed / BUCKET_BYTES);
+        for (Map.Entry<Integer, ArrayDeque<Bitmap>> entry : freeBuckets.tailMap(bucket, true).entrySet()) {
+            ArrayDeque<Bitmap> free = entry.getValue();
+            for (Bitmap candidate : free) {
+                if (candidate.getAllocationByteCount() >= needed) {
+                    free.remove(candidate);
+                    if (free.isEmpty()) {
+                        freeBuckets.remove(entry.getKey());
+                    }
+                    pooledBytes -= candidate.getAllocationByteCount();
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recycle idle bitmaps, largest first, until the pooled bytes fit the given budget
+     */
+    private void evictFree(long budget) {
+        while (pooledBytes > Math.max(0, budget) && !freeBuckets.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = freeBuckets.lastEntry();
+            Bitmap victim = largest.getValue().pop();
+            if (largest.getValue().isEmpty()) {
+                freeBuckets.remove(largest.getKey());
+            }
+            pooledBytes -= victim.getAllocationByteCount();
+            victim.recycle();
+        }
+    }
+
+    private static long bytesFor(int width, int height, Bitmap.Config config) {
+        int bytesPerPixel;
+        switch (config) {
+            case ALPHA_8:
+                bytesPerPixel = 1;
+                break;
+            case RGB_565:
+                bytesPerPixel = 2;
+                break;
+            default:
+                bytesPerPixel = 4;
+                break;
+        }
+        return (long) width * height * bytesPerPixel;
+    }
+}
@@ -0,0 +1,161 @@
+package com.labelapp.printer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * LabelCatalog - The fixed materials and countries offered by the form
+ * Read once from assets/catalog.json, the same file script.js builds its dropdowns from.
+ * Each entry gets an ID (its position in the file, so entries are only ever appended) and its
+ * label text is uppercased once. Labels resolve their material and origin names here when
+ * decoded, so every label of an article shares the same interned strings and rendering
+ * never uppercases or formats catalog text again. Free text (custom origins, CSV imports)
+ * still works and is uppercased on its own.
+ */
+final class LabelCatalog {
+
+    static final int NO_ID = -1;
+
+    // Same locale as the autocomplete's normalization
+    private static final Locale BULGARIAN_LOCALE = new Locale("bg", "BG");
+
+    /**
+     * One material or country
+     */
+    static final class Entry {
+        final int id;
+        final String name;
+        // Uppercased as printed
+        final String label;
+
+        private Entry(int id, String name) {
+            this.id = id;
+            this.name = name.intern();
+            this.label = upperCase(name).intern();
+        }
+    }
+
+    private static volatile LabelCatalog installed = new LabelCatalog("{}", Collections.<String>emptyList(), Collections.<String>emptyList());
+
+    private final String json;
+    private final List<Entry> materials;
+    private final List<Entry> origins;
+    private final Map<String, Entry> materialsByKey;
+    private final Map<String, Entry> originsByKey;
+
+    private LabelCatalog(String json, List<String> materialNames, List<String> originNames) {
+        this.json = json;
+        this.materials = createEntries(materialNames);
+        this.origins = createEntries(originNames);
+        this.materialsByKey = index(materials);
+        this.originsByKey = index(origins);
+    }
+
+    /**
+     * Catalog used when decoding labels; empty until install() is called at startup
+     */
+    static LabelCatalog get() {
+        return installed;
+    }
+
+    static void install(LabelCatalog catalog) {
+        installed = catalog;
+    }
+
+    static LabelCatalog parse(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        return new LabelCatalog(json, strings(root.getJSONArray("materials")), strings(root.getJSONArray("origins")));
+    }
+
+    static LabelCatalog read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        try {
+            return parse(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException("Невалиден каталог: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The catalog file as read, handed to script.js through the bridge
+     */
+    String toJson() {
+        return json;
+    }
+
+    List<Entry> getMaterials() {
+        return materials;
+    }
+
+    List<Entry> getOrigins() {
+        return origins;
+    }
+
+    /**
+     * Catalog material with this name (any case), or null for free text
+     */
+    Entry findMaterial(String name) {
+        return materialsByKey.get(key(name));
+    }
+
+    Entry findOrigin(String name) {
+        return originsByKey.get(key(name));
+    }
+
+    /**
+     * Printed form of an origin - shared for catalog countries, uppercased for free text
+     */
+    String originLabel(String name) {
+        Entry entry = findOrigin(name);
+        return entry != null ? entry.label : upperCase(name);
+    }
+
+    static String upperCase(String text) {
+        return text.toUpperCase(BULGARIAN_LOCALE);
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(BULGARIAN_LOCALE);
+    }
+
+    private static List<Entry> createEntries(List<String> names) {
+        List<Entry> entries = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            entries.add(new Entry(i, names.get(i)));
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    private static Map<String, Entry> index(List<Entry> entries) {
+        Map<String, Entry> byKey = new HashMap<>();
+        for (Entry entry : entries) {
+            byKey.put(key(entry.name), entry);
+        }
+        return byKey;
+    }
+
+    private static List<String> strings(JSONArray array) throws JSONException {
+        List<String> values = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            values.add(array.getString(i));
+        }
+        return values;
+    }
+}
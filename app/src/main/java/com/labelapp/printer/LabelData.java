@@ -0,0 +1,86 @@
+package com.labelapp.printer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable label content. Copies of a job share one instance per size (see LabelPayload).
+ */
+class LabelData {
+    final String size;
+    final String product;
+    final String origin;
+    final List<Material> materials;
+    final String manufacturer;
+    final String importer;
+    final String priceEur;
+    final String priceBgn;
+    // Null when the label has no barcode section
+    final Barcode barcode;
+
+    LabelData(String size, String product, String origin, List<Material> materials,
+              String manufacturer, String importer, String priceEur, String priceBgn) {
+        this(size, product, origin, materials, manufacturer, importer, priceEur, priceBgn, null);
+    }
+
+    LabelData(String size, String product, String origin, List<Material> materials,
+              String manufacturer, String importer, String priceEur, String priceBgn, Barcode barcode) {
+        this.size = size;
+        this.product = product;
+        this.origin = LabelCatalog.get().originLabel(origin);
+        this.materials = Collections.unmodifiableList(materials);
+        this.manufacturer = manufacturer;
+        this.importer = importer;
+        this.priceEur = priceEur;
+        this.priceBgn = priceBgn;
+        this.barcode = barcode;
+    }
+
+    /**
+     * Legacy JSON payload, still accepted for jobs queued before the compact format
+     */
+    LabelData(JSONObject json) throws JSONException {
+        this.size = json.optString("size", "");
+        this.product = json.optString("product", "");
+        this.origin = LabelCatalog.get().originLabel(json.optString("origin", ""));
+        this.manufacturer = json.optString("manufacturer", "");
+        this.importer = json.optString("importer", "");
+        this.priceEur = json.optString("priceEur", null);
+        this.priceBgn = json.optString("priceBgn", null);
+        this.barcode = null;
+
+        List<Material> materials = new ArrayList<>();
+        JSONArray materialsArray = json.optJSONArray("materials");
+        if (materialsArray != null) {
+            for (int i = 0; i < materialsArray.length(); i++) {
+                JSONObject matJson = materialsArray.getJSONObject(i);
+                materials.add(new Material(matJson.optInt("percentage"), matJson.optString("type")));
+            }
+        }
+        this.materials = Collections.unmodifiableList(materials);
+    }
+
+    private LabelData(LabelData other, String size) {
+        this.size = size;
+        this.product = other.product;
+        this.origin = other.origin;
+        this.materials = other.materials;
+        this.manufacturer = other.manufacturer;
+        this.importer = other.importer;
+        this.priceEur = other.priceEur;
+        this.priceBgn = other.priceBgn;
+        this.barcode = other.barcode;
+    }
+
+    /**
+     * Same label in another size. Shares every other field.
+     */
+    LabelData withSize(String size) {
+        return new LabelData(this, size);
+    }
+}
@@ -0,0 +1,655 @@
+package com.labelapp.printer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LabelDrawPlan - A LabelTemplate compiled into Canvas drawing steps
+ * Paints for every font and autofit size are created once, and everything that does not
+ * depend on the label - title heights, line spacing, badge and price row metrics - is
+ * measured once, so drawing a label only measures its own text. Plans are kept by template
+ * hash, so switching between templates does not compile them again.
+ *
+ * On the 1-bit print path the text is left out of the Canvas drawing and blitted from
+ * GlyphAtlases of the plan's fonts at print size instead (drawText).
+ *
+ * Drawing reuses a Rect and a text height cache; callers take turns (LabelDrawer is locked
+ * while drawing), the caches have their own locks because plans are shared.
+ */
+final class LabelDrawPlan {
+
+    // Templates a shop switches between; a plan holds a few dozen paints
+    private static final int MAX_CACHED_PLANS = 4;
+
+    // Product and company names are free text, so measured heights are bounded per paint
+    private static final int MAX_CACHED_TEXT_HEIGHTS = 256;
+
+    // Glyph atlases of the plan's paints at the print scales in use. Across the tape the scale
+    // follows the label's length, so it is rounded to SCALE_STEP and labels of an article share one.
+    private static final int MAX_CACHED_ATLASES = 32;
+    private static final float SCALE_STEP = 1f / 64;
+
+    // Guarded by plans. Template hash to plan, least recently used first.
+    private static final Map<String, LabelDrawPlan> plans = new LinkedHashMap<String, LabelDrawPlan>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LabelDrawPlan> eldest) {
+            return size() > MAX_CACHED_PLANS;
+        }
+    };
+
+    /**
+     * One section; draws it at y and returns the y below it
+     */
+    private interface Step {
+        float draw(Target target, LabelData data, float y);
+    }
+
+    /**
+     * Text of a label left out of the Canvas drawing, for drawText to blit on the 1-bit raster
+     */
+    static final class TextRun {
+        final String text;
+        final float x;
+        final float baseline;
+        final TextPaint paint;
+
+        TextRun(String text, float x, float baseline, TextPaint paint) {
+            this.text = text;
+            this.x = x;
+            this.baseline = baseline;
+            this.paint = paint;
+        }
+    }
+
+    /**
+     * Where one label is drawn: its canvas, its barcode area and, on the 1-bit print path,
+     * the text runs recorded instead of drawn
+     */
+    private static final class Target {
+        final Canvas canvas;
+        final RectF barcodeArea;
+        final List<TextRun> textRuns;
+
+        Target(Canvas canvas, RectF barcodeArea, List<TextRun> textRuns) {
+            this.canvas = canvas;
+            this.barcodeArea = barcodeArea;
+            this.textRuns = textRuns;
+        }
+
+        void drawText(String text, float x, float baseline, TextPaint paint) {
+            if (textRuns != null) {
+                textRuns.add(new TextRun(text, x, baseline, paint));
+            } else {
+                canvas.drawText(text, x, baseline, paint);
+            }
+        }
+
+        void drawCenteredText(String text, float centerX, float topY, TextPaint paint) {
+            drawText(text, centerX - paint.measureText(text) / 2, topY - paint.ascent(), paint);
+        }
+    }
+
+    final float width;
+    private final float padding;
+    private final float paddingBottom;
+    private final float minHeight;
+    private final float borderRadius;
+    private final Paint borderPaint;
+    private final List<Step> steps;
+
+    // Same font, same paints: sections sharing a font share measured heights
+    private final Map<LabelTemplate.Font, TextPaint[]> paints = new IdentityHashMap<>();
+    // Names each paint in the atlas keys
+    private final Map<TextPaint, Integer> paintIds = new IdentityHashMap<>();
+    private final Map<Paint, Map<String, Float>> textHeights = new HashMap<>();
+    private final Rect textBounds = new Rect();
+
+    // Guarded by atlases
+    private final Map<String, GlyphAtlas> atlases = new LinkedHashMap<String, GlyphAtlas>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GlyphAtlas> eldest) {
+            return size() > MAX_CACHED_ATLASES;
+        }
+    };
+
+    private LabelDrawPlan(LabelTemplate template) {
+        this.width = template.width;
+        this.padding = template.padding;
+        this.paddingBottom = template.paddingBottom;
+        this.minHeight = template.minHeight;
+        this.borderRadius = template.borderRadius;
+        this.borderPaint = template.borderWidth > 0 ? linePaint(template.borderWidth, Color.BLACK) : null;
+        if (borderPaint != null) {
+            borderPaint.setStyle(Paint.Style.STROKE);
+        }
+
+        steps = new ArrayList<>(template.sections.size());
+        for (LabelTemplate.Section section : template.sections) {
+            switch (section.kind) {
+                case BADGE:
+                    steps.add(new BadgeStep(section));
+                    break;
+                case FIELD:
+                    steps.add(new FieldStep(section));
+                    break;
+                case MATERIALS:
+                    steps.add(new MaterialsStep(section));
+                    break;
+                case BARCODE:
+                    steps.add(new BarcodeStep(section));
+                    break;
+                default:
+                    steps.add(new PriceStep(section));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Compiled plan of a template, from the cache when it was compiled before
+     */
+    static LabelDrawPlan forTemplate(LabelTemplate template) {
+        synchronized (plans) {
+            LabelDrawPlan plan = plans.get(template.hash);
+            if (plan == null) {
+                plan = new LabelDrawPlan(template);
+                plans.put(template.hash, plan);
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Draw every section and the border in layout units, from the top of the canvas.
+     *
+     * @param barcodeArea Set to the area reserved for the barcode modules, or empty when the
+     *                    label has none; LabelDrawer fills it in device pixels
+     * @param textRuns    Receives the label's text instead of the canvas when not null
+     * @return The label height in layout units.
+     */
+    float draw(Canvas canvas, LabelData data, RectF barcodeArea, List<TextRun> textRuns) {
+        barcodeArea.setEmpty();
+        Target target = new Target(canvas, barcodeArea, textRuns);
+        float y = padding;
+        for (Step step : steps) {
+            y = step.draw(target, data, y);
+        }
+        float height = Math.max(y + paddingBottom, minHeight);
+
+        if (borderPaint != null) {
+            float inset = borderPaint.getStrokeWidth() / 2;
+            canvas.drawRoundRect(new RectF(inset, inset, width - inset, height - inset), borderRadius, borderRadius, borderPaint);
+        }
+        return height;
+    }
+
+    /**
+     * Blit text runs recorded by draw onto the label's raster, which is scaled from layout units
+     * by scaleX across and scaleY down. Dark text sets dots, light text (the size badge) clears them.
+     */
+    void drawText(MonoRaster raster, List<TextRun> textRuns, float scaleX, float scaleY) {
+        for (TextRun run : textRuns) {
+            GlyphAtlas atlas = atlasFor(run.paint, scaleX, scaleY);
+            int color = run.paint.getColor();
+            int luminance = (Color.red(color) * 77 + Color.green(color) * 150 + Color.blue(color) * 29) >> 8;
+            atlas.drawText(raster, run.text, run.x * scaleX, Math.round(run.baseline * scaleY),
+                luminance <= MonoRaster.DEFAULT_THRESHOLD);
+        }
+    }
+
+    private GlyphAtlas atlasFor(TextPaint paint, float scaleX, float scaleY) {
+        float roundedX = Math.max(SCALE_STEP, Math.round(scaleX / SCALE_STEP) * SCALE_STEP);
+        float roundedY = Math.max(SCALE_STEP, Math.round(scaleY / SCALE_STEP) * SCALE_STEP);
+        String key = paintIds.get(paint) + ":" + roundedX + ":" + roundedY;
+        synchronized (atlases) {
+            GlyphAtlas atlas = atlases.get(key);
+            if (atlas == null) {
+                atlas = new GlyphAtlas(new PaintGlyphSource(paint, roundedX, roundedY));
+                atlases.put(key, atlas);
+            }
+            return atlas;
+        }
+    }
+
+    /**
+     * Bytes held by the glyph atlases of every cached plan
+     */
+    static long getCachedAtlasBytes() {
+        synchronized (plans) {
+            long bytes = 0;
+            for (LabelDrawPlan plan : plans.values()) {
+                bytes += plan.getAtlasByteCount();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Drop the glyph atlases and measured text heights of every cached plan (MemoryGovernor).
+     * Plans stay compiled; what they drop is rebuilt by the next label drawn.
+     */
+    static void trimCaches() {
+        synchronized (plans) {
+            for (LabelDrawPlan plan : plans.values()) {
+                synchronized (plan.atlases) {
+                    plan.atlases.clear();
+                }
+                synchronized (plan.textHeights) {
+                    plan.textHeights.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytes held by the glyph atlases of this plan
+     */
+    int getAtlasByteCount() {
+        synchronized (atlases) {
+            int bytes = 0;
+            for (GlyphAtlas atlas : atlases.values()) {
+                bytes += atlas.getByteCount();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Glyphs of a paint drawn at print size, anti-aliased and thresholded once per glyph
+     */
+    private static final class PaintGlyphSource implements GlyphAtlas.GlyphSource {
+        private final TextPaint paint;
+        private final Rect bounds = new Rect();
+
+        PaintGlyphSource(TextPaint layoutPaint, float scaleX, float scaleY) {
+            paint = new TextPaint(layoutPaint);
+            paint.setColor(Color.BLACK);
+            paint.setTextSize(layoutPaint.getTextSize() * scaleY);
+            paint.setTextScaleX(scaleX / scaleY);
+        }
+
+        @Override
+        public MonoRaster rasterize(char c, int[] offset) {
+            String text = String.valueOf(c);
+            paint.getTextBounds(text, 0, 1, bounds);
+            if (bounds.width() <= 0 || bounds.height() <= 0) {
+                return null;
+            }
+            // A dot of margin keeps anti-aliased edges inside the bitmap
+            int width = bounds.width() + 2;
+            int height = bounds.height() + 2;
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            try {
+                bitmap.eraseColor(Color.WHITE);
+                new Canvas(bitmap).drawText(text, 1 - bounds.left, 1 - bounds.top, paint);
+                offset[0] = bounds.left - 1;
+                offset[1] = bounds.top - 1;
+                return RasterPrinterTarget.toColumnRaster(bitmap);
+            } finally {
+                bitmap.recycle();
+            }
+        }
+
+        @Override
+        public float advance(char c) {
+            return paint.measureText(String.valueOf(c));
+        }
+    }
+
+    private final class BadgeStep implements Step {
+        private final LabelTemplate.Section section;
+        private final TextPaint textPaint;
+        private final Paint fillPaint;
+        private final Paint rulePaint;
+        private final float paddingX;
+        private final float radius;
+        private final float badgeHeight;
+        private final float baselineOffset;
+
+        BadgeStep(LabelTemplate.Section section) {
+            this.section = section;
+            textPaint = paintsOf(section.font("font"))[0];
+            fillPaint = new Paint();
+            fillPaint.setStyle(Paint.Style.FILL);
+            fillPaint.setColor(Color.BLACK);
+            fillPaint.setAntiAlias(true);
+            rulePaint = rulePaint(section);
+            paddingX = section.metric("paddingX");
+            radius = section.metric("radius");
+            badgeHeight = textPaint.descent() - textPaint.ascent() + 2 * section.metric("paddingY");
+            // Text centered vertically inside the badge
+            baselineOffset = badgeHeight / 2 - (textPaint.descent() + textPaint.ascent()) / 2;
+        }
+
+        @Override
+        public float draw(Target target, LabelData data, float y) {
+            String text = section.text("prefix") + fieldValue(section.field, data);
+            float badgeWidth = textPaint.measureText(text) + 2 * paddingX;
+            float left = section.align == LabelTemplate.Align.CENTER ? (width - badgeWidth) / 2 : padding;
+            target.canvas.drawRoundRect(new RectF(left, y, left + badgeWidth, y + badgeHeight), radius, radius, fillPaint);
+            target.drawText(text, left + paddingX, y + baselineOffset, textPaint);
+
+            y += badgeHeight + section.metric("marginBottom");
+            return drawRule(target.canvas, rulePaint, y) + section.metric("ruleMargin");
+        }
+    }
+
+    private final class FieldStep implements Step {
+        private final LabelTemplate.Section section;
+        private final String title;
+        private final TextPaint titlePaint;
+        private final TextPaint contentPaint;
+        private final float titleHeight;
+        private final float sectionPadding;
+
+        FieldStep(LabelTemplate.Section section) {
+            this.section = section;
+            title = section.text("title");
+            titlePaint = paintsOf(section.font("titleFont"))[0];
+            contentPaint = paintsOf(section.font("font"))[0];
+            titleHeight = getTextHeight(title, titlePaint);
+            sectionPadding = section.metric("padding");
+        }
+
+        @Override
+        public float draw(Target target, LabelData data, float y) {
+            String content = fieldValue(section.field, data);
+            y += section.metric("marginTop");
+            float sectionHeight = titleHeight + getTextHeight(content, contentPaint) + 2 * sectionPadding
+                + section.metric("titleGap");
+
+            float textY = y + sectionPadding;
+            if (section.align == LabelTemplate.Align.CENTER) {
+                target.drawCenteredText(title, width / 2, textY, titlePaint);
+                textY += titleHeight + section.metric("titleGap");
+                target.drawCenteredText(content, width / 2, textY, contentPaint);
+            } else {
+                float x = padding + sectionPadding;
+                target.drawText(title, x, textY - titlePaint.ascent(), titlePaint);
+                textY += titleHeight + section.metric("titleGap");
+                target.drawText(content, x, textY - contentPaint.ascent(), contentPaint);
+            }
+            return y + sectionHeight + section.metric("marginBottom");
+        }
+    }
+
+    private final class MaterialsStep implements Step {
+        private final LabelTemplate.Section section;
+        private final String title;
+        private final TextPaint titlePaint;
+        private final TextPaint linePaint;
+        private final Paint rulePaint;
+        private final Paint dividerPaint;
+        private final float titleHeight;
+        private final float lineSpacing;
+        private final float rightColumnX;
+
+        MaterialsStep(LabelTemplate.Section section) {
+            this.section = section;
+            title = section.text("title");
+            titlePaint = paintsOf(section.font("titleFont"))[0];
+            linePaint = paintsOf(section.font("font"))[0];
+            rulePaint = rulePaint(section);
+            float divider = section.metric("divider");
+            dividerPaint = divider > 0 ? linePaint(divider, Color.rgb(221, 221, 221)) : null;
+            titleHeight = getTextHeight(title, titlePaint);
+            lineSpacing = getTextHeight("Test", linePaint) + section.metric("lineGap");
+
+            float gap = section.metric("columnGap");
+            float columnWidth = (width - 2 * padding - gap) / 2;
+            rightColumnX = padding + columnWidth + gap;
+        }
+
+        @Override
+        public float draw(Target target, LabelData data, float y) {
+            float ruleY = y + section.metric("marginTop");
+            float currentY = drawRule(target.canvas, rulePaint, ruleY) + section.metric("ruleMargin");
+            target.drawText(title, padding, currentY - titlePaint.ascent(), titlePaint);
+            currentY += titleHeight + section.metric("titleGap");
+
+            List<Material> materials = data.materials;
+            if (materials.size() <= section.metric("singleColumnMax")) {
+                for (Material material : materials) {
+                    target.drawText(material.line, padding, currentY - linePaint.ascent(), linePaint);
+                    currentY += lineSpacing;
+                }
+            } else {
+                // The left column takes the odd line
+                int midpoint = (materials.size() + 1) / 2;
+                float leftY = currentY;
+                for (int i = 0; i < midpoint; i++) {
+                    target.drawText(materials.get(i).line, padding, leftY - linePaint.ascent(), linePaint);
+                    leftY += lineSpacing;
+                }
+                float rightY = currentY;
+                for (int i = midpoint; i < materials.size(); i++) {
+                    target.drawText(materials.get(i).line, rightColumnX, rightY - linePaint.ascent(), linePaint);
+                    rightY += lineSpacing;
+                }
+                currentY = Math.max(leftY, rightY);
+
+                if (dividerPaint != null) {
+                    float dividerX = rightColumnX - section.metric("columnGap") / 2;
+                    target.canvas.drawLine(dividerX, ruleY + section.metric("ruleMargin") / 2, dividerX, currentY - lineSpacing,
+                        dividerPaint);
+                }
+            }
+            return currentY + section.metric("marginBottom");
+        }
+    }
+
+    /**
+     * Reserves the barcode area and prints the human-readable text under linear codes
+     */
+    private final class BarcodeStep implements Step {
+        private final LabelTemplate.Section section;
+        private final TextPaint textPaint;
+
+        BarcodeStep(LabelTemplate.Section section) {
+            this.section = section;
+            textPaint = paintsOf(section.font("font"))[0];
+        }
+
+        @Override
+        public float draw(Target target, LabelData data, float y) {
+            if (data.barcode == null) {
+                return y;
+            }
+            y += section.metric("marginTop");
+            if (data.barcode.getPattern().isLinear()) {
+                target.barcodeArea.set(padding, y, width - padding, y + section.metric("barHeight"));
+                y = target.barcodeArea.bottom + section.metric("textGap");
+
+                String text = data.barcode.getText();
+                target.drawCenteredText(text, width / 2, y, textPaint);
+                y += getTextHeight(text, textPaint);
+            } else {
+                float size = section.metric("qrSize");
+                float left = (width - size) / 2;
+                target.barcodeArea.set(left, y, left + size, y + size);
+                y = target.barcodeArea.bottom;
+            }
+            return y + section.metric("marginBottom");
+        }
+    }
+
+    /**
+     * Caption row and a row with one or both prices, in the largest font size that fits
+     */
+    private final class PriceStep implements Step {
+        private final LabelTemplate.Section section;
+        private final String title;
+        private final TextPaint titlePaint;
+        private final TextPaint[] valuePaints;
+        private final TextPaint[] separatorPaints;
+        private final Paint rulePaint;
+        // Caption top to price baseline, per autofit size
+        private final float[] baselineOffsets;
+
+        PriceStep(LabelTemplate.Section section) {
+            this.section = section;
+            title = section.text("title");
+            titlePaint = paintsOf(section.font("titleFont"))[0];
+            valuePaints = paintsOf(section.font("font"));
+            separatorPaints = paintsOf(section.font("separatorFont"));
+            rulePaint = rulePaint(section);
+
+            baselineOffsets = new float[valuePaints.length];
+            float captionHeight = getTextHeight("Test", titlePaint);
+            for (int i = 0; i < valuePaints.length; i++) {
+                baselineOffsets[i] = section.metric("lineGap") + captionHeight + getTextHeight("Test", valuePaints[i]);
+            }
+        }
+
+        @Override
+        public float draw(Target target, LabelData data, float y) {
+            float ruleMargin = section.metric("ruleMargin");
+            y = drawRule(target.canvas, rulePaint, y + section.metric("marginTop") + ruleMargin) + ruleMargin;
+            if (data.priceEur == null && data.priceBgn == null) {
+                return y;
+            }
+
+            String bgnText = data.priceBgn != null ? data.priceBgn + section.text("bgnSuffix") : null;
+            String eurText = data.priceEur != null ? data.priceEur + section.text("eurSuffix") : null;
+            String separator = section.text("separator");
+            String fitText = bgnText != null && eurText != null
+                ? bgnText + " " + separator + " " + eurText
+                : (eurText != null ? eurText : bgnText);
+
+            // Largest size whose text fits; the last one is used regardless
+            float available = width - section.metric("fitMargin");
+            int size = 0;
+            while (size < valuePaints.length - 1 && valuePaints[size].measureText(fitText) > available) {
+                size++;
+            }
+            TextPaint valuePaint = valuePaints[size];
+            TextPaint separatorPaint = separatorPaints[Math.min(size, separatorPaints.length - 1)];
+
+            float titleY = y + section.metric("titleTop");
+            target.drawCenteredText(title, width / 2, titleY, titlePaint);
+            float baseline = titleY + baselineOffsets[size];
+
+            float sidePadding = section.metric("sidePadding");
+            float rowWidth = width - 2 * sidePadding;
+            if (bgnText != null && eurText != null) {
+                float gap = section.metric("valueGap");
+                float bgnWidth = valuePaint.measureText(bgnText);
+                float separatorWidth = separatorPaint.measureText(separator);
+                float totalWidth = bgnWidth + valuePaint.measureText(eurText) + separatorWidth + 2 * gap;
+                float x = sidePadding + (rowWidth - totalWidth) / 2;
+
+                target.drawText(bgnText, x, baseline, valuePaint);
+                x += bgnWidth + gap;
+                target.drawText(separator, x, baseline, separatorPaint);
+                x += separatorWidth + gap;
+                target.drawText(eurText, x, baseline, valuePaint);
+            } else {
+                String text = eurText != null ? eurText : bgnText;
+                target.drawText(text, sidePadding + (rowWidth - valuePaint.measureText(text)) / 2, baseline, valuePaint);
+            }
+            return baseline + section.metric("marginBottom");
+        }
+    }
+
+    private static String fieldValue(LabelTemplate.Field field, LabelData data) {
+        String value;
+        switch (field) {
+            case SIZE:
+                value = data.size;
+                break;
+            case PRODUCT:
+                value = data.product;
+                break;
+            case ORIGIN:
+                value = data.origin;
+                break;
+            case MANUFACTURER:
+                value = data.manufacturer;
+                break;
+            default:
+                value = data.importer;
+                break;
+        }
+        return value != null ? value : "";
+    }
+
+    /**
+     * Paints of a font at its size and each autofit size, created once per font
+     */
+    private TextPaint[] paintsOf(LabelTemplate.Font font) {
+        TextPaint[] sizes = paints.get(font);
+        if (sizes == null) {
+            sizes = new TextPaint[font.autofit.length + 1];
+            for (int i = 0; i < sizes.length; i++) {
+                TextPaint paint = new TextPaint();
+                paint.setColor(font.color);
+                paint.setTextSize(i == 0 ? font.size : font.autofit[i - 1]);
+                paint.setTypeface(Typeface.create(Typeface.SANS_SERIF, font.bold ? Typeface.BOLD : Typeface.NORMAL));
+                paint.setAntiAlias(true);
+                paint.setSubpixelText(true);
+                paint.setFilterBitmap(true);
+                paint.setLetterSpacing(font.letterSpacing);
+                sizes[i] = paint;
+                paintIds.put(paint, paintIds.size());
+            }
+            paints.put(font, sizes);
+        }
+        return sizes;
+    }
+
+    private static Paint rulePaint(LabelTemplate.Section section) {
+        float rule = section.metric("rule");
+        return rule > 0 ? linePaint(rule, Color.BLACK) : null;
+    }
+
+    private static Paint linePaint(float strokeWidth, int color) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setStrokeWidth(strokeWidth);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Full-width rule inside the padding, skipped when the template sets its width to 0
+     */
+    private float drawRule(Canvas canvas, Paint rulePaint, float y) {
+        if (rulePaint != null) {
+            canvas.drawLine(padding, y, width - padding, y, rulePaint);
+        }
+        return y;
+    }
+
+    private float getTextHeight(String text, Paint paint) {
+        synchronized (textHeights) {
+            Map<String, Float> heights = textHeights.get(paint);
+            if (heights == null) {
+                heights = new HashMap<>();
+                textHeights.put(paint, heights);
+            }
+            Float height = heights.get(text);
+            if (height == null) {
+                if (heights.size() >= MAX_CACHED_TEXT_HEIGHTS) {
+                    heights.clear();
+                }
+                paint.getTextBounds(text, 0, text.length(), textBounds);
+                height = (float) textBounds.height();
+                heights.put(text, height);
+            }
+            return height;
+        }
+    }
+}
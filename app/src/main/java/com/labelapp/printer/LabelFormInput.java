@@ -0,0 +1,153 @@
+package com.labelapp.printer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * LabelFormInput - What the native form collected, as the page would send it
+ * Native copy of collectFormData() and validateForm() in script.js: rows that are not filled in
+ * are skipped, the rules are LabelValidator's, and the payload decodes to the same label as
+ * the one encodeLabelPayload() builds, so jobs from either form print alike.
+ */
+final class LabelFormInput {
+
+    // Same rate as EUR_TO_BGN_RATE in script.js
+    static final double EUR_TO_BGN_RATE = 1.9558;
+
+    // Quantity bounds of a size row
+    static final int MIN_QUANTITY = 1;
+    static final int MAX_QUANTITY = 99;
+
+    private final String product;
+    private final String origin;
+    private final String manufacturer;
+    private final String importer;
+    private final String priceBgn;
+    private final List<Material> materials = new ArrayList<>();
+    // One entry per printed copy
+    private final List<String> sizes = new ArrayList<>();
+    private String barcodeType = "";
+    private String barcodeValue = "";
+
+    /**
+     * @param priceBgn As typed; normalized like the form's toFixed(2)
+     */
+    LabelFormInput(String product, String origin, String manufacturer, String importer, String priceBgn) {
+        this.product = payloadText(product);
+        this.origin = payloadText(origin);
+        this.manufacturer = payloadText(manufacturer);
+        this.importer = payloadText(importer);
+        this.priceBgn = formatPrice(priceBgn);
+    }
+
+    /**
+     * A material row; skipped unless both the material and the percentage are filled in
+     */
+    LabelFormInput addMaterial(String type, String percentage) {
+        if (type.isEmpty() || percentage.trim().isEmpty()) {
+            return this;
+        }
+        try {
+            materials.add(new Material(Integer.parseInt(percentage.trim()), payloadText(type)));
+        } catch (NumberFormatException e) {
+            // Not a number - the row counts as empty, as in the page
+        }
+        return this;
+    }
+
+    /**
+     * A size row; skipped without a size. The quantity is clamped to the row's bounds.
+     */
+    LabelFormInput addSize(String size, int quantity) {
+        if (size.trim().isEmpty()) {
+            return this;
+        }
+        int copies = Math.max(MIN_QUANTITY, Math.min(MAX_QUANTITY, quantity));
+        sizes.addAll(Collections.nCopies(copies, payloadText(size)));
+        return this;
+    }
+
+    /**
+     * @param type Barcode.Type code, or empty for none
+     */
+    LabelFormInput setBarcode(String type, String value) {
+        barcodeType = type;
+        barcodeValue = type.isEmpty() ? "" : value.trim();
+        return this;
+    }
+
+    int getLabelCount() {
+        return sizes.size();
+    }
+
+    /**
+     * Error messages as validateForm() shows them, empty when the label can be printed
+     */
+    List<String> validate() {
+        List<String> errors = LabelValidator.validate(toLabel(), sizes.size());
+        if (!barcodeType.isEmpty()) {
+            if (barcodeValue.isEmpty()) {
+                errors.add("Въведете стойност на баркода");
+            } else {
+                try {
+                    Barcode.create(Barcode.Type.fromCode(barcodeType), barcodeValue);
+                } catch (IllegalArgumentException e) {
+                    errors.add(e.getMessage());
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * The print payload; only call once validate() came back empty
+     */
+    String toPayload() {
+        return LabelPayload.encode(toLabel(), sizes);
+    }
+
+    /**
+     * BGN to EUR as the form converts it, or "" when the price is empty or not a number
+     */
+    static String toEur(String priceBgn) {
+        String bgn = formatPrice(priceBgn);
+        if (bgn == null) {
+            return "";
+        }
+        return String.format(Locale.US, "%.2f", Double.parseDouble(bgn) / EUR_TO_BGN_RATE);
+    }
+
+    private LabelData toLabel() {
+        Barcode barcode = null;
+        if (!barcodeType.isEmpty() && !barcodeValue.isEmpty()) {
+            try {
+                barcode = Barcode.create(Barcode.Type.fromCode(barcodeType), barcodeValue);
+            } catch (IllegalArgumentException e) {
+                // Reported by validate()
+            }
+        }
+        return new LabelData("", product, origin, materials, manufacturer, importer,
+            priceBgn != null ? toEur(priceBgn) : null, priceBgn, barcode);
+    }
+
+    /**
+     * Same as the page's payloadText(): separator characters cannot appear inside a field
+     */
+    private static String payloadText(String value) {
+        return value.replaceAll("[\\u001C-\\u001F]", " ");
+    }
+
+    private static String formatPrice(String value) {
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        try {
+            return String.format(Locale.US, "%.2f", Double.parseDouble(trimmed));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.labelapp.printer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LabelImposer - Packs narrow labels side by side across the 62mm tape
+ * A label is ~20mm wide, so two or three of them fit upright across the roll. Each strip is
+ * fed and cut as one page, which divides the prints and cutter cycles of a job by the
+ * column count.
+ *
+ * Labels are packed in order, a window at a time: within a window they are sorted by length
+ * before being dealt into strips, so labels of similar length share a strip and little tape
+ * is left blank next to the shorter ones. Shorter labels sit at the strip's leading edge.
+ *
+ * The scheduler then prints strips instead of labels; forStrips translates its progress back
+ * into labels, so the queue's per-label cursor and resume logic stay unchanged.
+ */
+class LabelImposer {
+
+    static final int MAX_COLUMNS = 3;
+
+    // Labels sorted together; a multiple of every column count so windows fill whole strips
+    static final int PACKING_WINDOW = 12;
+
+    /**
+     * Length of a label along the feed, in any unit as long as all labels use the same one
+     */
+    interface LengthSource {
+        int lengthOf(int labelIndex) throws Exception;
+    }
+
+    /**
+     * Labels printed together, by column from the left
+     */
+    static final class Strip {
+        final int[] labels;
+
+        Strip(int[] labels) {
+            this.labels = labels;
+        }
+    }
+
+    final int columns;
+    // Width of every column and the blank gap between columns, in dots across the tape
+    final int columnDots;
+    final int gutterDots;
+    private final int tapeDots;
+    private final int leftMargin;
+
+    /**
+     * @param tapeDots       Printable dots across the roll
+     * @param columns        Labels per strip, 1 to MAX_COLUMNS
+     * @param gutterDots     Blank dots between two columns
+     * @param labelDots      Width of a label at its natural size; narrowed when the columns do not fit
+     */
+    LabelImposer(int tapeDots, int columns, int gutterDots, int labelDots) {
+        if (columns < 1 || columns > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Columns must be 1 to " + MAX_COLUMNS + ", got " + columns);
+        }
+        this.tapeDots = tapeDots;
+        this.columns = columns;
+        this.gutterDots = Math.max(0, gutterDots);
+        this.columnDots = Math.min(labelDots, (tapeDots - (columns - 1) * this.gutterDots) / columns);
+        if (columnDots <= 0) {
+            throw new IllegalArgumentException("Gutter too wide for " + columns + " columns");
+        }
+        // Center the strip on the roll
+        this.leftMargin = (tapeDots - columns * columnDots - (columns - 1) * this.gutterDots) / 2;
+    }
+
+    /**
+     * Left edge of a column, in dots across the tape
+     */
+    int columnLeft(int column) {
+        return leftMargin + column * (columnDots + gutterDots);
+    }
+
+    /**
+     * Deal the labels into strips, keeping their order from one window to the next.
+     */
+    List<Strip> pack(List<Integer> labels, LengthSource lengths) throws Exception {
+        List<Strip> strips = new ArrayList<>((labels.size() + columns - 1) / columns);
+        for (int start = 0; start < labels.size(); start += PACKING_WINDOW) {
+            List<int[]> window = new ArrayList<>(PACKING_WINDOW);
+            for (int i = start; i < Math.min(start + PACKING_WINDOW, labels.size()); i++) {
+                int labelIndex = labels.get(i);
+                window.add(new int[] {labelIndex, lengths.lengthOf(labelIndex)});
+            }
+            // Longest first; stable, so equal lengths keep their order
+            Collections.sort(window, (a, b) -> Integer.compare(b[1], a[1]));
+
+            for (int i = 0; i < window.size(); i += columns) {
+                int count = Math.min(columns, window.size() - i);
+                int[] stripLabels = new int[count];
+                for (int column = 0; column < count; column++) {
+                    stripLabels[column] = window.get(i + column)[0];
+                }
+                strips.add(new Strip(stripLabels));
+            }
+        }
+        return strips;
+    }
+
+    /**
+     * Place the rasters of a strip's labels, each columnDots wide, on one tape-wide raster
+     * as long as the longest of them
+     */
+    MonoRaster compose(MonoRaster[] labels) {
+        int length = 1;
+        for (MonoRaster label : labels) {
+            if (label.width != columnDots) {
+                throw new IllegalArgumentException("Label raster must be " + columnDots + " dots wide, got " + label.width);
+            }
+            length = Math.max(length, label.height);
+        }
+
+        MonoRaster strip = new MonoRaster(tapeDots, length);
+        for (int column = 0; column < labels.length; column++) {
+            strip.draw(labels[column], columnLeft(column), 0);
+        }
+        return strip;
+    }
+
+    /**
+     * Listener for the scheduler printing strips 0..strips.size()-1 that reports every label
+     * of a printed strip to a listener of the job's labels.
+     *
+     * @param alreadyPrinted Labels of the job printed before this run
+     * @param totalLabels    Labels in the whole job
+     */
+    static PrintScheduler.Listener forStrips(List<Strip> strips, PrintScheduler.Listener labelListener,
+                                             int alreadyPrinted, int totalLabels) {
+        AtomicInteger printedLabels = new AtomicInteger(alreadyPrinted);
+        return new PrintScheduler.Listener() {
+            @Override
+            public void onLabelPrinted(int stripIndex, int printedCount, int totalCount) {
+                for (int labelIndex : strips.get(stripIndex).labels) {
+                    labelListener.onLabelPrinted(labelIndex, printedLabels.incrementAndGet(), totalLabels);
+                }
+            }
+
+            @Override
+            public void onPrinterFailed(int printerIndex, String error) {
+                labelListener.onPrinterFailed(printerIndex, error);
+            }
+
+            @Override
+            public void onJobComplete(int totalCount) {
+                labelListener.onJobComplete(totalLabels);
+            }
+
+            @Override
+            public void onJobFailed(int printedCount, int totalCount, String error) {
+                labelListener.onJobFailed(printedLabels.get(), totalLabels, error);
+            }
+        };
+    }
+
+    /**
+     * Strip indices to hand to PrintScheduler.submit
+     */
+    static List<Integer> stripIndices(List<Strip> strips) {
+        Integer[] indices = new Integer[strips.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        return Arrays.asList(indices);
+    }
+}
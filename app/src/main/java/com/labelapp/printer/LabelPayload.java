@@ -0,0 +1,209 @@
+package com.labelapp.printer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LabelPayload - Compact, versioned print payload passed from script.js to native
+ * A flat record with fields separated by US (0x1F) and list items by GS (0x1D):
+ *
+ *   L2 | product | origin | manufacturer | importer | priceEur | priceBgn | materials | sizes | barcode
+ *   materials: percentage GS type GS percentage GS type ...
+ *   sizes:     size GS size ... (one entry per printed copy)
+ *   barcode:   type GS value (EAN13, CODE128 or QR)
+ *
+ * Version 1 is the same without the barcode field. An empty price or barcode means none. script.js replaces separator characters in user input.
+ * The payload is decoded once; every copy of the same size shares one immutable LabelData.
+ */
+class LabelPayload implements LabelSource {
+
+    static final String VERSION = "L2";
+    private static final String VERSION_1 = "L1";
+    static final char FIELD_SEPARATOR = '\u001F';
+    static final char ITEM_SEPARATOR = '\u001D';
+
+    private static final int FIELD_COUNT = 10;
+    private static final int VERSION_1_FIELD_COUNT = 9;
+
+    private final List<String> sizes;
+    private final Map<String, LabelData> labelsBySize;
+    private final LabelData baseLabel;
+
+    private LabelPayload(LabelData baseLabel, List<String> sizes) {
+        this.baseLabel = baseLabel;
+        this.sizes = Collections.unmodifiableList(sizes);
+
+        // One label per distinct size; a 200-copy job of three sizes builds three objects
+        this.labelsBySize = new HashMap<>();
+        for (String size : sizes) {
+            if (!labelsBySize.containsKey(size)) {
+                labelsBySize.put(size, baseLabel.withSize(size));
+            }
+        }
+    }
+
+    @Override
+    public int getLabelCount() {
+        return sizes.size();
+    }
+
+    List<String> getSizes() {
+        return sizes;
+    }
+
+    /**
+     * Label content for one copy, without the size - shared by every copy
+     */
+    LabelData getBaseLabel() {
+        return baseLabel;
+    }
+
+    /**
+     * Label content for copy index, shared with other copies of the same size
+     */
+    @Override
+    public LabelData getLabel(int index) {
+        return labelsBySize.get(sizes.get(index));
+    }
+
+    @Override
+    public void close() {
+        // Nothing held outside memory
+    }
+
+    /**
+     * Decode a payload from the bridge or the print queue
+     *
+     * @throws IllegalArgumentException if the payload is malformed or of an unknown version
+     */
+    static LabelPayload decode(String payload) {
+        if (payload.startsWith("{")) {
+            return decodeJson(payload);
+        }
+
+        String[] fields = split(payload, FIELD_SEPARATOR);
+        boolean version1 = fields.length == VERSION_1_FIELD_COUNT && VERSION_1.equals(fields[0]);
+        if (!version1 && (fields.length != FIELD_COUNT || !VERSION.equals(fields[0]))) {
+            throw new IllegalArgumentException("Неподдържан формат на данните за печат");
+        }
+
+        String[] materialItems = split(fields[7], ITEM_SEPARATOR);
+        if (materialItems.length % 2 != 0) {
+            throw new IllegalArgumentException("Невалидни материали в данните за печат");
+        }
+        List<Material> materials = new ArrayList<>(materialItems.length / 2);
+        for (int i = 0; i < materialItems.length; i += 2) {
+            try {
+                materials.add(new Material(Integer.parseInt(materialItems[i]), materialItems[i + 1]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Невалиден процент: " + materialItems[i]);
+            }
+        }
+
+        List<String> sizes = new ArrayList<>();
+        Collections.addAll(sizes, split(fields[8], ITEM_SEPARATOR));
+
+        Barcode barcode = null;
+        if (!version1 && !fields[9].isEmpty()) {
+            String[] barcodeItems = split(fields[9], ITEM_SEPARATOR);
+            if (barcodeItems.length != 2) {
+                throw new IllegalArgumentException("Невалиден баркод в данните за печат");
+            }
+            barcode = Barcode.create(Barcode.Type.fromCode(barcodeItems[0]), barcodeItems[1]);
+        }
+
+        LabelData base = new LabelData("", fields[1], fields[2], materials, fields[3], fields[4],
+            emptyToNull(fields[5]), emptyToNull(fields[6]), barcode);
+        return new LabelPayload(base, sizes);
+    }
+
+    /**
+     * Encode in the current version. Mirrors encodeLabelPayload() in script.js.
+     */
+    static String encode(LabelData label, List<String> sizes) {
+        StringBuilder out = new StringBuilder(128 + sizes.size() * 4);
+        out.append(VERSION).append(FIELD_SEPARATOR)
+            .append(label.product).append(FIELD_SEPARATOR)
+            .append(label.origin).append(FIELD_SEPARATOR)
+            .append(label.manufacturer).append(FIELD_SEPARATOR)
+            .append(label.importer).append(FIELD_SEPARATOR)
+            .append(label.priceEur != null ? label.priceEur : "").append(FIELD_SEPARATOR)
+            .append(label.priceBgn != null ? label.priceBgn : "").append(FIELD_SEPARATOR);
+
+        for (int i = 0; i < label.materials.size(); i++) {
+            Material material = label.materials.get(i);
+            if (i > 0) {
+                out.append(ITEM_SEPARATOR);
+            }
+            out.append(material.percentage).append(ITEM_SEPARATOR).append(material.type);
+        }
+        out.append(FIELD_SEPARATOR);
+
+        for (int i = 0; i < sizes.size(); i++) {
+            if (i > 0) {
+                out.append(ITEM_SEPARATOR);
+            }
+            out.append(sizes.get(i));
+        }
+        out.append(FIELD_SEPARATOR);
+
+        if (label.barcode != null) {
+            out.append(label.barcode.type.code).append(ITEM_SEPARATOR).append(label.barcode.value);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Legacy JSON payload (jobs queued by earlier versions)
+     */
+    private static LabelPayload decodeJson(String payload) {
+        try {
+            JSONObject json = new JSONObject(payload);
+            JSONArray sizesArray = json.getJSONArray("sizes");
+            List<String> sizes = new ArrayList<>(sizesArray.length());
+            for (int i = 0; i < sizesArray.length(); i++) {
+                sizes.add(sizesArray.getString(i));
+            }
+            return new LabelPayload(new LabelData(json), sizes);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Невалидни данни за печат: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Split on a single character, keeping empty items. An empty string has no items.
+     */
+    private static String[] split(String value, char separator) {
+        if (value.isEmpty()) {
+            return new String[0];
+        }
+
+        int count = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == separator) {
+                count++;
+            }
+        }
+
+        String[] parts = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = value.indexOf(separator, start);
+            parts[i] = value.substring(start, end);
+            start = end + 1;
+        }
+        parts[count - 1] = value.substring(start);
+        return parts;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
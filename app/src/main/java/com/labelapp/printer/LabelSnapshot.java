@@ -0,0 +1,161 @@
+package com.labelapp.printer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * LabelSnapshot - Autocomplete history and saved templates of one tablet, to set up another
+ * A snapshot is a 4-byte magic and a version, followed by a deflated stream of records: a kind
+ * byte, then a history value (field name, value) or a template (last use time, LabelPayload).
+ * Template payloads of one shop repeat the same suppliers and materials, so they compress well.
+ *
+ * Snapshots are read one record at a time into a Sink, which merges them (HistoryManager,
+ * TemplateManager); memory does not grow with the file. Records before a damaged part of the
+ * file are kept.
+ */
+final class LabelSnapshot {
+
+    static final int VERSION = 1;
+    static final String FILE_SUFFIX = ".lsnap";
+
+    private static final int MAGIC = 0x4C534E50; // "LSNP"
+
+    // Longest template payload read; a form job of a few dozen sizes is a few KB
+    static final int MAX_PAYLOAD_BYTES = 256 * 1024;
+
+    private static final int KIND_END = 0;
+    private static final int KIND_HISTORY = 1;
+    private static final int KIND_TEMPLATE = 2;
+
+    /**
+     * Receives the records of a snapshot in file order
+     */
+    interface Sink {
+        /**
+         * @param field HistoryManager.FieldType name
+         */
+        void history(String field, String value) throws IOException;
+
+        void template(String payload, long lastUsed) throws IOException;
+    }
+
+    private LabelSnapshot() {
+    }
+
+    /**
+     * Writes one snapshot; closing it ends the snapshot and closes the stream
+     */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private int historyCount = 0;
+        private int templateCount = 0;
+
+        Writer(OutputStream stream) throws IOException {
+            DataOutputStream header = new DataOutputStream(stream);
+            header.writeInt(MAGIC);
+            header.writeByte(VERSION);
+            out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(stream, deflater)));
+        }
+
+        void writeHistory(String field, String value) throws IOException {
+            out.writeByte(KIND_HISTORY);
+            out.writeUTF(field);
+            out.writeUTF(value);
+            historyCount++;
+        }
+
+        void writeTemplate(String payload, long lastUsed) throws IOException {
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_PAYLOAD_BYTES) {
+                throw new IOException("Шаблонът е твърде голям");
+            }
+            out.writeByte(KIND_TEMPLATE);
+            out.writeLong(lastUsed);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            templateCount++;
+        }
+
+        int getHistoryCount() {
+            return historyCount;
+        }
+
+        int getTemplateCount() {
+            return templateCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeByte(KIND_END);
+                out.close();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Stream every record of a snapshot into the sink. Does not close the stream.
+     *
+     * @throws IOException if the file is not a snapshot, is from a newer version or is damaged;
+     *                     records before the damage have been handed to the sink
+     */
+    static void read(InputStream stream, Sink sink) throws IOException {
+        DataInputStream header = new DataInputStream(stream);
+        try {
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Файлът не е архив с данни на приложението");
+            }
+            if (header.readUnsignedByte() > VERSION) {
+                throw new IOException("Архивът е от по-нова версия на приложението");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Файлът не е архив с данни на приложението", e);
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(stream, inflater)));
+            while (true) {
+                int kind = in.readUnsignedByte();
+                switch (kind) {
+                    case KIND_END:
+                        return;
+                    case KIND_HISTORY:
+                        sink.history(in.readUTF(), in.readUTF());
+                        break;
+                    case KIND_TEMPLATE:
+                        long lastUsed = in.readLong();
+                        int length = in.readInt();
+                        if (length < 0 || length > MAX_PAYLOAD_BYTES) {
+                            throw new IOException("Повреден архив: шаблон от " + length + " байта");
+                        }
+                        byte[] bytes = new byte[length];
+                        in.readFully(bytes);
+                        sink.template(new String(bytes, StandardCharsets.UTF_8), lastUsed);
+                        break;
+                    default:
+                        throw new IOException("Повреден архив: непознат запис " + kind);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Архивът е непълен", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.labelapp.printer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * LabelSource - The labels of one print job, by copy index
+ * Either a single form (LabelPayload) or an imported delivery read from disk (BulkLabelFile).
+ * Called concurrently from printer worker threads.
+ */
+interface LabelSource extends Closeable {
+
+    int getLabelCount();
+
+    LabelData getLabel(int index) throws IOException;
+
+    @Override
+    void close();
+}
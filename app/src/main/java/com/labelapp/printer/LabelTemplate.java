@@ -0,0 +1,370 @@
+package com.labelapp.printer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LabelTemplate - Declarative description of the label layout
+ * Read from assets/label_template.json, or from a shop's own template saved through the
+ * bridge. Names the page size, the fonts and the sections from top to bottom with their
+ * spacing, alignment, column rules and autofit sizes. LabelDrawPlan compiles it once into
+ * paints and precomputed metrics; the HTML preview in script.js reads the same file.
+ *
+ * Everything is validated here, so a bad template is rejected when it is saved and never
+ * reaches the printer. All lengths are in layout units (the label is "width" units wide).
+ */
+final class LabelTemplate {
+
+    enum Field {
+        SIZE, PRODUCT, ORIGIN, MANUFACTURER, IMPORTER
+    }
+
+    enum Align {
+        LEFT, CENTER
+    }
+
+    /**
+     * Section kinds with the texts, fonts and lengths each accepts. Lengths left out of a
+     * section take these defaults, which are the built-in layout.
+     */
+    enum Kind {
+        // The size in a filled badge, with a rule below
+        BADGE(true, texts("prefix"), fonts("font"),
+            metrics("paddingX", 6, "paddingY", 2, "radius", 3, "marginBottom", 6, "rule", 2, "ruleMargin", 4)),
+        // Title and one line of a label field
+        FIELD(true, texts("title"), fonts("font", "titleFont"),
+            metrics("marginTop", 2, "padding", 6, "titleGap", 2, "marginBottom", 2)),
+        // Rule, title and the material lines, in two columns above singleColumnMax lines
+        MATERIALS(false, texts("title"), fonts("font", "titleFont"),
+            metrics("marginTop", 2, "rule", 2, "ruleMargin", 4, "titleGap", 2, "lineGap", 5,
+                "singleColumnMax", 3, "columnGap", 8, "divider", 1, "marginBottom", 2)),
+        // The label's barcode if it has one, text below linear codes
+        BARCODE(false, texts(), fonts("font"),
+            metrics("marginTop", 4, "barHeight", 34, "qrSize", 80, "textGap", 2, "marginBottom", 2)),
+        // Rule, caption and the prices in one row, autofitted to the width
+        PRICE(false, texts("title", "bgnSuffix", "eurSuffix", "separator"), fonts("font", "titleFont", "separatorFont"),
+            metrics("marginTop", 4, "rule", 2, "ruleMargin", 1, "titleTop", 2, "lineGap", 4, "valueGap", 6,
+                "sidePadding", 3, "fitMargin", 6, "marginBottom", 1));
+
+        final boolean needsField;
+        final Set<String> texts;
+        final Set<String> fonts;
+        final Map<String, Float> metrics;
+
+        Kind(boolean needsField, Set<String> texts, Set<String> fonts, Map<String, Float> metrics) {
+            this.needsField = needsField;
+            this.texts = texts;
+            this.fonts = fonts;
+            this.metrics = metrics;
+        }
+    }
+
+    static final class Font {
+        final float size;
+        final boolean bold;
+        // ARGB
+        final int color;
+        final float letterSpacing;
+        // Smaller sizes tried in turn when a text does not fit the width
+        final float[] autofit;
+
+        private Font(float size, boolean bold, int color, float letterSpacing, float[] autofit) {
+            this.size = size;
+            this.bold = bold;
+            this.color = color;
+            this.letterSpacing = letterSpacing;
+            this.autofit = autofit;
+        }
+    }
+
+    static final class Section {
+        final Kind kind;
+        // Null for kinds without a field
+        final Field field;
+        final Align align;
+        private final Map<String, String> texts;
+        private final Map<String, Font> fonts;
+        private final Map<String, Float> metrics;
+
+        private Section(Kind kind, Field field, Align align, Map<String, String> texts, Map<String, Font> fonts,
+                        Map<String, Float> metrics) {
+            this.kind = kind;
+            this.field = field;
+            this.align = align;
+            this.texts = texts;
+            this.fonts = fonts;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Text of the section, "" when the template leaves it out
+         */
+        String text(String name) {
+            String text = texts.get(name);
+            return text != null ? text : "";
+        }
+
+        /**
+         * Font of the section; every font role of a kind is required
+         */
+        Font font(String role) {
+            return fonts.get(role);
+        }
+
+        float metric(String name) {
+            Float value = metrics.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException(kind + " has no length " + name);
+            }
+            return value;
+        }
+    }
+
+    private static volatile LabelTemplate installed;
+
+    final String name;
+    final float width;
+    final float padding;
+    // Below the last section, before the border
+    final float paddingBottom;
+    final float minHeight;
+    final float borderWidth;
+    final float borderRadius;
+    final List<Section> sections;
+    // Names the template in the draw plan and raster caches
+    final String hash;
+    private final String json;
+
+    private LabelTemplate(String json, String name, float width, float padding, float paddingBottom, float minHeight,
+                          float borderWidth, float borderRadius, List<Section> sections) {
+        this.json = json;
+        this.name = name;
+        this.width = width;
+        this.padding = padding;
+        this.paddingBottom = paddingBottom;
+        this.minHeight = minHeight;
+        this.borderWidth = borderWidth;
+        this.borderRadius = borderRadius;
+        this.sections = sections;
+        this.hash = hash(json);
+    }
+
+    /**
+     * Template labels are drawn with; null until install() is called at startup
+     */
+    static LabelTemplate get() {
+        return installed;
+    }
+
+    static void install(LabelTemplate template) {
+        installed = template;
+    }
+
+    /**
+     * @throws JSONException for malformed JSON and for templates that break the rules
+     */
+    static LabelTemplate parse(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        float width = positive(root, "width");
+        float padding = (float) root.optDouble("padding", 0);
+        if (padding < 0 || 2 * padding >= width) {
+            throw new JSONException("Невалидно поле padding: " + padding);
+        }
+        float paddingBottom = (float) root.optDouble("paddingBottom", padding);
+
+        Map<String, Font> fonts = new HashMap<>();
+        JSONObject fontsJson = root.getJSONObject("fonts");
+        for (Iterator<String> names = fontsJson.keys(); names.hasNext(); ) {
+            String fontName = names.next();
+            fonts.put(fontName, parseFont(fontName, fontsJson.getJSONObject(fontName)));
+        }
+
+        JSONArray sectionsJson = root.getJSONArray("sections");
+        List<Section> sections = new ArrayList<>(sectionsJson.length());
+        for (int i = 0; i < sectionsJson.length(); i++) {
+            sections.add(parseSection(i, sectionsJson.getJSONObject(i), fonts));
+        }
+        if (sections.isEmpty()) {
+            throw new JSONException("Шаблонът няма секции");
+        }
+
+        JSONObject border = root.optJSONObject("border");
+        float borderWidth = border != null ? (float) border.optDouble("width", 0) : 0;
+        float borderRadius = border != null ? (float) border.optDouble("radius", 0) : 0;
+        return new LabelTemplate(json, root.optString("name", ""), width, padding, Math.max(0, paddingBottom),
+            (float) root.optDouble("minHeight", 0), Math.max(0, borderWidth), Math.max(0, borderRadius),
+            Collections.unmodifiableList(sections));
+    }
+
+    static LabelTemplate read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        try {
+            return parse(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException("Невалиден шаблон: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The template file as read, handed to script.js for the preview
+     */
+    String toJson() {
+        return json;
+    }
+
+    /**
+     * Usable width inside the padding
+     */
+    float contentWidth() {
+        return width - 2 * padding;
+    }
+
+    private static Font parseFont(String fontName, JSONObject json) throws JSONException {
+        float size = positive(json, "size");
+        JSONArray autofitJson = json.optJSONArray("autofit");
+        float[] autofit = new float[autofitJson != null ? autofitJson.length() : 0];
+        float previous = size;
+        for (int i = 0; i < autofit.length; i++) {
+            autofit[i] = (float) autofitJson.getDouble(i);
+            if (autofit[i] <= 0 || autofit[i] >= previous) {
+                throw new JSONException("Шрифт " + fontName + ": autofit трябва да намалява");
+            }
+            previous = autofit[i];
+        }
+        return new Font(size, json.optBoolean("bold", false), parseColor(json.optString("color", "#000000")),
+            (float) json.optDouble("letterSpacing", 0), autofit);
+    }
+
+    private static Section parseSection(int index, JSONObject json, Map<String, Font> fonts) throws JSONException {
+        String where = "Секция " + (index + 1);
+        Kind kind = parseEnum(Kind.class, json.getString("type"), where);
+
+        Field field = null;
+        if (kind.needsField) {
+            field = parseEnum(Field.class, json.getString("field"), where);
+        }
+        Align align = parseEnum(Align.class, json.optString("align", "left"), where);
+
+        Map<String, String> texts = new HashMap<>();
+        Map<String, Font> sectionFonts = new HashMap<>();
+        Map<String, Float> metrics = new HashMap<>(kind.metrics);
+        for (Iterator<String> keys = json.keys(); keys.hasNext(); ) {
+            String key = keys.next();
+            if (key.equals("type") || key.equals("align") || (key.equals("field") && kind.needsField)) {
+                continue;
+            }
+            if (kind.texts.contains(key)) {
+                texts.put(key, json.getString(key));
+            } else if (kind.fonts.contains(key)) {
+                Font font = fonts.get(json.getString(key));
+                if (font == null) {
+                    throw new JSONException(where + ": няма шрифт " + json.getString(key));
+                }
+                sectionFonts.put(key, font);
+            } else if (kind.metrics.containsKey(key)) {
+                float value = (float) json.getDouble(key);
+                if (value < 0) {
+                    throw new JSONException(where + ": " + key + " не може да е отрицателно");
+                }
+                metrics.put(key, value);
+            } else {
+                throw new JSONException(where + ": непознато поле " + key);
+            }
+        }
+        for (String role : kind.fonts) {
+            if (!sectionFonts.containsKey(role)) {
+                throw new JSONException(where + ": липсва " + role);
+            }
+        }
+        return new Section(kind, field, align, texts, sectionFonts, metrics);
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value, String where) throws JSONException {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new JSONException(where + ": непозната стойност " + value);
+        }
+    }
+
+    private static float positive(JSONObject json, String key) throws JSONException {
+        float value = (float) json.getDouble(key);
+        if (value <= 0) {
+            throw new JSONException("Невалидно поле " + key + ": " + value);
+        }
+        return value;
+    }
+
+    /**
+     * "#RRGGBB" or "#AARRGGBB"
+     */
+    static int parseColor(String color) throws JSONException {
+        if (color.startsWith("#") && (color.length() == 7 || color.length() == 9)) {
+            try {
+                long value = Long.parseLong(color.substring(1), 16);
+                return (int) (color.length() == 7 ? 0xFF000000L | value : value);
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+        }
+        throw new JSONException("Невалиден цвят: " + color);
+    }
+
+    private static Set<String> texts(String... names) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names)));
+    }
+
+    private static Set<String> fonts(String... roles) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(roles)));
+    }
+
+    /**
+     * Alternating names and default values
+     */
+    private static Map<String, Float> metrics(Object... namesAndValues) {
+        Map<String, Float> metrics = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            metrics.put((String) namesAndValues[i], ((Number) namesAndValues[i + 1]).floatValue());
+        }
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    private static String hash(String json) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(json.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(32);
+        for (byte b : Arrays.copyOf(hash, 16)) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
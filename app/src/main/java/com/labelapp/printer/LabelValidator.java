@@ -0,0 +1,62 @@
+package com.labelapp.printer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LabelValidator - Native copy of validateForm() in script.js
+ * Keep the rules and messages in sync with the form so imported rows fail exactly where
+ * the same data typed into the form would.
+ */
+class LabelValidator {
+
+    static final int MAX_FIELD_LENGTH = 50;
+
+    private LabelValidator() {
+    }
+
+    /**
+     * @param labelCount Number of copies (form: sum of size quantities)
+     * @return Error messages, empty when the label can be printed
+     */
+    static List<String> validate(LabelData label, int labelCount) {
+        List<String> errors = new ArrayList<>();
+
+        // Required fields
+        if (label.product.trim().isEmpty()) errors.add("Артикулът е задължителен");
+        if (label.origin.trim().isEmpty()) errors.add("Произходът е задължителен");
+        if (label.manufacturer.trim().isEmpty()) errors.add("Производителят е задължителен");
+        if (label.importer.trim().isEmpty()) errors.add("Вносителят е задължителен");
+        if (labelCount == 0) errors.add("Поне един размер е задължителен");
+
+        // Field length limits
+        if (label.product.length() > MAX_FIELD_LENGTH) errors.add("Артикулът не може да превишава 50 символа");
+        if (label.origin.length() > MAX_FIELD_LENGTH) errors.add("Произходът не може да превишава 50 символа");
+        if (label.manufacturer.length() > MAX_FIELD_LENGTH) errors.add("Производителят не може да превишава 50 символа");
+        if (label.importer.length() > MAX_FIELD_LENGTH) errors.add("Вносителят не може да превишава 50 символа");
+
+        // Price length limits
+        if (label.priceEur != null && label.priceEur.length() > MAX_FIELD_LENGTH) errors.add("Цената в EUR не може да превишава 50 символа");
+        if (label.priceBgn != null && label.priceBgn.length() > MAX_FIELD_LENGTH) errors.add("Цената в BGN не може да превишава 50 символа");
+
+        // Material validation
+        if (label.materials.isEmpty()) {
+            errors.add("Поне един материал е задължителен");
+        } else {
+            int total = 0;
+            for (Material material : label.materials) {
+                total += material.percentage;
+            }
+            if (total != 100) {
+                errors.add("Процентите на материалите трябва да са общо 100% (текущо: " + total + "%)");
+            }
+        }
+
+        // Price validation (only BGN required, EUR auto-calculated)
+        if (label.priceBgn == null || label.priceBgn.isEmpty()) {
+            errors.add("Цената в BGN е задължителна");
+        }
+
+        return errors;
+    }
+}
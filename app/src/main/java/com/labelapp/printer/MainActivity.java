@@ -1,545 +1,402 @@
 package com.labelapp.printer;
 
+import android.content.Context;
+import android.net.Uri;
 import android.os.Bundle;
+import android.view.ViewGroup;
 import android.webkit.JavascriptInterface;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
-import androidx.appcompat.app.AlertDialog;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
-
-import com.brother.sdk.lmprinter.Channel;
-import com.brother.sdk.lmprinter.PrinterDriver;
-import com.brother.sdk.lmprinter.PrinterDriverGenerator;
-import com.brother.sdk.lmprinter.PrinterDriverGenerateResult;
-import com.brother.sdk.lmprinter.setting.QLPrintSettings;
-import com.brother.sdk.lmprinter.PrinterModel;
+
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
+import android.graphics.Picture;
 import android.graphics.RectF;
-import android.graphics.Typeface;
-import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
-
-// Data classes for label generation
-class Material {
-    final int percentage;
-    final String type;
-
-    Material(int percentage, String type) {
-        this.percentage = percentage;
-        this.type = type;
-    }
-}
-
-class LabelData {
-    final String size;
-    final String product;
-    final String origin;
-    final List<Material> materials;
-    final String manufacturer;
-    final String importer;
-    final String priceEur;
-    final String priceBgn;
-
-    LabelData(JSONObject json) throws JSONException {
-        this.size = json.optString("size", "");
-        this.product = json.optString("product", "");
-        this.origin = json.optString("origin", "").toUpperCase();
-        this.manufacturer = json.optString("manufacturer", "");
-        this.importer = json.optString("importer", "");
-        this.priceEur = json.optString("priceEur", null);
-        this.priceBgn = json.optString("priceBgn", null);
-
-        this.materials = new ArrayList<>();
-        JSONArray materialsArray = json.optJSONArray("materials");
-        if (materialsArray != null) {
-            for (int i = 0; i < materialsArray.length(); i++) {
-                JSONObject matJson = materialsArray.getJSONObject(i);
-                materials.add(new Material(matJson.optInt("percentage"), matJson.optString("type")));
-            }
-        }
-    }
-}
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A dedicated class to handle the drawing of a garment label onto a Canvas.
- * This class translates the provided CSS styles and HTML structure into Android Canvas drawing commands.
+ * The layout comes from the installed LabelTemplate, compiled once into a LabelDrawPlan;
+ * this class sizes and transforms the canvas for each output and fills in barcode modules.
  * It dynamically calculates the height of the label based on its content.
  */
 class LabelDrawer {
 
-    // --- Drawing Constants ---
-    // Target dimensions: Narrow width × Tall height (matches preview exactly)
-    // Canvas dimensions: Same as HTML preview - narrow and tall
-    private static final float CSS_WIDTH = 234f;
-    private static final float TARGET_WIDTH = 234f; // Back to original 20mm width
-    private static final float MIN_HEIGHT = 200f; // Reverted back to original
-    private static final float SCALE = 1.0f; // Logical scale
-    private static final float BITMAP_SCALE = 3.0f; // Higher resolution for crisp text
-
-    private static final float LABEL_WIDTH = TARGET_WIDTH;
-    private static final float PADDING = 10f * SCALE; // Reverted back to original
-    private static final float CONTENT_WIDTH = LABEL_WIDTH - (PADDING * 2);
-    private static final float MAIN_BORDER_STROKE = 3f * SCALE;
-    private static final float CORNER_RADIUS = 4f * SCALE;
-
-    // --- Paint Objects ---
-    private final Paint borderPaint, sizeBadgeFillPaint, sectionFillPaint, thinLinePaint, thickLinePaint;
-    private final TextPaint sizeBadgeTextPaint, sectionTitlePaint, sectionContentPaint, materialItemPaint, manufacturerNamePaint, importerNamePaint, priceLabelPaint, priceValuePaint, priceSeparatorPaint;
+    // Bump whenever the drawing code changes the output so rasters cached on disk are re-rendered;
+    // template changes are keyed by the template hash instead
+    static final int LAYOUT_VERSION = 3;
 
-    /**
-     * Constructor initializes all Paint objects needed for drawing.
-     * This is efficient as they are created only once.
-     */
-    public LabelDrawer() {
-        // --- Regular Paints ---
-        borderPaint = new Paint();
-        borderPaint.setStyle(Paint.Style.STROKE);
-        borderPaint.setColor(Color.BLACK);
-        borderPaint.setStrokeWidth(MAIN_BORDER_STROKE);
-        borderPaint.setAntiAlias(true);
-
-        sizeBadgeFillPaint = new Paint();
-        sizeBadgeFillPaint.setStyle(Paint.Style.FILL);
-        sizeBadgeFillPaint.setColor(Color.BLACK);
-        sizeBadgeFillPaint.setAntiAlias(true);
-
-        sectionFillPaint = new Paint();
-        sectionFillPaint.setStyle(Paint.Style.FILL);
-        sectionFillPaint.setAntiAlias(true);
-
-        thinLinePaint = new Paint();
-        thinLinePaint.setStrokeWidth(1f * SCALE);
-        thinLinePaint.setAntiAlias(true);
-
-        thickLinePaint = new Paint();
-        thickLinePaint.setColor(Color.BLACK);
-        thickLinePaint.setStrokeWidth(2f * SCALE);
-        thickLinePaint.setAntiAlias(true);
-
-        // materialsLeftBorderPaint removed - no longer needed
-
-        // --- Text Paints (all sizes increased by 15%) ---
-        sizeBadgeTextPaint = createTextPaint(15.18f, Color.WHITE, true, 0.03f); // Increased by 20% from 12.65f
-        sizeBadgeTextPaint.setTextAlign(Paint.Align.CENTER);
-
-        sectionTitlePaint = createTextPaint(12.075f, Color.rgb(102, 102, 102), true, 0.03f); // 8.05f * 1.5
-        sectionContentPaint = createTextPaint(18f, Color.BLACK, true, 0.02f); // Increased from 15.525f for better visibility
-        materialItemPaint = createTextPaint(13.8f, Color.BLACK, true, 0f); // 9.2f * 1.5
-        manufacturerNamePaint = createTextPaint(15f, Color.BLACK, true, 0f); // Increased from 12.075f for better visibility
-        importerNamePaint = createTextPaint(15f, Color.BLACK, true, 0f); // Increased from 12.075f for better visibility
-
-        priceLabelPaint = createTextPaint(22f, Color.rgb(102, 102, 102), true, 0.03f); // Increased for better visibility
-        priceValuePaint = createTextPaint(45f, Color.BLACK, true, 0f); // Increased significantly for prominence
-        priceSeparatorPaint = createTextPaint(42f, Color.rgb(102, 102, 102), true, 0f); // Increased to match
-    }
+    // Printed size of a label ganged with others across the tape (LabelImposer)
+    static final float LABEL_WIDTH_MM = 20f;
+
+    // Scratch raster height before cropping to the measured content
+    private static final float MAX_HEIGHT = 1200f;
+
+    // --- Bitmap Pool ---
+    private final LabelBitmapPool bitmapPool;
+    // Scale over layout units of createLabelBitmap, higher for crisp text, and the config of every scratch bitmap
+    private final float bitmapScale;
+    private final Bitmap.Config bitmapConfig;
+
+    // --- Layout ---
+    // Plan of the template last drawn with; looked up again only when another template is installed
+    private final Context context;
+    private LabelTemplate planTemplate;
+    private LabelDrawPlan plan;
+
+    // --- Barcode of the label being drawn ---
+    // The plan only reserves the area; the modules are filled afterwards in device pixels,
+    // snapped to whole dots, which neither the picture replay nor the preview scale keeps.
+    private BarcodePattern barcodePattern;
+    private final RectF barcodeArea = new RectF();
+
+    private final Paint barcodePaint;
 
     /**
-     * Helper to create a configured TextPaint object.
+     * @param bitmapPool Pool the label rasters are leased from.
+     * @param profile    Render profile of the device (MemoryGovernor).
+     * @param context    Any context; the label template is read through AppStartup.
      */
-    private TextPaint createTextPaint(float textSize, int color, boolean isBold, float letterSpacing) {
-        TextPaint paint = new TextPaint();
-        paint.setColor(color);
-        paint.setTextSize(textSize * SCALE);
-        paint.setTypeface(Typeface.create(Typeface.SANS_SERIF, isBold ? Typeface.BOLD : Typeface.NORMAL));
-        paint.setAntiAlias(true);
-        paint.setSubpixelText(true);
-        paint.setFilterBitmap(true);
-        paint.setLetterSpacing(letterSpacing);
-        return paint;
+    public LabelDrawer(LabelBitmapPool bitmapPool, MemoryGovernor.Profile profile, Context context) {
+        this.bitmapPool = bitmapPool;
+        this.bitmapScale = profile.bitmapScale;
+        this.bitmapConfig = profile.bitmapConfig;
+        this.context = context.getApplicationContext();
+
+        // No anti-aliasing: module edges sit exactly on device pixels
+        barcodePaint = new Paint();
+        barcodePaint.setStyle(Paint.Style.FILL);
+        barcodePaint.setColor(Color.BLACK);
+        barcodePaint.setAntiAlias(false);
     }
 
     /**
      * The main entry point for creating the label bitmap.
      * It orchestrates the entire drawing process.
      *
+     * The returned bitmap is leased from the pool and must be handed back with
+     * {@link #releaseLabelBitmap(Bitmap)} once the printer driver is done with it.
+     *
      * @param data The parsed label data.
      * @return A bitmap of the generated label, perfectly cropped to its content.
+     * @throws InterruptedException if interrupted while waiting for pool capacity.
      */
-    public Bitmap createLabelBitmap(LabelData data) {
-        // Create a high-resolution bitmap for crisp text
-        int bitmapWidth = (int) (LABEL_WIDTH * BITMAP_SCALE);
-        int bitmapHeight = (int) (1200 * BITMAP_SCALE);
-        Bitmap initialBitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(initialBitmap);
-        canvas.drawColor(Color.WHITE);
+    public Bitmap createLabelBitmap(LabelData data) throws InterruptedException {
+        LabelDrawPlan plan = currentPlan();
+
+        // Lease a high-resolution scratch bitmap for crisp text (blocks while the pool is at its cap)
+        int bitmapWidth = (int) (plan.width * bitmapScale);
+        int bitmapHeight = (int) (MAX_HEIGHT * bitmapScale);
+        Bitmap labelBitmap = bitmapPool.acquire(bitmapWidth, bitmapHeight, bitmapConfig);
+        Canvas canvas = new Canvas(labelBitmap);
         
         // Scale the canvas for high-resolution drawing
-        canvas.scale(BITMAP_SCALE, BITMAP_SCALE);
-
-        // --- Draw all sections and track the vertical position ---
-        float currentY = PADDING;
-        currentY = drawHeader(canvas, data, currentY);
-        currentY = drawOriginSection(canvas, data, currentY);
-        currentY = drawManufacturerSection(canvas, data, currentY);
-        currentY = drawImporterSection(canvas, data, currentY);
-        currentY = drawProductSection(canvas, data, currentY);
-        currentY = drawMaterialsSection(canvas, data, currentY);
-        
-        // Calculate content height WITHOUT price to position price at bottom
-        float contentEndY = currentY;
-        
-        // Calculate price section height
-        float priceHeight = calculatePriceHeight(data);
-        
-        // Position price closer to content, ignore MIN_HEIGHT constraint
-        float priceStartY = contentEndY + (4f * SCALE);
-        currentY = drawPriceSection(canvas, data, priceStartY);
-
-        // Calculate final height based on content, ensuring proper padding
-        float contentHeight = currentY + PADDING + 2f; // Reverted back to original
-        float finalHeight = Math.max(contentHeight, MIN_HEIGHT);
-
-        // Draw the outer border on the initial bitmap
-        RectF finalLabelRect = new RectF(
-            MAIN_BORDER_STROKE / 2,
-            MAIN_BORDER_STROKE / 2,
-            LABEL_WIDTH - MAIN_BORDER_STROKE / 2,
-            finalHeight - MAIN_BORDER_STROKE / 2
-        );
-        canvas.drawRoundRect(finalLabelRect, CORNER_RADIUS, CORNER_RADIUS, borderPaint);
-
-        // Crop the bitmap to the calculated height (with high resolution)
-        int finalBitmapWidth = (int) (LABEL_WIDTH * BITMAP_SCALE);
-        int finalBitmapHeight = (int) (finalHeight * BITMAP_SCALE);
-        return Bitmap.createBitmap(initialBitmap, 0, 0, finalBitmapWidth, finalBitmapHeight);
+        canvas.save();
+        canvas.scale(bitmapScale, bitmapScale);
+        float finalHeight = drawLabel(plan, canvas, data, null);
+        canvas.restore();
+
+        if (barcodePattern != null) {
+            int left = Math.round(barcodeArea.left * bitmapScale);
+            int top = Math.round(barcodeArea.top * bitmapScale);
+            int width = Math.round(barcodeArea.right * bitmapScale) - left;
+            int height = Math.round(barcodeArea.bottom * bitmapScale) - top;
+            drawBarcode(canvas, barcodePattern, left, top, width, height, 1, 1, false);
+        }
+
+        // Crop to the calculated height in place - same width and config keep the rows intact,
+        // so no second bitmap is allocated and the pooled allocation stays reusable
+        int finalBitmapHeight = Math.min((int) (finalHeight * bitmapScale), bitmapHeight);
+        labelBitmap.reconfigure(bitmapWidth, finalBitmapHeight, bitmapConfig);
+        return labelBitmap;
     }
 
-    private float drawHeader(Canvas canvas, LabelData data, float startY) {
-        float currentY = startY;
-        String sizeText = "Размер " + data.size; // Add "Размер" prefix
-
-        // Measure size text to get its height for vertical alignment.
-        Rect sizeBounds = new Rect();
-        sizeBadgeTextPaint.getTextBounds(sizeText, 0, sizeText.length(), sizeBounds);
-        float sizeTextHeight = sizeBounds.height();
-
-        // --- Draw Size Badge (centered) ---
-        float sizeBadgePaddingX = 6f * SCALE;
-        float sizeBadgePaddingY = 2f * SCALE;
-        float sizeTextWidth = sizeBadgeTextPaint.measureText(sizeText);
-        float badgeWidth = sizeTextWidth + (sizeBadgePaddingX * 2);
-        float badgeHeight = (sizeBadgeTextPaint.descent() - sizeBadgeTextPaint.ascent()) + (sizeBadgePaddingY * 2);
-
-        RectF badgeRect = new RectF(
-            (LABEL_WIDTH - badgeWidth) / 2, // Center horizontally
-            currentY,
-            (LABEL_WIDTH + badgeWidth) / 2,
-            currentY + badgeHeight
-        );
-        canvas.drawRoundRect(badgeRect, 3f * SCALE, 3f * SCALE, sizeBadgeFillPaint);
-
-        // Draw centered text inside the badge.
-        float textX = badgeRect.centerX();
-        float textY = badgeRect.centerY() - ((sizeBadgeTextPaint.descent() + sizeBadgeTextPaint.ascent()) / 2);
-        canvas.drawText(sizeText, textX, textY, sizeBadgeTextPaint);
-
-        // Update Y position past the size badge + margins & border.
-        currentY += badgeHeight + (6f * SCALE); // padding-bottom
-        canvas.drawLine(PADDING, currentY, LABEL_WIDTH - PADDING, currentY, thickLinePaint);
-        currentY += 4f * SCALE; // margin-bottom (reduced by 50%)
-
-        return currentY;
+    /**
+     * Render the label straight in the tape's coordinate system: the label's long side runs
+     * across the roll at exactly tapeDots, its top edge at the tape's left, as the SDK produced
+     * with Rotate270 + FitPageAspect. The print path only has to threshold the result.
+     *
+     * The layout is recorded once as a Picture to learn its height, then replayed through a
+     * rotate/scale transform, so text is rasterized directly at printer resolution.
+     *
+     * @param tapeDots       Dots across the roll (696 for 62mm)
+     * @param highResolution 600 dpi along the feed - twice the raster lines
+     * @return A pooled bitmap tapeDots wide; release it with {@link #releaseLabelBitmap(Bitmap)}.
+     * @throws InterruptedException if interrupted while waiting for pool capacity.
+     */
+    public Bitmap createTapeBitmap(LabelData data, int tapeDots, boolean highResolution) throws InterruptedException {
+        LabelDrawPlan plan = currentPlan();
+        float labelWidth = plan.width;
+        Picture picture = new Picture();
+        float finalHeight = recordLabel(plan, picture, data, null);
+
+        float dotsPerUnit = tapeDots / finalHeight;
+        float feedScale = highResolution ? 2f : 1f;
+        int tapeLength = Math.max(1, Math.round(labelWidth * dotsPerUnit * feedScale));
+
+        Bitmap tapeBitmap = bitmapPool.acquire(tapeDots, tapeLength, bitmapConfig);
+        Canvas canvas = new Canvas(tapeBitmap);
+        
+        // Label (x, y) lands on tape (y, labelWidth - x), scaled to fit the roll
+        canvas.save();
+        canvas.scale(1f, feedScale);
+        canvas.translate(0, labelWidth * dotsPerUnit);
+        canvas.rotate(-90);
+        canvas.scale(dotsPerUnit, dotsPerUnit);
+        canvas.drawPicture(picture);
+        canvas.restore();
+
+        if (barcodePattern != null) {
+            // The same mapping, rounded to whole dots and raster lines
+            int tapeLeft = Math.round(barcodeArea.top * dotsPerUnit);
+            int across = Math.round(barcodeArea.bottom * dotsPerUnit) - tapeLeft;
+            int tapeBottom = Math.round((labelWidth - barcodeArea.left) * dotsPerUnit * feedScale);
+            int along = tapeBottom - Math.round((labelWidth - barcodeArea.right) * dotsPerUnit * feedScale);
+            drawBarcode(canvas, barcodePattern, tapeLeft, tapeBottom, along, across, (int) feedScale, 1, true);
+        }
+        return tapeBitmap;
     }
 
-    private float drawProductSection(Canvas canvas, LabelData data, float startY) {
-        float currentY = startY + (2f * SCALE); // section padding-top (reduced by 50%)
-        float sectionPadding = 6f * SCALE; // Reverted back to original
-        String title = "АРТИКУЛ";
-        String content = data.product;
-
-        float titleHeight = getTextHeight(title, sectionTitlePaint);
-        float contentHeight = getTextHeight(content, sectionContentPaint);
-        float sectionHeight = titleHeight + contentHeight + (sectionPadding * 2) + (2f * SCALE); // 2f = title margin-bottom
-
-        RectF sectionRect = new RectF(PADDING, currentY, LABEL_WIDTH - PADDING, currentY + sectionHeight);
-        // Remove background rectangles - keep only the rect for positioning
-        // sectionFillPaint.setColor(Color.rgb(255, 255, 255));
-        // thinLinePaint.setColor(Color.rgb(221, 221, 221));
-        // canvas.drawRoundRect(sectionRect, 3f * SCALE, 3f * SCALE, sectionFillPaint);
-        // canvas.drawRoundRect(sectionRect, 3f * SCALE, 3f * SCALE, thinLinePaint);
-
-        float textY = currentY + sectionPadding;
-        drawCenteredText(canvas, title, sectionRect.centerX(), textY, sectionTitlePaint);
-        textY += titleHeight + (2f * SCALE);
-        drawCenteredText(canvas, content, sectionRect.centerX(), textY, sectionContentPaint);
-
-        return sectionRect.bottom + (2f * SCALE); // margin-bottom (reduced further to save space)
+    /**
+     * The label across the tape as a 1-bit print raster, like thresholding createTapeBitmap,
+     * but with text blitted from glyph atlases: only rules, fills and the border go through
+     * the Canvas. The label is drawn upright at print resolution and turned onto the tape.
+     *
+     * @param highResolution 600 dpi along the feed - twice the raster lines
+     * @throws InterruptedException if interrupted while waiting for pool capacity.
+     */
+    public MonoRaster createTapeRaster(LabelData data, int tapeDots, boolean highResolution) throws InterruptedException {
+        LabelDrawPlan plan = currentPlan();
+        List<LabelDrawPlan.TextRun> textRuns = new ArrayList<>();
+        Picture picture = new Picture();
+        float finalHeight = recordLabel(plan, picture, data, textRuns);
+
+        // Label x runs along the feed, label y across the roll
+        float dotsPerUnit = tapeDots / finalHeight;
+        float feedScale = highResolution ? 2f : 1f;
+        float scaleX = dotsPerUnit * feedScale;
+        int lines = Math.max(1, Math.round(plan.width * scaleX));
+        MonoRaster upright = renderUpright(plan, picture, textRuns, lines, tapeDots, scaleX, dotsPerUnit, (int) feedScale, 1);
+        return upright.rotateCounterClockwise();
     }
 
-    private float drawOriginSection(Canvas canvas, LabelData data, float startY) {
-        float currentY = startY + (2f * SCALE); // section padding-top (reduced by 50%)
-        float sectionPadding = 6f * SCALE; // Reverted back to original
-        String title = "ПРОИЗХОД";
-        String content = data.origin;
-
-        float titleHeight = getTextHeight(title, sectionTitlePaint);
-        float contentHeight = getTextHeight(content, sectionContentPaint);
-        float sectionHeight = titleHeight + contentHeight + (sectionPadding * 2) + (2f * SCALE); // 2f = title margin-bottom
-
-        RectF sectionRect = new RectF(PADDING, currentY, LABEL_WIDTH - PADDING, currentY + sectionHeight);
-        // Remove background rectangles - keep only the rect for positioning
-        // sectionFillPaint.setColor(Color.rgb(255, 255, 255));
-        // thinLinePaint.setColor(Color.rgb(221, 221, 221));
-        // canvas.drawRoundRect(sectionRect, 3f * SCALE, 3f * SCALE, sectionFillPaint);
-        // canvas.drawRoundRect(sectionRect, 3f * SCALE, 3f * SCALE, thinLinePaint);
-
-        float textY = currentY + sectionPadding;
-        canvas.drawText(title, sectionRect.left + sectionPadding, textY - sectionTitlePaint.ascent(), sectionTitlePaint);
-        textY += titleHeight + (2f * SCALE);
-        canvas.drawText(content, sectionRect.left + sectionPadding, textY - sectionContentPaint.ascent(), sectionContentPaint);
-
-        return sectionRect.bottom + (2f * SCALE); // margin-bottom (reduced further to save space)
+    /**
+     * The label upright at columnDots wide as a 1-bit raster for LabelImposer, with text
+     * blitted from glyph atlases (see createTapeRaster)
+     *
+     * @param highResolution 600 dpi along the feed - twice the raster lines
+     * @throws InterruptedException if interrupted while waiting for pool capacity.
+     */
+    public MonoRaster createColumnRaster(LabelData data, int columnDots, boolean highResolution) throws InterruptedException {
+        LabelDrawPlan plan = currentPlan();
+        List<LabelDrawPlan.TextRun> textRuns = new ArrayList<>();
+        Picture picture = new Picture();
+        float finalHeight = recordLabel(plan, picture, data, textRuns);
+
+        float dotsPerUnit = columnDots / plan.width;
+        float feedScale = highResolution ? 2f : 1f;
+        int lines = Math.max(1, Math.round(finalHeight * dotsPerUnit * feedScale));
+        return renderUpright(plan, picture, textRuns, columnDots, lines, dotsPerUnit, dotsPerUnit * feedScale, 1, (int) feedScale);
     }
 
-    private float drawMaterialsSection(Canvas canvas, LabelData data, float startY) {
-        float currentY = startY + (2f * SCALE); // section padding-top (reduced by 50%)
-        float fullLeftOffset = PADDING; // No left padding since we removed the border
-
-        // Draw separating line above Contents section (like the one below)
-        canvas.drawLine(PADDING, currentY, LABEL_WIDTH - PADDING, currentY, thickLinePaint);
-        currentY += 4f * SCALE; // margin-bottom after line
-
-        // Draw title
-        String title = "СЪСТАВ";
-        float titleHeight = getTextHeight(title, sectionTitlePaint);
-        canvas.drawText(title, fullLeftOffset, currentY - sectionTitlePaint.ascent(), sectionTitlePaint);
-        currentY += titleHeight + (2f * SCALE); // margin-bottom
-
-        float materialTextHeight = getTextHeight("Test", materialItemPaint);
-        float lineSpacing = materialTextHeight + (5f * SCALE); // text height + larger gap for much better readability
-
-        if (data.materials.size() <= 3) {
-            // Single column
-            for (Material material : data.materials) {
-                String text = String.format(Locale.US, "%d%% %s", material.percentage, material.type.toUpperCase());
-                canvas.drawText(text, fullLeftOffset, currentY - materialItemPaint.ascent(), materialItemPaint);
-                currentY += lineSpacing;
-            }
-        } else {
-            // Two columns
-            int midpoint = (int) Math.ceil(data.materials.size() / 2.0);
-            List<Material> leftColumn = data.materials.subList(0, midpoint);
-            List<Material> rightColumn = data.materials.subList(midpoint, data.materials.size());
-
-            float gap = 8f * SCALE;
-            float columnWidth = (CONTENT_WIDTH - gap) / 2;
-            float rightColumnX = fullLeftOffset + columnWidth + gap;
-            float dividerX = rightColumnX - (gap / 2);
-
-            float yLeft = currentY;
-            float yRight = currentY;
-
-            for (Material material : leftColumn) {
-                String text = String.format(Locale.US, "%d%% %s", material.percentage, material.type.toUpperCase());
-                canvas.drawText(text, fullLeftOffset, yLeft - materialItemPaint.ascent(), materialItemPaint);
-                yLeft += lineSpacing;
-            }
-            for (Material material : rightColumn) {
-                String text = String.format(Locale.US, "%d%% %s", material.percentage, material.type.toUpperCase());
-                canvas.drawText(text, rightColumnX, yRight - materialItemPaint.ascent(), materialItemPaint);
-                yRight += lineSpacing;
+    /**
+     * Replay a label recorded without its text at the given scale, threshold it and blit the text
+     *
+     * @param alongUnit  Pixels per printer dot across the label (see drawBarcode)
+     * @param acrossUnit Pixels per printer dot down the label
+     */
+    private MonoRaster renderUpright(LabelDrawPlan plan, Picture picture, List<LabelDrawPlan.TextRun> textRuns,
+                                     int width, int height, float scaleX, float scaleY,
+                                     int alongUnit, int acrossUnit) throws InterruptedException {
+        Bitmap bitmap = bitmapPool.acquire(width, height, bitmapConfig);
+        MonoRaster raster;
+        try {
+            Canvas canvas = new Canvas(bitmap);
+            canvas.save();
+            canvas.scale(scaleX, scaleY);
+            canvas.drawPicture(picture);
+            canvas.restore();
+
+            if (barcodePattern != null) {
+                int left = Math.round(barcodeArea.left * scaleX);
+                int top = Math.round(barcodeArea.top * scaleY);
+                int areaWidth = Math.round(barcodeArea.right * scaleX) - left;
+                int areaHeight = Math.round(barcodeArea.bottom * scaleY) - top;
+                drawBarcode(canvas, barcodePattern, left, top, areaWidth, areaHeight, alongUnit, acrossUnit, false);
             }
-            currentY = Math.max(yLeft, yRight);
-
-            // Draw column divider
-            thinLinePaint.setColor(Color.rgb(221, 221, 221));
-            canvas.drawLine(dividerX, startY + (4f * SCALE), dividerX, currentY - lineSpacing, thinLinePaint);
+            raster = RasterPrinterTarget.toColumnRaster(bitmap);
+        } finally {
+            bitmapPool.release(bitmap);
         }
-
-        return currentY + (2f * SCALE); // margin-bottom (reduced further to save space)
-    }
-
-    private float drawManufacturerSection(Canvas canvas, LabelData data, float startY) {
-        float currentY = startY + (2f * SCALE); // section padding-top (reduced by 50%)
-        float sectionPadding = 6f * SCALE; // Reverted back to original
-        String title = "ПРОИЗВОДИТЕЛ";
-        String content = data.manufacturer;
-
-        float titleHeight = getTextHeight(title, sectionTitlePaint);
-        float contentHeight = getTextHeight(content, manufacturerNamePaint);
-        float sectionHeight = titleHeight + contentHeight + (sectionPadding * 2) + (2f * SCALE); // 2f = title margin-bottom
-
-        RectF sectionRect = new RectF(PADDING, currentY, LABEL_WIDTH - PADDING, currentY + sectionHeight);
-        // Remove background rectangles - keep only the rect for positioning
-        // sectionFillPaint.setColor(Color.rgb(255, 255, 255));
-        // thinLinePaint.setColor(Color.rgb(204, 204, 204));
-        // canvas.drawRoundRect(sectionRect, 3f * SCALE, 3f * SCALE, sectionFillPaint);
-        // canvas.drawRoundRect(sectionRect, 3f * SCALE, 3f * SCALE, thinLinePaint);
-
-        float textY = currentY + sectionPadding;
-        canvas.drawText(title, sectionRect.left + sectionPadding, textY - sectionTitlePaint.ascent(), sectionTitlePaint);
-        textY += titleHeight + (2f * SCALE);
-        canvas.drawText(content, sectionRect.left + sectionPadding, textY - manufacturerNamePaint.ascent(), manufacturerNamePaint);
-
-        return sectionRect.bottom + (2f * SCALE); // margin-bottom (reduced further to save space)
+        plan.drawText(raster, textRuns, scaleX, scaleY);
+        return raster;
     }
 
-    private float drawImporterSection(Canvas canvas, LabelData data, float startY) {
-        float currentY = startY + (2f * SCALE); // section padding-top (reduced by 50%)
-        float sectionPadding = 6f * SCALE; // Reverted back to original
-        String title = "ВНОСИТЕЛ";
-        String content = data.importer;
-
-        float titleHeight = getTextHeight(title, sectionTitlePaint);
-        float contentHeight = getTextHeight(content, importerNamePaint);
-        float sectionHeight = titleHeight + contentHeight + (sectionPadding * 2) + (2f * SCALE); // 2f = title margin-bottom
-
-        RectF sectionRect = new RectF(PADDING, currentY, LABEL_WIDTH - PADDING, currentY + sectionHeight);
-        // Remove background rectangles - keep only the rect for positioning
-        // sectionFillPaint.setColor(Color.rgb(255, 255, 255));
-        // thinLinePaint.setColor(Color.rgb(204, 204, 204));
-        // canvas.drawRoundRect(sectionRect, 3f * SCALE, 3f * SCALE, sectionFillPaint);
-        // canvas.drawRoundRect(sectionRect, 3f * SCALE, 3f * SCALE, thinLinePaint);
-
-        float textY = currentY + sectionPadding;
-        canvas.drawText(title, sectionRect.left + sectionPadding, textY - sectionTitlePaint.ascent(), sectionTitlePaint);
-        textY += titleHeight + (2f * SCALE);
-        canvas.drawText(content, sectionRect.left + sectionPadding, textY - importerNamePaint.ascent(), importerNamePaint);
-
-        return sectionRect.bottom + (2f * SCALE); // margin-bottom (reduced further to save space)
+    /**
+     * Label length in layout units per label width, without rasterizing it
+     */
+    public float measureLength(LabelData data) {
+        LabelDrawPlan plan = currentPlan();
+        return recordLabel(plan, new Picture(), data, null) / plan.width;
     }
 
-    private float calculatePriceHeight(LabelData data) {
-        if (data.priceEur == null && data.priceBgn == null) {
-            return 0f; // No price section
+    /**
+     * Plan of the installed template; waits for startup to load it
+     */
+    private LabelDrawPlan currentPlan() {
+        LabelTemplate template = AppStartup.getLabelTemplate(context);
+        if (template != planTemplate) {
+            plan = LabelDrawPlan.forTemplate(template);
+            planTemplate = template;
         }
-        
-        // Calculate two-row layout: "Цена:" + gap + price values + padding + border
-        float priceLabelHeight = getTextHeight("Цена:", priceLabelPaint);
-        float priceValueHeight = getTextHeight("Test", priceValuePaint);
-        float lineGap = 4f * SCALE;
-        return priceLabelHeight + lineGap + priceValueHeight + (7f * SCALE); // 2f top padding + 4f border spacing + 1f bottom padding
+        return plan;
     }
-    
-    private float drawPriceSection(Canvas canvas, LabelData data, float startY) {
-        float currentY = startY;
-
-        // Draw top border
-        currentY += 1f * SCALE; // half the padding-top
-        canvas.drawLine(PADDING, currentY, LABEL_WIDTH - PADDING, currentY, thickLinePaint);
-        currentY += 1f * SCALE; // half the margin-top
-
-        // --- Price Logic ---
-        if (data.priceEur == null && data.priceBgn == null) {
-            return currentY; // No price to draw
-        }
-
-        // 1. Start with default large size
-        priceValuePaint.setTextSize(45f * SCALE);
-        priceSeparatorPaint.setTextSize(42f * SCALE);
-
-        // 2. Calculate actual text width and reduce size if too wide
-        float availableWidth = LABEL_WIDTH - (6f * SCALE); // 6px safety margin
-        String testText = "";
-        if (data.priceEur != null && data.priceBgn != null) {
-            testText = data.priceBgn + " лв | " + data.priceEur + "€";
-        } else if (data.priceEur != null) {
-            testText = data.priceEur + "€";
-        } else if (data.priceBgn != null) {
-            testText = data.priceBgn + " лв";
-        }
-        
-        float testWidth = priceValuePaint.measureText(testText);
-        if (testWidth > availableWidth) {
-            // Too wide, reduce to medium size
-            priceValuePaint.setTextSize(35f * SCALE);
-            priceSeparatorPaint.setTextSize(32f * SCALE);
-            testWidth = priceValuePaint.measureText(testText);
-            
-            if (testWidth > availableWidth) {
-                // Still too wide, reduce to small size
-                priceValuePaint.setTextSize(25f * SCALE);
-                priceSeparatorPaint.setTextSize(23f * SCALE);
-                testWidth = priceValuePaint.measureText(testText);
-                
-                if (testWidth > availableWidth) {
-                    // Still too wide, reduce to very small size
-                    priceValuePaint.setTextSize(18f * SCALE);
-                    priceSeparatorPaint.setTextSize(16f * SCALE);
-                }
-            }
-        }
-
-        String priceLabelText = "Цена:";
-        float priceGap = 6f * SCALE;
-        float lineGap = 4f * SCALE; // Gap between label and price lines
-
-        // First row: "Цена:" centered
-        float priceLabelY = currentY + 2f * SCALE; // Minimal top padding
-        drawCenteredText(canvas, priceLabelText, LABEL_WIDTH / 2, priceLabelY, priceLabelPaint);
 
-        // Second row: Prices centered  
-        float priceContentY = priceLabelY + lineGap + getTextHeight("Test", priceLabelPaint) + getTextHeight("Test", priceValuePaint);
-
-        // 3. Draw based on which prices are available
-        if (data.priceEur != null && data.priceBgn != null) {
-            String bgnText = data.priceBgn + " лв"; // BGN first
-            String eurText = data.priceEur + "€"; // Euro symbol after number
-            String sepText = "|";
-            float bgnWidth = priceValuePaint.measureText(bgnText);
-            float eurWidth = priceValuePaint.measureText(eurText);
-            float sepWidth = priceSeparatorPaint.measureText(sepText);
-
-            float totalPriceWidth = bgnWidth + eurWidth + sepWidth + (priceGap * 2);
-            float pricePadding = 3f * SCALE; // Safety padding from borders
-            float remainingWidth = LABEL_WIDTH - (pricePadding * 2);
-            float currentX = pricePadding + (remainingWidth - totalPriceWidth) / 2;
-
-            canvas.drawText(bgnText, currentX, priceContentY, priceValuePaint);
-            currentX += bgnWidth + priceGap;
-            canvas.drawText(sepText, currentX, priceContentY, priceSeparatorPaint);
-            currentX += sepWidth + priceGap;
-            canvas.drawText(eurText, currentX, priceContentY, priceValuePaint);
-
-        } else {
-            String priceText = (data.priceEur != null) ? data.priceEur + "€" : data.priceBgn + " лв"; // Euro symbol after number
-            float priceWidth = priceValuePaint.measureText(priceText);
-            float pricePadding = 3f * SCALE; // Safety padding from borders
-            float remainingWidth = LABEL_WIDTH - (pricePadding * 2);
-            float currentX = pricePadding + (remainingWidth - priceWidth) / 2;
+    /**
+     * @param textRuns Receives the label's text instead of the picture when not null
+     */
+    private float recordLabel(LabelDrawPlan plan, Picture picture, LabelData data, List<LabelDrawPlan.TextRun> textRuns) {
+        Canvas recorder = picture.beginRecording((int) plan.width, (int) MAX_HEIGHT);
+        float finalHeight = drawLabel(plan, recorder, data, textRuns);
+        picture.endRecording();
+        return finalHeight;
+    }
 
-            canvas.drawText(priceText, currentX, priceContentY, priceValuePaint);
-        }
-        return priceContentY + 1f; // Add 1 pixel padding after price
+    /**
+     * Lay out and draw every section plus the outer border.
+     *
+     * @return The label height in layout units.
+     */
+    private float drawLabel(LabelDrawPlan plan, Canvas canvas, LabelData data, List<LabelDrawPlan.TextRun> textRuns) {
+        float finalHeight = plan.draw(canvas, data, barcodeArea, textRuns);
+        barcodePattern = barcodeArea.isEmpty() ? null : data.barcode.getPattern();
+        return finalHeight;
     }
 
-    // --- Utility Helpers ---
-    private float getTextHeight(String text, Paint paint) {
-        Rect bounds = new Rect();
-        paint.getTextBounds(text, 0, text.length(), bounds);
-        return bounds.height();
+    /**
+     * Hand a label bitmap back to the pool once printing (or previewing) is finished.
+     */
+    public void releaseLabelBitmap(Bitmap bitmap) {
+        bitmapPool.release(bitmap);
     }
 
-    private void drawCenteredText(Canvas canvas, String text, float centerX, float topY, TextPaint paint) {
-        float textX = centerX - (paint.measureText(text) / 2);
-        canvas.drawText(text, textX, topY - paint.ascent(), paint);
+    /**
+     * Fill the barcode modules into the reserved area, given in device pixels, with whole
+     * pixels per module and the pattern centered.
+     *
+     * @param along      Pixels along the pattern's rows (raster lines on the tape)
+     * @param across     Pixels along the bars (dots across the roll on the tape)
+     * @param alongUnit  Pixels per printer dot along the rows; modules span whole dots
+     * @param acrossUnit Pixels per printer dot along the bars
+     * @param onTape     Area given as tape dot/line of its left edge and bottom line
+     */
+    private void drawBarcode(Canvas canvas, BarcodePattern pattern, int x, int y, int along, int across,
+                             int alongUnit, int acrossUnit, boolean onTape) {
+        int modulesAlong = pattern.width + 2 * pattern.quietZone;
+        int moduleWidth;
+        int moduleHeight;
+        int barHeight;
+        if (pattern.isLinear()) {
+            moduleWidth = Math.max(1, along / alongUnit / modulesAlong) * alongUnit;
+            moduleHeight = across;
+            barHeight = across;
+        } else {
+            // Square modules: the same number of dots both ways
+            int moduleDots = Math.max(1, Math.min(along / alongUnit, across / acrossUnit) / (pattern.height + 2 * pattern.quietZone));
+            moduleWidth = moduleDots * alongUnit;
+            moduleHeight = moduleDots * acrossUnit;
+            barHeight = 0;
+        }
+        int patternAcross = pattern.isLinear() ? barHeight : pattern.height * moduleHeight;
+        int offsetAlong = (along - pattern.width * moduleWidth) / 2;
+        int offsetAcross = (across - patternAcross) / 2;
+
+        BarcodePattern.RectSink device = (left, top, right, bottom) -> canvas.drawRect(left, top, right, bottom, barcodePaint);
+        BarcodePattern.RectSink target = onTape
+            ? BarcodePattern.onTape(device, x, y)
+            : (left, top, right, bottom) -> device.fillRect(x + left, y + top, x + right, y + bottom);
+        pattern.draw((left, top, right, bottom) -> target.fillRect(left + offsetAlong, top + offsetAcross,
+            right + offsetAlong, bottom + offsetAcross), moduleWidth, moduleHeight, barHeight);
     }
 }
 
 public class MainActivity extends AppCompatActivity {
 
+    private static final String TAG = "MainActivity";
+    
+    // Runs the calls the page sends through its port, one at a time like the bridge thread.
+    // Process-wide, so a print sent just before a rotation still runs.
+    private static final ExecutorService PAGE_CALLS = Executors.newSingleThreadExecutor();
+
     private WebView webView;
+    private PageChannel pageChannel;
+    // Either the native form or pageChannel, set in onCreate
+    private NativeLabelForm nativeForm;
+    private PageEventBatch.Sink formEvents;
     private PrinterManager printerManager;
-    private String pendingPrintData = null;
-    private LabelDrawer labelDrawer;
-    private HistoryManager historyManager;
+    private PrinterManager.PrinterCallback printerCallback;
+    
+    // Prints the job queue; outlives the activity so a recreated one never submits a job twice
+    private PrintSpooler printSpooler;
+    
+    // CSV delivery imports stream on the spooler's import thread, so a rotation does not stop them
+    private final ActivityResultLauncher<String[]> csvPicker = registerForActivityResult(
+        new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                Toast.makeText(this, "Импортиране на файла...", Toast.LENGTH_SHORT).show();
+                importCsv(getApplicationContext(), printSpooler, uri);
+            }
+        });
+    
+    // History and templates moved between tablets (LabelSnapshot), on the import thread as well
+    private final ActivityResultLauncher<String> snapshotExporter = registerForActivityResult(
+        new ActivityResultContracts.CreateDocument("application/octet-stream"), uri -> {
+            if (uri != null) {
+                exportSnapshot(getApplicationContext(), printSpooler, uri);
+            }
+        });
+    private final ActivityResultLauncher<String[]> snapshotPicker = registerForActivityResult(
+        new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                Toast.makeText(this, "Импортиране на данните...", Toast.LENGTH_SHORT).show();
+                importSnapshot(getApplicationContext(), printSpooler, uri);
+            }
+        });
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -548,42 +405,24 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
         
         printerManager = PrinterManager.getInstance(this);
-        labelDrawer = new LabelDrawer();
-        historyManager = HistoryManager.getInstance(this);
+        // Normally already started by WelcomeActivity; history, templates and the raster cache load off the main thread
+        AppStartup.begin(this);
+        // Registered with PrinterManager before this activity, so it starts queued jobs first
+        printSpooler = PrintSpooler.getInstance(this);
         
-        printerManager.setCallback(new PrinterManager.PrinterCallback() {
+        printerCallback = new PrinterManager.PrinterCallback() {
             @Override
             public void onStateChanged(PrinterManager.PrinterState state, String message) {
                 runOnUiThread(() -> {
                     Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
-                    
-                    // Notify JavaScript about status change
-                    if (webView != null) {
-                        webView.evaluateJavascript("if (typeof onPrinterStatusChanged === 'function') onPrinterStatusChanged('" + 
-                            message.replace("'", "\\'") + "');", null);
-                    }
+                    postPrinterState(state, message);
                 });
             }
             
             @Override
             public void onSuccess() {
-                runOnUiThread(() -> {
-                    if (pendingPrintData != null) {
-                        Toast.makeText(MainActivity.this, "Принтерът е свързан! Започва печат...", Toast.LENGTH_SHORT).show();
-                        
-                        Channel printerChannel = printerManager.getPrinterChannel();
-                        if (printerChannel != null) {
-                            generateAndPrintLabels(pendingPrintData, printerChannel);
-                        }
-                        
-                        pendingPrintData = null;
-                    } else {
-                        // Notify JavaScript that printer is ready
-                        if (webView != null) {
-                            webView.evaluateJavascript("if (typeof onPrinterReady === 'function') onPrinterReady();", null);
-                        }
-                    }
-                });
+                // PrintSpooler starts any queued job
+                runOnUiThread(() -> postPrinterState(PrinterManager.PrinterState.SUCCESS, "Принтерът е готов"));
             }
             
             @Override
@@ -591,21 +430,34 @@ public class MainActivity extends AppCompatActivity {
                 runOnUiThread(() -> {
                     Toast.makeText(MainActivity.this, "Грешка в принтера: " + error, Toast.LENGTH_LONG).show();
                     
-                    // Notify JavaScript about error
-                    if (webView != null) {
-                        webView.evaluateJavascript("if (typeof onPrinterError === 'function') onPrinterError('" + 
-                            error.replace("'", "\\'") + "');", null);
-                    }
-                    
-                    if (pendingPrintData != null) {
-                        pendingPrintData = null;
-                    }
+                    postPrinterState(PrinterManager.PrinterState.ERROR, error);
                 });
             }
-        });
+        };
+        printerManager.addCallback(printerCallback);
+        
+        // Detect while the page loads rather than after it
+        if (!printerManager.isPrinterReady()) {
+            printerManager.startDetection();
+        }
+        
+        ViewGroup formContainer = findViewById(R.id.webViewContainer);
+        if (FormMode.isNative(this, getIntent())) {
+            // No WebView at all - Chromium never loads into the process
+            nativeForm = new NativeLabelForm(this, formContainer, new WebAppInterface(), () -> {
+                postCurrentPrinterState();
+                onFormReady();
+            });
+            formEvents = nativeForm;
+        } else {
+            webView = WebViewPrewarmer.obtain(this);
+            formContainer.addView(webView,
+                new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            setupWebView();
+        }
         
-        webView = findViewById(R.id.webView);
-        setupWebView();
+        // Jobs already printing report their progress to this form from here on
+        printSpooler.attach(formEvents);
         
         ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
             Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
@@ -614,48 +466,211 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    // Wait for AppStartup on first use; from bridge and printer threads as well
+    private HistoryManager getHistoryManager() {
+        return AppStartup.getHistoryManager(this);
+    }
+    
+    private TemplateManager getTemplateManager() {
+        return AppStartup.getTemplateManager(this);
+    }
+    
+    private RasterCache getRasterCache() {
+        return AppStartup.getRasterCache(this);
+    }
+
     private void setupWebView() {
         webView.getSettings().setJavaScriptEnabled(true);
         webView.getSettings().setDomStorageEnabled(true);
         webView.getSettings().setAllowFileAccess(true);
         webView.getSettings().setAllowContentAccess(true);
         
-        webView.addJavascriptInterface(new WebAppInterface(), "Android");
+        WebAppInterface bridge = new WebAppInterface();
+        webView.addJavascriptInterface(bridge, "Android");
+        pageChannel = new PageChannel(webView, new PageChannel.Listener() {
+            @Override
+            public void onPageConnected() {
+                postCurrentPrinterState();
+            }
+            
+            @Override
+            public void onPageCall(String method, JSONArray args) {
+                PAGE_CALLS.execute(() -> callBridge(bridge, method, args));
+            }
+        });
+        formEvents = pageChannel;
         
         webView.setWebViewClient(new WebViewClient() {
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
                 
-                // Check printer status when page loads
-                if (printerManager != null && printerManager.isPrinterReady()) {
-                    // Printer is ready, notify JavaScript
-                    view.evaluateJavascript("if (typeof onPrinterReady === 'function') onPrinterReady();", null);
-                } else {
-                    // Printer not ready, start detection and show loading
-                    view.evaluateJavascript("if (typeof onPrinterConnecting === 'function') onPrinterConnecting();", null);
-                    printerManager.startDetection();
-                }
+                // The page gets the printer state once it has taken the port
+                pageChannel.connect();
+                onFormReady();
             }
         });
         
         webView.loadUrl("file:///android_asset/index.html");
     }
+    
+    /**
+     * Run a call the page sent through its port rather than the bridge. Only bridge methods that
+     * return nothing come this way. On PAGE_CALLS, as bridge calls run off the UI thread.
+     */
+    private static void callBridge(WebAppInterface bridge, String method, JSONArray args) {
+        try {
+            switch (method) {
+                case "printLabel":
+                    bridge.printLabel(args.getString(0));
+                    break;
+                case "reprintTemplate":
+                    bridge.reprintTemplate(args.getLong(0));
+                    break;
+                case "resumePrintQueue":
+                    bridge.resumePrintQueue();
+                    break;
+                case "importCsv":
+                    bridge.importCsv();
+                    break;
+                case "exportSnapshot":
+                    bridge.exportSnapshot();
+                    break;
+                case "importSnapshot":
+                    bridge.importSnapshot();
+                    break;
+                case "saveHistoryValues":
+                    bridge.saveHistoryValues(args.getString(0), args.getString(1), args.getString(2));
+                    break;
+                case "setNetworkPrinters":
+                    bridge.setNetworkPrinters(args.getString(0));
+                    break;
+                case "setDirectRasterEnabled":
+                    bridge.setDirectRasterEnabled(args.getBoolean(0));
+                    break;
+                case "setHighResolutionEnabled":
+                    bridge.setHighResolutionEnabled(args.getBoolean(0));
+                    break;
+                case "setRasterCacheBudget":
+                    bridge.setRasterCacheBudget(args.getInt(0));
+                    break;
+                case "setCutPolicy":
+                    bridge.setCutPolicy(args.getString(0), args.getInt(1));
+                    break;
+                case "setGangColumns":
+                    bridge.setGangColumns(args.getInt(0));
+                    break;
+                case "setGangGutter":
+                    bridge.setGangGutter((float) args.getDouble(0));
+                    break;
+                default:
+                    Log.w(TAG, "Unknown page call: " + method);
+                    break;
+            }
+        } catch (JSONException e) {
+            // Ignore malformed input from the page
+            Log.w(TAG, "Bad arguments for " + method, e);
+        }
+    }
+    
+    /**
+     * The page has loaded or the native form is filled in. UI thread.
+     */
+    private void onFormReady() {
+        // The form is usable from here on
+        StartupTrace.end();
+        reportFullyDrawn();
+        
+        if (printerManager != null && printerManager.isPrinterReady()) {
+            // Pick up jobs left from a previous run
+            printSpooler.processQueue();
+        } else {
+            // Joins the detection started in onCreate, or retries one that already
+            // failed before the form could show it
+            printerManager.startDetection();
+        }
+    }
 
     public class WebAppInterface {
         @JavascriptInterface
         public void printLabel(String labelData) {
-            runOnUiThread(() -> {
-                Toast.makeText(MainActivity.this, "Печат на етикети...", Toast.LENGTH_SHORT).show();
-                
-                Channel printerChannel = printerManager.getPrinterChannel();
-                if (printerChannel != null) {
-                    generateAndPrintLabels(labelData, printerChannel);
-                } else {
-                    pendingPrintData = labelData;
-                    printerManager.startDetection();
-                }
-            });
+            StartupTrace.beginFirstLabel();
+            // Decoded here, on the bridge thread, and only here; the job prints these labels
+            LabelPayload labels;
+            try {
+                labels = LabelPayload.decode(labelData);
+            } catch (Exception e) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Грешка: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                return;
+            }
+            if (labels.getLabelCount() == 0) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Няма намерени размери", Toast.LENGTH_SHORT).show());
+                return;
+            }
+            printSpooler.print(labelData, labels, "Печат на етикети...");
+        }
+        
+        @JavascriptInterface
+        public void importCsv() {
+            runOnUiThread(() -> csvPicker.launch(new String[] {"text/csv", "text/comma-separated-values", "text/plain", "application/vnd.ms-excel"}));
+        }
+        
+        @JavascriptInterface
+        public void exportSnapshot() {
+            String date = new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
+            runOnUiThread(() -> snapshotExporter.launch("etiketi-" + date + LabelSnapshot.FILE_SUFFIX));
+        }
+        
+        @JavascriptInterface
+        public void importSnapshot() {
+            // Providers rarely know the snapshot type
+            runOnUiThread(() -> snapshotPicker.launch(new String[] {"application/octet-stream", "*/*"}));
+        }
+        
+        @JavascriptInterface
+        public String getCatalog() {
+            return LabelCatalog.get().toJson();
+        }
+
+        @JavascriptInterface
+        public String getLabelTemplate() {
+            return AppStartup.getLabelTemplate(MainActivity.this).toJson();
+        }
+
+        /**
+         * Check and keep a shop's own layout; labels printed from now on use it
+         *
+         * @return "" on success, otherwise why the template was rejected
+         */
+        @JavascriptInterface
+        public String setLabelTemplate(String templateJson) {
+            try {
+                AppStartup.saveLabelTemplate(MainActivity.this, LabelTemplate.parse(templateJson));
+                return "";
+            } catch (JSONException e) {
+                return "Невалиден шаблон: " + e.getMessage();
+            } catch (IOException e) {
+                return e.getMessage();
+            }
+        }
+
+        @JavascriptInterface
+        public void resetLabelTemplate() {
+            try {
+                AppStartup.resetLabelTemplate(MainActivity.this);
+            } catch (IOException e) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Грешка: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            }
+        }
+
+        @JavascriptInterface
+        public int getQueuedJobCount() {
+            return printSpooler.getQueuedJobCount();
+        }
+        
+        @JavascriptInterface
+        public void resumePrintQueue() {
+            runOnUiThread(() -> printSpooler.resume());
         }
         
         @JavascriptInterface
@@ -676,7 +691,7 @@ public class MainActivity extends AppCompatActivity {
         public String getFilteredSuggestions(String fieldType, String userInput) {
             try {
                 HistoryManager.FieldType type = HistoryManager.FieldType.valueOf(fieldType);
-                List<String> suggestions = historyManager.getFilteredSuggestions(type, userInput);
+                List<String> suggestions = getHistoryManager().getFilteredSuggestions(type, userInput);
                 return new JSONArray(suggestions).toString();
             } catch (Exception e) {
                 return "[]";
@@ -687,7 +702,7 @@ public class MainActivity extends AppCompatActivity {
         public String getAllSuggestions(String fieldType) {
             try {
                 HistoryManager.FieldType type = HistoryManager.FieldType.valueOf(fieldType);
-                List<String> suggestions = historyManager.getAllValues(type);
+                List<String> suggestions = getHistoryManager().getAllValues(type);
                 return new JSONArray(suggestions).toString();
             } catch (Exception e) {
                 return "[]";
@@ -697,221 +712,288 @@ public class MainActivity extends AppCompatActivity {
         @JavascriptInterface
         public void saveHistoryValues(String manufacturer, String importer, String product) {
             if (manufacturer != null && !manufacturer.trim().isEmpty()) {
-                historyManager.addValue(HistoryManager.FieldType.MANUFACTURER, manufacturer.trim());
+                printSpooler.addHistoryValue(HistoryManager.FieldType.MANUFACTURER, manufacturer.trim());
             }
             if (importer != null && !importer.trim().isEmpty()) {
-                historyManager.addValue(HistoryManager.FieldType.IMPORTER, importer.trim());
+                printSpooler.addHistoryValue(HistoryManager.FieldType.IMPORTER, importer.trim());
             }
             if (product != null && !product.trim().isEmpty()) {
-                historyManager.addValue(HistoryManager.FieldType.PRODUCT, product.trim());
+                printSpooler.addHistoryValue(HistoryManager.FieldType.PRODUCT, product.trim());
             }
         }
         
         @JavascriptInterface
-        public void showDebugToast(String message) {
-            runOnUiThread(() -> {
-                Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
-            });
+        public String searchTemplates(String query) {
+            try {
+                JSONArray results = new JSONArray();
+                for (TemplateManager.Template template : getTemplateManager().search(query, TemplateManager.MAX_SEARCH_RESULTS)) {
+                    LabelData label = template.getBaseLabel();
+                    JSONObject item = new JSONObject();
+                    item.put("id", template.id);
+                    item.put("product", label.product);
+                    item.put("manufacturer", label.manufacturer);
+                    item.put("importer", label.importer);
+                    item.put("priceBgn", label.priceBgn != null ? label.priceBgn : "");
+                    item.put("sizes", new JSONArray(template.getSizes()));
+                    results.put(item);
+                }
+                return results.toString();
+            } catch (JSONException e) {
+                return "[]";
+            }
         }
-    }
-
-    private void generateAndPrintLabels(String labelData, Channel printerChannel) {
-        try {
-            JSONObject formData = new JSONObject(labelData);
-            JSONArray sizesArray = formData.getJSONArray("sizes");
-            
-            if (sizesArray.length() == 0) {
-                Toast.makeText(this, "Няма намерени размери", Toast.LENGTH_SHORT).show();
+        
+        @JavascriptInterface
+        public void reprintTemplate(long templateId) {
+            TemplateManager.Template template = getTemplateManager().get(templateId);
+            if (template == null) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Шаблонът не е намерен", Toast.LENGTH_SHORT).show());
                 return;
             }
-            
-            Toast.makeText(this, "Генериране на " + sizesArray.length() + " етикет(и)...", Toast.LENGTH_SHORT).show();
-            processNextLabel(formData, sizesArray, 0, printerChannel);
-            
-        } catch (Exception e) {
-            Toast.makeText(this, "Грешка: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            // Queued like a form job; its rasters come from the cache
+            printSpooler.print(template.payload, template.labels, "Повторен печат: " + template.getBaseLabel().product);
+            getTemplateManager().markUsed(template);
         }
-    }
-    
-    private void processNextLabel(JSONObject formData, JSONArray sizesArray, int currentIndex, Channel printerChannel) {
-        if (currentIndex >= sizesArray.length()) {
-            Toast.makeText(this, "Всички етикети са отпечатани успешно!", Toast.LENGTH_LONG).show();
-            
-            // Save to history after successful printing of all labels
+        
+        @JavascriptInterface
+        public void deleteTemplate(long templateId) {
+            getTemplateManager().delete(templateId);
+        }
+        
+        @JavascriptInterface
+        public String getPrintSettings() {
             try {
-                String manufacturer = formData.optString("manufacturer", "");
-                String importer = formData.optString("importer", "");
-                String product = formData.optString("product", "");
-                
-                if (!manufacturer.trim().isEmpty()) {
-                    historyManager.addValue(HistoryManager.FieldType.MANUFACTURER, manufacturer.trim());
-                }
-                if (!importer.trim().isEmpty()) {
-                    historyManager.addValue(HistoryManager.FieldType.IMPORTER, importer.trim());
-                }
-                if (!product.trim().isEmpty()) {
-                    historyManager.addValue(HistoryManager.FieldType.PRODUCT, product.trim());
+                PrintSettings printSettings = printerManager.getSettings();
+                CutPolicy cutPolicy = printSettings.getCutPolicy();
+                JSONObject settings = new JSONObject();
+                settings.put("directRaster", printSettings.isDirectRasterEnabled());
+                settings.put("highResolution", printSettings.isHighResolutionEnabled());
+                settings.put("networkPrinters", new JSONArray(printSettings.getNetworkPrinters()));
+                settings.put("cutMode", cutPolicy.mode.name());
+                settings.put("cutEvery", cutPolicy.everyN);
+                settings.put("gangColumns", printSettings.getGangColumns());
+                settings.put("gangGutterMm", (double) printSettings.getGangGutterMm());
+                settings.put("rasterCacheBudgetMb", printSettings.getRasterCacheBudget() / (1024L * 1024L));
+                return settings.toString();
+            } catch (JSONException e) {
+                return "{}";
+            }
+        }
+        
+        // PrintSettings may be written from this thread; it reports connection changes on the main thread
+        @JavascriptInterface
+        public void setNetworkPrinters(String addressesJson) {
+            try {
+                JSONArray addressesArray = new JSONArray(addressesJson);
+                List<String> addresses = new ArrayList<>();
+                for (int i = 0; i < addressesArray.length(); i++) {
+                    addresses.add(addressesArray.getString(i));
                 }
-            } catch (Exception e) {
-                // Log but don't show error to user for history saving
+                printerManager.getSettings().setNetworkPrinters(addresses);
+            } catch (JSONException e) {
+                // Ignore malformed input from the page
             }
-            return;
         }
         
-        try {
-            String currentSize = sizesArray.getString(currentIndex);
-            JSONObject labelForSize = new JSONObject(formData.toString());
-            labelForSize.put("size", currentSize);
-            
-            Toast.makeText(this, "Печат на етикет " + (currentIndex + 1) + "/" + sizesArray.length() + " (Размер: " + currentSize + ")", Toast.LENGTH_SHORT).show();
-            
-            createBeautifulCanvasLabel(labelForSize, () -> {
-                processNextLabel(formData, sizesArray, currentIndex + 1, printerChannel);
-            }, printerChannel);
-            
-        } catch (Exception e) {
-            Toast.makeText(this, "Грешка при създаване на етикет " + (currentIndex + 1) + ": " + e.getMessage(), Toast.LENGTH_LONG).show();
+        @JavascriptInterface
+        public void setDirectRasterEnabled(boolean enabled) {
+            printerManager.getSettings().setDirectRasterEnabled(enabled);
         }
-    }
-    
-    private interface PrintCallback {
-        void onPrintComplete();
-    }
-    
-    private void createBeautifulCanvasLabel(JSONObject labelData, PrintCallback callback, Channel printerChannel) {
-        try {
-            // Parse the JSON data into our LabelData object
-            LabelData data = new LabelData(labelData);
-            
-            // Use the new LabelDrawer to create the bitmap
-            Bitmap bitmap = labelDrawer.createLabelBitmap(data);
-            
-            // TODO: Remove debug mode for production
-            // For now, show debug bitmap - change to direct print for production
-            boolean DEBUG_MODE = false; // Set to true for debugging, false for production
-            
-            if (DEBUG_MODE) {
-                showDebugBitmap(bitmap, callback);
-            } else {
-                // Direct print without debug dialog
-                printImageToPrinter(bitmap, printerChannel, callback);
+        
+        @JavascriptInterface
+        public void setHighResolutionEnabled(boolean enabled) {
+            printerManager.getSettings().setHighResolutionEnabled(enabled);
+        }
+        
+        @JavascriptInterface
+        public void setRasterCacheBudget(int megabytes) {
+            long budget = Math.max(0, megabytes) * 1024L * 1024L;
+            printerManager.getSettings().setRasterCacheBudget(budget);
+            getRasterCache().setBudget(budget);
+        }
+        
+        @JavascriptInterface
+        public void setCutPolicy(String mode, int everyN) {
+            try {
+                printerManager.getSettings().setCutPolicy(new CutPolicy(CutPolicy.Mode.valueOf(mode), everyN));
+            } catch (IllegalArgumentException e) {
+                // Ignore malformed input from the page
             }
-            
-        } catch (Exception e) {
-            Toast.makeText(this, "Грешка при създаване на етикет: " + e.getMessage(), Toast.LENGTH_LONG).show();
         }
-    }
-
-    private void printImageToPrinter(Bitmap bitmap, Channel printerChannel, PrintCallback callback) {
-        if (printerChannel == null) {
-            Toast.makeText(this, "Няма свързан принтер", Toast.LENGTH_SHORT).show();
-            return;
+        
+        @JavascriptInterface
+        public void setGangColumns(int columns) {
+            printerManager.getSettings().setGangColumns(columns);
         }
+        
+        @JavascriptInterface
+        public void setGangGutter(float millimetres) {
+            printerManager.getSettings().setGangGutterMm(millimetres);
+        }
+        
+        @JavascriptInterface
+        public void showDebugToast(String message) {
+            runOnUiThread(() -> {
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
+            });
+        }
+    }
 
-        new Thread(() -> {
+    /**
+     * Stream a delivery CSV into the print queue as one job, reporting progress to the form.
+     * Static, like the snapshot transfers: the import outlives this activity and reports to the
+     * form attached to the spooler when it ends.
+     */
+    private static void importCsv(Context appContext, PrintSpooler spooler, Uri uri) {
+        spooler.runImport(() -> {
+            File staging = null;
             try {
-                PrinterDriverGenerateResult driverResult = PrinterDriverGenerator.openChannel(printerChannel);
-                if (driverResult.getError().getCode() != com.brother.sdk.lmprinter.OpenChannelError.ErrorCode.NoError) {
-                    runOnUiThread(() -> {
-                        Toast.makeText(this, "Неуспешно отваряне на принтера", Toast.LENGTH_LONG).show();
-                    });
-                    return;
+                staging = spooler.createStagingFile();
+                CsvLabelImporter.Result result;
+                try (InputStream input = appContext.getContentResolver().openInputStream(uri);
+                     Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+                     Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(staging), StandardCharsets.UTF_8))) {
+                    result = new CsvLabelImporter().importCsv(reader, writer, (rowsRead, labelCount) -> spooler.post(PageEventBatch.IMPORT_PROGRESS,
+                        PageEventBatch.event("rows", rowsRead, "labels", labelCount), true));
                 }
-
-                PrinterDriver driver = driverResult.getDriver();
-                
-                QLPrintSettings printSettings = new QLPrintSettings(PrinterModel.QL_800);
-                printSettings.setLabelSize(QLPrintSettings.LabelSize.RollW62);
-                printSettings.setAutoCut(true);
-                printSettings.setWorkPath(getCacheDir().getAbsolutePath());
                 
-                // High-quality thermal printer settings - ErrorDiffusion for better text quality
-                printSettings.setHalftone(com.brother.sdk.lmprinter.setting.PrintImageSettings.Halftone.ErrorDiffusion);
-                printSettings.setScaleMode(com.brother.sdk.lmprinter.setting.PrintImageSettings.ScaleMode.FitPageAspect);
-                printSettings.setPrintOrientation(com.brother.sdk.lmprinter.setting.PrintImageSettings.Orientation.Portrait);
-                printSettings.setImageRotation(com.brother.sdk.lmprinter.setting.PrintImageSettings.Rotation.Rotate270);
-                printSettings.setHAlignment(com.brother.sdk.lmprinter.setting.PrintImageSettings.HorizontalAlignment.Center);
-                printSettings.setVAlignment(com.brother.sdk.lmprinter.setting.PrintImageSettings.VerticalAlignment.Top);
-                printSettings.setPrintQuality(com.brother.sdk.lmprinter.setting.PrintImageSettings.PrintQuality.Best);
-                printSettings.setResolution(com.brother.sdk.lmprinter.setting.PrintImageSettings.Resolution.High);
-                
-                com.brother.sdk.lmprinter.PrintError printResult = driver.printImage(bitmap, printSettings);
-                driver.closeChannel();
+                if (result.labelCount > 0) {
+                    spooler.addBulk(staging, result.labelCount);
+                    staging = null;
+                }
                 
-                runOnUiThread(() -> {
-                    if (printResult.getCode() == com.brother.sdk.lmprinter.PrintError.ErrorCode.NoError) {
-                        if (callback != null) {
-                            callback.onPrintComplete();
+                String summary = "Импортирани " + result.rowsImported + " реда (" + result.labelCount + " етикета)"
+                    + (result.rowsRejected > 0 ? ", пропуснати " + result.rowsRejected + " реда с грешки" : "");
+                spooler.importFinished(summary, TextUtils.join("\n", result.errors), result.labelCount > 0);
+            } catch (Exception e) {
+                spooler.importFinished("Грешка при импортиране: " + e.getMessage(), "", false);
+            } finally {
+                if (staging != null) {
+                    staging.delete();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Write the suggestion history and saved templates to a snapshot for another tablet
+     */
+    private static void exportSnapshot(Context appContext, PrintSpooler spooler, Uri uri) {
+        spooler.runImport(() -> {
+            String summary;
+            try (OutputStream output = appContext.getContentResolver().openOutputStream(uri);
+                 LabelSnapshot.Writer writer = new LabelSnapshot.Writer(output)) {
+                for (HistoryManager.FieldType fieldType : HistoryManager.FieldType.values()) {
+                    for (String value : AppStartup.getHistoryManager(appContext).getAllValues(fieldType)) {
+                        writer.writeHistory(fieldType.name(), value);
+                    }
+                }
+                AppStartup.getTemplateManager(appContext).export(writer);
+                summary = "Експортирани " + writer.getHistoryCount() + " подсказки и " + writer.getTemplateCount() + " шаблона";
+            } catch (Exception e) {
+                summary = "Грешка при експортиране: " + e.getMessage();
+            }
+            spooler.importFinished(summary, "", false);
+        });
+    }
+    
+    /**
+     * Merge a snapshot from another tablet, one record at a time. Suggestions already known here
+     * (by normalized text) keep their spelling; of two templates for the same product and supplier
+     * the one used last is kept.
+     */
+    private static void importSnapshot(Context appContext, PrintSpooler spooler, Uri uri) {
+        spooler.runImport(() -> {
+            int[] added = new int[2];
+            int[] skipped = new int[1];
+            String error = null;
+            // Suggestions are merged with one write per field once the file has been read
+            Map<HistoryManager.FieldType, List<String>> history = new EnumMap<>(HistoryManager.FieldType.class);
+            try (InputStream input = appContext.getContentResolver().openInputStream(uri)) {
+                LabelSnapshot.read(input, new LabelSnapshot.Sink() {
+                    @Override
+                    public void history(String field, String value) {
+                        HistoryManager.FieldType fieldType;
+                        try {
+                            fieldType = HistoryManager.FieldType.valueOf(field);
+                        } catch (IllegalArgumentException e) {
+                            // A field of a newer version
+                            skipped[0]++;
+                            return;
+                        }
+                        List<String> values = history.get(fieldType);
+                        if (values == null) {
+                            values = new ArrayList<>();
+                            history.put(fieldType, values);
                         }
-                    } else {
-                        Toast.makeText(this, "Печатът неуспешен: " + printResult.getCode(), Toast.LENGTH_LONG).show();
+                        values.add(value);
                     }
                     
-                    // Clean up bitmap after printing
-                    if (bitmap != null && !bitmap.isRecycled()) {
-                        bitmap.recycle();
+                    @Override
+                    public void template(String payload, long lastUsed) throws IOException {
+                        try {
+                            if (AppStartup.getTemplateManager(appContext).merge(payload, lastUsed)) {
+                                added[1]++;
+                            }
+                        } catch (IllegalArgumentException e) {
+                            skipped[0]++;
+                        }
                     }
                 });
-                
             } catch (Exception e) {
-                runOnUiThread(() -> {
-                    Toast.makeText(this, "Изключение при печат: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    
-                    // Clean up bitmap on error
-                    if (bitmap != null && !bitmap.isRecycled()) {
-                        bitmap.recycle();
-                    }
-                });
+                error = e.getMessage();
+            }
+            // Records before a damaged part of the file are kept
+            for (Map.Entry<HistoryManager.FieldType, List<String>> field : history.entrySet()) {
+                added[0] += AppStartup.getHistoryManager(appContext).addValues(field.getKey(), field.getValue()).size();
             }
-        }).start();
+            
+            String summary = (error != null ? "Импортът спря: " + error + ". " : "")
+                + "Добавени " + added[0] + " подсказки и " + added[1] + " шаблона"
+                + (skipped[0] > 0 ? ", пропуснати " + skipped[0] + " невалидни записа" : "");
+            spooler.importFinished(summary, "", false);
+        });
     }
-
-    private void showDebugBitmap(Bitmap bitmap, PrintCallback callback) {
-        // Create ImageView to display the bitmap
-        ImageView imageView = new ImageView(this);
-        imageView.setImageBitmap(bitmap);
-        imageView.setScaleType(ImageView.ScaleType.FIT_CENTER);
-        
-        // Create layout with padding
-        LinearLayout layout = new LinearLayout(this);
-        layout.setOrientation(LinearLayout.VERTICAL);
-        layout.setPadding(20, 20, 20, 20);
-        layout.addView(imageView);
-        
-        // Create and show dialog
-        AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        builder.setTitle("Debug: Generated Label Bitmap")
-                .setView(layout)
-                .setPositiveButton("Continue Print", (dialog, which) -> {
-                    // Continue with actual printing
-                    Channel printerChannel = printerManager.getPrinterChannel();
-                    if (printerChannel != null) {
-                        printImageToPrinter(bitmap, printerChannel, callback);
-                    } else {
-                        Toast.makeText(this, "Няма свързан принтер", Toast.LENGTH_SHORT).show();
-                        // Clean up bitmap if printing is not possible
-                        if (bitmap != null && !bitmap.isRecycled()) {
-                            bitmap.recycle();
-                        }
-                    }
-                })
-                .setNegativeButton("Cancel", (dialog, which) -> {
-                    // Clean up bitmap on cancel
-                    if (bitmap != null && !bitmap.isRecycled()) {
-                        bitmap.recycle();
-                    }
-                    dialog.dismiss();
-                })
-                .show();
+    
+    /**
+     * Printer state for the form; the latest one wins within a frame
+     */
+    private void postPrinterState(PrinterManager.PrinterState state, String message) {
+        // Detection can report before the form exists; it asks for the state once connected
+        if (formEvents == null) {
+            return;
+        }
+        formEvents.post(PageEventBatch.PRINTER, PageEventBatch.event("state", state.name(), "message", message), true);
+    }
+    
+    private void postCurrentPrinterState() {
+        if (printerManager.isPrinterReady()) {
+            postPrinterState(PrinterManager.PrinterState.SUCCESS, "Принтерът е готов");
+        } else {
+            postPrinterState(PrinterManager.PrinterState.SEARCHING_PRINTER, "Свързване с принтера...");
+        }
     }
     
     @Override
     protected void onDestroy() {
         super.onDestroy();
         
-        // Clean up printer manager when activity is destroyed
+        // PrinterManager outlives the activity (rotation recreates it while printers are in use);
+        // only stop listening
         if (printerManager != null) {
-            printerManager.cleanup();
+            printerManager.removeCallback(printerCallback);
+        }
+        
+        // The spooler keeps printing; a recreated activity attaches to it again
+        if (printSpooler != null) {
+            printSpooler.detach(formEvents);
+        }
+        
+        if (pageChannel != null) {
+            pageChannel.close();
+        }
+        if (nativeForm != null) {
+            nativeForm.close();
         }
     }
 }
\ No newline at end of file
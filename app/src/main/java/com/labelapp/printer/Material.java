@@ -0,0 +1,21 @@
+package com.labelapp.printer;
+
+/**
+ * One line of a label's composition, resolved through the catalog when it names a known material
+ */
+class Material {
+    final int percentage;
+    final String type;
+    // LabelCatalog ID, or LabelCatalog.NO_ID for free text
+    final int catalogId;
+    // Printed text, "95% ПАМУК"
+    final String line;
+
+    Material(int percentage, String type) {
+        LabelCatalog.Entry entry = LabelCatalog.get().findMaterial(type);
+        this.percentage = percentage;
+        this.type = entry != null ? entry.name : type;
+        this.catalogId = entry != null ? entry.id : LabelCatalog.NO_ID;
+        this.line = percentage + "% " + (entry != null ? entry.label : LabelCatalog.upperCase(type));
+    }
+}
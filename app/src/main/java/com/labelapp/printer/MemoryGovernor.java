@@ -0,0 +1,161 @@
+package com.labelapp.printer;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MemoryGovernor - Keeps label rendering within what the device can spare
+ * The render profile is chosen once per process: low-RAM devices draw labels at a smaller scale
+ * into 16-bit bitmaps, lease fewer of them at a time and queue fewer pages per network printer,
+ * so a long job on a 1 GB tablet stays well inside its heap.
+ *
+ * Registered for the application's trim signals. Idle pooled bitmaps are dropped first,
+ * then glyph atlases and measured text; everything is rebuilt on the next label. Once the
+ * foreground process runs critically low, the pools also lease no more than the low-RAM cap
+ * for the rest of the process.
+ */
+final class MemoryGovernor implements ComponentCallbacks2 {
+
+    private static final String TAG = "MemoryGovernor";
+
+    // Heap limits at or below this are treated as low-RAM, whatever the device reports
+    private static final int LOW_MEMORY_CLASS_MB = 128;
+
+    /**
+     * How labels are rendered and how far rendering may run ahead of the printers
+     */
+    static final class Profile {
+        // LabelDrawer's preview / SDK bitmap scale over layout units
+        final float bitmapScale;
+        // Label scratch bitmaps; thresholded to 1 bit either way, so 16 bits lose nothing that prints
+        final Bitmap.Config bitmapConfig;
+        // Cap on leased label bitmaps (LabelBitmapPool)
+        final long poolBytes;
+        // Raster pages waiting per network printer (NetworkPrinterConnection)
+        final int queuedPages;
+
+        Profile(float bitmapScale, Bitmap.Config bitmapConfig, long poolBytes, int queuedPages) {
+            this.bitmapScale = bitmapScale;
+            this.bitmapConfig = bitmapConfig;
+            this.poolBytes = poolBytes;
+            this.queuedPages = queuedPages;
+        }
+    }
+
+    static final Profile STANDARD = new Profile(3.0f, Bitmap.Config.ARGB_8888,
+        LabelBitmapPool.DEFAULT_MAX_BYTES, NetworkPrinterConnection.DEFAULT_QUEUED_PAGES);
+
+    // A full-height scratch at 2x in RGB_565 is about 2.2 MB; two fit the cap
+    static final Profile LOW_RAM = new Profile(2.0f, Bitmap.Config.RGB_565, 6L * 1024 * 1024, 1);
+
+    private static MemoryGovernor instance;
+
+    private final Profile profile;
+
+    // Guarded by this
+    private final List<LabelBitmapPool> pools = new ArrayList<>();
+    private boolean critical = false;
+
+    static synchronized MemoryGovernor getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new MemoryGovernor(isLowRamDevice(appContext) ? LOW_RAM : STANDARD);
+            appContext.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    private MemoryGovernor(Profile profile) {
+        this.profile = profile;
+        if (profile == LOW_RAM) {
+            Log.i(TAG, "Low-RAM render profile");
+        }
+    }
+
+    Profile getProfile() {
+        return profile;
+    }
+
+    /**
+     * A bitmap pool sized for the profile, tracked until it is released with {@link #releasePool}
+     */
+    synchronized LabelBitmapPool createPool() {
+        LabelBitmapPool pool = new LabelBitmapPool(critical ? Math.min(profile.poolBytes, LOW_RAM.poolBytes) : profile.poolBytes);
+        pools.add(pool);
+        return pool;
+    }
+
+    /**
+     * Stop tracking a pool and drop its idle bitmaps
+     */
+    synchronized void releasePool(LabelBitmapPool pool) {
+        pools.remove(pool);
+        pool.clear();
+    }
+
+    /**
+     * Bytes held by label bitmaps, leased and idle, and by glyph atlases
+     */
+    synchronized long getHeldBytes() {
+        long bytes = LabelDrawPlan.getCachedAtlasBytes();
+        for (LabelBitmapPool pool : pools) {
+            bytes += pool.getLeasedBytes() + pool.getPooledBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return;
+        }
+        // UI_HIDDEN and the background levels are above RUNNING_CRITICAL but do not mean a job is starved
+        shed(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        Log.i(TAG, "Trim level " + level + ": " + getHeldBytes() + " bytes held");
+    }
+
+    @Override
+    public void onLowMemory() {
+        shed(true, true);
+        Log.i(TAG, "Low memory: " + getHeldBytes() + " bytes held");
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * @param caches   Drop glyph atlases and measured text as well as idle bitmaps
+     * @param critical Lower the pools' caps for good
+     */
+    private void shed(boolean caches, boolean critical) {
+        synchronized (this) {
+            for (LabelBitmapPool pool : pools) {
+                pool.clear();
+            }
+            if (critical && !this.critical) {
+                // Rendering waits for the printers instead of running ahead
+                this.critical = true;
+                for (LabelBitmapPool pool : pools) {
+                    pool.setMaxBytes(Math.min(profile.poolBytes, LOW_RAM.poolBytes));
+                }
+            }
+        }
+        if (caches) {
+            LabelDrawPlan.trimCaches();
+        }
+    }
+
+    static boolean isLowRamDevice(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager != null
+            && (activityManager.isLowRamDevice() || activityManager.getMemoryClass() <= LOW_MEMORY_CLASS_MB);
+    }
+}
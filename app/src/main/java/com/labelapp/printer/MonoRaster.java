@@ -0,0 +1,255 @@
+package com.labelapp.printer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * MonoRaster - 1-bit image packed 8 pixels per byte, most significant bit first
+ * A set bit is a black dot. Rows are stored top to bottom, each rowBytes long.
+ */
+class MonoRaster {
+
+    // Luminance at or below this value prints as a black dot
+    static final int DEFAULT_THRESHOLD = 128;
+
+    final int width;
+    final int height;
+    final int rowBytes;
+    final byte[] data;
+
+    MonoRaster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rowBytes = (width + 7) / 8;
+        this.data = new byte[rowBytes * height];
+    }
+
+    boolean get(int x, int y) {
+        return (data[y * rowBytes + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+
+    void set(int x, int y, boolean black) {
+        int index = y * rowBytes + (x >> 3);
+        int mask = 0x80 >> (x & 7);
+        if (black) {
+            data[index] |= mask;
+        } else {
+            data[index] &= ~mask;
+        }
+    }
+
+    /**
+     * Fill a horizontal span of a row with black dots
+     */
+    void fillSpan(int y, int fromX, int toX) {
+        for (int x = Math.max(0, fromX); x < Math.min(width, toX); x++) {
+            set(x, y, true);
+        }
+    }
+
+    /**
+     * OR another raster into this one with its top left corner at (left, top), a byte at a time
+     */
+    void draw(MonoRaster source, int left, int top) {
+        if (left < 0 || top < 0 || left + source.width > width || top + source.height > height) {
+            throw new IllegalArgumentException("Raster " + source.width + "x" + source.height
+                + " does not fit at " + left + "," + top);
+        }
+        int shift = left & 7;
+        int rowEnd = (left + source.width + 7) >> 3;
+        for (int y = 0; y < source.height; y++) {
+            int sourceOffset = y * source.rowBytes;
+            int rowOffset = (top + y) * rowBytes;
+            int index = left >> 3;
+            for (int i = 0; i < source.rowBytes; i++, index++) {
+                int bits = source.data[sourceOffset + i] & 0xFF;
+                if (bits == 0) {
+                    continue;
+                }
+                // Padding bits past source.width are never set, so nothing spills beyond rowEnd
+                data[rowOffset + index] |= (byte) (bits >>> shift);
+                if (shift != 0 && index + 1 < rowEnd) {
+                    data[rowOffset + index + 1] |= (byte) (bits << (8 - shift));
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy a region of another raster with its top left corner at (left, top), a byte at a
+     * time, setting the dots that are black in the source (black) or clearing them. Parts
+     * outside this raster are dropped.
+     */
+    void blit(MonoRaster source, int srcX, int srcY, int regionWidth, int regionHeight, int left, int top, boolean black) {
+        if (left < 0) {
+            srcX -= left;
+            regionWidth += left;
+            left = 0;
+        }
+        if (top < 0) {
+            srcY -= top;
+            regionHeight += top;
+            top = 0;
+        }
+        regionWidth = Math.min(regionWidth, width - left);
+        regionHeight = Math.min(regionHeight, height - top);
+        if (regionWidth <= 0 || regionHeight <= 0) {
+            return;
+        }
+
+        int sourceShift = srcX & 7;
+        int shift = left & 7;
+        for (int y = 0; y < regionHeight; y++) {
+            int sourceIndex = (srcY + y) * source.rowBytes + (srcX >> 3);
+            int sourceEnd = (srcY + y + 1) * source.rowBytes;
+            int index = (top + y) * rowBytes + (left >> 3);
+            for (int done = 0; done < regionWidth; done += 8, sourceIndex++, index++) {
+                // Next 8 source dots, most significant bit first
+                int bits = (source.data[sourceIndex] & 0xFF) << sourceShift;
+                if (sourceShift != 0 && sourceIndex + 1 < sourceEnd) {
+                    bits |= (source.data[sourceIndex + 1] & 0xFF) >>> (8 - sourceShift);
+                }
+                if (regionWidth - done < 8) {
+                    bits &= 0xFF << (8 - (regionWidth - done));
+                }
+                bits &= 0xFF;
+                if (bits == 0) {
+                    continue;
+                }
+                // Dots past the region are masked off, so a spill into the next byte stays in the row
+                combine(index, bits >>> shift, black);
+                if (shift != 0) {
+                    combine(index + 1, (bits << (8 - shift)) & 0xFF, black);
+                }
+            }
+        }
+    }
+
+    private void combine(int index, int bits, boolean black) {
+        if (bits == 0) {
+            return;
+        }
+        if (black) {
+            data[index] |= (byte) bits;
+        } else {
+            data[index] &= (byte) ~bits;
+        }
+    }
+
+    /**
+     * This raster turned 90 degrees counter-clockwise: its top edge becomes the left edge.
+     * Turns a label rendered upright into its orientation across the tape.
+     */
+    MonoRaster rotateCounterClockwise() {
+        MonoRaster rotated = new MonoRaster(height, width);
+        for (int y = 0; y < height; y++) {
+            int offset = y * rowBytes;
+            for (int i = 0; i < rowBytes; i++) {
+                int bits = data[offset + i] & 0xFF;
+                // Most rows of a label are mostly blank
+                if (bits == 0) {
+                    continue;
+                }
+                for (int bit = 0; bit < 8; bit++) {
+                    if ((bits & (0x80 >> bit)) != 0) {
+                        rotated.set(y, width - 1 - (i * 8 + bit), true);
+                    }
+                }
+            }
+        }
+        return rotated;
+    }
+
+    boolean isRowBlank(int y) {
+        int offset = y * rowBytes;
+        for (int i = 0; i < rowBytes; i++) {
+            if (data[offset + i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write width, height and the packed rows
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.write(data);
+    }
+
+    /**
+     * Read a raster written by writeTo
+     */
+    static MonoRaster readFrom(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        if (width <= 0 || height <= 0 || width > 0x10000 || height > 0x10000) {
+            throw new IOException("Invalid raster size " + width + "x" + height);
+        }
+        MonoRaster raster = new MonoRaster(width, height);
+        in.readFully(raster.data);
+        return raster;
+    }
+
+    /**
+     * Threshold an 8-bit luminance image (0 = black, 255 = white) without scaling
+     */
+    static MonoRaster fromLuminance(byte[] luminance, int width, int height, int threshold) {
+        MonoRaster raster = new MonoRaster(width, height);
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                if ((luminance[rowOffset + x] & 0xFF) <= threshold) {
+                    raster.set(x, y, true);
+                }
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Rotate a portrait luminance image by 270 degrees (90 counter-clockwise), scale it so its
+     * long side spans exactly targetWidth dots while keeping the aspect ratio, and threshold it.
+     * Matches what the SDK did with Rotation.Rotate270 and ScaleMode.FitPageAspect, in one pass.
+     * Each target dot averages the source pixels it covers, so thin strokes survive downscaling.
+     */
+    static MonoRaster fromLuminanceRotated270(byte[] luminance, int srcWidth, int srcHeight, int targetWidth, int threshold) {
+        // After rotation the source height runs across the tape and the source width along the feed
+        int targetHeight = Math.max(1, Math.round((float) srcWidth * targetWidth / srcHeight));
+        MonoRaster raster = new MonoRaster(targetWidth, targetHeight);
+
+        for (int ty = 0; ty < targetHeight; ty++) {
+            // Rotated row ty comes from source columns counted from the right edge
+            int colEnd = srcWidth - (int) ((long) ty * srcWidth / targetHeight);
+            int colStart = srcWidth - (int) ((long) (ty + 1) * srcWidth / targetHeight);
+            if (colEnd <= colStart) {
+                colEnd = colStart + 1;
+            }
+
+            for (int tx = 0; tx < targetWidth; tx++) {
+                // Rotated column tx comes from source rows counted from the top
+                int rowStart = (int) ((long) tx * srcHeight / targetWidth);
+                int rowEnd = (int) ((long) (tx + 1) * srcHeight / targetWidth);
+                if (rowEnd <= rowStart) {
+                    rowEnd = rowStart + 1;
+                }
+
+                int sum = 0;
+                for (int sy = rowStart; sy < rowEnd; sy++) {
+                    int rowOffset = sy * srcWidth;
+                    for (int sx = colStart; sx < colEnd; sx++) {
+                        sum += luminance[rowOffset + sx] & 0xFF;
+                    }
+                }
+                int count = (rowEnd - rowStart) * (colEnd - colStart);
+                if (sum <= threshold * count) {
+                    raster.set(tx, ty, true);
+                }
+            }
+        }
+        return raster;
+    }
+}
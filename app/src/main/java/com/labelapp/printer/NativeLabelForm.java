@@ -0,0 +1,640 @@
+package com.labelapp.printer;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.InputType;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.inputmethod.EditorInfo;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.Filter;
+import android.widget.LinearLayout;
+import android.widget.RadioGroup;
+import android.widget.ScrollView;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * NativeLabelForm - The label form as plain Android views, for tablets short on RAM
+ * Same fields, hints and rules as index.html without a WebView in the process. Printing,
+ * CSV import and printer checks go through the WebAppInterface the page calls, with the
+ * same payload (LabelFormInput), so jobs take the same path from there on. Suggestions are
+ * read from HistoryManager as lists on the autocomplete's filter thread instead of as JSON.
+ * MainActivity's events arrive through PageEventBatch.Sink and are applied once per
+ * main-thread turn, so print progress costs one TextView update however fast labels print.
+ */
+final class NativeLabelForm implements PageEventBatch.Sink {
+
+    // Origin that shows the free-text field, as in index.html
+    private static final String OTHER_ORIGIN = "Друго";
+    private static final int MAX_MATERIAL_ROWS = 10;
+
+    private static final String[] SIZE_LETTERS = {"XS", "S", "M", "L", "XL", "XXL", "XXXL", "-"};
+    // Barcode.Type codes and their names in the list; "" is no barcode
+    private static final String[] BARCODE_TYPES = {"", "EAN13", "CODE128", "QR"};
+    private static final String[] BARCODE_NAMES = {"Без баркод", "EAN-13", "Code 128", "QR код"};
+
+    private final Activity activity;
+    private final MainActivity.WebAppInterface bridge;
+    private final PageEventBatch batch = new PageEventBatch();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable applyEvents = this::applyEvents;
+
+    private final ScrollView scrollView;
+    private final TextView errorMessages;
+    private final Spinner originSpinner;
+    private final EditText customOrigin;
+    private final AutoCompleteTextView manufacturer;
+    private final AutoCompleteTextView importer;
+    private final AutoCompleteTextView product;
+    private final LinearLayout materialsContainer;
+    private final TextView percentageTotal;
+    private final RadioGroup sizeType;
+    private final LinearLayout sizesContainer;
+    private final EditText priceBgn;
+    private final TextView priceEur;
+    private final Spinner barcodeType;
+    private final EditText barcodeValue;
+    private final TextView printerStatus;
+    private final TextView jobStatus;
+    private final TextView importStatus;
+
+    // Main thread only
+    private final List<MaterialRow> materialRows = new ArrayList<>();
+    private final List<SizeRow> sizeRows = new ArrayList<>();
+    private List<String> materialNames = Collections.emptyList();
+    private boolean closed = false;
+
+    /**
+     * Inflate the form into the container. Main thread.
+     *
+     * @param onReady Run on the main thread once the catalog is in and the form can be used
+     */
+    NativeLabelForm(Activity activity, ViewGroup container, MainActivity.WebAppInterface bridge, Runnable onReady) {
+        this.activity = activity;
+        this.bridge = bridge;
+
+        View root = LayoutInflater.from(activity).inflate(R.layout.form_native, container, true);
+        scrollView = root.findViewById(R.id.nativeForm);
+        errorMessages = root.findViewById(R.id.errorMessages);
+        originSpinner = root.findViewById(R.id.origin);
+        customOrigin = root.findViewById(R.id.customOrigin);
+        manufacturer = root.findViewById(R.id.manufacturer);
+        importer = root.findViewById(R.id.importer);
+        product = root.findViewById(R.id.product);
+        materialsContainer = root.findViewById(R.id.materialsContainer);
+        percentageTotal = root.findViewById(R.id.percentageTotal);
+        sizeType = root.findViewById(R.id.sizeType);
+        sizesContainer = root.findViewById(R.id.sizesContainer);
+        priceBgn = root.findViewById(R.id.priceBgn);
+        priceEur = root.findViewById(R.id.priceEur);
+        barcodeType = root.findViewById(R.id.barcodeType);
+        barcodeValue = root.findViewById(R.id.barcodeValue);
+        printerStatus = root.findViewById(R.id.printerStatus);
+        jobStatus = root.findViewById(R.id.jobStatus);
+        importStatus = root.findViewById(R.id.importStatus);
+
+        manufacturer.setAdapter(new HistoryAdapter(activity, HistoryManager.FieldType.MANUFACTURER));
+        importer.setAdapter(new HistoryAdapter(activity, HistoryManager.FieldType.IMPORTER));
+        product.setAdapter(new HistoryAdapter(activity, HistoryManager.FieldType.PRODUCT));
+        barcodeType.setAdapter(spinnerAdapter(BARCODE_NAMES));
+        setupListeners(root);
+
+        // Startup has normally read the catalog by now; the wait stays off the main thread anyway
+        Context appContext = activity.getApplicationContext();
+        new Thread(() -> {
+            LabelCatalog catalog = AppStartup.getCatalog(appContext);
+            mainHandler.post(() -> {
+                if (closed) {
+                    return;
+                }
+                showCatalog(catalog);
+                onReady.run();
+            });
+        }, "NativeLabelForm").start();
+    }
+
+    /**
+     * Queue an event for the form. Thread-safe.
+     */
+    @Override
+    public void post(String type, JSONObject event, boolean latestOnly) {
+        if (batch.add(type, event, latestOnly)) {
+            mainHandler.post(applyEvents);
+        }
+    }
+
+    /**
+     * Drop pending events and stop listening. Main thread, from onDestroy.
+     */
+    void close() {
+        closed = true;
+        mainHandler.removeCallbacks(applyEvents);
+        batch.drainEvents();
+    }
+
+    private void setupListeners(View root) {
+        originSpinner.setOnItemSelectedListener(new SelectionListener(position ->
+            customOrigin.setVisibility(OTHER_ORIGIN.equals(originSpinner.getSelectedItem()) ? View.VISIBLE : View.GONE)));
+        barcodeType.setOnItemSelectedListener(new SelectionListener(position ->
+            barcodeValue.setVisibility(position > 0 ? View.VISIBLE : View.GONE)));
+        sizeType.setOnCheckedChangeListener((group, checkedId) -> recreateSizeRows());
+
+        // Currency auto-conversion (BGN to EUR only)
+        priceBgn.addTextChangedListener(new AfterTextChanged(text -> priceEur.setText(LabelFormInput.toEur(text))));
+
+        root.findViewById(R.id.addSizeBtn).setOnClickListener(v -> addSizeRow("", 1));
+        root.findViewById(R.id.printBtn).setOnClickListener(v -> handlePrint());
+        root.findViewById(R.id.resetBtn).setOnClickListener(v -> reset());
+        root.findViewById(R.id.importBtn).setOnClickListener(v -> bridge.importCsv());
+        root.findViewById(R.id.exportDataBtn).setOnClickListener(v -> bridge.exportSnapshot());
+        root.findViewById(R.id.importDataBtn).setOnClickListener(v -> bridge.importSnapshot());
+    }
+
+    private void showCatalog(LabelCatalog catalog) {
+        List<String> origins = new ArrayList<>();
+        origins.add("Изберете държава...");
+        for (LabelCatalog.Entry entry : catalog.getOrigins()) {
+            origins.add(entry.name);
+        }
+        origins.add(OTHER_ORIGIN);
+        originSpinner.setAdapter(spinnerAdapter(origins.toArray(new String[0])));
+
+        List<String> materials = new ArrayList<>();
+        materials.add("Изберете материал...");
+        for (LabelCatalog.Entry entry : catalog.getMaterials()) {
+            materials.add(entry.name);
+        }
+        materialNames = materials;
+
+        initializeMaterialRows();
+        initializeSizeRows();
+    }
+
+    private void handlePrint() {
+        LabelFormInput input = collectFormData();
+        List<String> errors = input.validate();
+        if (!errors.isEmpty()) {
+            errorMessages.setText("Моля, поправете следните грешки:\n• " + TextUtils.join("\n• ", errors));
+            errorMessages.setVisibility(View.VISIBLE);
+            scrollView.smoothScrollTo(0, errorMessages.getTop());
+            return;
+        }
+        errorMessages.setVisibility(View.GONE);
+        bridge.printLabel(input.toPayload());
+    }
+
+    private LabelFormInput collectFormData() {
+        String origin = originSpinner.getSelectedItemPosition() > 0 ? (String) originSpinner.getSelectedItem() : "";
+        if (OTHER_ORIGIN.equals(origin)) {
+            origin = customOrigin.getText().toString();
+        }
+        LabelFormInput input = new LabelFormInput(product.getText().toString(), origin,
+            manufacturer.getText().toString(), importer.getText().toString(), priceBgn.getText().toString());
+
+        for (MaterialRow row : materialRows) {
+            input.addMaterial(row.getType(), row.percentage.getText().toString());
+        }
+        for (SizeRow row : sizeRows) {
+            input.addSize(row.getSize(), row.getQuantity());
+        }
+        int barcode = barcodeType.getSelectedItemPosition();
+        input.setBarcode(BARCODE_TYPES[Math.max(0, barcode)], barcodeValue.getText().toString());
+        return input;
+    }
+
+    private void reset() {
+        originSpinner.setSelection(0);
+        customOrigin.setText("");
+        manufacturer.setText("");
+        importer.setText("");
+        product.setText("");
+        priceBgn.setText("");
+        barcodeType.setSelection(0);
+        barcodeValue.setText("");
+        sizeType.check(R.id.sizeLetters);
+        errorMessages.setVisibility(View.GONE);
+        initializeMaterialRows();
+        initializeSizeRows();
+    }
+
+    // --- Materials ---
+
+    private void initializeMaterialRows() {
+        materialsContainer.removeAllViews();
+        materialRows.clear();
+        addMaterialRow();
+    }
+
+    private void addMaterialRow() {
+        MaterialRow row = new MaterialRow();
+        materialRows.add(row);
+        materialsContainer.addView(row.view);
+        updateRemoveButtons();
+        updatePercentageTotal();
+    }
+
+    private void removeMaterialRow(MaterialRow row) {
+        materialRows.remove(row);
+        materialsContainer.removeView(row.view);
+        updateRemoveButtons();
+        updatePercentageTotal();
+    }
+
+    private void updateRemoveButtons() {
+        for (MaterialRow row : materialRows) {
+            row.remove.setVisibility(materialRows.size() > 1 ? View.VISIBLE : View.GONE);
+        }
+    }
+
+    private int updatePercentageTotal() {
+        int total = 0;
+        for (MaterialRow row : materialRows) {
+            total += row.getPercentage();
+        }
+        percentageTotal.setText("Общо: " + total + "%");
+        percentageTotal.setTextColor(total == 100 ? Color.rgb(0x27, 0xAE, 0x60)
+            : total > 0 ? Color.rgb(0xC0, 0x39, 0x2B) : Color.rgb(0x2C, 0x3E, 0x50));
+        return total;
+    }
+
+    /**
+     * Another row once every row is filled in and the total is still short of 100%
+     */
+    private void checkAutoAddRow() {
+        for (MaterialRow row : materialRows) {
+            if (row.getType().isEmpty() || row.percentage.getText().length() == 0) {
+                return;
+            }
+        }
+        if (materialRows.size() < MAX_MATERIAL_ROWS && updatePercentageTotal() < 100) {
+            addMaterialRow();
+            materialRows.get(materialRows.size() - 1).type.requestFocus();
+        }
+    }
+
+    // --- Sizes ---
+
+    private void initializeSizeRows() {
+        sizesContainer.removeAllViews();
+        sizeRows.clear();
+        addSizeRow("", 1);
+    }
+
+    /**
+     * Rebuild the rows for the other size type, keeping filled-in sizes and quantities
+     */
+    private void recreateSizeRows() {
+        List<SizeRow> previous = new ArrayList<>(sizeRows);
+        sizesContainer.removeAllViews();
+        sizeRows.clear();
+        for (SizeRow row : previous) {
+            if (!row.getSize().isEmpty()) {
+                addSizeRow(row.getSize(), row.getQuantity());
+            }
+        }
+        if (sizeRows.isEmpty()) {
+            addSizeRow("", 1);
+        }
+    }
+
+    private void addSizeRow(String size, int quantity) {
+        SizeRow row = new SizeRow(sizeType.getCheckedRadioButtonId() == R.id.sizeLetters, size, quantity);
+        sizeRows.add(row);
+        sizesContainer.addView(row.view);
+        updateSizeRemoveButtons();
+    }
+
+    private void removeSizeRow(SizeRow row) {
+        sizeRows.remove(row);
+        sizesContainer.removeView(row.view);
+        updateSizeRemoveButtons();
+    }
+
+    private void updateSizeRemoveButtons() {
+        for (SizeRow row : sizeRows) {
+            row.remove.setVisibility(sizeRows.size() > 1 ? View.VISIBLE : View.GONE);
+        }
+    }
+
+    // --- Events from MainActivity ---
+
+    private void applyEvents() {
+        if (closed) {
+            return;
+        }
+        for (JSONObject event : batch.drainEvents()) {
+            switch (event.optString(PageEventBatch.TYPE)) {
+                case PageEventBatch.PRINTER:
+                    boolean error = PrinterManager.PrinterState.ERROR.name().equals(event.optString("state"));
+                    showStatus(printerStatus, event.optString("message"));
+                    printerStatus.setBackgroundColor(error ? Color.rgb(0xFD, 0xF2, 0xF3) : Color.TRANSPARENT);
+                    break;
+                case PageEventBatch.PROGRESS:
+                    showStatus(jobStatus, "Печат... " + event.optInt("printed") + "/" + event.optInt("total") + " етикета");
+                    break;
+                case PageEventBatch.JOB:
+                    String status = event.optString("status");
+                    String stopped = event.optInt("printed") + "/" + event.optInt("total") + " етикета: " + event.optString("error");
+                    if ("complete".equals(status)) {
+                        showStatus(jobStatus, "Отпечатани " + event.optInt("total") + " етикета");
+                    } else if ("dropped".equals(status)) {
+                        showStatus(jobStatus, "Заданието е премахнато след " + stopped);
+                    } else {
+                        showStatus(jobStatus, "Печатът спря след " + stopped);
+                    }
+                    break;
+                case PageEventBatch.IMPORT_PROGRESS:
+                    showStatus(importStatus, "Импортиране... " + event.optInt("rows") + " реда, " + event.optInt("labels") + " етикета");
+                    break;
+                case PageEventBatch.IMPORT_FINISHED:
+                    String details = event.optString("details");
+                    showStatus(importStatus, details.isEmpty() ? event.optString("summary") : event.optString("summary") + "\n" + details);
+                    break;
+                default:
+                    // History additions: the dropdowns ask HistoryManager on every keystroke
+                    break;
+            }
+        }
+    }
+
+    private static void showStatus(TextView status, String text) {
+        status.setText(text);
+        status.setVisibility(View.VISIBLE);
+    }
+
+    // --- Views ---
+
+    private ArrayAdapter<String> spinnerAdapter(String[] items) {
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(activity, android.R.layout.simple_spinner_item, items);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        return adapter;
+    }
+
+    private Button smallButton(String text, String description) {
+        Button button = new Button(activity);
+        button.setText(text);
+        button.setContentDescription(description);
+        button.setMinWidth(0);
+        button.setMinimumWidth(dp(48));
+        return button;
+    }
+
+    private int dp(int value) {
+        return Math.round(value * activity.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * Material, percentage and a remove button, like a .material-row in the page
+     */
+    private final class MaterialRow {
+        final LinearLayout view;
+        final Spinner type;
+        final EditText percentage;
+        final Button remove;
+
+        MaterialRow() {
+            view = new LinearLayout(activity);
+            view.setOrientation(LinearLayout.HORIZONTAL);
+
+            type = new Spinner(activity);
+            type.setAdapter(spinnerAdapter(materialNames.toArray(new String[0])));
+            view.addView(type, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1));
+
+            percentage = new EditText(activity);
+            percentage.setHint("%");
+            percentage.setInputType(InputType.TYPE_CLASS_NUMBER);
+            percentage.setImeOptions(EditorInfo.IME_ACTION_DONE);
+            view.addView(percentage, new LinearLayout.LayoutParams(dp(80), ViewGroup.LayoutParams.WRAP_CONTENT));
+
+            TextView symbol = new TextView(activity);
+            symbol.setText("%");
+            view.addView(symbol);
+
+            remove = smallButton("×", "Премахни материал");
+            view.addView(remove);
+
+            // After choosing a material the percentage is next
+            type.setOnItemSelectedListener(new SelectionListener(position -> {
+                if (position > 0) {
+                    percentage.requestFocus();
+                }
+                updatePercentageTotal();
+                checkAutoAddRow();
+            }));
+            percentage.addTextChangedListener(new AfterTextChanged(text -> updatePercentageTotal()));
+            // Only once the value is finished, so typing "100" never adds a row at "1"
+            percentage.setOnFocusChangeListener((v, hasFocus) -> {
+                if (!hasFocus) {
+                    checkAutoAddRow();
+                }
+            });
+            percentage.setOnEditorActionListener((v, actionId, event) -> {
+                checkAutoAddRow();
+                return false;
+            });
+            remove.setOnClickListener(v -> removeMaterialRow(this));
+        }
+
+        String getType() {
+            return type.getSelectedItemPosition() > 0 ? (String) type.getSelectedItem() : "";
+        }
+
+        int getPercentage() {
+            try {
+                return Integer.parseInt(percentage.getText().toString());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Size, quantity stepper and a remove button, like a .size-row in the page
+     */
+    private final class SizeRow {
+        final LinearLayout view;
+        // One of the two, by size type
+        final Spinner letter;
+        final EditText number;
+        final EditText quantity;
+        final Button remove;
+
+        SizeRow(boolean letters, String size, int copies) {
+            view = new LinearLayout(activity);
+            view.setOrientation(LinearLayout.HORIZONTAL);
+            LinearLayout.LayoutParams sizeParams = new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1);
+
+            if (letters) {
+                String[] items = new String[SIZE_LETTERS.length + 1];
+                items[0] = "Изберете размер...";
+                System.arraycopy(SIZE_LETTERS, 0, items, 1, SIZE_LETTERS.length);
+                letter = new Spinner(activity);
+                letter.setAdapter(spinnerAdapter(items));
+                for (int i = 0; i < SIZE_LETTERS.length; i++) {
+                    if (SIZE_LETTERS[i].equals(size)) {
+                        letter.setSelection(i + 1);
+                    }
+                }
+                number = null;
+                view.addView(letter, sizeParams);
+            } else {
+                number = new EditText(activity);
+                number.setHint("Въведете размер");
+                number.setInputType(InputType.TYPE_CLASS_NUMBER);
+                // Letter sizes do not carry over
+                if (size.matches("\\d+")) {
+                    number.setText(size);
+                }
+                letter = null;
+                view.addView(number, sizeParams);
+            }
+
+            TextView label = new TextView(activity);
+            label.setText("Брой:");
+            view.addView(label);
+
+            Button decrease = smallButton("−", "Намали количеството");
+            view.addView(decrease);
+
+            quantity = new EditText(activity);
+            quantity.setInputType(InputType.TYPE_CLASS_NUMBER);
+            quantity.setText(String.valueOf(copies));
+            view.addView(quantity, new LinearLayout.LayoutParams(dp(56), ViewGroup.LayoutParams.WRAP_CONTENT));
+
+            Button increase = smallButton("+", "Увеличи количеството");
+            view.addView(increase);
+
+            remove = smallButton("×", "Премахни размер");
+            view.addView(remove);
+
+            decrease.setOnClickListener(v -> quantity.setText(String.valueOf(Math.max(LabelFormInput.MIN_QUANTITY, getQuantity() - 1))));
+            increase.setOnClickListener(v -> quantity.setText(String.valueOf(Math.min(LabelFormInput.MAX_QUANTITY, getQuantity() + 1))));
+            remove.setOnClickListener(v -> removeSizeRow(this));
+        }
+
+        String getSize() {
+            if (letter != null) {
+                return letter.getSelectedItemPosition() > 0 ? (String) letter.getSelectedItem() : "";
+            }
+            return number.getText().toString().trim();
+        }
+
+        /**
+         * The typed quantity, 1 when empty or not a number
+         */
+        int getQuantity() {
+            try {
+                return Integer.parseInt(quantity.getText().toString());
+            } catch (NumberFormatException e) {
+                return LabelFormInput.MIN_QUANTITY;
+            }
+        }
+    }
+
+    /**
+     * Suggestions for one history field, looked up on the filter's worker thread
+     */
+    private static final class HistoryAdapter extends ArrayAdapter<String> {
+        private final Context appContext;
+        private final HistoryManager.FieldType fieldType;
+        private final Filter filter = new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                List<String> suggestions = constraint == null || constraint.length() == 0
+                    ? Collections.<String>emptyList()
+                    : AppStartup.getHistoryManager(appContext).getFilteredSuggestions(fieldType, constraint.toString());
+                FilterResults results = new FilterResults();
+                results.values = suggestions;
+                results.count = suggestions.size();
+                return results;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                setNotifyOnChange(false);
+                clear();
+                if (results.values != null) {
+                    addAll((List<String>) results.values);
+                }
+                notifyDataSetChanged();
+            }
+        };
+
+        HistoryAdapter(Context context, HistoryManager.FieldType fieldType) {
+            super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<>());
+            this.appContext = context.getApplicationContext();
+            this.fieldType = fieldType;
+        }
+
+        @Override
+        public Filter getFilter() {
+            return filter;
+        }
+    }
+
+    private interface TextListener {
+        void onText(String text);
+    }
+
+    private static final class AfterTextChanged implements TextWatcher {
+        private final TextListener listener;
+
+        AfterTextChanged(TextListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            listener.onText(s.toString());
+        }
+    }
+
+    private interface PositionListener {
+        void onSelected(int position);
+    }
+
+    private static final class SelectionListener implements AdapterView.OnItemSelectedListener {
+        private final PositionListener listener;
+
+        SelectionListener(PositionListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+            listener.onSelected(position);
+        }
+
+        @Override
+        public void onNothingSelected(AdapterView<?> parent) {
+            listener.onSelected(-1);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.labelapp.printer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * NetworkPrinterConnection - Persistent raw TCP connection to a networked Brother label printer
+ * Raster pages are queued and written back to back by a writer thread, so the next label can be
+ * rendered while the previous one is still on the wire. Each page reports from the writer thread
+ * once the printer reports it printed. A dropped connection is re-established and the interrupted
+ * page is sent again from its start; every new socket begins with the job header, because the
+ * printer forgets the job of a page continued from the lost connection. Pages still queued when
+ * the connection fails for good are dropped without being reported.
+ *
+ * Every new socket first asks for the printer's status. A printer that answers is then waited on
+ * after each page until it reports the page printed (QLStatus), and a reported error (no tape,
+ * cover open) fails the page without a retry. A printer that does not answer is trusted once the
+ * page is written.
+ */
+class NetworkPrinterConnection implements RasterConnection {
+
+    // Brother raw printing port (QL-8xx / QL-1xxx network models)
+    static final int DEFAULT_PORT = 9100;
+
+    // Pages rendered ahead of the socket; MemoryGovernor's low-RAM profile queues fewer
+    static final int DEFAULT_QUEUED_PAGES = 4;
+
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    private static final int MAX_RECONNECT_ATTEMPTS = 3;
+    private static final long RECONNECT_BASE_DELAY_MS = 100; // doubled per attempt
+    private static final int STATUS_REPLY_TIMEOUT_MS = 1000;
+    // Longest label on a 62mm roll at the slowest (600 dpi) speed, with room to spare
+    private static final int PRINT_TIMEOUT_MS = 30000;
+
+    /**
+     * A queued page and what to run once it is written
+     */
+    private static final class Page {
+        final byte[] bytes;
+        final Runnable onWritten;
+
+        Page(byte[] bytes, Runnable onWritten) {
+            this.bytes = bytes;
+            this.onWritten = onWritten;
+        }
+    }
+
+    // Queued by close() to stop the writer thread
+    private static final Page END_OF_STREAM = new Page(new byte[0], null);
+
+    private final String host;
+    private final int port;
+    private final BlockingQueue<Page> pages;
+
+    // Writer thread only; a writer that fails closes them before the next one can start
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+    // The printer on this socket answered the status request
+    private boolean statusReplies;
+
+    // Guarded by this
+    private Thread writerThread;
+    // The writer's socket, for close() to shut while the writer is blocked on it
+    private Socket openSocket;
+    private int pagesInProgress = 0;
+    private long pagesWritten = 0;
+    private int reconnectCount = 0;
+    private IOException failure;
+    private boolean closed = false;
+
+    NetworkPrinterConnection(String host) {
+        this(host, DEFAULT_PORT);
+    }
+
+    NetworkPrinterConnection(String host, int port) {
+        this(host, port, DEFAULT_QUEUED_PAGES);
+    }
+
+    NetworkPrinterConnection(String host, int port, int queuedPages) {
+        this.host = host;
+        this.port = port;
+        this.pages = new ArrayBlockingQueue<>(queuedPages);
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    /**
+     * Queue one raster page. Blocks while the queue is full.
+     *
+     * @param onWritten Run on the writer thread once the page is on the socket
+     * @throws IOException if the connection has failed for good
+     */
+    @Override
+    public void enqueue(byte[] page, Runnable onWritten) throws IOException, InterruptedException {
+        synchronized (this) {
+            checkUsable();
+            if (writerThread == null) {
+                writerThread = new Thread(this::runWriter, "NetworkPrinter-" + host);
+                writerThread.start();
+            }
+            pagesInProgress++;
+        }
+        Page queued = new Page(page, onWritten);
+        pages.put(queued);
+        synchronized (this) {
+            if (failure != null) {
+                // The writer failed while this page was waiting for room; a later writer must not send it
+                pages.remove(queued);
+                throwFailure();
+            }
+        }
+    }
+
+    /**
+     * Wait until every queued page has been written to the socket
+     *
+     * @throws IOException if a page could not be delivered
+     */
+    @Override
+    public synchronized void flush() throws IOException, InterruptedException {
+        while (pagesInProgress > 0 && failure == null) {
+            wait();
+        }
+        throwFailure();
+    }
+
+    synchronized long getPagesWritten() {
+        return pagesWritten;
+    }
+
+    synchronized int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    /**
+     * Stop the writer and drop the connection without waiting for either. Any thread; the main
+     * thread closes connections when printers are re-detected. A page being written fails unreported.
+     */
+    @Override
+    public void close() {
+        Socket writerSocket;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writerSocket = openSocket;
+            openSocket = null;
+        }
+
+        pages.clear();
+        pages.offer(END_OF_STREAM);
+        // Unblocks a writer in connect, a write or a status read; it then stops on its own
+        if (writerSocket != null) {
+            try {
+                writerSocket.close();
+            } catch (IOException e) {
+                // Ignore - connection is being discarded
+            }
+        }
+    }
+
+    private void runWriter() {
+        try {
+            while (true) {
+                Page page = pages.take();
+                if (page == END_OF_STREAM) {
+                    closeSocket();
+                    return;
+                }
+
+                try {
+                    writePage(page.bytes);
+                    page.onWritten.run();
+                    synchronized (this) {
+                        pagesWritten++;
+                        pagesInProgress--;
+                        notifyAll();
+                    }
+                } catch (IOException e) {
+                    // Before a new writer can be started
+                    closeSocket();
+                    synchronized (this) {
+                        failure = e;
+                        writerThread = null;
+                        pagesInProgress = 0;
+                        pages.clear();
+                        notifyAll();
+                    }
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            closeSocket();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write a page and wait until it is printed, reconnecting and restarting the page if the
+     * connection drops while it is written. Errors after that are not retried.
+     */
+    private void writePage(byte[] page) throws IOException, InterruptedException {
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= MAX_RECONNECT_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                Thread.sleep(RECONNECT_BASE_DELAY_MS << (attempt - 1));
+                synchronized (this) {
+                    reconnectCount++;
+                }
+            }
+            synchronized (this) {
+                // A write failing because close() shut the socket is not retried
+                checkOpen();
+            }
+
+            QLStatus status;
+            try {
+                status = ensureConnected();
+                if (status == null || !status.isError()) {
+                    out.write(page);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                lastError = e;
+                closeSocket();
+                continue;
+            }
+
+            if (statusReplies && (status == null || !status.isError())) {
+                // Once the page is written it may be printing; sending it again could print it twice
+                try {
+                    status = awaitPrinted();
+                } catch (IOException e) {
+                    closeSocket();
+                    throw e;
+                }
+            }
+            if (status != null && status.isError()) {
+                closeSocket();
+                throw new IOException("Принтерът " + host + ": " + status.describeError());
+            }
+            return;
+        }
+        throw new IOException("Принтерът " + host + " не отговаря: " + lastError.getMessage(), lastError);
+    }
+
+    /**
+     * Reuse the socket or open a new one
+     *
+     * @return Reply to the status request on a new socket, or null
+     */
+    private QLStatus ensureConnected() throws IOException {
+        if (socket != null && isPeerAlive()) {
+            return null;
+        }
+        closeSocket();
+
+        Socket newSocket = new Socket();
+        synchronized (this) {
+            checkOpen();
+            openSocket = newSocket;
+        }
+        socket = newSocket;
+        newSocket.setTcpNoDelay(true);
+        newSocket.setKeepAlive(true);
+        newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        out = newSocket.getOutputStream();
+        in = newSocket.getInputStream();
+
+        out.write(QLRasterEncoder.statusRequest());
+        out.flush();
+        QLStatus status;
+        try {
+            newSocket.setSoTimeout(STATUS_REPLY_TIMEOUT_MS);
+            status = QLStatus.read(in);
+        } catch (SocketTimeoutException e) {
+            // Not every firmware answers over the network
+            status = null;
+        }
+        statusReplies = status != null;
+
+        out.write(QLRasterEncoder.jobHeader());
+        return status;
+    }
+
+    /**
+     * Read status messages until the page just written is printed or the printer reports an error
+     */
+    private QLStatus awaitPrinted() throws IOException {
+        socket.setSoTimeout(PRINT_TIMEOUT_MS);
+        try {
+            while (true) {
+                QLStatus status = QLStatus.read(in);
+                if (status.isError() || status.isPrintingCompleted()) {
+                    return status;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            throw new IOException("Принтерът " + host + " не потвърди печата", e);
+        }
+    }
+
+    /**
+     * Check the connection before starting a page. A write to a socket the printer already closed
+     * can succeed locally and silently lose the page, so an end-of-stream is detected up front.
+     * Status messages the printer sent after the last page was printed are discarded.
+     */
+    private boolean isPeerAlive() {
+        try {
+            while (in.available() > 0) {
+                in.skip(in.available());
+            }
+            socket.setSoTimeout(1);
+            return in.read() != -1;
+        } catch (SocketTimeoutException e) {
+            // Nothing to read and the connection is still open
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writer thread only
+     */
+    private void closeSocket() {
+        if (socket != null) {
+            synchronized (this) {
+                if (openSocket == socket) {
+                    openSocket = null;
+                }
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore - connection is being discarded
+            }
+        }
+        socket = null;
+        out = null;
+        in = null;
+    }
+
+    private void checkUsable() throws IOException {
+        checkOpen();
+        throwFailure();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Връзката с принтера " + host + " е затворена");
+        }
+    }
+
+    /**
+     * Report a failed delivery once; the next page starts a fresh writer and reconnects
+     */
+    private void throwFailure() throws IOException {
+        if (failure != null) {
+            IOException error = failure;
+            failure = null;
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.labelapp.printer;
+
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import android.webkit.WebMessage;
+import android.webkit.WebMessagePort;
+import android.webkit.WebView;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * PageChannel - Events between native and the page over a WebMessagePort
+ * After each page load the page is handed one end of a message channel; from then on events
+ * (printer state, job progress, history additions, import progress) are queued from any
+ * thread and sent as a single JSON array per frame, so printers reporting hundreds of labels
+ * never queue hundreds of scripts on the page's thread.
+ *
+ * The page sends its calls that return nothing (print, imports, settings) back through the
+ * same port as {"type":"call","method":...,"args":[...]}. Calls that return a value still go
+ * through the JavaScript bridge, as does everything on a page without a port.
+ *
+ * WebView below API 23 has no message channels, and a page that has not answered the
+ * handshake yet cannot read the port; both get the same batch through one fixed
+ * evaluateJavascript call per frame instead.
+ */
+final class PageChannel implements PageEventBatch.Sink {
+
+    private static final String TAG = "PageChannel";
+
+    // Data of the message that carries the port; the page answers with {"type":"ready"}
+    static final String PORT_MESSAGE = "labelapp-events";
+    static final String READY = "ready";
+    static final String CALL = "call";
+
+    /**
+     * Messages from the page, on the main thread
+     */
+    interface Listener {
+        /**
+         * The page has taken the port (or reloaded on an old WebView) and wants the current state
+         */
+        void onPageConnected();
+
+        /**
+         * The page called a bridge method through the port
+         *
+         * @param args The call's arguments, in order
+         */
+        void onPageCall(String method, JSONArray args);
+    }
+
+    private final WebView webView;
+    private final Listener listener;
+    private final PageEventBatch batch = new PageEventBatch();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer.FrameCallback flushCallback = frameTimeNanos -> flush();
+    private final Runnable scheduleFlush = () -> Choreographer.getInstance().postFrameCallback(flushCallback);
+
+    // Main thread only
+    private WebMessagePort port;
+    private boolean portReady = false;
+    private boolean closed = false;
+
+    PageChannel(WebView webView, Listener listener) {
+        this.webView = webView;
+        this.listener = listener;
+    }
+
+    /**
+     * Queue an event for the next frame. Thread-safe.
+     *
+     * @param latestOnly Replace a pending event of the same type (see PageEventBatch)
+     */
+    @Override
+    public void post(String type, JSONObject event, boolean latestOnly) {
+        if (batch.add(type, event, latestOnly)) {
+            mainHandler.post(scheduleFlush);
+        }
+    }
+
+    /**
+     * Hand the freshly loaded page a new port. Main thread, from onPageFinished.
+     */
+    void connect() {
+        closePort();
+        if (closed) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            listener.onPageConnected();
+            return;
+        }
+        try {
+            WebMessagePort[] ports = webView.createWebMessageChannel();
+            port = ports[0];
+            port.setWebMessageCallback(new WebMessagePort.WebMessageCallback() {
+                @Override
+                public void onMessage(WebMessagePort source, WebMessage message) {
+                    if (source == port) {
+                        onPageMessage(message.getData());
+                    }
+                }
+            });
+            // The page is a local file, so there is no origin to pin the port to
+            webView.postWebMessage(new WebMessage(PORT_MESSAGE, new WebMessagePort[] {ports[1]}), Uri.parse("*"));
+        } catch (RuntimeException e) {
+            // Keep going on the script fallback
+            Log.w(TAG, "No message channel", e);
+            closePort();
+            listener.onPageConnected();
+        }
+    }
+
+    /**
+     * Stop sending; pending events are dropped. Main thread, from onDestroy.
+     */
+    void close() {
+        closed = true;
+        closePort();
+        mainHandler.removeCallbacks(scheduleFlush);
+        Choreographer.getInstance().removeFrameCallback(flushCallback);
+        batch.drain();
+    }
+
+    private void onPageMessage(String data) {
+        try {
+            JSONObject message = new JSONObject(data);
+            String type = message.optString(PageEventBatch.TYPE);
+            if (READY.equals(type)) {
+                portReady = true;
+                listener.onPageConnected();
+                flush();
+            } else if (CALL.equals(type)) {
+                JSONArray args = message.optJSONArray("args");
+                listener.onPageCall(message.getString("method"), args != null ? args : new JSONArray());
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Bad page message: " + data);
+        }
+    }
+
+    private void flush() {
+        if (closed) {
+            return;
+        }
+        String events = batch.drain();
+        if (events == null) {
+            return;
+        }
+        if (port != null && portReady) {
+            port.postMessage(new WebMessage(events));
+        } else {
+            webView.evaluateJavascript("if (typeof onNativeEvents === 'function') onNativeEvents("
+                + JSONObject.quote(events) + ");", null);
+        }
+    }
+
+    private void closePort() {
+        if (port != null) {
+            port.close();
+            port = null;
+        }
+        portReady = false;
+    }
+}
@@ -0,0 +1,113 @@
+package com.labelapp.printer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * PageEventBatch - Events for the page collected between two frames
+ * PageChannel sends the batch once per frame as one JSON message. Events that only report
+ * the latest value (printer state, job and import progress) replace the pending event of
+ * their type, so a 500-label job costs the page at most one progress update per frame no
+ * matter how fast the printers go. Other events (job results, history additions) are all
+ * delivered, in order.
+ */
+final class PageEventBatch {
+
+    // Every event carries its type here; the page dispatches on it
+    static final String TYPE = "type";
+
+    static final String PRINTER = "printer";
+    static final String PROGRESS = "progress";
+    static final String JOB = "job";
+    static final String HISTORY = "history";
+    static final String IMPORT_PROGRESS = "importProgress";
+    static final String IMPORT_FINISHED = "importFinished";
+
+    /**
+     * Where MainActivity sends events: the page (PageChannel) or the native form (NativeLabelForm)
+     */
+    interface Sink {
+        /**
+         * Queue an event for the form. Thread-safe.
+         *
+         * @param latestOnly Replace a pending event of the same type
+         */
+        void post(String type, JSONObject event, boolean latestOnly);
+    }
+
+    // Guarded by this
+    private final List<JSONObject> pending = new ArrayList<>();
+
+    /**
+     * Queue an event. Thread-safe.
+     *
+     * @param latestOnly Drop a pending event of the same type
+     * @return Whether the batch was empty, so the caller schedules a flush
+     */
+    synchronized boolean add(String type, JSONObject event, boolean latestOnly) {
+        try {
+            event.put(TYPE, type);
+        } catch (JSONException e) {
+            // Only thrown for a null key
+            throw new IllegalArgumentException(e);
+        }
+        boolean wasEmpty = pending.isEmpty();
+        if (latestOnly) {
+            for (Iterator<JSONObject> it = pending.iterator(); it.hasNext(); ) {
+                if (type.equals(it.next().optString(TYPE))) {
+                    it.remove();
+                }
+            }
+        }
+        // Appended even when replacing, so it stays after events that were queued in between
+        pending.add(event);
+        return wasEmpty;
+    }
+
+    /**
+     * Take the pending events as a JSON array, or null when there are none
+     */
+    synchronized String drain() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        JSONArray events = new JSONArray();
+        for (JSONObject event : drainEvents()) {
+            events.put(event);
+        }
+        return events.toString();
+    }
+
+    /**
+     * Take the pending events in order, for a receiver that needs no JSON text
+     */
+    synchronized List<JSONObject> drainEvents() {
+        List<JSONObject> events = new ArrayList<>(pending);
+        pending.clear();
+        return events;
+    }
+
+    synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Build an event from alternating keys and values
+     */
+    static JSONObject event(Object... keysAndValues) {
+        JSONObject event = new JSONObject();
+        try {
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                event.put((String) keysAndValues[i], keysAndValues[i + 1]);
+            }
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return event;
+    }
+}
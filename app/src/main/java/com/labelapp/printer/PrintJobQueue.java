@@ -0,0 +1,355 @@
+package com.labelapp.printer;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PrintJobQueue - Durable FIFO of print jobs with a per-label completion cursor
+ * Each job is two files in the queue directory:
+ *   <id>.job  - version, label count and the form payload, written once via rename
+ *   <id>.done - append-only log of printed label indices, 4 bytes each
+ * Imported deliveries add <id>.labels (see BulkLabelFile) and carry BULK_PAYLOAD as payload.
+ * A partially written trailing record (app killed mid-write) is cut off on load, so records
+ * appended after it stay aligned and, after a crash or reconnect, the job resumes from its
+ * first unprinted label without reprinting others.
+ *
+ * A job that stops MAX_FAILED_ATTEMPTS times in a row without printing a label (a label no
+ * printer accepts) is dropped, so it cannot hold up the jobs behind it.
+ */
+class PrintJobQueue {
+
+    private static final String TAG = "PrintJobQueue";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String JOB_SUFFIX = ".job";
+    private static final String DONE_SUFFIX = ".done";
+    private static final String LABELS_SUFFIX = ".labels";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int RECORD_BYTES = 4;
+
+    // Payload of jobs whose labels live in a separate <id>.labels file
+    static final String BULK_PAYLOAD = "B1";
+
+    // Attempts in a row that print nothing before a job is dropped; reset by any printed label
+    static final int MAX_FAILED_ATTEMPTS = 3;
+
+    /**
+     * One queued job. Progress is only changed through the queue.
+     */
+    static class Job {
+        final long id;
+        final String payload;
+        final int labelCount;
+
+        // Guarded by the owning queue
+        private final BitSet printed;
+        private FileOutputStream progressOut;
+        // Not persisted; a restart gives the job a fresh set of attempts
+        private int failedAttempts = 0;
+
+        private Job(long id, String payload, int labelCount, BitSet printed) {
+            this.id = id;
+            this.payload = payload;
+            this.labelCount = labelCount;
+            this.printed = printed;
+        }
+    }
+
+    private final File directory;
+    // Guarded by this, oldest first
+    private final List<Job> jobs = new ArrayList<>();
+    private long nextId = 1;
+
+    /**
+     * Open the queue stored in directory, loading any jobs left by a previous run
+     */
+    PrintJobQueue(File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Cannot create queue directory " + directory);
+        }
+        load();
+    }
+
+    /**
+     * Append a job. Once this returns the job survives a crash.
+     */
+    synchronized Job add(String payload, int labelCount) throws IOException {
+        Job job = new Job(nextId++, payload, labelCount, new BitSet(labelCount));
+        writeJob(job);
+        jobs.add(job);
+        return job;
+    }
+
+    /**
+     * Append a job whose labels were written to a staging file (see createStagingFile).
+     * The file is moved into the queue and deleted with the job.
+     */
+    synchronized Job addBulk(File stagedLabels, int labelCount) throws IOException {
+        Job job = new Job(nextId++, BULK_PAYLOAD, labelCount, new BitSet(labelCount));
+        if (!stagedLabels.renameTo(labelsFile(job.id))) {
+            throw new IOException("Заданието не може да бъде записано");
+        }
+        try {
+            writeJob(job);
+        } catch (IOException e) {
+            labelsFile(job.id).delete();
+            throw e;
+        }
+        jobs.add(job);
+        return job;
+    }
+
+    /**
+     * Scratch file inside the queue directory; leftovers are deleted on the next load
+     */
+    File createStagingFile() throws IOException {
+        return File.createTempFile("import", TMP_SUFFIX, directory);
+    }
+
+    /**
+     * Labels of a job added with addBulk
+     */
+    File getLabelsFile(Job job) {
+        return labelsFile(job.id);
+    }
+
+    private void writeJob(Job job) throws IOException {
+        byte[] payloadBytes = job.payload.getBytes(StandardCharsets.UTF_8);
+        File tmp = new File(directory, job.id + JOB_SUFFIX + TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(job.labelCount);
+            out.writeInt(payloadBytes.length);
+            out.write(payloadBytes);
+        }
+        if (!tmp.renameTo(jobFile(job.id))) {
+            tmp.delete();
+            throw new IOException("Заданието не може да бъде записано");
+        }
+    }
+
+    /**
+     * Oldest job that still has unprinted labels, or null
+     */
+    synchronized Job peek() {
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    synchronized int size() {
+        return jobs.size();
+    }
+
+    /**
+     * Record a printed label. Called from printer worker threads.
+     */
+    synchronized void markPrinted(Job job, int labelIndex) {
+        if (job.printed.get(labelIndex) || !jobs.contains(job)) {
+            return;
+        }
+        job.printed.set(labelIndex);
+        job.failedAttempts = 0;
+
+        try {
+            if (job.progressOut == null) {
+                job.progressOut = new FileOutputStream(doneFile(job.id), true);
+            }
+            // One write call per record so a kill leaves at most one partial record
+            byte[] record = {
+                (byte) (labelIndex >>> 24), (byte) (labelIndex >>> 16),
+                (byte) (labelIndex >>> 8), (byte) labelIndex
+            };
+            job.progressOut.write(record);
+        } catch (IOException e) {
+            // The label stays printed in memory; after a crash it would be printed again
+            Log.e(TAG, "Failed to record progress of job " + job.id, e);
+        }
+    }
+
+    synchronized int getPrintedCount(Job job) {
+        return job.printed.cardinality();
+    }
+
+    /**
+     * First label of the job that has not been printed yet, or labelCount when done
+     */
+    synchronized int firstUnprinted(Job job) {
+        return job.printed.nextClearBit(0);
+    }
+
+    /**
+     * Unprinted labels in order, starting at the completion cursor
+     */
+    synchronized List<Integer> getRemainingLabels(Job job) {
+        List<Integer> remaining = new ArrayList<>();
+        for (int i = job.printed.nextClearBit(0); i < job.labelCount; i = job.printed.nextClearBit(i + 1)) {
+            remaining.add(i);
+        }
+        return remaining;
+    }
+
+    /**
+     * Count an attempt at the job that stopped before it was printed
+     *
+     * @return True if the job has used up its attempts; it is then removed
+     */
+    synchronized boolean recordFailedAttempt(Job job) {
+        if (++job.failedAttempts < MAX_FAILED_ATTEMPTS) {
+            return false;
+        }
+        remove(job);
+        return true;
+    }
+
+    /**
+     * Drop a finished (or cancelled) job and its files
+     */
+    synchronized void remove(Job job) {
+        jobs.remove(job);
+        closeProgress(job);
+        deleteFiles(job.id);
+    }
+
+    /**
+     * Close open progress files; the queue can be reopened from disk later
+     */
+    synchronized void close() {
+        for (Job job : jobs) {
+            closeProgress(job);
+        }
+    }
+
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(JOB_SUFFIX)) {
+                long id = parseId(name, JOB_SUFFIX);
+                if (id > 0) {
+                    ids.add(id);
+                } else {
+                    Log.w(TAG, "Ignoring unexpected file " + name);
+                }
+            } else if (name.endsWith(TMP_SUFFIX)) {
+                // Crashed before the rename - the job was never acknowledged
+                file.delete();
+            }
+        }
+        Collections.sort(ids);
+
+        // Labels moved in by addBulk just before a crash, without their job record
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(LABELS_SUFFIX) && !ids.contains(parseId(name, LABELS_SUFFIX))) {
+                file.delete();
+            }
+        }
+
+        for (long id : ids) {
+            nextId = Math.max(nextId, id + 1);
+            try {
+                Job job = readJob(id);
+                if (job.printed.nextClearBit(0) >= job.labelCount) {
+                    // Finished but not yet removed when the app stopped
+                    deleteFiles(id);
+                } else {
+                    jobs.add(job);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Dropping unreadable job " + id, e);
+                deleteFiles(id);
+            }
+        }
+    }
+
+    private Job readJob(long id) throws IOException {
+        int labelCount;
+        String payload;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(jobFile(id)))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported job format " + version);
+            }
+            labelCount = in.readInt();
+            byte[] payloadBytes = new byte[in.readInt()];
+            in.readFully(payloadBytes);
+            payload = new String(payloadBytes, StandardCharsets.UTF_8);
+        }
+
+        BitSet printed = new BitSet(labelCount);
+        File done = doneFile(id);
+        if (done.exists()) {
+            long records = done.length() / RECORD_BYTES;
+            if (done.length() % RECORD_BYTES != 0) {
+                // Killed mid-write; markPrinted appends, so the next record must start on a boundary
+                try (RandomAccessFile file = new RandomAccessFile(done, "rw")) {
+                    file.getChannel().truncate(records * RECORD_BYTES);
+                }
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(done)))) {
+                for (long i = 0; i < records; i++) {
+                    int labelIndex = in.readInt();
+                    if (labelIndex >= 0 && labelIndex < labelCount) {
+                        printed.set(labelIndex);
+                    }
+                }
+            }
+        }
+        return new Job(id, payload, labelCount, printed);
+    }
+
+    private void closeProgress(Job job) {
+        if (job.progressOut != null) {
+            try {
+                job.progressOut.close();
+            } catch (IOException e) {
+                // Ignore - every record was already written
+            }
+            job.progressOut = null;
+        }
+    }
+
+    private static long parseId(String name, String suffix) {
+        try {
+            return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void deleteFiles(long id) {
+        doneFile(id).delete();
+        labelsFile(id).delete();
+        jobFile(id).delete();
+    }
+
+    private File jobFile(long id) {
+        return new File(directory, id + JOB_SUFFIX);
+    }
+
+    private File doneFile(long id) {
+        return new File(directory, id + DONE_SUFFIX);
+    }
+
+    private File labelsFile(long id) {
+        return new File(directory, id + LABELS_SUFFIX);
+    }
+}
@@ -0,0 +1,266 @@
+package com.labelapp.printer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PrintScheduler - Spreads the labels of a job across every attached printer
+ * Each printer gets a worker thread that keeps its connection open for the whole job and pulls
+ * the next unprinted label from a shared queue, so idle printers always take the next label.
+ * A label counts as printed only once its printer reports it delivered; when a printer errors
+ * (tape out, USB glitch) it is retired and every label it had not delivered goes back to the
+ * front of the queue.
+ *
+ * Each label is printed with the cut decision of the job's CutPolicy. The last labels still
+ * queued are always cut, so every printer's tape is cut after the last label it prints.
+ */
+class PrintScheduler {
+
+    private static final String TAG = "PrintScheduler";
+
+    /**
+     * One printer the scheduler can drive - the Brother SDK driver (Bitmap labels) or the
+     * in-house raster encoder (MonoRaster labels).
+     * Used by a single worker thread per job: open, print each label, finish, close.
+     *
+     * @param <L> Label form the printer takes, as produced by the job's LabelRenderer
+     */
+    interface PrinterTarget<L> {
+        void open() throws IOException;
+
+        /**
+         * Print one label. The label is released once this returns, so implementations that
+         * send asynchronously must copy what they need.
+         *
+         * @param cut     Fire the cutter after this label; otherwise the tape feeds on to the next one
+         * @param printed Run once the label has been delivered to the printer, from any thread.
+         *                Not run if delivery fails, whether this call or a later one reports it.
+         */
+        void print(L label, boolean cut, Runnable printed) throws IOException, InterruptedException;
+
+        /**
+         * Wait until every label has been handed to the printer and reported printed
+         */
+        void finish() throws IOException, InterruptedException;
+
+        void close();
+    }
+
+    /**
+     * Produces labels in the form the job's printers take. Called concurrently from worker threads.
+     */
+    interface LabelRenderer<L> {
+        L render(int labelIndex) throws Exception;
+
+        /**
+         * Called once the printer is done with a rendered label; labels that may come from a
+         * cache are left alone
+         */
+        default void release(L label) {
+        }
+    }
+
+    /**
+     * Job progress. Called from worker threads and from the threads printers deliver on.
+     */
+    interface Listener {
+        void onLabelPrinted(int labelIndex, int printedCount, int totalCount);
+        void onPrinterFailed(int printerIndex, String error);
+        void onJobComplete(int totalCount);
+        void onJobFailed(int printedCount, int totalCount, String error);
+    }
+
+    /**
+     * Start printing the given labels of a job on the given printers. Returns immediately.
+     * Labels missing from the list count as already printed, so a resumed job reports
+     * progress against its full size.
+     *
+     * @param cuts Plan of the CutPolicy for exactly these labels
+     */
+    <L> void submit(int totalCount, List<Integer> labels, List<? extends PrinterTarget<L>> printers,
+                    LabelRenderer<L> renderer, CutPolicy.Plan cuts, Listener listener) {
+        ArrayDeque<Integer> pending = new ArrayDeque<>(labels);
+
+        JobState<L> job = new JobState<>(totalCount, totalCount - labels.size(), printers.size(), pending, renderer, cuts, listener);
+        for (int i = 0; i < printers.size(); i++) {
+            int printerIndex = i;
+            PrinterTarget<L> printer = printers.get(i);
+            new Thread(() -> runWorker(job, printerIndex, printer), TAG + "-" + printerIndex).start();
+        }
+    }
+
+    private <L> void runWorker(JobState<L> job, int printerIndex, PrinterTarget<L> printer) {
+        try {
+            printer.open();
+        } catch (IOException e) {
+            printer.close();
+            job.retirePrinter(printerIndex, e.getMessage());
+            return;
+        }
+
+        // Labels this printer has taken but not yet delivered; guarded by job
+        Set<Integer> undelivered = new HashSet<>();
+        try {
+            Integer labelIndex;
+            while ((labelIndex = job.takeNext(undelivered)) != null) {
+                int taken = labelIndex;
+                L label = null;
+                try {
+                    boolean cut = job.isEnding() || job.cuts.cutAfter(labelIndex);
+                    label = job.renderer.render(labelIndex);
+                    printer.print(label, cut, () -> job.labelPrinted(taken, undelivered));
+
+                } catch (IOException e) {
+                    // Hand the labels to another printer and take this one out of rotation
+                    job.requeue(undelivered);
+                    job.retirePrinter(printerIndex, e.getMessage());
+                    return;
+                } catch (InterruptedException e) {
+                    job.requeue(undelivered);
+                    Thread.currentThread().interrupt();
+                    job.retirePrinter(printerIndex, "Печатът беше прекъснат");
+                    return;
+                } catch (Exception e) {
+                    job.requeue(undelivered);
+                    job.retirePrinter(printerIndex, "Изключение при печат: " + e.getMessage());
+                    return;
+                } finally {
+                    // The printer is done with the label
+                    if (label != null) {
+                        job.renderer.release(label);
+                    }
+                }
+            }
+            printer.finish();
+            job.workerFinished();
+        } catch (IOException e) {
+            job.requeue(undelivered);
+            job.retirePrinter(printerIndex, e.getMessage());
+        } catch (InterruptedException e) {
+            job.requeue(undelivered);
+            Thread.currentThread().interrupt();
+            job.retirePrinter(printerIndex, "Печатът беше прекъснат");
+        } finally {
+            printer.close();
+        }
+    }
+
+    /**
+     * Shared progress of one submitted job
+     */
+    private static class JobState<L> {
+        final int totalCount;
+        // Guarded by this
+        private final ArrayDeque<Integer> pending;
+        final LabelRenderer<L> renderer;
+        final CutPolicy.Plan cuts;
+        final Listener listener;
+
+        final AtomicInteger printedCount = new AtomicInteger();
+        final AtomicInteger activeWorkers;
+        private int inFlight = 0;
+        private boolean finished = false;
+
+        JobState(int totalCount, int alreadyPrinted, int workerCount, ArrayDeque<Integer> pending, LabelRenderer<L> renderer,
+                 CutPolicy.Plan cuts, Listener listener) {
+            this.totalCount = totalCount;
+            this.printedCount.set(alreadyPrinted);
+            this.activeWorkers = new AtomicInteger(workerCount);
+            this.pending = pending;
+            this.renderer = renderer;
+            this.cuts = cuts;
+            this.listener = listener;
+        }
+
+        /**
+         * True once fewer labels are queued than printers are running, so the label just taken
+         * may be the last its printer gets
+         */
+        synchronized boolean isEnding() {
+            return pending.size() < activeWorkers.get();
+        }
+
+        /**
+         * Next label to print, or null once nothing is queued or in flight on other printers.
+         * Waits while other printers still hold labels that may be requeued; the worker's own
+         * labels are only delivered by its finish().
+         *
+         * @param undelivered The worker's labels in flight; the label taken is added
+         */
+        synchronized Integer takeNext(Set<Integer> undelivered) throws InterruptedException {
+            while (pending.isEmpty() && inFlight > undelivered.size()) {
+                wait();
+            }
+            Integer labelIndex = pending.poll();
+            if (labelIndex != null) {
+                inFlight++;
+                undelivered.add(labelIndex);
+            }
+            return labelIndex;
+        }
+
+        /**
+         * Put a failed worker's undelivered labels back at the front of the queue, in order
+         */
+        synchronized void requeue(Set<Integer> undelivered) {
+            List<Integer> labels = new ArrayList<>(undelivered);
+            Collections.sort(labels);
+            for (int i = labels.size() - 1; i >= 0; i--) {
+                pending.addFirst(labels.get(i));
+            }
+            inFlight -= labels.size();
+            undelivered.clear();
+            notifyAll();
+        }
+
+        void labelPrinted(int labelIndex, Set<Integer> undelivered) {
+            synchronized (this) {
+                if (!undelivered.remove(labelIndex)) {
+                    // Already requeued for another printer
+                    return;
+                }
+                inFlight--;
+                notifyAll();
+            }
+            int printed = printedCount.incrementAndGet();
+            listener.onLabelPrinted(labelIndex, printed, totalCount);
+        }
+
+        void retirePrinter(int printerIndex, String error) {
+            android.util.Log.w(TAG, "Printer " + printerIndex + " retired: " + error);
+            listener.onPrinterFailed(printerIndex, error);
+            if (activeWorkers.decrementAndGet() == 0) {
+                finish(error);
+            }
+        }
+
+        void workerFinished() {
+            if (activeWorkers.decrementAndGet() == 0) {
+                finish(null);
+            }
+        }
+
+        /**
+         * Called by the last worker to stop; a requeued label means the job could not complete
+         */
+        private synchronized void finish(String lastError) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+
+            int printed = printedCount.get();
+            if (printed >= totalCount) {
+                listener.onJobComplete(totalCount);
+            } else {
+                listener.onJobFailed(printed, totalCount, lastError != null ? lastError : "Няма наличен принтер");
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.labelapp.printer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * PrintSettings - The operator's print settings, stored on the device
+ * Network printers, the direct raster path and what it prints with (resolution, ganging), the
+ * cut policy and the raster cache budget. Read and written from any thread; the page sets them
+ * through the bridge thread. A change that invalidates open printer connections is reported to
+ * the Listener, always on the main thread.
+ */
+final class PrintSettings {
+
+    /**
+     * Changes PrinterManager has to act on. Main thread.
+     */
+    interface Listener {
+        void onNetworkPrintersChanged();
+
+        void onDirectRasterChanged();
+    }
+
+    private static final String PREFS_NAME = "printer_settings";
+    // Network printers (QL-8xx / QL-1xxx with Wi-Fi or Ethernet) configured by IP address
+    private static final String KEY_NETWORK_PRINTERS = "network_printers";
+    private static final String KEY_DIRECT_RASTER = "direct_raster";
+    private static final String KEY_HIGH_RESOLUTION = "high_resolution";
+    private static final String KEY_RASTER_CACHE_BUDGET = "raster_cache_budget";
+    private static final String KEY_CUT_POLICY = "cut_policy";
+    private static final String KEY_GANG_COLUMNS = "gang_columns";
+    private static final String KEY_GANG_GUTTER_MM = "gang_gutter_mm";
+    private static final float DEFAULT_GANG_GUTTER_MM = 2f;
+
+    private final SharedPreferences prefs;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    PrintSettings(Context context, Listener listener) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.listener = listener;
+    }
+
+    /**
+     * IP addresses of the configured network printers
+     */
+    List<String> getNetworkPrinters() {
+        return new ArrayList<>(prefs.getStringSet(KEY_NETWORK_PRINTERS, new HashSet<>()));
+    }
+
+    /**
+     * Replace the configured network printers. They join the pool on the next detection.
+     */
+    void setNetworkPrinters(List<String> addresses) {
+        Set<String> cleaned = new HashSet<>();
+        for (String address : addresses) {
+            if (address != null && !address.trim().isEmpty()) {
+                cleaned.add(address.trim());
+            }
+        }
+        prefs.edit().putStringSet(KEY_NETWORK_PRINTERS, cleaned).apply();
+        mainHandler.post(listener::onNetworkPrintersChanged);
+    }
+
+    /**
+     * Whether labels are encoded in-house and sent as raw raster commands instead of through the SDK.
+     * Off unless the operator turns it on; installs keep printing through the SDK.
+     */
+    boolean isDirectRasterEnabled() {
+        return prefs.getBoolean(KEY_DIRECT_RASTER, false);
+    }
+
+    void setDirectRasterEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_DIRECT_RASTER, enabled).apply();
+        mainHandler.post(listener::onDirectRasterChanged);
+    }
+
+    /**
+     * 300x600 dpi printing on the direct raster path. Slower, sharper small text.
+     */
+    boolean isHighResolutionEnabled() {
+        return isDirectRasterEnabled() && prefs.getBoolean(KEY_HIGH_RESOLUTION, false);
+    }
+
+    void setHighResolutionEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_HIGH_RESOLUTION, enabled).apply();
+    }
+
+    /**
+     * Disk space for rendered label rasters kept between runs (RasterCache), in bytes
+     */
+    long getRasterCacheBudget() {
+        return prefs.getLong(KEY_RASTER_CACHE_BUDGET, RasterCache.DEFAULT_BUDGET_BYTES);
+    }
+
+    /**
+     * Takes effect on the next launch; the caller trims the running cache itself
+     */
+    void setRasterCacheBudget(long bytes) {
+        prefs.edit().putLong(KEY_RASTER_CACHE_BUDGET, bytes).apply();
+    }
+
+    /**
+     * When the cutter fires during a job
+     */
+    CutPolicy getCutPolicy() {
+        return CutPolicy.parse(prefs.getString(KEY_CUT_POLICY, null));
+    }
+
+    void setCutPolicy(CutPolicy policy) {
+        prefs.edit().putString(KEY_CUT_POLICY, policy.toString()).apply();
+    }
+
+    /**
+     * Labels printed side by side across the tape (LabelImposer) on the direct raster path;
+     * 1 prints every label on its own across the roll
+     */
+    int getGangColumns() {
+        if (!isDirectRasterEnabled()) {
+            return 1;
+        }
+        int columns = prefs.getInt(KEY_GANG_COLUMNS, 1);
+        return Math.max(1, Math.min(LabelImposer.MAX_COLUMNS, columns));
+    }
+
+    void setGangColumns(int columns) {
+        prefs.edit().putInt(KEY_GANG_COLUMNS, columns).apply();
+    }
+
+    /**
+     * Blank space between ganged labels, in millimetres
+     */
+    float getGangGutterMm() {
+        return prefs.getFloat(KEY_GANG_GUTTER_MM, DEFAULT_GANG_GUTTER_MM);
+    }
+
+    void setGangGutterMm(float millimetres) {
+        prefs.edit().putFloat(KEY_GANG_GUTTER_MM, Math.max(0f, millimetres)).apply();
+    }
+}
@@ -0,0 +1,557 @@
+package com.labelapp.printer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PrintSpooler - Prints the durable job queue for the whole process
+ * Owns the print queue, the scheduler and the label renderer, so a job keeps printing while
+ * MainActivity is recreated (rotation, theme change) and the new activity finds it running
+ * instead of submitting it a second time. The activity attaches its form to receive progress;
+ * while none is attached, jobs print on and report by toast only.
+ * Imports and exports started from the form run on the spooler's import thread for the same
+ * reason, and report to whichever form is attached when they end.
+ *
+ * Queue state (the active job, paused) belongs to the main thread.
+ */
+final class PrintSpooler {
+
+    // Above this many labels per job, progress toasts are shown every LABEL_TOAST_INTERVAL labels
+    private static final int LABEL_TOAST_INTERVAL = 50;
+
+    private static PrintSpooler instance;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PrinterManager printerManager;
+    private final LabelDrawer labelDrawer;
+    private final PrintScheduler printScheduler = new PrintScheduler();
+
+    // Durable job queue; only the oldest job prints, the rest wait their turn
+    private final PrintJobQueue printQueue;
+    private PrintJobQueue.Job activeJob = null; // main thread only
+    private boolean queuePaused = false; // set when a job stops, cleared on reconnect or a new job
+    // Labels of jobs queued by print(), by job id, until the job starts; main thread only
+    private final Map<Long, LabelPayload> decodedJobs = new HashMap<>();
+
+    // Writes new jobs, packs ganged jobs and saves templates off the main thread
+    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor();
+    // CSV deliveries and snapshots stream on their own thread, one at a time
+    private final ExecutorService importExecutor = Executors.newSingleThreadExecutor();
+
+    // The form showing the spooler's progress
+    private volatile PageEventBatch.Sink host;
+
+    /**
+     * The process's spooler. Main thread.
+     */
+    static synchronized PrintSpooler getInstance(Context context) {
+        if (instance == null) {
+            instance = new PrintSpooler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PrintSpooler(Context context) {
+        this.context = context;
+        printerManager = PrinterManager.getInstance(context);
+        // Low-RAM devices render smaller, 16-bit labels and lease fewer at a time; the pool lives as long as the process
+        MemoryGovernor memoryGovernor = MemoryGovernor.getInstance(context);
+        labelDrawer = new LabelDrawer(memoryGovernor.createPool(), memoryGovernor.getProfile(), context);
+        printQueue = new PrintJobQueue(new File(context.getFilesDir(), "print_queue"));
+
+        printerManager.addCallback(new PrinterManager.PrinterCallback() {
+            @Override
+            public void onStateChanged(PrinterManager.PrinterState state, String message) {
+                // A fresh detection (reconnect, replug) lets a stopped job resume
+                if (state == PrinterManager.PrinterState.INITIALIZING) {
+                    queuePaused = false;
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (activeJob == null && !queuePaused && printQueue.peek() != null) {
+                    toast("Принтерът е свързан! Започва печат...", Toast.LENGTH_SHORT);
+                    processQueue();
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                // Queued jobs stay on disk and start after the next successful detection
+            }
+        });
+    }
+
+    /**
+     * Send progress to this form until it is detached. Main thread.
+     */
+    void attach(PageEventBatch.Sink host) {
+        this.host = host;
+    }
+
+    /**
+     * Stop reporting to a form, unless a newer one has already attached. Main thread.
+     */
+    void detach(PageEventBatch.Sink host) {
+        if (this.host == host) {
+            this.host = null;
+        }
+    }
+
+    /**
+     * Jobs waiting or printing. Any thread.
+     */
+    int getQueuedJobCount() {
+        return printQueue.size();
+    }
+
+    /**
+     * Queue a form or template job and start printing. The caller has decoded the payload; the
+     * job prints those labels rather than decoding it again. The job file is written on the
+     * render executor. Any thread.
+     *
+     * @param message Shown when the job starts at once; one waiting behind another job shows its place instead
+     */
+    void print(String payload, LabelPayload labels, String message) {
+        renderExecutor.execute(() -> {
+            PrintJobQueue.Job job;
+            try {
+                job = printQueue.add(payload, labels.getLabelCount());
+            } catch (IOException e) {
+                mainHandler.post(() -> toast("Грешка: " + e.getMessage(), Toast.LENGTH_LONG));
+                return;
+            }
+            mainHandler.post(() -> {
+                decodedJobs.put(job.id, labels);
+                if (activeJob != null) {
+                    toast("Добавено в опашката (" + printQueue.size() + " задания)", Toast.LENGTH_SHORT);
+                } else {
+                    toast(message, Toast.LENGTH_SHORT);
+                }
+                // A new job is an explicit request to print, so a stopped queue resumes too
+                resume();
+            });
+        });
+    }
+
+    /**
+     * A file to stream an import into before addBulk. Any thread.
+     */
+    File createStagingFile() throws IOException {
+        return printQueue.createStagingFile();
+    }
+
+    /**
+     * Queue an imported delivery staged with createStagingFile; it starts on the next resume(). Any thread.
+     */
+    void addBulk(File stagedLabels, int labelCount) throws IOException {
+        printQueue.addBulk(stagedLabels, labelCount);
+    }
+
+    /**
+     * Print the queue again after a stop. A new job is an explicit request to print, so it
+     * resumes a stopped queue as well. Main thread.
+     */
+    void resume() {
+        queuePaused = false;
+        processQueue();
+    }
+
+    /**
+     * Start the oldest queued job unless one is already printing. Main thread.
+     */
+    void processQueue() {
+        if (activeJob != null || queuePaused) {
+            return;
+        }
+        PrintJobQueue.Job job = printQueue.peek();
+        if (job == null) {
+            return;
+        }
+
+        // Direct raster targets print MonoRasters, the SDK prints bitmaps; only one kind is in use
+        boolean directRaster = printerManager.getSettings().isDirectRasterEnabled();
+        List<PrintScheduler.PrinterTarget<MonoRaster>> rasterPrinters = directRaster
+            ? printerManager.getRasterTargets() : new ArrayList<>();
+        List<PrintScheduler.PrinterTarget<Bitmap>> sdkPrinters = directRaster
+            ? new ArrayList<>() : printerManager.getSdkTargets(context.getCacheDir());
+        if (printerManager.isPrinterReady() && (!rasterPrinters.isEmpty() || !sdkPrinters.isEmpty())) {
+            generateAndPrintLabels(job, rasterPrinters, sdkPrinters);
+        } else {
+            // onSuccess picks the queue up again
+            printerManager.startDetection();
+        }
+    }
+
+    /**
+     * Run an import or export off the main thread. It keeps running when the activity that
+     * started it is destroyed, so it must not hold on to the activity. Any thread.
+     */
+    void runImport(Runnable task) {
+        importExecutor.execute(task);
+    }
+
+    /**
+     * Report how an import or export ended, by toast and to the attached form. Any thread.
+     *
+     * @param queued The import added a job; the queue resumes to print it
+     */
+    void importFinished(String summary, String details, boolean queued) {
+        mainHandler.post(() -> {
+            toast(summary, Toast.LENGTH_LONG);
+            post(PageEventBatch.IMPORT_FINISHED, PageEventBatch.event("summary", summary, "details", details), false);
+            if (queued) {
+                resume();
+            }
+        });
+    }
+
+    /**
+     * Remember a suggestion and tell the form when it is new. Any thread.
+     */
+    void addHistoryValue(HistoryManager.FieldType fieldType, String value) {
+        if (AppStartup.getHistoryManager(context).addValue(fieldType, value)) {
+            post(PageEventBatch.HISTORY, PageEventBatch.event("field", fieldType.name(), "value", value), false);
+        }
+    }
+
+    /**
+     * Print a job on either the direct raster printers or the SDK printers, whichever list is not empty
+     */
+    private void generateAndPrintLabels(PrintJobQueue.Job job, List<PrintScheduler.PrinterTarget<MonoRaster>> rasterPrinters,
+                                        List<PrintScheduler.PrinterTarget<Bitmap>> sdkPrinters) {
+        try {
+            LabelSource labels = openLabels(job);
+
+            // Resume from the first unprinted label of an interrupted job
+            List<Integer> remaining = printQueue.getRemainingLabels(job);
+            int firstUnprinted = printQueue.firstUnprinted(job);
+            activeJob = job;
+
+            int printerCount = rasterPrinters.size() + sdkPrinters.size();
+            String printerInfo = printerCount > 1 ? " на " + printerCount + " принтера" : "";
+            if (firstUnprinted > 0) {
+                toast("Продължаване от етикет " + (firstUnprinted + 1) + "/" + job.labelCount + printerInfo + "...", Toast.LENGTH_SHORT);
+            } else {
+                toast("Генериране на " + job.labelCount + " етикет(и)" + printerInfo + "...", Toast.LENGTH_SHORT);
+            }
+
+            // The raw raster path takes labels already laid out across the tape
+            boolean tapeOrientation = !rasterPrinters.isEmpty();
+            boolean highResolution = printerManager.getSettings().isHighResolutionEnabled();
+
+            CutPolicy cutPolicy = printerManager.getSettings().getCutPolicy();
+            int gangColumns = printerManager.getSettings().getGangColumns();
+            if (tapeOrientation && gangColumns > 1) {
+                printGanged(job, labels, remaining, rasterPrinters, gangColumns, highResolution, cutPolicy.forColumns(gangColumns));
+                return;
+            }
+            CutPolicy.Plan cuts = cutPolicy.plan(remaining, labelIndex -> labels.getLabel(labelIndex).size);
+            PrintScheduler.Listener listener = createPrintListener(job, labels);
+
+            if (tapeOrientation) {
+                PrintScheduler.LabelRenderer<MonoRaster> renderer = labelIndex -> {
+                    // Labels printed before (same content, size and layout) skip drawing
+                    LabelData data = labels.getLabel(labelIndex);
+                    MonoRaster cached = AppStartup.getRasterCache(context).get(data, highResolution);
+                    if (cached != null) {
+                        return cached;
+                    }
+                    return renderCachedRaster(data, highResolution);
+                };
+                printScheduler.submit(job.labelCount, remaining, rasterPrinters, renderer, cuts, listener);
+            } else {
+                PrintScheduler.LabelRenderer<Bitmap> renderer = new PrintScheduler.LabelRenderer<Bitmap>() {
+                    @Override
+                    public Bitmap render(int labelIndex) throws Exception {
+                        LabelData data = labels.getLabel(labelIndex);
+
+                        // LabelDrawer reuses its paints, so printers take turns rendering
+                        synchronized (labelDrawer) {
+                            return labelDrawer.createLabelBitmap(data);
+                        }
+                    }
+
+                    @Override
+                    public void release(Bitmap bitmap) {
+                        labelDrawer.releaseLabelBitmap(bitmap);
+                    }
+                };
+                printScheduler.submit(job.labelCount, remaining, sdkPrinters, renderer, cuts, listener);
+            }
+        } catch (Exception e) {
+            // The stored payload cannot be printed - drop it so the queue is not stuck
+            printQueue.remove(job);
+            activeJob = null;
+            toast("Грешка: " + e.getMessage(), Toast.LENGTH_LONG);
+        }
+    }
+
+    /**
+     * A job's labels: those decoded by print() if it was queued in this process, otherwise
+     * decoded from the queue. Copies of the same size share one LabelData. Imports are read from disk.
+     */
+    private LabelSource openLabels(PrintJobQueue.Job job) throws IOException {
+        LabelPayload decoded = decodedJobs.remove(job.id);
+        if (decoded != null) {
+            return decoded;
+        }
+        return PrintJobQueue.BULK_PAYLOAD.equals(job.payload)
+            ? BulkLabelFile.open(printQueue.getLabelsFile(job))
+            : LabelPayload.decode(job.payload);
+    }
+
+    /**
+     * Print a job as strips of labels side by side across the tape (LabelImposer). Packing
+     * measures every label first, so it runs on the render executor before the strips are
+     * submitted. Only used on the direct raster path.
+     */
+    private void printGanged(PrintJobQueue.Job job, LabelSource labels, List<Integer> remaining,
+                             List<PrintScheduler.PrinterTarget<MonoRaster>> printers, int columns, boolean highResolution,
+                             CutPolicy cutPolicy) {
+        int gutterDots = Math.round(printerManager.getSettings().getGangGutterMm() * QLRasterEncoder.DOTS_PER_MM);
+        int labelDots = Math.round(LabelDrawer.LABEL_WIDTH_MM * QLRasterEncoder.DOTS_PER_MM);
+
+        renderExecutor.execute(() -> {
+            try {
+                LabelImposer imposer = new LabelImposer(QLRasterEncoder.ROLL_62_DOTS, columns, gutterDots, labelDots);
+
+                // Copies of one size share a LabelData, so a form job measures each size once
+                Map<LabelData, Integer> lengths = new IdentityHashMap<>();
+                List<LabelImposer.Strip> strips = imposer.pack(remaining, labelIndex -> {
+                    LabelData data = labels.getLabel(labelIndex);
+                    Integer length = lengths.get(data);
+                    if (length == null) {
+                        synchronized (labelDrawer) {
+                            length = Math.round(labelDrawer.measureLength(data) * imposer.columnDots);
+                        }
+                        lengths.put(data, length);
+                    }
+                    return length;
+                });
+
+                PrintScheduler.LabelRenderer<MonoRaster> renderer = stripIndex -> {
+                    int[] stripLabels = strips.get(stripIndex).labels;
+                    MonoRaster[] rasters = new MonoRaster[stripLabels.length];
+                    for (int i = 0; i < stripLabels.length; i++) {
+                        LabelData data = labels.getLabel(stripLabels[i]);
+                        MonoRaster cached = AppStartup.getRasterCache(context).get(data, highResolution, imposer.columnDots);
+                        rasters[i] = cached != null ? cached : renderColumnRaster(data, imposer.columnDots, highResolution);
+                    }
+                    return imposer.compose(rasters);
+                };
+
+                // A strip's group is the sizes on it
+                List<Integer> stripIndices = LabelImposer.stripIndices(strips);
+                CutPolicy.Plan cuts = cutPolicy.plan(stripIndices, stripIndex -> {
+                    StringBuilder sizes = new StringBuilder();
+                    for (int labelIndex : strips.get(stripIndex).labels) {
+                        sizes.append(labels.getLabel(labelIndex).size).append('\n');
+                    }
+                    return sizes.toString();
+                });
+
+                PrintScheduler.Listener listener = LabelImposer.forStrips(strips, createPrintListener(job, labels),
+                    job.labelCount - remaining.size(), job.labelCount);
+                printScheduler.submit(strips.size(), stripIndices, printers, renderer, cuts, listener);
+            } catch (Exception e) {
+                labels.close();
+                mainHandler.post(() -> jobStopped(job, job.labelCount - remaining.size(), job.labelCount,
+                    "Грешка при подреждане на етикетите: " + e.getMessage()));
+            }
+        });
+    }
+
+    private PrintScheduler.Listener createPrintListener(PrintJobQueue.Job job, LabelSource labels) {
+        return new PrintScheduler.Listener() {
+            @Override
+            public void onLabelPrinted(int labelIndex, int printedCount, int totalCount) {
+                // Persist the cursor before anything else so a crash never reprints this label
+                printQueue.markPrinted(job, labelIndex);
+                StartupTrace.endFirstLabel();
+                // Every label; the page sees at most one per frame
+                post(PageEventBatch.PROGRESS, PageEventBatch.event("printed", printedCount, "total", totalCount), true);
+
+                if (totalCount > LABEL_TOAST_INTERVAL && printedCount % LABEL_TOAST_INTERVAL != 0) {
+                    return;
+                }
+                String currentSize;
+                try {
+                    currentSize = labels.getLabel(labelIndex).size;
+                } catch (Exception e) {
+                    currentSize = "";
+                }
+                String size = currentSize;
+                mainHandler.post(() -> {
+                    toast("Печат на етикет " + printedCount + "/" + totalCount  + " (Размер: " + size + ")", Toast.LENGTH_SHORT);
+                });
+            }
+
+            @Override
+            public void onPrinterFailed(int printerIndex, String error) {
+                mainHandler.post(() -> {
+                    toast("Принтер " + (printerIndex + 1) + ": " + error, Toast.LENGTH_LONG);
+                });
+            }
+
+            @Override
+            public void onJobComplete(int totalCount) {
+                labels.close();
+                mainHandler.post(() -> {
+                    printQueue.remove(job);
+                    activeJob = null;
+                    // After the removal, so the page reads the queue without this job
+                    post(PageEventBatch.JOB, PageEventBatch.event("status", "complete",
+                        "printed", totalCount, "total", totalCount), false);
+                    toast("Всички етикети са отпечатани успешно!", Toast.LENGTH_LONG);
+                    // Imported deliveries would flood the suggestion history, only form jobs are saved
+                    if (labels instanceof LabelPayload) {
+                        saveHistoryFromLabel(((LabelPayload) labels).getBaseLabel());
+                        saveTemplate(job.payload);
+                    }
+                    processQueue();
+                });
+            }
+
+            @Override
+            public void onJobFailed(int printedCount, int totalCount, String error) {
+                labels.close();
+                mainHandler.post(() -> jobStopped(job, printedCount, totalCount, error));
+            }
+        };
+    }
+
+    /**
+     * A job stopped before all its labels printed. It stays queued and resumes from its first
+     * unprinted label after reconnecting, unless it has used up its attempts; then it is dropped
+     * and the jobs behind it print. Main thread.
+     */
+    private void jobStopped(PrintJobQueue.Job job, int printedCount, int totalCount, String error) {
+        activeJob = null;
+        if (printQueue.recordFailedAttempt(job)) {
+            post(PageEventBatch.JOB, PageEventBatch.event("status", "dropped",
+                "printed", printedCount, "total", totalCount, "error", error), false);
+            toast("Заданието е премахнато след " + PrintJobQueue.MAX_FAILED_ATTEMPTS + " неуспешни опита: " + error,
+                Toast.LENGTH_LONG);
+            processQueue();
+            return;
+        }
+        post(PageEventBatch.JOB, PageEventBatch.event("status", "failed",
+            "printed", printedCount, "total", totalCount, "error", error), false);
+        queuePaused = true;
+        toast("Печатът спря след " + printedCount + "/" + totalCount + " етикета: " + error
+            + ". Ще продължи след повторно свързване.", Toast.LENGTH_LONG);
+    }
+
+    private void saveHistoryFromLabel(LabelData label) {
+        // Save to history after successful printing of all labels
+        try {
+            String manufacturer = label.manufacturer;
+            String importer = label.importer;
+            String product = label.product;
+
+            if (!manufacturer.trim().isEmpty()) {
+                addHistoryValue(HistoryManager.FieldType.MANUFACTURER, manufacturer.trim());
+            }
+            if (!importer.trim().isEmpty()) {
+                addHistoryValue(HistoryManager.FieldType.IMPORTER, importer.trim());
+            }
+            if (!product.trim().isEmpty()) {
+                addHistoryValue(HistoryManager.FieldType.PRODUCT, product.trim());
+            }
+        } catch (Exception e) {
+            // Log but don't show error to user for history saving
+        }
+    }
+
+    /**
+     * Draw one label across the tape as a print raster and keep it in the disk cache.
+     * Called from printer threads and the render executor.
+     */
+    private MonoRaster renderCachedRaster(LabelData data, boolean highResolution) throws InterruptedException {
+        MonoRaster raster;
+        synchronized (labelDrawer) {
+            raster = labelDrawer.createTapeRaster(data, QLRasterEncoder.ROLL_62_DOTS, highResolution);
+        }
+        AppStartup.getRasterCache(context).put(data, highResolution, raster);
+        return raster;
+    }
+
+    /**
+     * Draw one label upright as a column of a ganged strip and keep its raster in the disk cache
+     */
+    private MonoRaster renderColumnRaster(LabelData data, int columnDots, boolean highResolution) throws InterruptedException {
+        MonoRaster raster;
+        synchronized (labelDrawer) {
+            raster = labelDrawer.createColumnRaster(data, columnDots, highResolution);
+        }
+        AppStartup.getRasterCache(context).put(data, highResolution, columnDots, raster);
+        return raster;
+    }
+
+    /**
+     * Keep a printed form job as a template and pre-render rasters missing from the cache, in the background
+     */
+    private void saveTemplate(String payload) {
+        boolean directRaster = printerManager.getSettings().isDirectRasterEnabled();
+        boolean highResolution = printerManager.getSettings().isHighResolutionEnabled();
+        renderExecutor.execute(() -> {
+            TemplateManager.Template template;
+            try {
+                template = AppStartup.getTemplateManager(context).save(payload);
+            } catch (Exception e) {
+                // A missing template only costs a re-render on the next print
+                return;
+            }
+            if (!directRaster) {
+                return;
+            }
+            for (String size : TemplateManager.distinctSizes(template)) {
+                LabelData data = template.labels.getLabel(template.getSizes().indexOf(size));
+                if (AppStartup.getRasterCache(context).contains(data, highResolution)) {
+                    continue;
+                }
+                try {
+                    renderCachedRaster(data, highResolution);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * Pass an event to the attached form, if any. Any thread.
+     */
+    void post(String type, JSONObject event, boolean latestOnly) {
+        PageEventBatch.Sink current = host;
+        if (current != null) {
+            current.post(type, event, latestOnly);
+        }
+    }
+
+    /**
+     * Main thread; shown over whatever activity is in front
+     */
+    private void toast(String message, int duration) {
+        Toast.makeText(context, message, duration).show();
+    }
+}
@@ -5,8 +5,12 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.core.content.ContextCompat;
 
@@ -14,8 +18,23 @@ import com.brother.sdk.lmprinter.Channel;
 import com.brother.sdk.lmprinter.PrinterSearchResult;
 import com.brother.sdk.lmprinter.PrinterSearcher;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * PrinterManager - Finds the attached and configured Brother printers and keeps them ready
+ * Detection is a state machine confined to the main thread: requests from other threads are
+ * posted there, and the USB search runs on one background thread whose result is posted back.
+ * Every step is published as an immutable Status, read from any thread through getStatus,
+ * and reported to every registered callback, so the welcome screen and the form both see it.
+ */
 public class PrinterManager {
     
     private static final String ACTION_USB_PERMISSION = "com.labelapp.printer.USB_PERMISSION";
@@ -23,18 +42,50 @@ public class PrinterManager {
     // Singleton instance
     private static PrinterManager instance;
     
-    private Context context;
-    private UsbManager usbManager;
-    private PrinterCallback callback;
-    private Channel printerChannel = null;
+    private final Context context;
+    private final UsbManager usbManager;
+    private final UsbPermissionReceiver usbReceiver;
+    private final CopyOnWriteArrayList<PrinterCallback> callbacks = new CopyOnWriteArrayList<>();
     
-    // Simple state tracking
-    private Context activityContext;
+    // Last published state; replaced on the main thread only
+    private volatile Status status = new Status(PrinterState.INITIALIZING, "", Collections.emptyList(), Collections.emptyList(), 0);
+    
+    // Main thread only, like the permission and handshake fields below.
+    // The permission receiver is registered on the application context, so it outlives the
+    // activity that started detection and the result still arrives after it is destroyed
+    private boolean receiverRegistered = false;
+    // Detection coordination - concurrent requests share one detection run
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean detectionInProgress = false;
+    // Bumped when a run starts or is abandoned; search results of another run are dropped
+    private int detectionRun = 0;
+    // One USB search at a time
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    
+    // Readiness cache - devices are trusted for this long after they were last confirmed attached
+    private static final long CHANNEL_CACHE_TTL_MS = 5 * 60 * 1000; // 5 minutes
     
     // USB permission retry mechanism
     private int permissionRetryCount = 0;
     private static final int MAX_PERMISSION_RETRIES = 3;
-    private android.os.Handler retryHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+    private static final long RETRY_BASE_DELAY_MS = 250; // doubled per retry
+    // Detection gives up if the permission dialog never answers, so it can be started again
+    private static final long PERMISSION_DIALOG_TIMEOUT_MS = 2 * 60 * 1000;
+    
+    // Adaptive permission handshake - proceed as soon as hasPermission() is true,
+    // short exponential polling is only a fallback for slow devices
+    private static final long MIN_POLL_DELAY_MS = 25;
+    private static final long MAX_POLL_DELAY_MS = 800;
+    private static final long PERMISSION_POLL_TIMEOUT_MS = 5000;
+    private static final String HANDSHAKE_PREFS_NAME = "printer_handshake";
+    private final PrintSettings settings;
+    
+    // Raw raster connections, kept open between jobs and keyed by USB device name or IP address
+    private final Map<String, RasterConnection> rasterConnections = new HashMap<>();
+    
+    private long permissionRequestedAt = 0;
+    private UsbDevice pendingPermissionDevice = null;
+    private final SharedPreferences handshakePrefs;
     
     public enum PrinterState {
         INITIALIZING,
@@ -44,14 +95,53 @@ public class PrinterManager {
         ERROR
     }
     
+    /**
+     * Detection progress. Called on the main thread, for every published Status in order.
+     */
     public interface PrinterCallback {
         void onStateChanged(PrinterState state, String message);
         void onSuccess();
         void onError(String error);
     }
     
+    /**
+     * One step of detection and the printers it found. Immutable; a new one is published per step.
+     */
+    public static final class Status {
+        public final PrinterState state;
+        public final String message;
+        // Channels to every detected printer, USB first; empty until detection succeeds or once the cache is dropped
+        final List<Channel> channels;
+        // Attached USB printers behind the channels, and when they were last confirmed attached
+        final List<UsbDevice> devices;
+        final long confirmedAt;
+        
+        Status(PrinterState state, String message, List<Channel> channels, List<UsbDevice> devices, long confirmedAt) {
+            this.state = state;
+            this.message = message;
+            this.channels = Collections.unmodifiableList(new ArrayList<>(channels));
+            this.devices = Collections.unmodifiableList(new ArrayList<>(devices));
+            this.confirmedAt = confirmedAt;
+        }
+        
+        /**
+         * The next step of a detection, keeping the printers found so far
+         */
+        Status next(PrinterState nextState, String nextMessage) {
+            return new Status(nextState, nextMessage, channels, devices, confirmedAt);
+        }
+        
+        Status withoutPrinters() {
+            return new Status(state, message, Collections.emptyList(), Collections.emptyList(), 0);
+        }
+        
+        Status confirmed(long now) {
+            return new Status(state, message, channels, devices, now);
+        }
+    }
+    
     // Singleton getInstance method
-    public static PrinterManager getInstance(Context context) {
+    public static synchronized PrinterManager getInstance(Context context) {
         if (instance == null) {
             instance = new PrinterManager(context.getApplicationContext());
         }
@@ -61,185 +151,335 @@ public class PrinterManager {
     private PrinterManager(Context context) {
         this.context = context.getApplicationContext();
         this.usbManager = (UsbManager) this.context.getSystemService(Context.USB_SERVICE);
+        // USB permission result - acted on as soon as the dialog is answered
+        this.usbReceiver = new UsbPermissionReceiver(
+            () -> pendingPermissionDevice != null && usbManager.hasPermission(pendingPermissionDevice),
+            permissionGranted -> {
+                // Unregister receiver immediately
+                unregisterUsbReceiver();
+                
+                handlePermissionResult(permissionGranted);
+            });
+        this.handshakePrefs = this.context.getSharedPreferences(HANDSHAKE_PREFS_NAME, Context.MODE_PRIVATE);
+        this.settings = new PrintSettings(this.context, new PrintSettings.Listener() {
+            @Override
+            public void onNetworkPrintersChanged() {
+                invalidateCache();
+            }
+            
+            @Override
+            public void onDirectRasterChanged() {
+                // The SDK and the raw connections cannot share a claimed USB interface
+                closeRasterConnections();
+            }
+        });
+        registerUsbAttachReceiver();
     }
     
-    public void setCallback(PrinterCallback callback) {
-        this.callback = callback;
+    /**
+     * Report detection to this callback as well, until it is removed. Any thread.
+     */
+    public void addCallback(PrinterCallback callback) {
+        callbacks.addIfAbsent(callback);
     }
     
-    public void setActivityContext(Context activityContext) {
-        this.activityContext = activityContext;
+    public void removeCallback(PrinterCallback callback) {
+        callbacks.remove(callback);
     }
     
     /**
-     * Calculate dynamic delay based on device performance and API level
-     * Older/slower devices get longer delays
+     * The last published detection state. Any thread.
      */
-    private long calculatePermissionDelay() {
-        int apiLevel = android.os.Build.VERSION.SDK_INT;
-        
-        // Base delay increases for older Android versions
-        long baseDelay = 2000; // 2 seconds default
-        
-        if (apiLevel < 26) { // Pre-Android 8.0
-            baseDelay = 4000; // 4 seconds
-        } else if (apiLevel < 29) { // Pre-Android 10
-            baseDelay = 3000; // 3 seconds
+    public Status getStatus() {
+        return status;
+    }
+    
+    /**
+     * Make status the current state and report it to every callback. Main thread.
+     */
+    private void publish(Status next) {
+        status = next;
+        for (PrinterCallback callback : callbacks) {
+            switch (next.state) {
+                case SUCCESS:
+                    callback.onSuccess();
+                    break;
+                case ERROR:
+                    callback.onError(next.message);
+                    break;
+                default:
+                    callback.onStateChanged(next.state, next.message);
+                    break;
+            }
         }
+    }
+    
+    private void publish(PrinterState state, String message) {
+        publish(status.next(state, message));
+    }
+    
+    private static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+    
+    /**
+     * First fallback poll delay for a device model, learned from previous handshakes.
+     * Models that were ready instantly are polled almost immediately.
+     */
+    private long getLearnedPollDelay(UsbDevice device) {
+        long learned = handshakePrefs.getLong(getHandshakeKey(device), MIN_POLL_DELAY_MS);
+        return Math.max(MIN_POLL_DELAY_MS, Math.min(learned, MAX_POLL_DELAY_MS));
+    }
+    
+    /**
+     * Persist how long the device took to become usable after the permission broadcast.
+     * Stored as a moving average so one slow start does not penalise later ones.
+     */
+    private void recordHandshakeTime(UsbDevice device, long settleMs) {
+        String key = getHandshakeKey(device);
+        long previous = handshakePrefs.getLong(key, settleMs);
+        long average = (previous * 3 + settleMs) / 4;
+        handshakePrefs.edit().putLong(key, average).apply();
         
-        // Add exponential backoff for retries
-        long retryMultiplier = (long) Math.pow(1.5, permissionRetryCount);
-        
-        return Math.min(baseDelay * retryMultiplier, 10000); // Cap at 10 seconds
+        android.util.Log.d("PrinterManager", "USB handshake ready in " + (System.currentTimeMillis() - permissionRequestedAt) +
+            " ms (settle " + settleMs + " ms, learned " + average + " ms) for " + key);
     }
     
+    private String getHandshakeKey(UsbDevice device) {
+        return "settle_" + device.getVendorId() + "_" + device.getProductId();
+    }
+    
+    /**
+     * Request a ready printer. Served from the readiness cache when possible,
+     * otherwise joins the detection already in progress or starts a new one. Any thread.
+     */
     public void startDetection() {
+        if (!isMainThread()) {
+            mainHandler.post(this::startDetection);
+            return;
+        }
+        
+        if (isPrinterReady()) {
+            // Callbacks that joined since the last detection hear about the ready printer too
+            publish(status.next(PrinterState.SUCCESS, "Принтерът е готов"));
+            return;
+        }
+        
+        if (detectionInProgress) {
+            // The running detection reports to every callback
+            return;
+        }
+        
+        detectionInProgress = true;
+        detectionRun++;
         // Reset retry count for new detection attempt
         permissionRetryCount = 0;
         attemptDetection();
     }
     
     private void attemptDetection() {
-        callback.onStateChanged(PrinterState.INITIALIZING, permissionRetryCount > 0 ? 
+        publish(PrinterState.INITIALIZING, permissionRetryCount > 0 ?
             "Повторен опит за свързване..." : "Инициализиране...");
-        
-        // Find Brother device
-        UsbDevice brotherDevice = findBrotherDevice();
-        if (brotherDevice == null) {
-            callback.onError("Няма намерен Brother принтер. Моля, свържете QL-800 чрез USB.");
+        continueDetection();
+    }
+    
+    /**
+     * Walk all attached Brother devices, requesting permission for each one that lacks it,
+     * then search once every device is accessible
+     */
+    private void continueDetection() {
+        // Find Brother devices
+        List<UsbDevice> brotherDevices = findBrotherDevices();
+        if (brotherDevices.isEmpty()) {
+            if (!settings.getNetworkPrinters().isEmpty()) {
+                // No USB printer, but network printers are configured
+                completeDetection(new ArrayList<>(), brotherDevices);
+                return;
+            }
+            failDetection("Няма намерен Brother принтер. Моля, свържете QL-800 чрез USB.");
             return;
         }
         
-        // Check if we already have permission
-        if (usbManager.hasPermission(brotherDevice)) {
-            // We have permission, search directly
-            performPrinterSearch();
-        } else {
-            // Need permission - register receiver and request
-            registerUsbReceiver();
-            requestUsbPermission(brotherDevice);
+        // Need permission for a device - register receiver and request, detection continues from the receiver
+        for (UsbDevice device : brotherDevices) {
+            if (!usbManager.hasPermission(device)) {
+                registerUsbReceiver();
+                requestUsbPermission(device);
+                return;
+            }
         }
+        
+        // We have permission for every device, search directly
+        performPrinterSearch(brotherDevices);
     }
     
-    private UsbDevice findBrotherDevice() {
+    private List<UsbDevice> findBrotherDevices() {
+        List<UsbDevice> brotherDevices = new ArrayList<>();
         HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
         for (UsbDevice device : deviceList.values()) {
-            String deviceName = device.getDeviceName();
-            if (deviceName != null && (deviceName.contains("QL-") || device.getVendorId() == 0x04f9)) {
-                return device;
+            if (isBrotherDevice(device)) {
+                brotherDevices.add(device);
             }
         }
-        return null;
+        return brotherDevices;
+    }
+    
+    private boolean isBrotherDevice(UsbDevice device) {
+        if (device == null) {
+            return false;
+        }
+        String deviceName = device.getDeviceName();
+        return (deviceName != null && deviceName.contains("QL-")) || device.getVendorId() == 0x04f9;
     }
     
     private void requestUsbPermission(UsbDevice device) {
-        callback.onStateChanged(PrinterState.REQUESTING_PERMISSION, "Моля, разрешете достъп до USB устройството");
+        publish(PrinterState.REQUESTING_PERMISSION, "Моля, разрешете достъп до USB устройството");
         
-        Context contextToUse = activityContext != null ? activityContext : context;
-        PendingIntent permissionIntent = PendingIntent.getBroadcast(contextToUse, 0, new Intent(ACTION_USB_PERMISSION), PendingIntent.FLAG_IMMUTABLE);
+        // Mutable so UsbManager can add EXTRA_PERMISSION_GRANTED; explicit, as Android 14 requires of mutable intents
+        Intent intent = new Intent(ACTION_USB_PERMISSION).setPackage(context.getPackageName());
+        int flags = android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S ? PendingIntent.FLAG_MUTABLE : 0;
+        PendingIntent permissionIntent = PendingIntent.getBroadcast(context, 0, intent, flags);
         
+        permissionRequestedAt = System.currentTimeMillis();
+        pendingPermissionDevice = device;
         usbManager.requestPermission(device, permissionIntent);
+        mainHandler.postDelayed(permissionTimeout, PERMISSION_DIALOG_TIMEOUT_MS);
     }
     
-    private void performPrinterSearch() {
-        callback.onStateChanged(PrinterState.SEARCHING_PRINTER, "Търсене на принтер...");
+    // Watchdog for a permission result that never arrives
+    private final Runnable permissionTimeout = () -> {
+        unregisterUsbReceiver();
+        failDetection("Няма отговор на заявката за достъп до USB. Опитайте отново.");
+    };
+    
+    private void performPrinterSearch(List<UsbDevice> devices) {
+        publish(PrinterState.SEARCHING_PRINTER, "Търсене на принтер...");
         
-        new Thread(() -> {
+        int run = detectionRun;
+        searchExecutor.execute(() -> {
             try {
                 PrinterSearchResult result = PrinterSearcher.startUSBSearch(context);
                 
-                android.os.Handler mainHandler = new android.os.Handler(android.os.Looper.getMainLooper());
                 mainHandler.post(() -> {
+                    if (run != detectionRun) {
+                        // Cleaned up or superseded while searching
+                        return;
+                    }
                     if (result.getError().getCode() == com.brother.sdk.lmprinter.PrinterSearchError.ErrorCode.NoError) {
                         if (result.getChannels().isEmpty()) {
-                            callback.onError("Няма намерени Brother принтери по USB. Моля, проверете връзката.");
+                            failDetection("Няма намерени Brother принтери по USB. Моля, проверете връзката.");
                         } else {
-                            printerChannel = result.getChannels().get(0);
-                            callback.onSuccess();
+                            completeDetection(result.getChannels(), devices);
                         }
                     } else {
-                        callback.onError("Грешка при търсене на принтери: " + result.getError().getCode());
+                        failDetection("Грешка при търсене на принтери: " + result.getError().getCode());
                     }
                 });
                 
             } catch (Exception e) {
-                android.os.Handler mainHandler = new android.os.Handler(android.os.Looper.getMainLooper());
                 mainHandler.post(() -> {
-                    callback.onError("Изключение при търсене на принтер: " + e.getMessage());
+                    if (run == detectionRun) {
+                        failDetection("Изключение при търсене на принтер: " + e.getMessage());
+                    }
                 });
             }
-        }).start();
+        });
     }
     
     private void registerUsbReceiver() {
+        if (receiverRegistered) {
+            // Still waiting for an earlier request on this run
+            return;
+        }
         try {
-            Context contextToUse = activityContext != null ? activityContext : context;
             IntentFilter filter = new IntentFilter(ACTION_USB_PERMISSION);
             
             if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
-                androidx.core.content.ContextCompat.registerReceiver(contextToUse, usbReceiver, filter, androidx.core.content.ContextCompat.RECEIVER_NOT_EXPORTED);
+                androidx.core.content.ContextCompat.registerReceiver(context, usbReceiver, filter, androidx.core.content.ContextCompat.RECEIVER_NOT_EXPORTED);
             } else {
-                contextToUse.registerReceiver(usbReceiver, filter);
+                context.registerReceiver(usbReceiver, filter);
             }
+            receiverRegistered = true;
         } catch (Exception e) {
             android.util.Log.e("PrinterManager", "Failed to register USB receiver: " + e.getMessage());
         }
     }
     
     private void unregisterUsbReceiver() {
+        // The dialog answered or detection was abandoned
+        mainHandler.removeCallbacks(permissionTimeout);
+        if (!receiverRegistered) {
+            return;
+        }
         try {
-            Context contextToUse = activityContext != null ? activityContext : context;
-            contextToUse.unregisterReceiver(usbReceiver);
+            context.unregisterReceiver(usbReceiver);
         } catch (Exception e) {
-            // Ignore - receiver not registered
+            // Ignore - already unregistered
         }
+        receiverRegistered = false;
     }
     
-    // Enhanced USB Permission BroadcastReceiver with dynamic delay and retry logic
-    private final BroadcastReceiver usbReceiver = new BroadcastReceiver() {
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if (ACTION_USB_PERMISSION.equals(action)) {
-                boolean permissionGranted = intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false);
-                
-                // Unregister receiver immediately
-                unregisterUsbReceiver();
-                
-                // Use dynamic delay based on device performance
-                long delay = calculatePermissionDelay();
-                
-                String delayMessage = permissionRetryCount > 0 ? 
-                    "Изчакване за отговор (" + (delay / 1000) + " сек)..." : 
-                    "Обработване на разрешението...";
-                callback.onStateChanged(PrinterState.REQUESTING_PERMISSION, delayMessage);
-                
-                // Wait dynamically calculated time then act on the result
-                retryHandler.postDelayed(() -> {
-                    handlePermissionResult(permissionGranted);
-                }, delay);
-            }
-        }
-    };
-    
     /**
      * Handle permission result with retry logic
      */
     private void handlePermissionResult(boolean permissionGranted) {
+        if (!detectionInProgress) {
+            // The detection was cleaned up while the dialog was open
+            return;
+        }
         if (permissionGranted) {
-            // Permission granted - verify device is still available and search
-            UsbDevice brotherDevice = findBrotherDevice();
-            if (brotherDevice != null && usbManager.hasPermission(brotherDevice)) {
-                performPrinterSearch();
-            } else {
-                // Device disappeared or permission lost - retry if possible
+            publish(PrinterState.REQUESTING_PERMISSION, "Обработване на разрешението...");
+            
+            UsbDevice brotherDevice = findPendingPermissionDevice();
+            if (brotherDevice == null) {
+                // Device disappeared - retry if possible
                 attemptRetryOrFail("USB устройството не е достъпно след получаване на разрешение.");
+                return;
             }
+            
+            // Check right away, fall back to polling with the learned delay for this model
+            awaitPermission(getLearnedPollDelay(brotherDevice), System.currentTimeMillis(), true);
         } else {
             // Permission denied - retry if possible
             attemptRetryOrFail("Достъпът до USB бе отказан.");
         }
     }
     
+    /**
+     * Proceed as soon as the granted permission is visible through UsbManager.
+     * Re-checks with exponential backoff until PERMISSION_POLL_TIMEOUT_MS has passed.
+     */
+    private void awaitPermission(long nextDelay, long grantedAt, boolean firstCheck) {
+        UsbDevice brotherDevice = findPendingPermissionDevice();
+        if (brotherDevice != null && usbManager.hasPermission(brotherDevice)) {
+            recordHandshakeTime(brotherDevice, firstCheck ? 0 : System.currentTimeMillis() - grantedAt);
+            // Each printer gets its own retry budget
+            permissionRetryCount = 0;
+            continueDetection();
+            return;
+        }
+        
+        if (brotherDevice == null || System.currentTimeMillis() - grantedAt >= PERMISSION_POLL_TIMEOUT_MS) {
+            // Device disappeared or permission never became usable - retry if possible
+            attemptRetryOrFail("USB устройството не е достъпно след получаване на разрешение.");
+            return;
+        }
+        
+        mainHandler.postDelayed(() -> {
+            awaitPermission(Math.min(nextDelay * 2, MAX_POLL_DELAY_MS), grantedAt, false);
+        }, nextDelay);
+    }
+    
+    /**
+     * Look up the device permission was requested for, if it is still attached
+     */
+    private UsbDevice findPendingPermissionDevice() {
+        if (pendingPermissionDevice == null) {
+            return null;
+        }
+        return usbManager.getDeviceList().get(pendingPermissionDevice.getDeviceName());
+    }
+    
     /**
      * Attempt retry or show final error
      */
@@ -249,43 +489,244 @@ public class PrinterManager {
             
             // Show retry message
             String retryMessage = baseErrorMessage + " Повторен опит " + permissionRetryCount + "/" + MAX_PERMISSION_RETRIES + "...";
-            callback.onStateChanged(PrinterState.INITIALIZING, retryMessage);
+            publish(PrinterState.INITIALIZING, retryMessage);
             
-            // Wait before retry to avoid overwhelming the system
-            retryHandler.postDelayed(() -> {
+            // Short exponential backoff before retry to avoid overwhelming the system
+            long retryDelay = RETRY_BASE_DELAY_MS << (permissionRetryCount - 1); // 250ms, 500ms, 1s
+            mainHandler.postDelayed(() -> {
                 attemptDetection();
-            }, 1000); // 1 second before retry
+            }, retryDelay);
             
         } else {
             // All retries exhausted
             String finalError = baseErrorMessage + " Опитани са " + MAX_PERMISSION_RETRIES + " пъти. " +
                 "Моля, рестартирайте приложението или проверете USB връзката.";
-            callback.onError(finalError);
+            failDetection(finalError);
         }
     }
     
+    /**
+     * Finish the running detection with the found channels and cache them
+     */
+    private void completeDetection(List<Channel> channels, List<UsbDevice> devices) {
+        List<Channel> printerChannels = new ArrayList<>(channels);
+        for (String address : settings.getNetworkPrinters()) {
+            printerChannels.add(Channel.newWifiChannel(address));
+        }
+        detectionInProgress = false;
+        publish(new Status(PrinterState.SUCCESS, "Принтерът е готов", printerChannels, devices, System.currentTimeMillis()));
+    }
+    
+    /**
+     * Finish the running detection with an error
+     */
+    private void failDetection(String error) {
+        detectionInProgress = false;
+        publish(new Status(PrinterState.ERROR, error, Collections.emptyList(), Collections.emptyList(), 0));
+    }
+    
+    /**
+     * Drop the cached channels and devices. Main thread.
+     */
+    private void invalidateCache() {
+        status = status.withoutPrinters();
+        closeRasterConnections();
+    }
+    
+    private void closeRasterConnections() {
+        synchronized (rasterConnections) {
+            for (RasterConnection connection : rasterConnections.values()) {
+                connection.close();
+            }
+            rasterConnections.clear();
+        }
+    }
+    
+    private boolean isCachedDevice(UsbDevice device) {
+        for (UsbDevice cached : status.devices) {
+            if (cached.getDeviceName().equals(device.getDeviceName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void registerUsbAttachReceiver() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        
+        // Registered once on the application context for the lifetime of the singleton
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
+            ContextCompat.registerReceiver(context, usbAttachReceiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(usbAttachReceiver, filter);
+        }
+    }
+    
+    // Keeps the readiness cache in sync with the USB bus instead of polling
+    private final BroadcastReceiver usbAttachReceiver = new BroadcastReceiver() {
+        public void onReceive(Context context, Intent intent) {
+            UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+            if (!isBrotherDevice(device)) {
+                return;
+            }
+            
+            String action = intent.getAction();
+            if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
+                if (isCachedDevice(device)) {
+                    invalidateCache();
+                    if (callbacks.isEmpty()) {
+                        return;
+                    }
+                    if (findBrotherDevices().isEmpty() && settings.getNetworkPrinters().isEmpty()) {
+                        publish(new Status(PrinterState.ERROR, "Принтерът беше изключен. Моля, проверете USB връзката.",
+                            Collections.emptyList(), Collections.emptyList(), 0));
+                    } else {
+                        // Other printers are still attached - rebuild the pool without the removed one
+                        startDetection();
+                    }
+                }
+            } else if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(action)) {
+                if (!callbacks.isEmpty() && !isCachedDevice(device)) {
+                    // A new printer joins the pool
+                    invalidateCache();
+                    startDetection();
+                }
+            }
+        }
+    };
+    
     public Channel getPrinterChannel() {
-        return printerChannel;
+        List<Channel> channels = status.channels;
+        return channels.isEmpty() ? null : channels.get(0);
+    }
+    
+    /**
+     * The operator's print settings. Any thread.
+     */
+    PrintSettings getSettings() {
+        return settings;
     }
     
+    /**
+     * One Brother SDK target per detected printer, for PrintScheduler.
+     * Used when direct raster is off.
+     */
+    public List<PrintScheduler.PrinterTarget<Bitmap>> getSdkTargets(File workDir) {
+        List<PrintScheduler.PrinterTarget<Bitmap>> targets = new ArrayList<>();
+        for (Channel channel : status.channels) {
+            targets.add(new SdkPrinterTarget(channel, workDir));
+        }
+        return targets;
+    }
+    
+    /**
+     * One direct raster target per detected printer, for PrintScheduler.
+     * The targets reuse their USB / TCP connection across jobs.
+     */
+    public List<PrintScheduler.PrinterTarget<MonoRaster>> getRasterTargets() {
+        // One snapshot, so the targets match a single detection
+        Status current = status;
+        List<PrintScheduler.PrinterTarget<MonoRaster>> targets = new ArrayList<>();
+        boolean highResolution = settings.isHighResolutionEnabled();
+        synchronized (rasterConnections) {
+            for (UsbDevice device : current.devices) {
+                RasterConnection connection = rasterConnections.get(device.getDeviceName());
+                if (connection == null) {
+                    connection = new UsbPrinterConnection(usbManager, device);
+                    rasterConnections.put(device.getDeviceName(), connection);
+                }
+                targets.add(new RasterPrinterTarget(connection, highResolution));
+            }
+            if (!current.channels.isEmpty()) {
+                for (String address : settings.getNetworkPrinters()) {
+                    RasterConnection connection = rasterConnections.get(address);
+                    if (connection == null) {
+                        connection = new NetworkPrinterConnection(address, NetworkPrinterConnection.DEFAULT_PORT,
+                            MemoryGovernor.getInstance(context).getProfile().queuedPages);
+                        rasterConnections.put(address, connection);
+                    }
+                    targets.add(new RasterPrinterTarget(connection, highResolution));
+                }
+            }
+        }
+        return targets;
+    }
+    
+    /**
+     * Channels to every detected printer, USB first, in detection order
+     */
+    public List<Channel> getPrinterChannels() {
+        return status.channels;
+    }
+    
+    /**
+     * Abandon the running detection and drop the printers. Main thread.
+     */
     public void cleanup() {
         unregisterUsbReceiver();
         
-        // Cancel any pending retry operations
-        if (retryHandler != null) {
-            retryHandler.removeCallbacksAndMessages(null);
-        }
+        // Cancel pending retries and polls; a search still running is ignored when it returns
+        mainHandler.removeCallbacksAndMessages(null);
+        detectionRun++;
         
-        printerChannel = null;
+        invalidateCache();
+        detectionInProgress = false;
         permissionRetryCount = 0;
     }
     
+    /**
+     * Whether a cached channel can be used without a new search. Any thread.
+     * Within the TTL the cache is trusted (attach/detach broadcasts keep it current);
+     * after that the device list is re-checked, which is far cheaper than a USB search.
+     */
     public boolean isPrinterReady() {
-        return printerChannel != null;
+        Status current = status;
+        if (current.channels.isEmpty()) {
+            return false;
+        }
+        
+        long now = System.currentTimeMillis();
+        if (now - current.confirmedAt < CHANNEL_CACHE_TTL_MS) {
+            return true;
+        }
+        
+        HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
+        boolean attached = true;
+        for (UsbDevice cached : current.devices) {
+            UsbDevice device = deviceList.get(cached.getDeviceName());
+            if (device == null || !usbManager.hasPermission(device)) {
+                attached = false;
+                break;
+            }
+        }
+        
+        // Only the main thread replaces the status, and only if no detection has replaced it since
+        boolean ready = attached;
+        Runnable update = () -> {
+            if (status == current) {
+                if (ready) {
+                    status = current.confirmed(now);
+                } else {
+                    invalidateCache();
+                }
+            }
+        };
+        if (isMainThread()) {
+            update.run();
+        } else {
+            mainHandler.post(update);
+        }
+        return ready;
     }
     
     public void redetectPrinter() {
-        printerChannel = null;
+        if (!isMainThread()) {
+            mainHandler.post(this::redetectPrinter);
+            return;
+        }
+        invalidateCache();
         startDetection();
     }
 }
\ No newline at end of file
@@ -0,0 +1,289 @@
+package com.labelapp.printer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * QLRasterEncoder - Builds the Brother QL raster command stream for 1-bit label images
+ * Replaces the SDK image pipeline (scale, rotate, dither on every call): labels arrive already
+ * rotated and thresholded at the 62mm roll dot width and are only packed into raster lines.
+ * Blank lines are sent as a single zero-line command and the rest are PackBits (TIFF) compressed.
+ *
+ * Command reference: Brother QL-800/810W/820NWB "Raster Command Reference".
+ */
+class QLRasterEncoder {
+
+    // QL-8xx / QL-1xxx print head: 720 dots = 90 bytes per raster line
+    static final int HEAD_DOTS = 720;
+    static final int LINE_BYTES = HEAD_DOTS / 8;
+
+    // 62mm continuous roll: 696 printable dots centered with 12 dots unused on each side
+    static final int ROLL_62_DOTS = 696;
+    static final int ROLL_62_MARGIN_DOTS = 12;
+    static final int ROLL_62_WIDTH_MM = 62;
+    // 300 dpi across the head
+    static final float DOTS_PER_MM = 300f / 25.4f;
+
+    // Feed margin for continuous tape in dots (3mm)
+    private static final int CONTINUOUS_FEED_MARGIN = 35;
+
+    private static final int INVALIDATE_BYTES = 200;
+    private static final byte ESC = 0x1B;
+    private static final byte MEDIA_CONTINUOUS = 0x0A;
+
+    // Print information validity flags
+    private static final int PI_KIND = 0x02;
+    private static final int PI_WIDTH = 0x04;
+    private static final int PI_LENGTH = 0x08;
+    private static final int PI_QUALITY = 0x40;
+    private static final int PI_RECOVER = 0x80;
+
+    private static final int MODE_AUTO_CUT = 0x40;
+    private static final int EXPANDED_CUT_AT_END = 0x08;
+    private static final int EXPANDED_HIGH_RESOLUTION = 0x40;
+
+    private static final byte COMPRESSION_NONE = 0x00;
+    private static final byte COMPRESSION_TIFF = 0x02;
+
+    private static final byte RASTER_LINE = 0x67; // 'g'
+    private static final byte ZERO_LINE = 0x5A;   // 'Z'
+    private static final byte PRINT = 0x0C;       // FF - more pages follow
+    private static final byte PRINT_LAST = 0x1A;  // Control-Z - last page, feed and cut
+
+    // Dashed line printed below a label the cutter skips, 8 dots on and 8 off
+    private static final int CUT_MARK_DASH_DOTS = 8;
+    private static final MonoRaster CUT_MARK = createCutMark();
+
+    private final boolean compression;
+    private final boolean autoCut;
+    private final boolean highResolution;
+
+    /**
+     * @param compression    PackBits line compression and zero-line commands
+     * @param autoCut        Cut after every label
+     * @param highResolution 300x600 dpi mode - the raster must then have twice the lines
+     */
+    QLRasterEncoder(boolean compression, boolean autoCut, boolean highResolution) {
+        this.compression = compression;
+        this.autoCut = autoCut;
+        this.highResolution = highResolution;
+    }
+
+    /**
+     * Encode one label as a complete print job
+     */
+    byte[] encodeLabel(MonoRaster label) {
+        return encodePage(label, true, true);
+    }
+
+    /**
+     * Encode one page of a job, cut as the encoder was configured.
+     *
+     * @param firstPage Prefix the job header (invalidate, initialize, raster mode)
+     * @param lastPage  End with the final print command instead of a page break
+     */
+    byte[] encodePage(MonoRaster label, boolean firstPage, boolean lastPage) {
+        return encodePage(label, firstPage, lastPage, autoCut, false);
+    }
+
+    /**
+     * Encode one page of a job that chooses per page whether the cutter fires after it.
+     * A page that is not cut ends with a dashed cut mark, so the labels can be told apart
+     * and separated by hand.
+     */
+    byte[] encodePage(MonoRaster label, boolean firstPage, boolean lastPage, boolean cut) {
+        return encodePage(label, firstPage, lastPage, cut, !cut);
+    }
+
+    private byte[] encodePage(MonoRaster label, boolean firstPage, boolean lastPage, boolean cut, boolean cutMark) {
+        if (label.width != ROLL_62_DOTS) {
+            throw new IllegalArgumentException("Raster width must be " + ROLL_62_DOTS + " dots, got " + label.width);
+        }
+        // The mark is one dot thick; 600 dpi mode has two lines per dot
+        int markLines = cutMark ? (highResolution ? 2 : 1) : 0;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INVALIDATE_BYTES + label.height * (LINE_BYTES + 3) / 4);
+
+        if (firstPage) {
+            writeJobHeader(out);
+        }
+
+        writePrintInformation(out, label.height + markLines, firstPage);
+
+        // Various mode settings
+        out.write(ESC);
+        out.write('i');
+        out.write('M');
+        out.write(cut ? MODE_AUTO_CUT : 0x00);
+
+        if (cut) {
+            // Cut every label
+            out.write(ESC);
+            out.write('i');
+            out.write('A');
+            out.write(0x01);
+        }
+
+        // Expanded mode
+        out.write(ESC);
+        out.write('i');
+        out.write('K');
+        out.write(EXPANDED_CUT_AT_END | (highResolution ? EXPANDED_HIGH_RESOLUTION : 0x00));
+
+        // Feed margin
+        out.write(ESC);
+        out.write('i');
+        out.write('d');
+        out.write(CONTINUOUS_FEED_MARGIN & 0xFF);
+        out.write((CONTINUOUS_FEED_MARGIN >> 8) & 0xFF);
+
+        // Compression mode
+        out.write('M');
+        out.write(compression ? COMPRESSION_TIFF : COMPRESSION_NONE);
+
+        byte[] line = new byte[LINE_BYTES];
+        byte[] packed = new byte[LINE_BYTES + LINE_BYTES / 128 + 1];
+        for (int y = 0; y < label.height; y++) {
+            writeLine(out, label, y, line, packed);
+        }
+        for (int y = 0; y < markLines; y++) {
+            writeLine(out, CUT_MARK, 0, line, packed);
+        }
+
+        out.write(lastPage ? PRINT_LAST : PRINT);
+        return out.toByteArray();
+    }
+
+    /**
+     * Job header alone. A connection sends it first on every new socket, so a page of a job
+     * started on a connection that dropped is not taken for a continuation by the printer.
+     */
+    static byte[] jobHeader() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INVALIDATE_BYTES + 6);
+        writeJobHeader(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Status information request, answered with one QLStatus message
+     */
+    static byte[] statusRequest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INVALIDATE_BYTES + 5);
+        out.write(new byte[INVALIDATE_BYTES], 0, INVALIDATE_BYTES);
+        out.write(ESC);
+        out.write('@');
+        out.write(ESC);
+        out.write('i');
+        out.write('S');
+        return out.toByteArray();
+    }
+
+    private static void writeJobHeader(ByteArrayOutputStream out) {
+        // Invalidate, initialize, switch to raster mode
+        out.write(new byte[INVALIDATE_BYTES], 0, INVALIDATE_BYTES);
+        out.write(ESC);
+        out.write('@');
+        out.write(ESC);
+        out.write('i');
+        out.write('a');
+        out.write(0x01);
+    }
+
+    private void writeLine(ByteArrayOutputStream out, MonoRaster raster, int y, byte[] line, byte[] packed) {
+        if (compression && raster.isRowBlank(y)) {
+            out.write(ZERO_LINE);
+            return;
+        }
+
+        buildHeadLine(raster, y, line);
+        out.write(RASTER_LINE);
+        out.write(0x00);
+        if (compression) {
+            int packedLength = packBits(line, 0, LINE_BYTES, packed);
+            out.write(packedLength);
+            out.write(packed, 0, packedLength);
+        } else {
+            out.write(LINE_BYTES);
+            out.write(line, 0, LINE_BYTES);
+        }
+    }
+
+    private static MonoRaster createCutMark() {
+        MonoRaster mark = new MonoRaster(ROLL_62_DOTS, 1);
+        for (int x = 0; x < ROLL_62_DOTS; x += 2 * CUT_MARK_DASH_DOTS) {
+            mark.fillSpan(0, x, x + CUT_MARK_DASH_DOTS);
+        }
+        return mark;
+    }
+
+    private void writePrintInformation(ByteArrayOutputStream out, int rasterLines, boolean firstPage) {
+        out.write(ESC);
+        out.write('i');
+        out.write('z');
+        out.write(PI_RECOVER | PI_KIND | PI_WIDTH | PI_LENGTH | PI_QUALITY);
+        out.write(MEDIA_CONTINUOUS);
+        out.write(ROLL_62_WIDTH_MM);
+        out.write(0x00); // continuous tape has no length
+        out.write(rasterLines & 0xFF);
+        out.write((rasterLines >> 8) & 0xFF);
+        out.write((rasterLines >> 16) & 0xFF);
+        out.write((rasterLines >> 24) & 0xFF);
+        out.write(firstPage ? 0x00 : 0x01);
+        out.write(0x00);
+    }
+
+    /**
+     * Place one label row on the 720-dot head line. The head prints the line mirrored,
+     * so the row is written right to left after the unused margin.
+     */
+    private static void buildHeadLine(MonoRaster label, int y, byte[] line) {
+        Arrays.fill(line, (byte) 0);
+        for (int x = 0; x < label.width; x++) {
+            if (label.get(x, y)) {
+                int dot = HEAD_DOTS - 1 - (ROLL_62_MARGIN_DOTS + x);
+                line[dot >> 3] |= 0x80 >> (dot & 7);
+            }
+        }
+    }
+
+    /**
+     * PackBits (TIFF) compression. Runs of three or more equal bytes become a repeat
+     * record (1 - count, byte), everything else a literal record (count - 1, bytes).
+     *
+     * @return Number of bytes written to out
+     */
+    static int packBits(byte[] in, int offset, int length, byte[] out) {
+        int end = offset + length;
+        int i = offset;
+        int o = 0;
+
+        while (i < end) {
+            int run = 1;
+            while (i + run < end && run < 128 && in[i + run] == in[i]) {
+                run++;
+            }
+
+            if (run >= 3) {
+                out[o++] = (byte) (1 - run);
+                out[o++] = in[i];
+                i += run;
+                continue;
+            }
+
+            // Literal: extend until a run of three starts or 128 bytes are collected
+            int literalStart = i;
+            int literal = 0;
+            while (i < end && literal < 128) {
+                if (i + 2 < end && in[i] == in[i + 1] && in[i] == in[i + 2]) {
+                    break;
+                }
+                i++;
+                literal++;
+            }
+            out[o++] = (byte) (literal - 1);
+            System.arraycopy(in, literalStart, out, o, literal);
+            o += literal;
+        }
+        return o;
+    }
+}
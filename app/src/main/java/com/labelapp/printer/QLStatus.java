@@ -0,0 +1,136 @@
+package com.labelapp.printer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * QLStatus - One 32-byte status message of a QL printer
+ * The printer answers a status request (QLRasterEncoder.statusRequest) and, while it prints,
+ * reports on its own: a phase change when printing starts, printing completed after each page,
+ * or an error. Direct raster connections read these to learn whether a page was really printed.
+ *
+ * Layout: Brother QL-800/810W/820NWB "Raster Command Reference", status information.
+ */
+final class QLStatus {
+
+    static final int LENGTH = 32;
+
+    private static final int PRINT_HEAD_MARK = 0x80;
+    private static final int SIZE = 0x20;
+
+    static final int TYPE_REPLY = 0x00;
+    static final int TYPE_PRINTING_COMPLETED = 0x01;
+    static final int TYPE_ERROR = 0x02;
+    static final int TYPE_TURNED_OFF = 0x04;
+    static final int TYPE_NOTIFICATION = 0x05;
+    static final int TYPE_PHASE_CHANGE = 0x06;
+
+    private static final int OFFSET_ERROR_1 = 8;
+    private static final int OFFSET_ERROR_2 = 9;
+    private static final int OFFSET_TYPE = 18;
+    private static final int OFFSET_PHASE = 19;
+
+    // Error information 1 and 2, bit by bit
+    private static final String[] ERRORS_1 = {
+        "Няма лента", "Лентата свърши", "Ножът е блокирал", "Слаба батерия",
+        "Принтерът е зает", "Принтерът е изключен", "Неподходящ захранващ адаптер", "Повреда на вентилатора"
+    };
+    private static final String[] ERRORS_2 = {
+        "Сменете лентата", "Буферът на принтера е пълен", "Грешка при предаване", "Буферът за комуникация е пълен",
+        "Капакът е отворен", "Печатът е отказан от принтера", "Лентата не може да бъде подадена", "Системна грешка на принтера"
+    };
+
+    final int errorInfo1;
+    final int errorInfo2;
+    final int type;
+    final int phase;
+
+    private QLStatus(int errorInfo1, int errorInfo2, int type, int phase) {
+        this.errorInfo1 = errorInfo1;
+        this.errorInfo2 = errorInfo2;
+        this.type = type;
+        this.phase = phase;
+    }
+
+    /**
+     * Parse a status message starting at offset
+     *
+     * @throws IOException if the bytes are not a status message
+     */
+    static QLStatus parse(byte[] data, int offset) throws IOException {
+        if (data.length - offset < LENGTH
+            || (data[offset] & 0xFF) != PRINT_HEAD_MARK || (data[offset + 1] & 0xFF) != SIZE) {
+            throw new IOException("Неразпознат отговор от принтера");
+        }
+        return new QLStatus(data[offset + OFFSET_ERROR_1] & 0xFF, data[offset + OFFSET_ERROR_2] & 0xFF,
+            data[offset + OFFSET_TYPE] & 0xFF, data[offset + OFFSET_PHASE] & 0xFF);
+    }
+
+    /**
+     * Read the next status message from a stream. Bytes before its start (the rest of a message
+     * partly discarded earlier) are skipped.
+     *
+     * @throws EOFException if the stream ends first
+     */
+    static QLStatus read(InputStream in) throws IOException {
+        byte[] message = new byte[LENGTH];
+        int first = in.read();
+        while (true) {
+            if (first == -1) {
+                throw new EOFException("Принтерът прекъсна връзката");
+            }
+            if (first != PRINT_HEAD_MARK) {
+                first = in.read();
+                continue;
+            }
+            int second = in.read();
+            if (second != SIZE) {
+                first = second;
+                continue;
+            }
+            message[0] = (byte) first;
+            message[1] = (byte) second;
+            for (int filled = 2; filled < LENGTH; ) {
+                int read = in.read(message, filled, LENGTH - filled);
+                if (read == -1) {
+                    throw new EOFException("Принтерът прекъсна връзката");
+                }
+                filled += read;
+            }
+            return parse(message, 0);
+        }
+    }
+
+    /**
+     * True when the printer cannot print: an error bit is set, or it reports an error or turning off
+     */
+    boolean isError() {
+        return errorInfo1 != 0 || errorInfo2 != 0 || type == TYPE_ERROR || type == TYPE_TURNED_OFF;
+    }
+
+    boolean isPrintingCompleted() {
+        return type == TYPE_PRINTING_COMPLETED;
+    }
+
+    /**
+     * What went wrong, for the user
+     */
+    String describeError() {
+        List<String> errors = new ArrayList<>();
+        for (int bit = 0; bit < 8; bit++) {
+            if ((errorInfo1 & (1 << bit)) != 0) {
+                errors.add(ERRORS_1[bit]);
+            }
+            if ((errorInfo2 & (1 << bit)) != 0) {
+                errors.add(ERRORS_2[bit]);
+            }
+        }
+        if (errors.isEmpty()) {
+            return type == TYPE_TURNED_OFF ? "Принтерът е изключен" : "Грешка на принтера";
+        }
+        return String.join(", ", errors);
+    }
+}
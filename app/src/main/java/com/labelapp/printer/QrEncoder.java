@@ -0,0 +1,507 @@
+package com.labelapp.printer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * QrEncoder - QR code matrices in byte mode, error correction level M
+ * Versions 1 to 10 (up to 213 bytes), the smallest that fits the value. Level M survives
+ * about 15% damage, enough for a label that gets folded or scuffed in the store.
+ *
+ * Builds the function patterns, interleaves the Reed-Solomon blocks, places the data
+ * in the standard zigzag and keeps the mask with the lowest penalty score.
+ */
+final class QrEncoder {
+
+    static final int QUIET_ZONE = 4;
+
+    static final int MAX_VERSION = 10;
+
+    // Level M per version: EC codewords per block, then blocks and data codewords of both groups
+    private static final int[][] BLOCKS = {
+        null,
+        {10, 1, 16, 0, 0},
+        {16, 1, 28, 0, 0},
+        {26, 1, 44, 0, 0},
+        {18, 2, 32, 0, 0},
+        {24, 2, 43, 0, 0},
+        {16, 4, 27, 0, 0},
+        {18, 4, 31, 0, 0},
+        {22, 2, 38, 2, 39},
+        {22, 3, 36, 2, 37},
+        {26, 4, 43, 1, 44}
+    };
+
+    private static final int[][] ALIGNMENT_CENTERS = {
+        null,
+        {},
+        {6, 18},
+        {6, 22},
+        {6, 26},
+        {6, 30},
+        {6, 34},
+        {6, 22, 38},
+        {6, 24, 42},
+        {6, 26, 46},
+        {6, 28, 50}
+    };
+
+    // Level M is 00 in the format information
+    private static final int EC_LEVEL_BITS = 0;
+    private static final int FORMAT_POLY = 0x537;
+    private static final int FORMAT_MASK = 0x5412;
+    private static final int VERSION_POLY = 0x1F25;
+
+    // GF(256) with the QR polynomial x^8 + x^4 + x^3 + x^2 + 1
+    private static final int[] EXP = new int[512];
+    private static final int[] LOG = new int[256];
+
+    static {
+        int value = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = value;
+            LOG[value] = i;
+            value <<= 1;
+            if (value >= 256) {
+                value ^= 0x11D;
+            }
+        }
+        for (int i = 255; i < EXP.length; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+    }
+
+    // Module states while building; data is placed wherever EMPTY remains
+    private static final byte EMPTY = -1;
+    private static final byte LIGHT = 0;
+    private static final byte DARK = 1;
+
+    private QrEncoder() {
+    }
+
+    static boolean isValid(String value) {
+        return !value.isEmpty() && chooseVersion(value.getBytes(StandardCharsets.UTF_8).length) != 0;
+    }
+
+    static BarcodePattern encode(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int version = chooseVersion(bytes.length);
+        if (value.isEmpty() || version == 0) {
+            throw new IllegalArgumentException("Текстът е твърде дълъг за QR код");
+        }
+
+        byte[] codewords = interleave(version, dataCodewords(version, bytes));
+        int size = 17 + 4 * version;
+        byte[] functions = functionPatterns(version, size);
+
+        byte[] best = null;
+        int bestPenalty = Integer.MAX_VALUE;
+        for (int mask = 0; mask < 8; mask++) {
+            byte[] matrix = functions.clone();
+            placeData(matrix, size, codewords, mask);
+            placeFormat(matrix, size, mask);
+            int penalty = penalty(matrix, size);
+            if (penalty < bestPenalty) {
+                best = matrix;
+                bestPenalty = penalty;
+            }
+        }
+
+        boolean[] modules = new boolean[size * size];
+        for (int i = 0; i < modules.length; i++) {
+            modules[i] = best[i] == DARK;
+        }
+        return new BarcodePattern(size, size, QUIET_ZONE, modules);
+    }
+
+    /**
+     * Smallest version with room for the bytes, or 0
+     */
+    private static int chooseVersion(int byteCount) {
+        for (int version = 1; version <= MAX_VERSION; version++) {
+            int capacityBits = dataCodewordCount(version) * 8;
+            if (4 + countBits(version) + byteCount * 8 <= capacityBits) {
+                return version;
+            }
+        }
+        return 0;
+    }
+
+    private static int countBits(int version) {
+        return version < 10 ? 8 : 16;
+    }
+
+    private static int dataCodewordCount(int version) {
+        int[] blocks = BLOCKS[version];
+        return blocks[1] * blocks[2] + blocks[3] * blocks[4];
+    }
+
+    /**
+     * Mode indicator, length, data, terminator and padding
+     */
+    private static byte[] dataCodewords(int version, byte[] bytes) {
+        int capacity = dataCodewordCount(version);
+        BitWriter bits = new BitWriter(capacity);
+        bits.write(0x4, 4);
+        bits.write(bytes.length, countBits(version));
+        for (byte b : bytes) {
+            bits.write(b & 0xFF, 8);
+        }
+        bits.write(0, Math.min(4, capacity * 8 - bits.length));
+        bits.write(0, (8 - bits.length % 8) % 8);
+        for (int pad = 0; bits.length < capacity * 8; pad++) {
+            bits.write(pad % 2 == 0 ? 0xEC : 0x11, 8);
+        }
+        return bits.bytes;
+    }
+
+    /**
+     * Split into blocks, append each block's error correction and interleave
+     */
+    private static byte[] interleave(int version, byte[] data) {
+        int[] layout = BLOCKS[version];
+        int ecLength = layout[0];
+        int blockCount = layout[1] + layout[3];
+        int[] generator = generator(ecLength);
+
+        byte[][] dataBlocks = new byte[blockCount][];
+        byte[][] ecBlocks = new byte[blockCount][];
+        int offset = 0;
+        int maxDataLength = 0;
+        for (int b = 0; b < blockCount; b++) {
+            int length = b < layout[1] ? layout[2] : layout[4];
+            dataBlocks[b] = new byte[length];
+            System.arraycopy(data, offset, dataBlocks[b], 0, length);
+            ecBlocks[b] = errorCorrection(dataBlocks[b], generator);
+            offset += length;
+            maxDataLength = Math.max(maxDataLength, length);
+        }
+
+        byte[] result = new byte[data.length + blockCount * ecLength];
+        int out = 0;
+        for (int i = 0; i < maxDataLength; i++) {
+            for (byte[] block : dataBlocks) {
+                if (i < block.length) {
+                    result[out++] = block[i];
+                }
+            }
+        }
+        for (int i = 0; i < ecLength; i++) {
+            for (byte[] block : ecBlocks) {
+                result[out++] = block[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Generator polynomial of the given degree, leading coefficient first
+     */
+    private static int[] generator(int degree) {
+        int[] poly = {1};
+        for (int i = 0; i < degree; i++) {
+            int[] next = new int[poly.length + 1];
+            for (int j = 0; j < poly.length; j++) {
+                next[j] ^= poly[j];
+                next[j + 1] ^= multiply(poly[j], EXP[i]);
+            }
+            poly = next;
+        }
+        return poly;
+    }
+
+    private static byte[] errorCorrection(byte[] data, int[] generator) {
+        int[] remainder = new int[generator.length - 1];
+        for (byte b : data) {
+            int factor = (b & 0xFF) ^ remainder[0];
+            System.arraycopy(remainder, 1, remainder, 0, remainder.length - 1);
+            remainder[remainder.length - 1] = 0;
+            for (int i = 0; i < remainder.length; i++) {
+                remainder[i] ^= multiply(generator[i + 1], factor);
+            }
+        }
+        byte[] ec = new byte[remainder.length];
+        for (int i = 0; i < ec.length; i++) {
+            ec[i] = (byte) remainder[i];
+        }
+        return ec;
+    }
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    /**
+     * Finder, timing and alignment patterns, the dark module and version information,
+     * with the format areas reserved. Everything still EMPTY takes data.
+     */
+    private static byte[] functionPatterns(int version, int size) {
+        byte[] matrix = new byte[size * size];
+        Arrays.fill(matrix, EMPTY);
+
+        placeFinder(matrix, size, 0, 0);
+        placeFinder(matrix, size, size - 7, 0);
+        placeFinder(matrix, size, 0, size - 7);
+
+        for (int i = 8; i < size - 8; i++) {
+            byte timing = i % 2 == 0 ? DARK : LIGHT;
+            set(matrix, size, i, 6, timing);
+            set(matrix, size, 6, i, timing);
+        }
+
+        int[] centers = ALIGNMENT_CENTERS[version];
+        int last = centers.length - 1;
+        for (int i = 0; i <= last; i++) {
+            for (int j = 0; j <= last; j++) {
+                // Skip the three corners taken by finder patterns
+                if ((i == 0 && j == 0) || (i == 0 && j == last) || (i == last && j == 0)) {
+                    continue;
+                }
+                int cx = centers[j];
+                int cy = centers[i];
+                for (int dy = -2; dy <= 2; dy++) {
+                    for (int dx = -2; dx <= 2; dx++) {
+                        boolean dark = Math.max(Math.abs(dx), Math.abs(dy)) != 1;
+                        set(matrix, size, cx + dx, cy + dy, dark ? DARK : LIGHT);
+                    }
+                }
+            }
+        }
+
+        // Reserve the format areas; placeFormat() fills them per mask
+        for (int i = 0; i < 9; i++) {
+            reserve(matrix, size, i, 8);
+            reserve(matrix, size, 8, i);
+        }
+        for (int i = 0; i < 8; i++) {
+            reserve(matrix, size, size - 1 - i, 8);
+            reserve(matrix, size, 8, size - 1 - i);
+        }
+        set(matrix, size, 8, size - 8, DARK);
+
+        if (version >= 7) {
+            int bits = (version << 12) | bchCode(version, VERSION_POLY);
+            for (int i = 0; i < 18; i++) {
+                byte bit = ((bits >> i) & 1) != 0 ? DARK : LIGHT;
+                set(matrix, size, i / 3, size - 11 + i % 3, bit);
+                set(matrix, size, size - 11 + i % 3, i / 3, bit);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * 7x7 finder with its light separator, top-left corner at (left, top)
+     */
+    private static void placeFinder(byte[] matrix, int size, int left, int top) {
+        for (int dy = -1; dy <= 7; dy++) {
+            for (int dx = -1; dx <= 7; dx++) {
+                int x = left + dx;
+                int y = top + dy;
+                if (x < 0 || y < 0 || x >= size || y >= size) {
+                    continue;
+                }
+                int ring = Math.max(Math.abs(dx - 3), Math.abs(dy - 3));
+                set(matrix, size, x, y, ring == 2 || ring == 4 ? LIGHT : DARK);
+            }
+        }
+    }
+
+    private static void placeData(byte[] matrix, int size, byte[] codewords, int mask) {
+        int bitIndex = 0;
+        int totalBits = codewords.length * 8;
+        int direction = -1;
+        int y = size - 1;
+        for (int x = size - 1; x > 0; x -= 2) {
+            if (x == 6) {
+                // The vertical timing pattern column is skipped entirely
+                x--;
+            }
+            while (y >= 0 && y < size) {
+                for (int i = 0; i < 2; i++) {
+                    int xx = x - i;
+                    if (matrix[y * size + xx] != EMPTY) {
+                        continue;
+                    }
+                    boolean bit = false;
+                    if (bitIndex < totalBits) {
+                        bit = ((codewords[bitIndex >> 3] >> (7 - (bitIndex & 7))) & 1) != 0;
+                        bitIndex++;
+                    }
+                    if (maskBit(mask, xx, y)) {
+                        bit = !bit;
+                    }
+                    matrix[y * size + xx] = bit ? DARK : LIGHT;
+                }
+                y += direction;
+            }
+            direction = -direction;
+            y += direction;
+        }
+    }
+
+    private static boolean maskBit(int mask, int x, int y) {
+        switch (mask) {
+            case 0:
+                return (x + y) % 2 == 0;
+            case 1:
+                return y % 2 == 0;
+            case 2:
+                return x % 3 == 0;
+            case 3:
+                return (x + y) % 3 == 0;
+            case 4:
+                return (y / 2 + x / 3) % 2 == 0;
+            case 5:
+                return (x * y) % 2 + (x * y) % 3 == 0;
+            case 6:
+                return ((x * y) % 2 + (x * y) % 3) % 2 == 0;
+            default:
+                return ((x + y) % 2 + (x * y) % 3) % 2 == 0;
+        }
+    }
+
+    /**
+     * Both copies of the 15 format bits; bit 0 first
+     */
+    private static void placeFormat(byte[] matrix, int size, int mask) {
+        int data = (EC_LEVEL_BITS << 3) | mask;
+        int bits = ((data << 10) | bchCode(data, FORMAT_POLY)) ^ FORMAT_MASK;
+        for (int i = 0; i < 15; i++) {
+            byte bit = ((bits >> i) & 1) != 0 ? DARK : LIGHT;
+
+            // Around the top-left finder: down column 8, then left along row 8
+            if (i < 6) {
+                set(matrix, size, 8, i, bit);
+            } else if (i < 8) {
+                set(matrix, size, 8, i + 1, bit);
+            } else if (i == 8) {
+                set(matrix, size, 7, 8, bit);
+            } else {
+                set(matrix, size, 14 - i, 8, bit);
+            }
+
+            // Split between the other two finders
+            if (i < 8) {
+                set(matrix, size, size - 1 - i, 8, bit);
+            } else {
+                set(matrix, size, 8, size - 15 + i, bit);
+            }
+        }
+    }
+
+    private static int bchCode(int value, int poly) {
+        int polyBits = 32 - Integer.numberOfLeadingZeros(poly);
+        value <<= polyBits - 1;
+        while (32 - Integer.numberOfLeadingZeros(value) >= polyBits) {
+            value ^= poly << (32 - Integer.numberOfLeadingZeros(value) - polyBits);
+        }
+        return value;
+    }
+
+    /**
+     * Standard penalty rules: runs, 2x2 blocks, finder-like patterns and dark balance
+     */
+    private static int penalty(byte[] matrix, int size) {
+        int penalty = 0;
+        int dark = 0;
+        for (int a = 0; a < size; a++) {
+            int rowRun = 0;
+            int columnRun = 0;
+            byte rowColor = EMPTY;
+            byte columnColor = EMPTY;
+            for (int b = 0; b < size; b++) {
+                byte row = matrix[a * size + b];
+                byte column = matrix[b * size + a];
+                if (row == DARK) {
+                    dark++;
+                }
+
+                if (row == rowColor) {
+                    rowRun++;
+                } else {
+                    penalty += runPenalty(rowRun);
+                    rowColor = row;
+                    rowRun = 1;
+                }
+                if (column == columnColor) {
+                    columnRun++;
+                } else {
+                    penalty += runPenalty(columnRun);
+                    columnColor = column;
+                    columnRun = 1;
+                }
+
+                if (a < size - 1 && b < size - 1 && row == matrix[a * size + b + 1]
+                        && row == matrix[(a + 1) * size + b] && row == matrix[(a + 1) * size + b + 1]) {
+                    penalty += 3;
+                }
+
+                if (b + 11 <= size) {
+                    if (isFinderLike(matrix, a * size + b, 1)) {
+                        penalty += 40;
+                    }
+                    if (isFinderLike(matrix, b * size + a, size)) {
+                        penalty += 40;
+                    }
+                }
+            }
+            penalty += runPenalty(rowRun) + runPenalty(columnRun);
+        }
+
+        int total = size * size;
+        penalty += Math.abs(dark * 2 - total) * 10 / total * 10;
+        return penalty;
+    }
+
+    private static int runPenalty(int run) {
+        return run >= 5 ? run - 2 : 0;
+    }
+
+    /**
+     * 1011101 with four light modules before or after, starting at start and stepping by step
+     */
+    private static boolean isFinderLike(byte[] matrix, int start, int step) {
+        final int pattern = 0x5D0; // 10111010000
+        final int reversed = 0x05D; // 00001011101
+        int bits = 0;
+        for (int i = 0; i < 11; i++) {
+            bits = (bits << 1) | (matrix[start + i * step] == DARK ? 1 : 0);
+        }
+        return bits == pattern || bits == reversed;
+    }
+
+    private static void set(byte[] matrix, int size, int x, int y, byte value) {
+        matrix[y * size + x] = value;
+    }
+
+    private static void reserve(byte[] matrix, int size, int x, int y) {
+        if (matrix[y * size + x] == EMPTY) {
+            matrix[y * size + x] = LIGHT;
+        }
+    }
+
+    /**
+     * Big-endian bit buffer of a fixed size
+     */
+    private static final class BitWriter {
+        final byte[] bytes;
+        int length = 0;
+
+        BitWriter(int byteCount) {
+            bytes = new byte[byteCount];
+        }
+
+        void write(int value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                if (((value >> i) & 1) != 0) {
+                    bytes[length >> 3] |= (byte) (0x80 >>> (length & 7));
+                }
+                length++;
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.labelapp.printer;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RasterCache - Print rasters of rendered labels kept on disk across restarts
+ * A label's raster depends only on its content, its size, the print resolution, the
+ * LabelDrawer layout and the label template, so a SHA-256 of those names the file.
+ * Frequently printed articles go to the printer straight from the cache, without a Canvas draw.
+ *
+ * Each file holds a small header and the raw packed bits of a MonoRaster, read back through
+ * a memory-mapped buffer. Files are evicted least recently used first once the total exceeds
+ * the disk budget; use order survives restarts through the files' modification times.
+ */
+class RasterCache {
+
+    private static final String TAG = "RasterCache";
+
+    static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x52535431; // "RST1"
+    private static final int HEADER_BYTES = 16;
+    private static final String SUFFIX = ".raster";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final int layoutVersion;
+
+    // Guarded by this. File name to length, least recently used first.
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes = 0;
+    private long budgetBytes;
+
+    /**
+     * @param layoutVersion LabelDrawer.LAYOUT_VERSION; part of every key
+     */
+    RasterCache(File directory, int layoutVersion, long budgetBytes) {
+        this.directory = directory;
+        this.layoutVersion = layoutVersion;
+        this.budgetBytes = budgetBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Cannot create cache directory " + directory);
+        }
+        load();
+    }
+
+    /**
+     * Cached raster of this label across the tape, or null. Called from printer threads.
+     */
+    MonoRaster get(LabelData label, boolean highResolution) {
+        return get(label, highResolution, 0);
+    }
+
+    /**
+     * Cached raster of this label, or null. Called from printer threads.
+     *
+     * @param columnDots Width of the upright label ganged with others (LabelImposer), or 0 across the tape
+     */
+    MonoRaster get(LabelData label, boolean highResolution, int columnDots) {
+        String name = fileName(label, highResolution, columnDots);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                return null;
+            }
+        }
+
+        File file = new File(directory, name);
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != layoutVersion) {
+                throw new IOException("Invalid header");
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            if (width <= 0 || height <= 0 || (long) (width + 7) / 8 * height != buffer.remaining()) {
+                throw new IOException("Invalid raster size " + width + "x" + height);
+            }
+            MonoRaster raster = new MonoRaster(width, height);
+            buffer.get(raster.data);
+
+            // Persist the use order for the next start
+            file.setLastModified(System.currentTimeMillis());
+            return raster;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable " + name, e);
+            remove(name);
+            return null;
+        }
+    }
+
+    boolean contains(LabelData label, boolean highResolution) {
+        String name = fileName(label, highResolution, 0);
+        synchronized (this) {
+            return entries.containsKey(name);
+        }
+    }
+
+    /**
+     * Store the raster of this label, evicting old entries beyond the budget
+     */
+    void put(LabelData label, boolean highResolution, MonoRaster raster) {
+        put(label, highResolution, 0, raster);
+    }
+
+    void put(LabelData label, boolean highResolution, int columnDots, MonoRaster raster) {
+        String name = fileName(label, highResolution, columnDots);
+        File file = new File(directory, name);
+        File tmp = new File(directory, name + TMP_SUFFIX + Thread.currentThread().getId());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(layoutVersion);
+                out.writeInt(raster.width);
+                out.writeInt(raster.height);
+                out.write(raster.data);
+            }
+            synchronized (this) {
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Rename failed");
+                }
+                Long previous = entries.put(name, file.length());
+                totalBytes += file.length() - (previous != null ? previous : 0);
+                trimToBudget();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            Log.e(TAG, "Failed to cache " + name, e);
+        }
+    }
+
+    synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trimToBudget();
+    }
+
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void clear() {
+        for (String name : entries.keySet()) {
+            new File(directory, name).delete();
+        }
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    private synchronized void remove(String name) {
+        Long length = entries.remove(name);
+        if (length != null) {
+            totalBytes -= length;
+        }
+        new File(directory, name).delete();
+    }
+
+    private void trimToBudget() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Index the files left by previous runs, oldest use first
+     */
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<File> rasters = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                rasters.add(file);
+            } else {
+                // Interrupted writes
+                file.delete();
+            }
+        }
+        Collections.sort(rasters, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : rasters) {
+            entries.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        trimToBudget();
+    }
+
+    /**
+     * Content hash of everything that affects the printed raster
+     */
+    private String fileName(LabelData label, boolean highResolution, int columnDots) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // Labels drawn with another template are other rasters
+        LabelTemplate template = LabelTemplate.get();
+        String key = layoutVersion + (template != null ? ":" + template.hash : "") + (highResolution ? ":600:" : ":300:")
+            + (columnDots > 0 ? "c" + columnDots + ":" : "")
+            + LabelPayload.encode(label, Collections.singletonList(label.size));
+        byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+
+        // 128 bits are plenty for a few thousand files
+        StringBuilder name = new StringBuilder(32 + SUFFIX.length());
+        for (byte b : Arrays.copyOf(hash, 16)) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return name.append(SUFFIX).toString();
+    }
+}
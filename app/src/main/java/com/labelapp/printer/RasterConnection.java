@@ -0,0 +1,30 @@
+package com.labelapp.printer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * RasterConnection - Byte transport for QL raster command streams (USB bulk or raw TCP)
+ */
+interface RasterConnection extends Closeable {
+
+    /**
+     * Send one raster page; a page without the job header continues the job of the page
+     * before it. Implementations send QLRasterEncoder.jobHeader() first on every new
+     * connection, since the printer drops the job when a connection is lost. They may queue
+     * the page and return early.
+     *
+     * @param onWritten Run once the printer reports the page printed, or once it is handed over
+     *                  to a printer that does not report status; possibly on another thread.
+     *                  Never run for a page that could not be delivered or that failed to print.
+     */
+    void enqueue(byte[] page, Runnable onWritten) throws IOException, InterruptedException;
+
+    /**
+     * Wait until every page has been handed to the printer
+     */
+    void flush() throws IOException, InterruptedException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,84 @@
+package com.labelapp.printer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.io.IOException;
+
+/**
+ * RasterPrinterTarget - Prints by encoding labels into QL raster commands in-house
+ * Takes 1-bit rasters already laid out across the 62mm roll (LabelDrawer.createTapeRaster or a
+ * LabelImposer strip) and sends them over a raw USB or TCP connection. No SDK image
+ * processing is involved.
+ *
+ * Labels between two cuts are pages of one printer job, so the tape feeds on without stopping;
+ * only the page after which the cutter fires ends the job.
+ */
+class RasterPrinterTarget implements PrintScheduler.PrinterTarget<MonoRaster> {
+
+    private final RasterConnection connection;
+    private final QLRasterEncoder encoder;
+    // Set while the last page sent was not cut; the next page continues its job
+    private boolean jobOpen = false;
+
+    /**
+     * @param connection     Transport owned by the caller; it stays open between jobs
+     * @param highResolution 600 dpi along the feed; labels must be rendered with twice the lines
+     */
+    RasterPrinterTarget(RasterConnection connection, boolean highResolution) {
+        this.connection = connection;
+        this.encoder = new QLRasterEncoder(true, true, highResolution);
+    }
+
+    @Override
+    public void open() {
+        // Connections open lazily on the first page
+    }
+
+    @Override
+    public void print(MonoRaster label, boolean cut, Runnable printed) throws IOException, InterruptedException {
+        connection.enqueue(encoder.encodePage(label, !jobOpen, cut, cut), printed);
+        jobOpen = !cut;
+    }
+
+    @Override
+    public void finish() throws IOException, InterruptedException {
+        if (jobOpen) {
+            // Another printer took the labels queued after ours: end the job with a blank line and cut
+            connection.enqueue(encoder.encodePage(new MonoRaster(QLRasterEncoder.ROLL_62_DOTS, 1), false, true, true), () -> { });
+            jobOpen = false;
+        }
+        connection.flush();
+    }
+
+    @Override
+    public void close() {
+        // The connection is reused by the next job
+    }
+
+    /**
+     * Threshold a bitmap already drawn at printer resolution, without rotating or scaling it:
+     * a label drawn upright by LabelDrawer, or a single glyph for a GlyphAtlas
+     */
+    static MonoRaster toColumnRaster(Bitmap label) {
+        return MonoRaster.fromLuminance(luminanceOf(label), label.getWidth(), label.getHeight(), MonoRaster.DEFAULT_THRESHOLD);
+    }
+
+    private static byte[] luminanceOf(Bitmap label) {
+        int width = label.getWidth();
+        int height = label.getHeight();
+        byte[] luminance = new byte[width * height];
+        int[] row = new int[width];
+
+        for (int y = 0; y < height; y++) {
+            label.getPixels(row, 0, width, 0, y, width, 1);
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                // Integer Rec. 601 luma
+                luminance[rowOffset + x] = (byte) ((Color.red(pixel) * 77 + Color.green(pixel) * 150 + Color.blue(pixel) * 29) >> 8);
+            }
+        }
+        return luminance;
+    }
+}
@@ -0,0 +1,90 @@
+package com.labelapp.printer;
+
+import android.graphics.Bitmap;
+
+import com.brother.sdk.lmprinter.Channel;
+import com.brother.sdk.lmprinter.OpenChannelError;
+import com.brother.sdk.lmprinter.PrintError;
+import com.brother.sdk.lmprinter.PrinterDriver;
+import com.brother.sdk.lmprinter.PrinterDriverGenerateResult;
+import com.brother.sdk.lmprinter.PrinterDriverGenerator;
+import com.brother.sdk.lmprinter.PrinterModel;
+import com.brother.sdk.lmprinter.setting.PrintImageSettings;
+import com.brother.sdk.lmprinter.setting.QLPrintSettings;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * SdkPrinterTarget - Prints through the Brother SDK driver, which scales, rotates and dithers each label
+ * Takes the portrait bitmaps of LabelDrawer.createLabelBitmap.
+ */
+class SdkPrinterTarget implements PrintScheduler.PrinterTarget<Bitmap> {
+
+    private final Channel channel;
+    private final File workDir;
+    private PrinterDriver driver;
+    private QLPrintSettings printSettings;
+
+    SdkPrinterTarget(Channel channel, File workDir) {
+        this.channel = channel;
+        this.workDir = workDir;
+    }
+
+    @Override
+    public void open() throws IOException {
+        PrinterDriverGenerateResult driverResult = PrinterDriverGenerator.openChannel(channel);
+        if (driverResult.getError().getCode() != OpenChannelError.ErrorCode.NoError) {
+            throw new IOException("Неуспешно отваряне на принтера");
+        }
+        driver = driverResult.getDriver();
+        printSettings = createPrintSettings();
+    }
+
+    @Override
+    public void print(Bitmap label, boolean cut, Runnable printed) throws IOException {
+        // Every image is its own SDK job; without a cut the tape stays in the printer for the next one
+        printSettings.setAutoCut(cut);
+        printSettings.setCutAtEnd(cut);
+        PrintError printResult = driver.printImage(label, printSettings);
+        if (printResult.getCode() != PrintError.ErrorCode.NoError) {
+            throw new IOException("Печатът неуспешен: " + printResult.getCode());
+        }
+        // printImage returns once the label is printed
+        printed.run();
+    }
+
+    @Override
+    public void finish() {
+        // printImage returns once the label is printed
+    }
+
+    @Override
+    public void close() {
+        if (driver != null) {
+            driver.closeChannel();
+            driver = null;
+        }
+    }
+
+    /**
+     * Settings for one QL-800 label on a 62mm roll
+     */
+    private QLPrintSettings createPrintSettings() {
+        QLPrintSettings printSettings = new QLPrintSettings(PrinterModel.QL_800);
+        printSettings.setLabelSize(QLPrintSettings.LabelSize.RollW62);
+        printSettings.setAutoCut(true);
+        printSettings.setWorkPath(workDir.getAbsolutePath());
+
+        // High-quality thermal printer settings - ErrorDiffusion for better text quality
+        printSettings.setHalftone(PrintImageSettings.Halftone.ErrorDiffusion);
+        printSettings.setScaleMode(PrintImageSettings.ScaleMode.FitPageAspect);
+        printSettings.setPrintOrientation(PrintImageSettings.Orientation.Portrait);
+        printSettings.setImageRotation(PrintImageSettings.Rotation.Rotate270);
+        printSettings.setHAlignment(PrintImageSettings.HorizontalAlignment.Center);
+        printSettings.setVAlignment(PrintImageSettings.VerticalAlignment.Top);
+        printSettings.setPrintQuality(PrintImageSettings.PrintQuality.Best);
+        printSettings.setResolution(PrintImageSettings.Resolution.High);
+        return printSettings;
+    }
+}
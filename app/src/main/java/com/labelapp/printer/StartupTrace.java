@@ -0,0 +1,69 @@
+package com.labelapp.printer;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * StartupTrace - Trace sections the benchmark module measures, once per process
+ * LabelApp.firstUsableForm runs from WelcomeActivity.onCreate until the form page has loaded;
+ * LabelApp.firstLabel from the first print request until its first label reaches the printer.
+ * Both cross activities or threads, so they are async sections. A no-op before Android 10.
+ */
+final class StartupTrace {
+
+    static final String FIRST_USABLE_FORM = "LabelApp.firstUsableForm";
+    static final String FIRST_LABEL = "LabelApp.firstLabel";
+
+    private static final Section firstUsableForm = new Section(FIRST_USABLE_FORM);
+    private static final Section firstLabel = new Section(FIRST_LABEL);
+
+    private StartupTrace() {
+    }
+
+    static void begin() {
+        firstUsableForm.begin();
+    }
+
+    static void end() {
+        firstUsableForm.end();
+    }
+
+    /**
+     * Any thread
+     */
+    static void beginFirstLabel() {
+        firstLabel.begin();
+    }
+
+    static void endFirstLabel() {
+        firstLabel.end();
+    }
+
+    private static final class Section {
+        private final String name;
+        // Guarded by this
+        private boolean open = false;
+        private boolean finished = false;
+
+        Section(String name) {
+            this.name = name;
+        }
+
+        synchronized void begin() {
+            if (open || finished || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+                return;
+            }
+            Trace.beginAsyncSection(name, 0);
+            open = true;
+        }
+
+        synchronized void end() {
+            finished = true;
+            if (!open) {
+                return;
+            }
+            Trace.endAsyncSection(name, 0);
+            open = false;
+        }
+    }
+}
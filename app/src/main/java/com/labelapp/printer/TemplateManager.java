@@ -0,0 +1,309 @@
+package com.labelapp.printer;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * TemplateManager - Saved label templates for one-tap reprints
+ * A template is a complete printed label (every field plus the sizes of the last job), one per
+ * product and supplier (manufacturer + importer); printing the same article again updates it.
+ * Templates are searched with the autocomplete's prefix rules (TextSearch). Their print
+ * rasters are pre-rendered into RasterCache, so a reprint skips drawing entirely.
+ *
+ * Each template is stored as <id>.tpl: version, last use time and its LabelPayload.
+ */
+public class TemplateManager {
+
+    private static final String TAG = "TemplateManager";
+
+    static final int MAX_TEMPLATES = 500;
+    static final int MAX_SEARCH_RESULTS = 10;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String TEMPLATE_SUFFIX = ".tpl";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * One saved template. Immutable apart from the last use time.
+     */
+    static class Template {
+        final long id;
+        final String payload;
+        final LabelPayload labels;
+        final String key;
+
+        private final String productSearch;
+        private final String manufacturerSearch;
+        private final String importerSearch;
+
+        // Guarded by the owning manager
+        private long lastUsed;
+
+        private Template(long id, String payload, long lastUsed) {
+            this.id = id;
+            this.payload = payload;
+            this.labels = LabelPayload.decode(payload);
+            this.lastUsed = lastUsed;
+
+            LabelData base = labels.getBaseLabel();
+            this.key = keyOf(base);
+            this.productSearch = TextSearch.normalize(base.product);
+            this.manufacturerSearch = TextSearch.normalize(base.manufacturer);
+            this.importerSearch = TextSearch.normalize(base.importer);
+        }
+
+        LabelData getBaseLabel() {
+            return labels.getBaseLabel();
+        }
+
+        List<String> getSizes() {
+            return labels.getSizes();
+        }
+    }
+
+    private static TemplateManager instance;
+
+    private final File directory;
+    // Guarded by this, most recently used first
+    private final List<Template> templates = new ArrayList<>();
+    private long nextId = 1;
+
+    TemplateManager(File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Cannot create templates directory " + directory);
+        }
+        load();
+    }
+
+    public static synchronized TemplateManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new TemplateManager(new File(context.getApplicationContext().getFilesDir(), "templates"));
+        }
+        return instance;
+    }
+
+    /**
+     * Save a printed label as a template, replacing the one for the same product and supplier
+     */
+    synchronized Template save(String payload) throws IOException {
+        Template existing = findByKey(keyOf(LabelPayload.decode(payload).getBaseLabel()));
+        long id = existing != null ? existing.id : nextId++;
+        Template template = new Template(id, payload, System.currentTimeMillis());
+
+        writeTemplate(template);
+        if (existing != null) {
+            templates.remove(existing);
+        }
+        templates.add(0, template);
+
+        while (templates.size() > MAX_TEMPLATES) {
+            Template evicted = templates.remove(templates.size() - 1);
+            deleteFiles(evicted.id);
+        }
+        return template;
+    }
+
+    synchronized Template get(long id) {
+        for (Template template : templates) {
+            if (template.id == id) {
+                return template;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Templates whose product (any word) or manufacturer/importer (from the start) begins
+     * with the query, most recently used first. An empty query lists the latest templates.
+     */
+    synchronized List<Template> search(String query, int limit) {
+        String normalizedQuery = TextSearch.normalize(query);
+        List<Template> results = new ArrayList<>();
+        for (Template template : templates) {
+            if (results.size() >= limit) {
+                break;
+            }
+            if (normalizedQuery.isEmpty()
+                    || TextSearch.matchesAnyWord(template.productSearch, normalizedQuery)
+                    || TextSearch.matchesFromStart(template.manufacturerSearch, normalizedQuery)
+                    || TextSearch.matchesFromStart(template.importerSearch, normalizedQuery)) {
+                results.add(template);
+            }
+        }
+        return results;
+    }
+
+    synchronized int size() {
+        return templates.size();
+    }
+
+    /**
+     * Move a template to the top of the search results
+     */
+    synchronized void markUsed(Template template) {
+        if (!templates.remove(template)) {
+            return;
+        }
+        template.lastUsed = System.currentTimeMillis();
+        templates.add(0, template);
+        try {
+            writeTemplate(template);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to update template " + template.id, e);
+        }
+    }
+
+    synchronized void delete(long id) {
+        Template template = get(id);
+        if (template != null) {
+            templates.remove(template);
+        }
+        deleteFiles(id);
+    }
+
+    /**
+     * Write every template to a snapshot, least recently used first
+     */
+    synchronized void export(LabelSnapshot.Writer writer) throws IOException {
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            Template template = templates.get(i);
+            writer.writeTemplate(template.payload, template.lastUsed);
+        }
+    }
+
+    /**
+     * Merge a template from another tablet (LabelSnapshot). A template for the same product and
+     * supplier is replaced only when the incoming one was used more recently; the oldest
+     * templates are dropped beyond MAX_TEMPLATES.
+     *
+     * @return Whether the template was kept
+     * @throws IllegalArgumentException if the payload does not decode
+     */
+    synchronized boolean merge(String payload, long lastUsed) throws IOException {
+        Template existing = findByKey(keyOf(LabelPayload.decode(payload).getBaseLabel()));
+        if (existing != null && existing.lastUsed >= lastUsed) {
+            return false;
+        }
+        Template template = new Template(existing != null ? existing.id : nextId++, payload, lastUsed);
+
+        writeTemplate(template);
+        if (existing != null) {
+            templates.remove(existing);
+        }
+        // Keep the most recently used first
+        int position = 0;
+        while (position < templates.size() && templates.get(position).lastUsed >= lastUsed) {
+            position++;
+        }
+        templates.add(position, template);
+
+        while (templates.size() > MAX_TEMPLATES) {
+            Template evicted = templates.remove(templates.size() - 1);
+            deleteFiles(evicted.id);
+        }
+        return templates.contains(template);
+    }
+
+    /**
+     * Distinct sizes of a template, in print order
+     */
+    static List<String> distinctSizes(Template template) {
+        return new ArrayList<>(new LinkedHashSet<>(template.getSizes()));
+    }
+
+    private Template findByKey(String key) {
+        for (Template template : templates) {
+            if (template.key.equals(key)) {
+                return template;
+            }
+        }
+        return null;
+    }
+
+    private static String keyOf(LabelData label) {
+        return TextSearch.normalize(label.product) + LabelPayload.FIELD_SEPARATOR
+            + TextSearch.normalize(label.manufacturer) + LabelPayload.FIELD_SEPARATOR
+            + TextSearch.normalize(label.importer);
+    }
+
+    private void writeTemplate(Template template) throws IOException {
+        byte[] payloadBytes = template.payload.getBytes(StandardCharsets.UTF_8);
+        File tmp = new File(directory, template.id + TEMPLATE_SUFFIX + TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(template.lastUsed);
+            out.writeInt(payloadBytes.length);
+            out.write(payloadBytes);
+        }
+        if (!tmp.renameTo(new File(directory, template.id + TEMPLATE_SUFFIX))) {
+            tmp.delete();
+            throw new IOException("Шаблонът не може да бъде записан");
+        }
+    }
+
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(TEMPLATE_SUFFIX)) {
+                // Interrupted writes and per-template rasters of earlier versions
+                file.delete();
+            } else {
+                long id = parseId(name.substring(0, name.length() - TEMPLATE_SUFFIX.length()));
+                Template template = id > 0 ? readTemplate(file, id) : null;
+                if (template == null) {
+                    file.delete();
+                    continue;
+                }
+                templates.add(template);
+                nextId = Math.max(nextId, id + 1);
+            }
+        }
+        Collections.sort(templates, (a, b) -> Long.compare(b.lastUsed, a.lastUsed));
+    }
+
+    private Template readTemplate(File file, long id) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            long lastUsed = in.readLong();
+            byte[] payloadBytes = new byte[in.readInt()];
+            in.readFully(payloadBytes);
+            return new Template(id, new String(payloadBytes, StandardCharsets.UTF_8), lastUsed);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Dropping unreadable template " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private void deleteFiles(long id) {
+        new File(directory, id + TEMPLATE_SUFFIX).delete();
+    }
+
+    private static long parseId(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.labelapp.printer;
+
+import java.util.Locale;
+
+/**
+ * TextSearch - Prefix matching shared by autocomplete (HistoryManager) and template search
+ * Supports Bulgarian Cyrillic text with proper normalization
+ */
+final class TextSearch {
+
+    // Bulgarian locale for proper text normalization
+    private static final Locale BULGARIAN_LOCALE = new Locale("bg", "BG");
+
+    private TextSearch() {
+    }
+
+    /**
+     * Normalize text for searching - handles Bulgarian Cyrillic properly
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        return text.toLowerCase(BULGARIAN_LOCALE).trim();
+    }
+
+    /**
+     * Check if normalized input matches the beginning of any word in the normalized text
+     * Used for product names to allow matching "Панталон" in "Мъжки Панталон"
+     */
+    static boolean matchesAnyWord(String text, String input) {
+        if (text == null || input == null || input.isEmpty()) {
+            return false;
+        }
+
+        // Split text into words and check each word
+        String[] words = text.split("\\s+");
+        for (String word : words) {
+            if (word.startsWith(input)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Character-by-character match from the beginning, ignoring whitespace
+     * Used for company names (manufacturer, importer)
+     */
+    static boolean matchesFromStart(String text, String input) {
+        if (text == null || input == null || input.isEmpty()) {
+            return false;
+        }
+
+        String inputNoSpaces = input.replaceAll("\\s", "");
+        String textNoSpaces = text.replaceAll("\\s", "");
+        return textNoSpaces.startsWith(inputNoSpaces);
+    }
+}
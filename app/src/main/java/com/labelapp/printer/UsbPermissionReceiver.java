@@ -0,0 +1,47 @@
+package com.labelapp.printer;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.hardware.usb.UsbManager;
+
+/**
+ * UsbPermissionReceiver - Result of the USB permission dialog
+ * UsbManager reports the answer as EXTRA_PERMISSION_GRANTED, which it can only add to a mutable
+ * PendingIntent. Should the extra be missing anyway, the broadcast still means the dialog was
+ * answered, and UsbManager is asked whether access is granted.
+ *
+ * Registered only for PrinterManager's permission action, not exported.
+ */
+final class UsbPermissionReceiver extends BroadcastReceiver {
+
+    /**
+     * Whether the app may now open the device the dialog was shown for
+     */
+    interface PermissionCheck {
+        boolean hasPermission();
+    }
+
+    /**
+     * Called on the main thread, once per broadcast
+     */
+    interface Listener {
+        void onPermissionResult(boolean granted);
+    }
+
+    private final PermissionCheck permissionCheck;
+    private final Listener listener;
+
+    UsbPermissionReceiver(PermissionCheck permissionCheck, Listener listener) {
+        this.permissionCheck = permissionCheck;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        boolean granted = intent.hasExtra(UsbManager.EXTRA_PERMISSION_GRANTED)
+            ? intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)
+            : permissionCheck.hasPermission();
+        listener.onPermissionResult(granted);
+    }
+}
@@ -0,0 +1,281 @@
+package com.labelapp.printer;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbManager;
+
+import java.io.IOException;
+
+/**
+ * UsbPrinterConnection - Writes QL raster command streams straight to the printer's bulk OUT endpoint
+ * Pages are written synchronously; the USB printer class buffers them on the device side.
+ * Every time the device is opened the job header is sent first, so a continuation page after
+ * a failed transfer starts a job the printer knows.
+ *
+ * Status messages (QLStatus) come back on the bulk IN endpoint. When the printer answers the
+ * status request sent on opening, each page is only reported once the printer says it printed,
+ * and a reported error (no tape, cover open) fails the page.
+ */
+class UsbPrinterConnection implements RasterConnection {
+
+    private static final int TRANSFER_TIMEOUT_MS = 5000;
+    private static final int MAX_TRANSFER_BYTES = 16 * 1024;
+    private static final long STATUS_REPLY_TIMEOUT_MS = 1000;
+    // Longest label on a 62mm roll at the slowest (600 dpi) speed, with room to spare
+    private static final long PRINT_TIMEOUT_MS = 30000;
+    private static final int STATUS_POLL_MS = 500;
+    private static final long STATUS_IDLE_DELAY_MS = 20;
+    private static final String CLOSED_MESSAGE = "Връзката с USB принтера е затворена";
+
+    private final UsbManager usbManager;
+    private final UsbDevice device;
+
+    // Guarded by this. Bumped by close, so a session still opening when the connection is closed is dropped.
+    private Session session;
+    private int closeCount = 0;
+
+    UsbPrinterConnection(UsbManager usbManager, UsbDevice device) {
+        this.usbManager = usbManager;
+        this.device = device;
+    }
+
+    @Override
+    public void enqueue(byte[] page, Runnable onWritten) throws IOException, InterruptedException {
+        Session current = open();
+        write(current, page);
+        if (current.statusReplies) {
+            awaitPrinted(current);
+        }
+        onWritten.run();
+    }
+
+    @Override
+    public void flush() {
+        // Transfers are synchronous
+    }
+
+    /**
+     * Drop the device. Any thread; a transfer running on a printer thread fails, and the device is
+     * released once it returns.
+     */
+    @Override
+    public void close() {
+        Session closed;
+        synchronized (this) {
+            closed = session;
+            session = null;
+            closeCount++;
+        }
+        if (closed != null) {
+            closed.close();
+        }
+    }
+
+    private Session open() throws IOException, InterruptedException {
+        int openedAfter;
+        synchronized (this) {
+            if (session != null) {
+                return session;
+            }
+            openedAfter = closeCount;
+        }
+
+        // Find the printer class interface and its bulk OUT endpoint
+        UsbInterface printerInterface = null;
+        UsbEndpoint bulkOut = null;
+        for (int i = 0; i < device.getInterfaceCount() && bulkOut == null; i++) {
+            UsbInterface candidate = device.getInterface(i);
+            if (candidate.getInterfaceClass() != UsbConstants.USB_CLASS_PRINTER) {
+                continue;
+            }
+            for (int e = 0; e < candidate.getEndpointCount(); e++) {
+                UsbEndpoint endpoint = candidate.getEndpoint(e);
+                if (endpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK && endpoint.getDirection() == UsbConstants.USB_DIR_OUT) {
+                    printerInterface = candidate;
+                    bulkOut = endpoint;
+                    break;
+                }
+            }
+        }
+        if (bulkOut == null) {
+            throw new IOException("USB принтерът няма изходен канал за данни");
+        }
+        UsbEndpoint bulkIn = null;
+        for (int e = 0; e < printerInterface.getEndpointCount(); e++) {
+            UsbEndpoint endpoint = printerInterface.getEndpoint(e);
+            if (endpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK && endpoint.getDirection() == UsbConstants.USB_DIR_IN) {
+                bulkIn = endpoint;
+                break;
+            }
+        }
+
+        UsbDeviceConnection connection = usbManager.openDevice(device);
+        if (connection == null) {
+            throw new IOException("Неуспешно отваряне на USB принтера");
+        }
+        if (!connection.claimInterface(printerInterface, true)) {
+            connection.close();
+            throw new IOException("Неуспешно отваряне на USB принтера");
+        }
+        Session opened = new Session(connection, printerInterface, bulkOut, bulkIn);
+        try {
+            if (bulkIn != null) {
+                write(opened, QLRasterEncoder.statusRequest());
+                QLStatus status = readStatus(opened, STATUS_REPLY_TIMEOUT_MS);
+                if (status != null && status.isError()) {
+                    throw new IOException("USB принтерът: " + status.describeError());
+                }
+                opened.statusReplies = status != null;
+            }
+            write(opened, QLRasterEncoder.jobHeader());
+        } catch (IOException | InterruptedException e) {
+            opened.close();
+            throw e;
+        }
+
+        synchronized (this) {
+            if (closeCount == openedAfter) {
+                session = opened;
+                return opened;
+            }
+        }
+        // Closed while opening
+        opened.close();
+        throw new IOException(CLOSED_MESSAGE);
+    }
+
+    /**
+     * Drop a session after a failed transfer, unless the connection has moved on already
+     */
+    private void fail(Session failed) {
+        synchronized (this) {
+            if (session == failed) {
+                session = null;
+            }
+        }
+        failed.close();
+    }
+
+    /**
+     * Read status messages until the page just written is printed or the printer reports an error
+     */
+    private void awaitPrinted(Session current) throws IOException, InterruptedException {
+        while (true) {
+            QLStatus status = readStatus(current, PRINT_TIMEOUT_MS);
+            if (status == null) {
+                fail(current);
+                throw new IOException("USB принтерът не потвърди печата");
+            }
+            if (status.isError()) {
+                fail(current);
+                throw new IOException("USB принтерът: " + status.describeError());
+            }
+            if (status.isPrintingCompleted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Next status message, or null if none arrives in time. The printer answers an IN transfer
+     * with no data while it has nothing to report.
+     *
+     * @throws IOException once the connection is closed
+     */
+    private QLStatus readStatus(Session current, long timeoutMs) throws IOException, InterruptedException {
+        byte[] buffer = new byte[Math.max(QLStatus.LENGTH, current.bulkIn.getMaxPacketSize())];
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            int read = current.transfer(current.bulkIn, buffer, 0, buffer.length, STATUS_POLL_MS);
+            if (read >= QLStatus.LENGTH) {
+                return QLStatus.parse(buffer, 0);
+            }
+            Thread.sleep(STATUS_IDLE_DELAY_MS);
+        }
+        return null;
+    }
+
+    private void write(Session current, byte[] data) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(MAX_TRANSFER_BYTES, data.length - offset);
+            int sent = current.transfer(current.bulkOut, data, offset, length, TRANSFER_TIMEOUT_MS);
+            if (sent <= 0) {
+                fail(current);
+                throw new IOException("Грешка при изпращане към USB принтера");
+            }
+            offset += sent;
+        }
+    }
+
+    /**
+     * The opened device and its claimed interface. UsbDeviceConnection must not be closed during
+     * a transfer, so closing waits for the one in progress to return.
+     */
+    private static final class Session {
+        final UsbDeviceConnection connection;
+        final UsbInterface printerInterface;
+        final UsbEndpoint bulkOut;
+        // Null when the printer has no IN endpoint
+        final UsbEndpoint bulkIn;
+        // The printer answered the status request sent on opening; set before the session is shared
+        boolean statusReplies = false;
+
+        // Guarded by this
+        private int transfers = 0;
+        private boolean closed = false;
+
+        Session(UsbDeviceConnection connection, UsbInterface printerInterface, UsbEndpoint bulkOut, UsbEndpoint bulkIn) {
+            this.connection = connection;
+            this.printerInterface = printerInterface;
+            this.bulkOut = bulkOut;
+            this.bulkIn = bulkIn;
+        }
+
+        int transfer(UsbEndpoint endpoint, byte[] data, int offset, int length, int timeoutMs) throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException(CLOSED_MESSAGE);
+                }
+                transfers++;
+            }
+            try {
+                // The overload with an offset needs API 28
+                return offset == 0
+                    ? connection.bulkTransfer(endpoint, data, length, timeoutMs)
+                    : connection.bulkTransfer(endpoint, data, offset, length, timeoutMs);
+            } finally {
+                boolean release;
+                synchronized (this) {
+                    transfers--;
+                    release = closed && transfers == 0;
+                }
+                if (release) {
+                    release();
+                }
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (transfers > 0) {
+                    // Released by the transfer when it returns
+                    return;
+                }
+            }
+            release();
+        }
+
+        private void release() {
+            connection.releaseInterface(printerInterface);
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.labelapp.printer;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.WebView;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * WebViewPrewarmer - Starts the WebView engine while the welcome screen detects the printer
+ * The first WebView of a process loads Chromium, which takes hundreds of milliseconds on
+ * low-end tablets. One is created as soon as the main thread goes idle, wrapped in a
+ * MutableContextWrapper so MainActivity can adopt it. The page's assets are read on a
+ * background thread meanwhile, so the page loads from the OS file cache.
+ */
+final class WebViewPrewarmer {
+
+    private static final String TAG = "WebViewPrewarmer";
+
+    private static final String[] PAGE_ASSETS = {"index.html", "script.js", "style.css", "catalog.json"};
+
+    // Main thread only
+    private static boolean started = false;
+    private static WebView warmWebView = null;
+
+    private WebViewPrewarmer() {
+    }
+
+    /**
+     * Warm up once per process. Main thread only.
+     */
+    static void start(Context context) {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        Context appContext = context.getApplicationContext();
+        new Thread(() -> readAssets(appContext), TAG).start();
+
+        // After the welcome screen's first frame, so it never delays it
+        Looper.myQueue().addIdleHandler(() -> {
+            // Skipped when release() came first
+            if (started && warmWebView == null) {
+                try {
+                    warmWebView = new WebView(new MutableContextWrapper(appContext));
+                } catch (RuntimeException e) {
+                    // WebView missing or updating - MainActivity creates its own
+                    Log.w(TAG, "WebView pre-warm failed", e);
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * The pre-warmed WebView rebound to the activity, or a new one. Main thread only.
+     */
+    static WebView obtain(Activity activity) {
+        WebView webView = warmWebView;
+        warmWebView = null;
+        if (webView == null) {
+            return new WebView(activity);
+        }
+        ((MutableContextWrapper) webView.getContext()).setBaseContext(activity);
+        return webView;
+    }
+
+    /**
+     * Drop the pre-warmed WebView when the native form was chosen instead. Main thread only.
+     */
+    static void release() {
+        started = false;
+        if (warmWebView != null) {
+            warmWebView.destroy();
+            warmWebView = null;
+        }
+    }
+
+    private static void readAssets(Context context) {
+        byte[] buffer = new byte[16 * 1024];
+        for (String asset : PAGE_ASSETS) {
+            try (InputStream in = context.getAssets().open(asset)) {
+                while (in.read(buffer) != -1) {
+                    // Only the read matters
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot read " + asset, e);
+            }
+        }
+    }
+}
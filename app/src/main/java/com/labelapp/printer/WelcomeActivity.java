@@ -2,8 +2,8 @@ package com.labelapp.printer;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Handler;
 import android.widget.Button;
+import android.widget.CompoundButton;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
@@ -16,8 +16,11 @@ public class WelcomeActivity extends AppCompatActivity {
     private TextView statusIcon;
     private Button retryButton;
     private Button skipButton;
+    private CompoundButton nativeFormSwitch;
     
     private PrinterManager printerManager;
+    private PrinterManager.PrinterCallback printerCallback;
+    private boolean navigated = false;
     
     // Welcome states
     enum WelcomeState {
@@ -34,12 +37,19 @@ public class WelcomeActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.begin();
         setContentView(R.layout.activity_welcome);
         
         initializeViews();
         setupEventListeners();
         initializePrinterManager();
         
+        // The form's state and WebView load while the printer is detected
+        AppStartup.begin(this);
+        if (!nativeFormSwitch.isChecked()) {
+            WebViewPrewarmer.start(this);
+        }
+        
         // Start the printer detection flow automatically
         startPrinterDetection();
     }
@@ -50,6 +60,13 @@ public class WelcomeActivity extends AppCompatActivity {
         statusIcon = findViewById(R.id.statusIcon);
         retryButton = findViewById(R.id.retryButton);
         skipButton = findViewById(R.id.skipButton);
+        nativeFormSwitch = findViewById(R.id.nativeFormSwitch);
+        
+        // A launch extra (the benchmark) overrides and keeps the choice
+        if (getIntent().hasExtra(FormMode.EXTRA_NATIVE_FORM)) {
+            FormMode.setNative(this, FormMode.isNative(this, getIntent()));
+        }
+        nativeFormSwitch.setChecked(FormMode.isNative(this));
     }
     
     private void setupEventListeners() {
@@ -62,12 +79,25 @@ public class WelcomeActivity extends AppCompatActivity {
         skipButton.setOnClickListener(v -> {
             navigateToMainActivity();
         });
+        
+        nativeFormSwitch.setOnCheckedChangeListener((button, checked) -> {
+            FormMode.setNative(this, checked);
+            if (checked) {
+                WebViewPrewarmer.release();
+            } else {
+                WebViewPrewarmer.start(this);
+            }
+        });
     }
     
     private void initializePrinterManager() {
         printerManager = PrinterManager.getInstance(this);
-        printerManager.setActivityContext(this); // Set activity context for permission requests
-        printerManager.setCallback(new PrinterManager.PrinterCallback() {
+        printerCallback = createPrinterCallback();
+        printerManager.addCallback(printerCallback);
+    }
+    
+    private PrinterManager.PrinterCallback createPrinterCallback() {
+        return new PrinterManager.PrinterCallback() {
             @Override
             public void onStateChanged(PrinterManager.PrinterState state, String message) {
                 runOnUiThread(() -> {
@@ -95,10 +125,8 @@ public class WelcomeActivity extends AppCompatActivity {
             public void onSuccess() {
                 runOnUiThread(() -> {
                     updateUIForState(WelcomeState.SUCCESS, "Принтерът е готов!");
-                    // Navigate to main activity after short delay
-                    new Handler().postDelayed(() -> {
-                        navigateToMainActivity();
-                    }, 2000);
+                    // The form is pre-warmed, so there is nothing to wait for
+                    navigateToMainActivity();
                 });
             }
             
@@ -114,7 +142,7 @@ public class WelcomeActivity extends AppCompatActivity {
                     }
                 });
             }
-        });
+        };
     }
     
     private void startPrinterDetection() {
@@ -167,11 +195,18 @@ public class WelcomeActivity extends AppCompatActivity {
     }
     
     private void navigateToMainActivity() {
+        // Detection can report success again from onResume
+        if (navigated) {
+            return;
+        }
+        navigated = true;
+        
         Intent intent = new Intent(this, MainActivity.class);
         // Pass the printer channel to MainActivity if available
         if (printerManager != null && printerManager.getPrinterChannel() != null) {
             intent.putExtra("PRINTER_READY", true);
         }
+        intent.putExtra(FormMode.EXTRA_NATIVE_FORM, nativeFormSwitch.isChecked());
         startActivity(intent);
         finish();
     }
@@ -179,65 +214,16 @@ public class WelcomeActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // Re-register the callback in case it was lost during permission dialog
+        // The callback stays registered through the permission dialog
         if (printerManager != null) {
-            printerManager.setActivityContext(this);
-            printerManager.setCallback(new PrinterManager.PrinterCallback() {
-                @Override
-                public void onStateChanged(PrinterManager.PrinterState state, String message) {
-                    runOnUiThread(() -> {
-                        // Map PrinterManager.PrinterState to WelcomeState
-                        WelcomeState welcomeState;
-                        switch (state) {
-                            case INITIALIZING:
-                                welcomeState = WelcomeState.INITIALIZING;
-                                break;
-                            case REQUESTING_PERMISSION:
-                                welcomeState = WelcomeState.REQUESTING_PERMISSION;
-                                break;
-                            case SEARCHING_PRINTER:
-                                welcomeState = WelcomeState.SEARCHING_PRINTER;
-                                break;
-                            default:
-                                welcomeState = WelcomeState.INITIALIZING;
-                                break;
-                        }
-                        updateUIForState(welcomeState, message);
-                    });
-                }
-                
-                @Override
-                public void onSuccess() {
-                    runOnUiThread(() -> {
-                        updateUIForState(WelcomeState.SUCCESS, "Принтерът е готов!");
-                        // Navigate to main activity after short delay
-                        new Handler().postDelayed(() -> {
-                            navigateToMainActivity();
-                        }, 2000);
-                    });
-                }
-                
-                @Override
-                public void onError(String error) {
-                    runOnUiThread(() -> {
-                        if (error.contains("намерен Brother принтер") || error.contains("USB връзката")) {
-                            updateUIForState(WelcomeState.ERROR_NO_DEVICE, "Моля, свържете QL-800 принтера");
-                        } else if (error.contains("разрешение") || error.contains("permission")) {
-                            updateUIForState(WelcomeState.ERROR_NO_PERMISSION, "Достъпът до USB е необходим");
-                        } else {
-                            updateUIForState(WelcomeState.ERROR_NO_PRINTER, error);
-                        }
-                    });
-                }
-            });
-            
             // KEY FIX: Check if printer is already ready or restart detection
             if (printerManager.isPrinterReady()) {
                 updateUIForState(WelcomeState.SUCCESS, "Принтерът е готов!");
-                new Handler().postDelayed(() -> navigateToMainActivity(), 2000);
+                navigateToMainActivity();
             } else {
-                // Restart detection since the callback was missed
-                printerManager.redetectPrinter();
+                // Join or restart detection since the callback may have been missed -
+                // PrinterManager dedupes this against a detection already in progress
+                printerManager.startDetection();
             }
         }
     }
@@ -245,7 +231,10 @@ public class WelcomeActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        // Don't cleanup the singleton PrinterManager here - it's shared across activities
-        // Only cleanup when the app is truly finishing
+        // Don't cleanup the singleton PrinterManager here - it's shared across activities.
+        // Only stop listening, so detection goes on reporting to MainActivity.
+        if (printerManager != null) {
+            printerManager.removeCallback(printerCallback);
+        }
     }
 }
\ No newline at end of file
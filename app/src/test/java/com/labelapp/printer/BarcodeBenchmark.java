@@ -0,0 +1,99 @@
+package com.labelapp.printer;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-label barcode cost: encoding plus emitting the module rectangles, as LabelDrawer does
+ * for every label, against drawing from the per-value pattern cache. Both paths must draw the
+ * same rectangles and the cached one must be faster; the timings are in the failure message.
+ * Skipped unless the build is run with -Pbenchmark (app/build.gradle).
+ */
+public class BarcodeBenchmark {
+
+    private static final int LABELS = 500;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    @Before
+    public void onlyWhenBenchmarking() {
+        Assume.assumeTrue(Boolean.getBoolean("labelapp.benchmark"));
+    }
+
+    @Test
+    public void encodeAndDraw() {
+        Barcode[] barcodes = {
+            Barcode.create(Barcode.Type.EAN_13, "3800123456787"),
+            Barcode.create(Barcode.Type.CODE_128, "ART-2024-000157"),
+            Barcode.create(Barcode.Type.QR, "https://etiketi.bg/a/ART-2024-000157")
+        };
+
+        for (Barcode barcode : barcodes) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                drawUncached(barcode);
+                drawCached(barcode);
+            }
+
+            long uncachedNanos = 0;
+            long cachedNanos = 0;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                long start = System.nanoTime();
+                long uncached = drawUncached(barcode);
+                uncachedNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long cached = drawCached(barcode);
+                cachedNanos += System.nanoTime() - start;
+
+                assertEquals(uncached, cached);
+            }
+
+            assertTrue(String.format("%s, %d labels, encode+draw %.3f ms/job, cached draw %.3f ms/job",
+                barcode.type, LABELS, uncachedNanos / 1e6 / MEASURED_ROUNDS, cachedNanos / 1e6 / MEASURED_ROUNDS),
+                cachedNanos < uncachedNanos);
+        }
+    }
+
+    /**
+     * Encode the value again for every label
+     */
+    private static long drawUncached(Barcode barcode) {
+        long checksum = 0;
+        for (int i = 0; i < LABELS; i++) {
+            BarcodePattern pattern;
+            switch (barcode.type) {
+                case EAN_13:
+                    pattern = Ean13Encoder.encode(barcode.value);
+                    break;
+                case CODE_128:
+                    pattern = Code128Encoder.encode(barcode.value);
+                    break;
+                default:
+                    pattern = QrEncoder.encode(barcode.value);
+                    break;
+            }
+            checksum += draw(pattern);
+        }
+        return checksum;
+    }
+
+    private static long drawCached(Barcode barcode) {
+        long checksum = 0;
+        for (int i = 0; i < LABELS; i++) {
+            checksum += draw(barcode.getPattern());
+        }
+        return checksum;
+    }
+
+    /**
+     * Module sizes of a 62mm label at 300 dpi; sums the rectangles instead of filling pixels
+     */
+    private static long draw(BarcodePattern pattern) {
+        long[] sum = new long[1];
+        pattern.draw((left, top, right, bottom) -> sum[0] += (long) (right - left) * (bottom - top), 2, 2, 60);
+        return sum[0];
+    }
+}
@@ -0,0 +1,162 @@
+package com.labelapp.printer;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Renders barcodes into a printer raster the way LabelDrawer places them and decodes the
+ * result with an independent reader (ZXing)
+ */
+public class BarcodeTest {
+
+    @Test
+    public void ean13AppendsCheckDigitAndDecodes() throws Exception {
+        Barcode barcode = Barcode.create(Barcode.Type.EAN_13, "590123412345");
+        assertEquals("5901234123457", barcode.value);
+
+        Result result = decode(renderStraight(barcode.getPattern(), 2, 2, 60));
+        assertEquals(BarcodeFormat.EAN_13, result.getBarcodeFormat());
+        assertEquals("5901234123457", result.getText());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ean13RejectsWrongCheckDigit() {
+        Barcode.create(Barcode.Type.EAN_13, "5901234123458");
+    }
+
+    @Test
+    public void code128MixesCodeSetsAndDecodes() throws Exception {
+        for (String value : new String[] {"ART-2024-000157", "12345678", "A1", "x9y"}) {
+            Barcode barcode = Barcode.create(Barcode.Type.CODE_128, value);
+            Result result = decode(renderStraight(barcode.getPattern(), 2, 2, 60));
+            assertEquals(BarcodeFormat.CODE_128, result.getBarcodeFormat());
+            assertEquals(value, result.getText());
+        }
+    }
+
+    @Test
+    public void qrDecodesAcrossVersions() throws Exception {
+        // Version 1, 5, 7 (version information blocks) and 10 (16-bit length)
+        int[] lengths = {10, 80, 120, 200};
+        for (int length : lengths) {
+            StringBuilder value = new StringBuilder("https://etiketi.bg/a/");
+            while (value.length() < length) {
+                value.append((char) ('a' + value.length() % 26));
+            }
+            Barcode barcode = Barcode.create(Barcode.Type.QR, value.toString());
+            BarcodePattern pattern = barcode.getPattern();
+
+            Result result = decode(renderStraight(pattern, 3, 3, 0));
+            assertEquals(BarcodeFormat.QR_CODE, result.getBarcodeFormat());
+            assertEquals(value.toString(), result.getText());
+        }
+    }
+
+    @Test
+    public void qrKeepsCyrillicText() throws Exception {
+        Barcode barcode = Barcode.create(Barcode.Type.QR, "Тениска, 100% памук");
+        assertEquals("Тениска, 100% памук", decode(renderStraight(barcode.getPattern(), 3, 3, 0)).getText());
+    }
+
+    @Test
+    public void decodesWhenDrawnOnTape() throws Exception {
+        // High resolution: two raster lines per dot along the feed
+        BarcodePattern ean = Barcode.create(Barcode.Type.EAN_13, "3800123456787").getPattern();
+        assertEquals("3800123456787", decode(asPrinted(renderOnTape(ean, 4, 2, 80), 2)).getText());
+
+        BarcodePattern qr = Barcode.create(Barcode.Type.QR, "ART-2024-000157").getPattern();
+        assertEquals("ART-2024-000157", decode(asPrinted(renderOnTape(qr, 6, 3, 0), 2)).getText());
+    }
+
+    @Test
+    public void code128TakesPrintableAsciiOnly() {
+        assertEquals("Price: 12.50 / 2x", Barcode.create(Barcode.Type.CODE_128, "Price: 12.50 / 2x").value);
+        try {
+            Barcode.create(Barcode.Type.CODE_128, "Блуза");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("(ASCII)"));
+        }
+    }
+
+    @Test
+    public void patternsAreCachedPerValue() {
+        Barcode first = Barcode.create(Barcode.Type.CODE_128, "CACHE-1");
+        Barcode second = Barcode.create(Barcode.Type.CODE_128, "CACHE-1");
+        assertSame(first.getPattern(), second.getPattern());
+        assertNotSame(first.getPattern(), Barcode.create(Barcode.Type.QR, "CACHE-1").getPattern());
+    }
+
+    /**
+     * Upright in a raster with the quiet zone around it
+     */
+    static MonoRaster renderStraight(BarcodePattern pattern, int moduleWidth, int moduleHeight, int barHeight) {
+        int quiet = pattern.quietZone;
+        int height = pattern.isLinear() ? barHeight : pattern.height * moduleHeight;
+        int margin = pattern.isLinear() ? 10 : quiet * moduleHeight;
+        MonoRaster raster = new MonoRaster((pattern.width + 2 * quiet) * moduleWidth, height + 2 * margin);
+        int offsetX = quiet * moduleWidth;
+        pattern.draw((left, top, right, bottom) -> fill(raster, offsetX + left, margin + top, offsetX + right, margin + bottom),
+            moduleWidth, moduleHeight, barHeight);
+        return raster;
+    }
+
+    /**
+     * Turned a quarter as on the tape, moduleLines along the feed and moduleDots across
+     */
+    static MonoRaster renderOnTape(BarcodePattern pattern, int moduleLines, int moduleDots, int barDots) {
+        int quiet = pattern.quietZone;
+        int across = pattern.isLinear() ? barDots : pattern.height * moduleDots;
+        int margin = pattern.isLinear() ? 10 : quiet * moduleDots;
+        int lines = (pattern.width + 2 * quiet) * moduleLines;
+        MonoRaster raster = new MonoRaster(across + 2 * margin, lines);
+        BarcodePattern.RectSink tape = (left, top, right, bottom) -> fill(raster, left, top, right, bottom);
+        pattern.draw(BarcodePattern.onTape(tape, margin, lines - quiet * moduleLines), moduleLines, moduleDots, barDots);
+        return raster;
+    }
+
+    /**
+     * The label as it comes out of the printer: turned upright, one pixel per dot
+     */
+    static MonoRaster asPrinted(MonoRaster tape, int linesPerDot) {
+        MonoRaster label = new MonoRaster(tape.height / linesPerDot, tape.width);
+        for (int y = 0; y < label.height; y++) {
+            for (int x = 0; x < label.width; x++) {
+                label.set(x, y, tape.get(y, tape.height - 1 - x * linesPerDot));
+            }
+        }
+        return label;
+    }
+
+    private static void fill(MonoRaster raster, int left, int top, int right, int bottom) {
+        for (int y = top; y < bottom; y++) {
+            raster.fillSpan(y, left, right);
+        }
+    }
+
+    private static Result decode(MonoRaster raster) throws Exception {
+        int[] pixels = new int[raster.width * raster.height];
+        for (int y = 0; y < raster.height; y++) {
+            for (int x = 0; x < raster.width; x++) {
+                pixels[y * raster.width + x] = raster.get(x, y) ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        hints.put(DecodeHintType.CHARACTER_SET, "UTF-8");
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new RGBLuminanceSource(raster.width, raster.height, pixels)));
+        return new MultiFormatReader().decode(bitmap, hints);
+    }
+}
@@ -0,0 +1,186 @@
+package com.labelapp.printer;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Imports delivery CSVs and reads the result back through BulkLabelFile
+ */
+public class CsvLabelImporterTest {
+
+    private static final String HEADER = "\uFEFFАртикул;Произход;Производител;Вносител;Материали;Размер;Количество;Цена BGN\r\n";
+
+    @Test
+    public void importsSemicolonSeparatedDelivery() throws IOException {
+        String csv = HEADER
+            + "Блуза;Турция;Текстил ООД;Внос ЕООД;95% Памук, 5% Еластан;M;2;19,56\r\n"
+            + "\"Рокля \"\"Лято\"\"\";Китай;\"Фабрика;Шанхай\";Внос ЕООД;Лен 100%;L;;39\r\n";
+
+        StringWriter out = new StringWriter();
+        CsvLabelImporter.Result result = new CsvLabelImporter().importCsv(new StringReader(csv), out, null);
+
+        assertEquals(2, result.rowsRead);
+        assertEquals(2, result.rowsImported);
+        assertEquals(3, result.labelCount);
+        assertTrue(result.errors.isEmpty());
+
+        String[] lines = out.toString().split("\n");
+        LabelPayload blouse = LabelPayload.decode(lines[0]);
+        assertEquals(2, blouse.getLabelCount());
+        assertEquals("19.56", blouse.getLabel(0).priceBgn);
+        assertEquals("10.00", blouse.getLabel(0).priceEur);
+        assertEquals("Еластан", blouse.getLabel(1).materials.get(1).type);
+
+        LabelPayload dress = LabelPayload.decode(lines[1]);
+        assertEquals("Рокля \"Лято\"", dress.getLabel(0).product);
+        assertEquals("Фабрика;Шанхай", dress.getLabel(0).manufacturer);
+        assertEquals(100, dress.getLabel(0).materials.get(0).percentage);
+        assertEquals("Лен", dress.getLabel(0).materials.get(0).type);
+    }
+
+    @Test
+    public void rejectsRowsLikeTheForm() throws IOException {
+        String csv = "Артикул,Произход,Производител,Вносител,Материали,Размер,Цена BGN\n"
+            + "Блуза,Турция,Текстил,Внос,90% Памук,M,10\n"
+            + ",Турция,Текстил,Внос,100% Памук,M,10\n"
+            + "Риза,Турция,Текстил,Внос,\"100% Памук\",S,\n"
+            + "Риза,Турция,Текстил,Внос,100% Памук,S,12\n";
+
+        StringWriter out = new StringWriter();
+        CsvLabelImporter.Result result = new CsvLabelImporter().importCsv(new StringReader(csv), out, null);
+
+        assertEquals(4, result.rowsRead);
+        assertEquals(1, result.rowsImported);
+        assertEquals(3, result.rowsRejected);
+        assertEquals("Ред 2: Процентите на материалите трябва да са общо 100% (текущо: 90%)", result.errors.get(0));
+        assertEquals("Ред 3: Артикулът е задължителен", result.errors.get(1));
+        assertEquals("Ред 4: Цената в BGN е задължителна", result.errors.get(2));
+    }
+
+    @Test
+    public void rejectsOutOfRangeQuantitiesAndPercentages() throws IOException {
+        String csv = "Артикул,Произход,Производител,Вносител,Материали,Размер,Количество,Цена BGN\n"
+            + "Блуза,Турция,Текстил,Внос,100% Памук,M,2000000000,10\n"
+            + "Блуза,Турция,Текстил,Внос,100% Памук,M,99999999999,10\n"
+            + "Блуза,Турция,Текстил,Внос,99999999999% Памук,M,1,10\n"
+            + "Блуза,Турция,Текстил,Внос,100% Памук,L,1000,10\n";
+
+        StringWriter out = new StringWriter();
+        CsvLabelImporter.Result result = new CsvLabelImporter().importCsv(new StringReader(csv), out, null);
+
+        assertEquals(1, result.rowsImported);
+        assertEquals(CsvLabelImporter.MAX_ROW_QUANTITY, result.labelCount);
+        assertTrue(result.errors.get(0).startsWith("Ред 2: Количеството не може да превишава 1000: 2000000000"));
+        assertTrue(result.errors.get(1).startsWith("Ред 3: Невалидно количество: 99999999999"));
+        assertTrue(result.errors.get(2).startsWith("Ред 4: Невалиден материал: 99999999999% Памук"));
+    }
+
+    @Test
+    public void stopsAddingRowsAtTheLabelLimit() throws IOException {
+        int rows = CsvLabelImporter.MAX_LABELS / CsvLabelImporter.MAX_ROW_QUANTITY + 2;
+        StringBuilder csv = new StringBuilder("Артикул,Произход,Производител,Вносител,Материали,Размер,Количество,Цена BGN\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("Блуза,Турция,Текстил,Внос,100% Памук,M,").append(CsvLabelImporter.MAX_ROW_QUANTITY).append(",10\n");
+        }
+
+        CsvLabelImporter.Result result = new CsvLabelImporter().importCsv(new StringReader(csv.toString()), new NullWriter(), null);
+
+        assertEquals(CsvLabelImporter.MAX_LABELS, result.labelCount);
+        assertEquals(2, result.rowsRejected);
+        assertTrue(result.errors.get(0).endsWith("Файлът надхвърля 200000 етикета"));
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenRequiredColumnIsMissing() throws IOException {
+        new CsvLabelImporter().importCsv(new StringReader("Артикул,Размер\nБлуза,M\n"), new StringWriter(), null);
+    }
+
+    @Test
+    public void streamsLargeDeliveryAndReadsLabelsBack() throws IOException {
+        int rows = 30000;
+        File labelsFile = File.createTempFile("labels", ".tmp");
+        try {
+            CsvLabelImporter.Result result;
+            int[] progressCalls = {0};
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(labelsFile), StandardCharsets.UTF_8)) {
+                result = new CsvLabelImporter().importCsv(new GeneratedDelivery(rows), out,
+                    (rowsRead, labelCount) -> progressCalls[0]++);
+            }
+
+            // Rows alternate between 1 and 2 copies
+            assertEquals(rows, result.rowsImported);
+            assertEquals(rows / 2 * 3, result.labelCount);
+            assertTrue(progressCalls[0] >= rows / CsvLabelImporter.PROGRESS_INTERVAL_ROWS);
+
+            try (BulkLabelFile labels = BulkLabelFile.open(labelsFile)) {
+                assertEquals(result.labelCount, labels.getLabelCount());
+                assertEquals("Артикул 0", labels.getLabel(0).product);
+                assertEquals("Артикул 1", labels.getLabel(1).product);
+                assertEquals("Артикул 1", labels.getLabel(2).product);
+                assertEquals("Артикул " + (rows - 1), labels.getLabel(result.labelCount - 1).product);
+                assertEquals("Артикул 20001", labels.getLabel(30001).product);
+            }
+        } finally {
+            labelsFile.delete();
+        }
+    }
+
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * CSV produced on the fly, so the test never holds the whole file either
+     */
+    private static class GeneratedDelivery extends Reader {
+        private final int rows;
+        private int row = -1;
+        private String current = "Артикул,Произход,Производител,Вносител,Материали,Размер,Количество,Цена BGN\n";
+        private int offset = 0;
+
+        GeneratedDelivery(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            if (offset == current.length()) {
+                row++;
+                if (row >= rows) {
+                    return -1;
+                }
+                current = "Артикул " + row + ",България,Шивашки цех,Търговец,\"60% Памук, 40% Полиестер\",XL," + (row % 2 + 1) + ",25.00\n";
+                offset = 0;
+            }
+            int count = Math.min(len, current.length() - offset);
+            current.getChars(offset, offset + count, buffer, off);
+            offset += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
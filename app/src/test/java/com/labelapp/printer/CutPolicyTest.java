@@ -0,0 +1,62 @@
+package com.labelapp.printer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cut decisions of each policy over a job's labels
+ */
+public class CutPolicyTest {
+
+    private static final List<Integer> LABELS = Arrays.asList(0, 1, 2, 3, 4, 5, 6);
+    private static final String[] SIZES = {"S", "S", "M", "M", "M", "L", "L"};
+
+    private static List<Integer> cuts(CutPolicy policy, List<Integer> labels) throws Exception {
+        CutPolicy.Plan plan = policy.plan(labels, i -> SIZES[i]);
+        List<Integer> cuts = new ArrayList<>();
+        for (int label : labels) {
+            if (plan.cutAfter(label)) {
+                cuts.add(label);
+            }
+        }
+        return cuts;
+    }
+
+    @Test
+    public void cutsEveryLabelByDefault() throws Exception {
+        assertEquals(LABELS, cuts(CutPolicy.parse(null), LABELS));
+    }
+
+    @Test
+    public void cutsEveryNAndAtTheEnd() throws Exception {
+        assertEquals(Arrays.asList(2, 5, 6), cuts(new CutPolicy(CutPolicy.Mode.EVERY_N, 3), LABELS));
+    }
+
+    @Test
+    public void cutsWhereTheSizeChanges() throws Exception {
+        assertEquals(Arrays.asList(1, 4, 6), cuts(new CutPolicy(CutPolicy.Mode.SIZE_GROUP, 1), LABELS));
+    }
+
+    @Test
+    public void cutsOnlyTheLastLabelOfAResumedJob() throws Exception {
+        assertEquals(Arrays.asList(6), cuts(new CutPolicy(CutPolicy.Mode.END_OF_JOB, 1), Arrays.asList(3, 4, 5, 6)));
+    }
+
+    @Test
+    public void parsesWhatItStores() {
+        CutPolicy policy = CutPolicy.parse(new CutPolicy(CutPolicy.Mode.EVERY_N, 10).toString());
+        assertEquals(CutPolicy.Mode.EVERY_N, policy.mode);
+        assertEquals(10, policy.everyN);
+        assertEquals(CutPolicy.Mode.SIZE_GROUP, CutPolicy.parse("SIZE_GROUP").mode);
+        assertEquals(CutPolicy.Mode.EVERY_LABEL, CutPolicy.parse("EVERY_N:0").mode);
+        assertEquals(CutPolicy.Mode.EVERY_LABEL, CutPolicy.parse("SOMETIMES").mode);
+
+        // Ganged in three columns, every 10 labels is every 3 strips
+        assertEquals(3, policy.forColumns(3).everyN);
+    }
+}
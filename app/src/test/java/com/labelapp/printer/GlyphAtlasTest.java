@@ -0,0 +1,165 @@
+package com.labelapp.printer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Packs glyphs into the atlas and blits them onto label rasters at any bit offset
+ */
+public class GlyphAtlasTest {
+
+    /**
+     * Every glyph a filled box, width 3 + (c % 5) dots and 7 dots above the baseline; spaces are blank
+     */
+    private static final class BoxGlyphs implements GlyphAtlas.GlyphSource {
+        final List<Character> rasterized = new ArrayList<>();
+
+        @Override
+        public MonoRaster rasterize(char c, int[] offset) {
+            rasterized.add(c);
+            if (c == ' ') {
+                return null;
+            }
+            MonoRaster glyph = new MonoRaster(width(c), 7);
+            for (int y = 0; y < glyph.height; y++) {
+                glyph.fillSpan(y, 0, glyph.width);
+            }
+            offset[0] = 1;
+            offset[1] = -7;
+            return glyph;
+        }
+
+        @Override
+        public float advance(char c) {
+            return width(c) + 2;
+        }
+
+        static int width(char c) {
+            return 3 + c % 5;
+        }
+    }
+
+    @Test
+    public void preloadsLabelCharactersAndAddsOthersOnce() {
+        BoxGlyphs source = new BoxGlyphs();
+        GlyphAtlas atlas = new GlyphAtlas(source);
+        assertEquals(GlyphAtlas.PRELOADED_CHARACTERS.length(), source.rasterized.size());
+
+        MonoRaster label = new MonoRaster(200, 20);
+        atlas.drawText(label, "12,50 лв €", 0, 10, true);
+        assertEquals(GlyphAtlas.PRELOADED_CHARACTERS.length(), source.rasterized.size());
+
+        atlas.drawText(label, "Qq", 0, 10, true);
+        atlas.drawText(label, "qQ", 0, 10, true);
+        assertEquals(GlyphAtlas.PRELOADED_CHARACTERS.length() + 2, source.rasterized.size());
+    }
+
+    @Test
+    public void drawsEachGlyphAtItsPenPosition() {
+        GlyphAtlas atlas = new GlyphAtlas(new BoxGlyphs());
+        MonoRaster label = new MonoRaster(64, 16);
+        String text = "7 %";
+        float end = atlas.drawText(label, text, 5, 12, true);
+
+        float pen = 5;
+        for (char c : text.toCharArray()) {
+            int left = Math.round(pen) + 1;
+            if (c != ' ') {
+                for (int y = 5; y < 12; y++) {
+                    assertFalse(label.get(left - 1, y));
+                    for (int x = left; x < left + BoxGlyphs.width(c); x++) {
+                        assertTrue(c + " at " + x + "," + y, label.get(x, y));
+                    }
+                    assertFalse(label.get(left + BoxGlyphs.width(c), y));
+                }
+                assertFalse(label.get(left, 4));
+                assertFalse(label.get(left, 12));
+            }
+            pen += BoxGlyphs.width(c) + 2;
+        }
+        assertEquals(pen, end, 0f);
+        assertEquals(pen - 5, atlas.measureText(text), 0f);
+    }
+
+    @Test
+    public void whiteTextClearsDotsAndClipsAtTheEdges() {
+        GlyphAtlas atlas = new GlyphAtlas(new BoxGlyphs());
+        MonoRaster badge = new MonoRaster(20, 10);
+        for (int y = 0; y < badge.height; y++) {
+            badge.fillSpan(y, 0, badge.width);
+        }
+
+        // Starts left of the raster and runs past its right and top edges
+        atlas.drawText(badge, "ШШШШШ", -4, 5, false);
+        assertFalse(badge.get(0, 0));
+        assertFalse(badge.get(19, 4));
+        assertTrue(badge.get(0, 5));
+        assertTrue(badge.get(19, 9));
+    }
+
+    @Test
+    public void growsWhenGlyphsFillTheAtlas() {
+        BoxGlyphs source = new BoxGlyphs();
+        GlyphAtlas atlas = new GlyphAtlas(source);
+        int before = atlas.getByteCount();
+        StringBuilder text = new StringBuilder();
+        for (char c = 0x4E00; c < 0x4E00 + 2000; c++) {
+            text.append(c);
+        }
+        MonoRaster label = new MonoRaster(20000, 10);
+        atlas.drawText(label, text.toString(), 0, 8, true);
+        assertTrue(atlas.getByteCount() > before);
+
+        // Glyphs packed before the atlas grew are still intact
+        MonoRaster again = new MonoRaster(16, 10);
+        atlas.drawText(again, "А", 0, 8, true);
+        assertTrue(again.get(1, 1));
+        assertTrue(again.get(BoxGlyphs.width('А'), 7));
+    }
+
+    @Test
+    public void blitsARegionAtAnyBitOffset() {
+        MonoRaster source = new MonoRaster(40, 3);
+        source.fillSpan(0, 0, 40);
+        source.set(13, 1, true);
+        source.set(21, 1, true);
+        source.fillSpan(2, 11, 23);
+
+        for (int left = 0; left < 9; left++) {
+            MonoRaster target = new MonoRaster(40, 3);
+            target.blit(source, 11, 1, 12, 2, left, 1, true);
+            for (int x = 0; x < 40; x++) {
+                assertFalse(target.get(x, 0));
+                boolean inside = x >= left && x < left + 12;
+                assertEquals("row 1 x " + x, x == left + 2 || x == left + 10, target.get(x, 1));
+                assertEquals("row 2 x " + x, inside, target.get(x, 2));
+            }
+        }
+    }
+
+    @Test
+    public void rotatesUprightLabelOntoTheTape() {
+        MonoRaster upright = new MonoRaster(10, 4);
+        upright.set(0, 0, true);
+        upright.set(9, 3, true);
+        upright.set(2, 1, true);
+
+        MonoRaster tape = upright.rotateCounterClockwise();
+        assertEquals(4, tape.width);
+        assertEquals(10, tape.height);
+        assertTrue(tape.get(0, 9));
+        assertTrue(tape.get(3, 0));
+        assertTrue(tape.get(1, 7));
+        int set = 0;
+        for (int y = 0; y < tape.height; y++) {
+            for (int x = 0; x < tape.width; x++) {
+                set += tape.get(x, y) ? 1 : 0;
+            }
+        }
+        assertEquals(3, set);
+    }
+}
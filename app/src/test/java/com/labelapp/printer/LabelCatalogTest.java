@@ -0,0 +1,66 @@
+package com.labelapp.printer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads the catalog.json shared with script.js and resolves label text through it
+ */
+public class LabelCatalogTest {
+
+    private LabelCatalog previous;
+    private LabelCatalog catalog;
+
+    @Before
+    public void setUp() throws IOException {
+        previous = LabelCatalog.get();
+        // Unit tests run from the module directory
+        try (InputStream in = new FileInputStream(new File("src/main/assets/catalog.json"))) {
+            catalog = LabelCatalog.read(in);
+        }
+        LabelCatalog.install(catalog);
+    }
+
+    @After
+    public void tearDown() {
+        LabelCatalog.install(previous);
+    }
+
+    @Test
+    public void idsFollowFileOrder() {
+        assertEquals("Памук", catalog.getMaterials().get(0).name);
+        assertEquals("ПАМУК", catalog.getMaterials().get(0).label);
+        assertEquals(0, catalog.findMaterial("памук").id);
+        assertEquals(catalog.getOrigins().size() - 1, catalog.findOrigin("Румъния").id);
+        assertNull(catalog.findMaterial("Кашмир"));
+    }
+
+    @Test
+    public void labelsShareCatalogText() {
+        LabelData first = new LabelData("M", "Блуза", "Турция",
+            Arrays.asList(new Material(95, "памук"), new Material(5, "Кашмир")), "Текстил", "Внос", null, "10.00");
+        LabelData second = new LabelData("L", "Риза", "турция",
+            Arrays.asList(new Material(100, "Памук")), "Текстил", "Внос", null, "12.00");
+
+        assertSame(first.origin, second.origin);
+        assertEquals("ТУРЦИЯ", first.origin);
+        assertEquals("Памук", first.materials.get(0).type);
+        assertEquals("95% ПАМУК", first.materials.get(0).line);
+        assertEquals(catalog.findMaterial("Памук").id, second.materials.get(0).catalogId);
+
+        // Free text still prints, uppercased on its own
+        assertEquals(LabelCatalog.NO_ID, first.materials.get(1).catalogId);
+        assertEquals("5% КАШМИР", first.materials.get(1).line);
+        assertEquals("ПОРТУГАЛИЯ", new LabelData("M", "Блуза", "Португалия",
+            Arrays.asList(new Material(100, "Лен")), "Текстил", "Внос", null, "10.00").origin);
+    }
+}
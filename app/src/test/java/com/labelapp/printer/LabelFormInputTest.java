@@ -0,0 +1,99 @@
+package com.labelapp.printer;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The native form's data turns into the same payload and errors as the page's
+ */
+public class LabelFormInputTest {
+
+    // What encodeLabelPayload() in script.js sends for the same blouse, with the origin in the
+    // printed form LabelData keeps it in - both decode to the same label
+    private static final String SCRIPT_PAYLOAD =
+        "L2\u001FБлуза\u001FКИТАЙ\u001FA\u001FB\u001F10.00\u001F19.56\u001F95\u001DПамук\u001D5\u001DЕластан\u001FM\u001DM\u001DL\u001F";
+
+    private static LabelFormInput blouse() {
+        return new LabelFormInput("Блуза", "Китай", "A", "B", "19.56")
+            .addMaterial("Памук", "95")
+            .addMaterial("Еластан", "5")
+            .addSize("M", 2)
+            .addSize("L", 1);
+    }
+
+    @Test
+    public void encodesLikeTheScript() {
+        LabelFormInput input = blouse();
+
+        assertTrue(input.validate().isEmpty());
+        assertEquals(3, input.getLabelCount());
+        assertEquals(SCRIPT_PAYLOAD, input.toPayload());
+    }
+
+    @Test
+    public void skipsRowsThatAreNotFilledIn() {
+        LabelFormInput input = blouse()
+            .addMaterial("", "10")
+            .addMaterial("Лен", "")
+            .addMaterial("Лен", "abc")
+            .addSize("", 5);
+
+        assertTrue(input.validate().isEmpty());
+        assertEquals(SCRIPT_PAYLOAD, input.toPayload());
+    }
+
+    @Test
+    public void clampsQuantities() {
+        LabelFormInput input = new LabelFormInput("Блуза", "Китай", "A", "B", "10")
+            .addSize("S", 0)
+            .addSize("M", 500);
+
+        assertEquals(1 + LabelFormInput.MAX_QUANTITY, input.getLabelCount());
+    }
+
+    @Test
+    public void reportsTheFormsErrors() {
+        List<String> errors = new LabelFormInput("", "Китай", "A", "B", "")
+            .addMaterial("Памук", "90")
+            .setBarcode("EAN13", "")
+            .validate();
+
+        assertTrue(errors.contains("Артикулът е задължителен"));
+        assertTrue(errors.contains("Поне един размер е задължителен"));
+        assertTrue(errors.contains("Процентите на материалите трябва да са общо 100% (текущо: 90%)"));
+        assertTrue(errors.contains("Цената в BGN е задължителна"));
+        assertTrue(errors.contains("Въведете стойност на баркода"));
+    }
+
+    @Test
+    public void checksAndEncodesTheBarcode() {
+        assertFalse(blouse().setBarcode("EAN13", "123").validate().isEmpty());
+
+        LabelFormInput input = blouse().setBarcode("EAN13", " 400638133393 ");
+        assertTrue(input.validate().isEmpty());
+        assertEquals(Barcode.Type.EAN_13, LabelPayload.decode(input.toPayload()).getBaseLabel().barcode.type);
+        assertEquals("4006381333931", LabelPayload.decode(input.toPayload()).getBaseLabel().barcode.value);
+    }
+
+    @Test
+    public void separatorsCannotSplitAField() {
+        LabelFormInput input = new LabelFormInput("Бл\u001Fуза", "Китай", "A", "B", "10")
+            .addMaterial("Памук", "100")
+            .addSize("M\u001DL", 1);
+
+        LabelPayload payload = LabelPayload.decode(input.toPayload());
+        assertEquals("Бл уза", payload.getBaseLabel().product);
+        assertEquals("M L", payload.getLabel(0).size);
+    }
+
+    @Test
+    public void convertsBgnToEur() {
+        assertEquals("10.00", LabelFormInput.toEur("19.558"));
+        assertEquals("0.51", LabelFormInput.toEur(" 1 "));
+        assertEquals("", LabelFormInput.toEur(""));
+        assertEquals("", LabelFormInput.toEur("лв"));
+    }
+}
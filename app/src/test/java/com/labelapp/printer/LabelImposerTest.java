@@ -0,0 +1,125 @@
+package com.labelapp.printer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Packs labels into strips, places their rasters across the tape and maps strip progress back to labels
+ */
+public class LabelImposerTest {
+
+    @Test
+    public void fitsThreeColumnsOnTheRoll() {
+        // 20mm labels are 236 dots; three with 2mm gutters are narrowed to fit 696 dots
+        LabelImposer imposer = new LabelImposer(696, 3, 24, 236);
+        assertEquals(216, imposer.columnDots);
+        assertEquals(0, imposer.columnLeft(0));
+        assertEquals(240, imposer.columnLeft(1));
+        assertEquals(480, imposer.columnLeft(2));
+
+        // Two columns keep the natural width and are centered
+        LabelImposer two = new LabelImposer(696, 2, 24, 236);
+        assertEquals(236, two.columnDots);
+        assertEquals(100, two.columnLeft(0));
+        assertEquals(696 - 100 - 236, two.columnLeft(1));
+    }
+
+    @Test
+    public void groupsLabelsOfSimilarLengthWithinAWindow() throws Exception {
+        LabelImposer imposer = new LabelImposer(696, 3, 24, 236);
+        // Two articles alternating: 500 and 300 lines long
+        int[] lengths = {500, 300, 500, 300, 500, 300};
+        List<LabelImposer.Strip> strips = imposer.pack(Arrays.asList(0, 1, 2, 3, 4, 5), i -> lengths[i]);
+
+        assertEquals(2, strips.size());
+        assertArrayEquals(new int[] {0, 2, 4}, strips.get(0).labels);
+        assertArrayEquals(new int[] {1, 3, 5}, strips.get(1).labels);
+    }
+
+    @Test
+    public void keepsOrderAcrossWindowsAndFillsTheLastStripPartly() throws Exception {
+        LabelImposer imposer = new LabelImposer(696, 2, 24, 236);
+        List<Integer> labels = new ArrayList<>();
+        for (int i = 0; i < LabelImposer.PACKING_WINDOW + 3; i++) {
+            labels.add(i);
+        }
+        List<LabelImposer.Strip> strips = imposer.pack(labels, i -> 100);
+
+        assertEquals(8, strips.size());
+        assertArrayEquals(new int[] {0, 1}, strips.get(0).labels);
+        assertArrayEquals(new int[] {12, 13}, strips.get(6).labels);
+        assertArrayEquals(new int[] {14}, strips.get(7).labels);
+    }
+
+    @Test
+    public void composesColumnsTopAligned() {
+        LabelImposer imposer = new LabelImposer(696, 3, 24, 236);
+        MonoRaster tall = new MonoRaster(216, 50);
+        tall.fillSpan(49, 0, 216);
+        MonoRaster shortLabel = new MonoRaster(216, 20);
+        shortLabel.set(0, 0, true);
+        shortLabel.set(215, 19, true);
+
+        MonoRaster strip = imposer.compose(new MonoRaster[] {tall, shortLabel});
+        assertEquals(696, strip.width);
+        assertEquals(50, strip.height);
+
+        // Unaligned column offset (240) shifts bits across bytes
+        assertTrue(strip.get(240, 0));
+        assertTrue(strip.get(240 + 215, 19));
+        assertFalse(strip.get(239, 0));
+        assertFalse(strip.get(240 + 216, 19));
+        assertTrue(strip.get(0, 49));
+        assertTrue(strip.get(215, 49));
+        assertFalse(strip.get(216, 49));
+        assertFalse(strip.get(240, 49));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRasterOfTheWrongWidth() {
+        new LabelImposer(696, 3, 24, 236).compose(new MonoRaster[] {new MonoRaster(236, 10)});
+    }
+
+    @Test
+    public void reportsEveryLabelOfAPrintedStrip() throws Exception {
+        LabelImposer imposer = new LabelImposer(696, 2, 24, 236);
+        List<LabelImposer.Strip> strips = imposer.pack(Arrays.asList(4, 5, 6), i -> 100);
+
+        List<String> events = new ArrayList<>();
+        PrintScheduler.Listener labels = new PrintScheduler.Listener() {
+            @Override
+            public void onLabelPrinted(int labelIndex, int printedCount, int totalCount) {
+                events.add(labelIndex + ":" + printedCount + "/" + totalCount);
+            }
+
+            @Override
+            public void onPrinterFailed(int printerIndex, String error) {
+            }
+
+            @Override
+            public void onJobComplete(int totalCount) {
+                events.add("complete " + totalCount);
+            }
+
+            @Override
+            public void onJobFailed(int printedCount, int totalCount, String error) {
+                events.add("failed " + printedCount + "/" + totalCount);
+            }
+        };
+
+        // Labels 0-3 of the job were printed before it was interrupted
+        PrintScheduler.Listener listener = LabelImposer.forStrips(strips, labels, 4, 7);
+        listener.onLabelPrinted(0, 1, 2);
+        listener.onJobFailed(1, 2, "Няма хартия");
+        assertEquals(Arrays.asList("4:5/7", "5:6/7", "failed 6/7"), events);
+
+        listener.onLabelPrinted(1, 2, 2);
+        listener.onJobComplete(2);
+        assertEquals(Arrays.asList("4:5/7", "5:6/7", "failed 6/7", "6:7/7", "complete 7"), events);
+    }
+}
@@ -0,0 +1,121 @@
+package com.labelapp.printer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares per-job decode cost of the compact payload against the former JSON path, which
+ * re-serialized and re-parsed the whole form for every copy. Both paths must yield the same
+ * labels and the compact one must be faster; the timings are in the failure message.
+ * Skipped unless the build is run with -Pbenchmark (app/build.gradle).
+ */
+public class LabelPayloadBenchmark {
+
+    private static final int COPIES = 500;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    @Before
+    public void onlyWhenBenchmarking() {
+        Assume.assumeTrue(Boolean.getBoolean("labelapp.benchmark"));
+    }
+
+    @Test
+    public void compareWithJsonPath() throws Exception {
+        String[] sizeNames = {"XS", "S", "M", "L", "XL", "XXL"};
+        List<String> sizes = new ArrayList<>();
+        JSONArray sizesArray = new JSONArray();
+        for (int i = 0; i < COPIES; i++) {
+            sizes.add(sizeNames[i % sizeNames.length]);
+            sizesArray.put(sizeNames[i % sizeNames.length]);
+        }
+
+        List<Material> materials = new ArrayList<>();
+        JSONArray materialsArray = new JSONArray();
+        String[] types = {"Памук", "Полиестер", "Еластан"};
+        int[] percentages = {60, 35, 5};
+        for (int i = 0; i < types.length; i++) {
+            materials.add(new Material(percentages[i], types[i]));
+            materialsArray.put(new JSONObject().put("type", types[i]).put("percentage", percentages[i]));
+        }
+
+        LabelData label = new LabelData("", "Дамска блуза с дълъг ръкав", "Турция", materials,
+            "Текстил ООД", "Внос Трейд ЕООД", "12.50", "24.45");
+        String compact = LabelPayload.encode(label, sizes);
+        String json = new JSONObject()
+            .put("product", label.product).put("origin", "Турция")
+            .put("manufacturer", label.manufacturer).put("importer", label.importer)
+            .put("priceEur", label.priceEur).put("priceBgn", label.priceBgn)
+            .put("materials", materialsArray).put("sizes", sizesArray)
+            .toString();
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            decodeJsonPerCopy(json);
+            decodeCompact(compact);
+        }
+
+        long jsonNanos = 0;
+        long compactNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            List<LabelData> fromJson = decodeJsonPerCopy(json);
+            jsonNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<LabelData> fromCompact = decodeCompact(compact);
+            compactNanos += System.nanoTime() - start;
+
+            assertSameLabels(fromJson, fromCompact);
+        }
+
+        assertTrue(String.format("%d copies, json %.3f ms/job, compact %.3f ms/job",
+            COPIES, jsonNanos / 1e6 / MEASURED_ROUNDS, compactNanos / 1e6 / MEASURED_ROUNDS), compactNanos < jsonNanos);
+    }
+
+    /**
+     * The former path: parse the form, then copy and re-parse it for each label
+     */
+    private static List<LabelData> decodeJsonPerCopy(String json) throws Exception {
+        JSONObject formData = new JSONObject(json);
+        JSONArray sizesArray = formData.getJSONArray("sizes");
+        List<LabelData> labels = new ArrayList<>(sizesArray.length());
+        for (int i = 0; i < sizesArray.length(); i++) {
+            JSONObject labelForSize = new JSONObject(formData.toString());
+            labelForSize.put("size", sizesArray.getString(i));
+            labels.add(new LabelData(labelForSize));
+        }
+        return labels;
+    }
+
+    private static List<LabelData> decodeCompact(String compact) {
+        LabelPayload payload = LabelPayload.decode(compact);
+        List<LabelData> labels = new ArrayList<>(payload.getLabelCount());
+        for (int i = 0; i < payload.getLabelCount(); i++) {
+            labels.add(payload.getLabel(i));
+        }
+        return labels;
+    }
+
+    private static void assertSameLabels(List<LabelData> expected, List<LabelData> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            LabelData a = expected.get(i);
+            LabelData b = actual.get(i);
+            assertEquals(a.size, b.size);
+            assertEquals(a.product, b.product);
+            assertEquals(a.origin, b.origin);
+            assertEquals(a.priceEur, b.priceEur);
+            assertEquals(a.priceBgn, b.priceBgn);
+            assertEquals(a.materials.size(), b.materials.size());
+            assertEquals(a.materials.get(0).type, b.materials.get(0).type);
+        }
+    }
+}
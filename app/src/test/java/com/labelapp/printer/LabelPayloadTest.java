@@ -0,0 +1,102 @@
+package com.labelapp.printer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decoding of the compact bridge payload produced by encodeLabelPayload() in script.js
+ */
+public class LabelPayloadTest {
+
+    // Same bytes script.js produces for a blouse in M, M, L
+    private static final String SCRIPT_PAYLOAD =
+        "L1\u001FБлуза\u001FКитай\u001FA\u001FB\u001F10.00\u001F19.56\u001F95\u001DПамук\u001D5\u001DЕластан\u001FM\u001DM\u001DL";
+
+    @Test
+    public void decodesScriptPayload() {
+        LabelPayload payload = LabelPayload.decode(SCRIPT_PAYLOAD);
+
+        assertEquals(3, payload.getLabelCount());
+        LabelData label = payload.getLabel(2);
+        assertEquals("L", label.size);
+        assertEquals("Блуза", label.product);
+        assertEquals("КИТАЙ", label.origin);
+        assertEquals("A", label.manufacturer);
+        assertEquals("B", label.importer);
+        assertEquals("10.00", label.priceEur);
+        assertEquals("19.56", label.priceBgn);
+        assertEquals(2, label.materials.size());
+        assertEquals(95, label.materials.get(0).percentage);
+        assertEquals("Еластан", label.materials.get(1).type);
+    }
+
+    @Test
+    public void copiesOfOneSizeShareLabel() {
+        LabelPayload payload = LabelPayload.decode(SCRIPT_PAYLOAD);
+
+        assertSame(payload.getLabel(0), payload.getLabel(1));
+        assertNotSame(payload.getLabel(0), payload.getLabel(2));
+        assertSame(payload.getLabel(0).materials, payload.getLabel(2).materials);
+    }
+
+    @Test
+    public void emptyFieldsAndMissingPrice() {
+        String encoded = "L2\u001F\u001F\u001F\u001F\u001F\u001F5.00\u001F\u001FXL\u001F";
+        LabelPayload payload = LabelPayload.decode(encoded);
+
+        LabelData label = payload.getLabel(0);
+        assertEquals("", label.product);
+        assertNull(label.priceEur);
+        assertEquals("5.00", label.priceBgn);
+        assertTrue(label.materials.isEmpty());
+        assertEquals(encoded, LabelPayload.encode(payload.getBaseLabel(), payload.getSizes()));
+    }
+
+    @Test
+    public void encodeRoundTrips() {
+        LabelPayload payload = LabelPayload.decode(SCRIPT_PAYLOAD);
+        String encoded = LabelPayload.encode(payload.getBaseLabel(), payload.getSizes());
+
+        LabelPayload decoded = LabelPayload.decode(encoded);
+        assertEquals(payload.getSizes(), decoded.getSizes());
+        assertEquals("Памук", decoded.getLabel(0).materials.get(0).type);
+    }
+
+    @Test
+    public void barcodeRoundTrips() {
+        String encoded = "L2\u001FБлуза\u001FКитай\u001FA\u001FB\u001F\u001F19.56\u001F100\u001DПамук\u001FM\u001FEAN13\u001D380012345678";
+        LabelData label = LabelPayload.decode(encoded).getLabel(0);
+
+        assertEquals(Barcode.Type.EAN_13, label.barcode.type);
+        assertEquals("3800123456787", label.barcode.value);
+        String reencoded = LabelPayload.encode(label, Arrays.asList("M"));
+        assertSame(Barcode.Type.EAN_13, LabelPayload.decode(reencoded).getLabel(0).barcode.type);
+        assertNull(LabelPayload.decode(SCRIPT_PAYLOAD).getLabel(0).barcode);
+    }
+
+    @Test
+    public void acceptsLegacyJson() {
+        String json = "{\"product\":\"Рокля\",\"origin\":\"Турция\",\"materials\":[{\"type\":\"Лен\",\"percentage\":100}],"
+            + "\"priceBgn\":\"39.00\",\"sizes\":[\"S\",\"S\"]}";
+        LabelPayload payload = LabelPayload.decode(json);
+
+        List<String> expectedSizes = Arrays.asList("S", "S");
+        assertEquals(expectedSizes, payload.getSizes());
+        assertEquals("ТУРЦИЯ", payload.getLabel(1).origin);
+        assertEquals(100, payload.getLabel(1).materials.get(0).percentage);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownVersion() {
+        LabelPayload.decode("L9\u001F\u001F\u001F\u001F\u001F\u001F\u001F\u001F");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadPercentage() {
+        LabelPayload.decode("L1\u001F\u001F\u001F\u001F\u001F\u001F\u001Fмного\u001DПамук\u001FM");
+    }
+}
@@ -0,0 +1,162 @@
+package com.labelapp.printer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes snapshots to a file and streams them back record by record
+ */
+public class LabelSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("snapshot", LabelSnapshot.FILE_SUFFIX);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Records as "field=value" and "lastUsed:payload"
+     */
+    private static final class Recorder implements LabelSnapshot.Sink {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void history(String field, String value) {
+            records.add(field + "=" + value);
+        }
+
+        @Override
+        public void template(String payload, long lastUsed) {
+            records.add(lastUsed + ":" + payload);
+        }
+    }
+
+    private static String payload(String product) {
+        LabelData label = new LabelData("", product, "Турция",
+            Arrays.asList(new Material(100, "Памук")), "Текстил ООД", "Внос ЕООД", "10.00", "19.56");
+        return LabelPayload.encode(label, Arrays.asList("M", "L"));
+    }
+
+    private List<String> read() throws IOException {
+        Recorder recorder = new Recorder();
+        try (InputStream in = new FileInputStream(file)) {
+            LabelSnapshot.read(in, recorder);
+        }
+        return recorder.records;
+    }
+
+    @Test
+    public void roundTripsHistoryAndTemplates() throws IOException {
+        try (LabelSnapshot.Writer writer = new LabelSnapshot.Writer(new FileOutputStream(file))) {
+            writer.writeHistory("MANUFACTURER", "Текстил ООД");
+            writer.writeHistory("PRODUCT", "Дамска Блуза");
+            writer.writeTemplate(payload("Блуза"), 1700000000000L);
+            assertEquals(2, writer.getHistoryCount());
+            assertEquals(1, writer.getTemplateCount());
+        }
+
+        assertEquals(Arrays.asList("MANUFACTURER=Текстил ООД", "PRODUCT=Дамска Блуза", "1700000000000:" + payload("Блуза")), read());
+    }
+
+    @Test
+    public void compressesRepeatedTemplates() throws IOException {
+        int rawBytes = 0;
+        try (LabelSnapshot.Writer writer = new LabelSnapshot.Writer(new FileOutputStream(file))) {
+            for (int i = 0; i < TemplateManager.MAX_TEMPLATES; i++) {
+                String payload = payload("Артикул " + i);
+                writer.writeTemplate(payload, i);
+                rawBytes += payload.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+
+        assertTrue(file.length() * 4 < rawBytes);
+        assertEquals(TemplateManager.MAX_TEMPLATES, read().size());
+    }
+
+    @Test
+    public void rejectsOtherFilesAndNewerVersions() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("Артикул,Размер\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertReadFails("Файлът не е архив с данни на приложението");
+
+        try (LabelSnapshot.Writer writer = new LabelSnapshot.Writer(new FileOutputStream(file))) {
+            writer.writeHistory("PRODUCT", "Блуза");
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[4] = LabelSnapshot.VERSION + 1;
+        Files.write(file.toPath(), bytes);
+        assertReadFails("Архивът е от по-нова версия на приложението");
+    }
+
+    @Test
+    public void keepsRecordsBeforeATruncation() throws IOException {
+        try (LabelSnapshot.Writer writer = new LabelSnapshot.Writer(new FileOutputStream(file))) {
+            writer.writeHistory("PRODUCT", "Блуза");
+            writer.writeTemplate(payload("Блуза"), 1);
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Recorder recorder = new Recorder();
+        try {
+            LabelSnapshot.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 8)), recorder);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(Arrays.asList("PRODUCT=Блуза"), recorder.records);
+    }
+
+    @Test
+    public void refusesOversizedRecords() throws IOException {
+        // A forged length must not make the reader allocate it
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(0x4C534E50);
+        header.writeByte(LabelSnapshot.VERSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeByte(2);
+            out.writeLong(0);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+
+        try {
+            LabelSnapshot.read(new ByteArrayInputStream(bytes.toByteArray()), new Recorder());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Повреден архив"));
+        }
+    }
+
+    private void assertReadFails(String message) {
+        try {
+            read();
+            fail();
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.labelapp.printer;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads the label_template.json shared with script.js and rejects templates the draw plan cannot follow
+ */
+public class LabelTemplateTest {
+
+    private static final String MINIMAL = "{\"width\": 100, \"padding\": 5,"
+        + " \"fonts\": {\"body\": {\"size\": 12}},"
+        + " \"sections\": [{\"type\": \"field\", \"field\": \"product\", \"font\": \"body\", \"titleFont\": \"body\"}]}";
+
+    private static LabelTemplate readAsset() throws IOException {
+        // Unit tests run from the module directory
+        try (InputStream in = new FileInputStream(new File("src/main/assets/label_template.json"))) {
+            return LabelTemplate.read(in);
+        }
+    }
+
+    @Test
+    public void builtInTemplateMatchesTheDrawnLayout() throws IOException {
+        LabelTemplate template = readAsset();
+        assertEquals(234f, template.width, 0f);
+        assertEquals(10f, template.padding, 0f);
+        assertEquals(12f, template.paddingBottom, 0f);
+        assertEquals(200f, template.minHeight, 0f);
+        assertEquals(3f, template.borderWidth, 0f);
+        assertEquals(8, template.sections.size());
+
+        LabelTemplate.Section badge = template.sections.get(0);
+        assertEquals(LabelTemplate.Kind.BADGE, badge.kind);
+        assertEquals(LabelTemplate.Field.SIZE, badge.field);
+        assertEquals(LabelTemplate.Align.CENTER, badge.align);
+        assertEquals("Размер ", badge.text("prefix"));
+        assertEquals(0xFFFFFFFF, badge.font("font").color);
+
+        LabelTemplate.Section product = template.sections.get(4);
+        assertEquals(LabelTemplate.Field.PRODUCT, product.field);
+        assertEquals("АРТИКУЛ", product.text("title"));
+        // Sections sharing a font share one Font, so the plan creates its paints once
+        assertSame(template.sections.get(1).font("font"), product.font("font"));
+
+        LabelTemplate.Section price = template.sections.get(7);
+        assertEquals(LabelTemplate.Kind.PRICE, price.kind);
+        assertArrayEquals(new float[] {35f, 25f, 18f}, price.font("font").autofit, 0f);
+        assertEquals(0xFF666666, price.font("separatorFont").color);
+    }
+
+    @Test
+    public void lengthsLeftOutTakeTheDefaults() throws JSONException {
+        LabelTemplate template = LabelTemplate.parse(MINIMAL);
+        LabelTemplate.Section field = template.sections.get(0);
+        assertEquals(6f, field.metric("padding"), 0f);
+        assertEquals(LabelTemplate.Align.LEFT, field.align);
+        assertEquals("", field.text("title"));
+        assertEquals(5f, template.paddingBottom, 0f);
+        assertEquals(90f, template.contentWidth(), 0f);
+
+        LabelTemplate wider = LabelTemplate.parse(MINIMAL.replace("\"font\": \"body\",", "\"font\": \"body\", \"padding\": 9,"));
+        assertEquals(9f, wider.sections.get(0).metric("padding"), 0f);
+    }
+
+    @Test
+    public void hashFollowsTheContent() throws JSONException {
+        assertEquals(LabelTemplate.parse(MINIMAL).hash, LabelTemplate.parse(MINIMAL).hash);
+        assertEquals(32, LabelTemplate.parse(MINIMAL).hash.length());
+        assertNotEquals(LabelTemplate.parse(MINIMAL).hash, LabelTemplate.parse(MINIMAL.replace("100", "120")).hash);
+    }
+
+    @Test
+    public void rejectsTemplatesThePlanCannotDraw() {
+        assertRejected(MINIMAL.replace("\"font\": \"body\",", "\"font\": \"missing\","));
+        assertRejected(MINIMAL.replace("\"field\": \"product\"", "\"field\": \"colour\""));
+        assertRejected(MINIMAL.replace("\"type\": \"field\"", "\"type\": \"logo\""));
+        assertRejected(MINIMAL.replace("\"titleFont\": \"body\"", "\"titleFont\": \"body\", \"margin\": 3"));
+        assertRejected(MINIMAL.replace(", \"titleFont\": \"body\"", ""));
+        assertRejected(MINIMAL.replace("\"size\": 12", "\"size\": 12, \"autofit\": [10, 14]"));
+        assertRejected(MINIMAL.replace("\"padding\": 5", "\"padding\": 50"));
+        assertRejected(MINIMAL.replace("\"size\": 12", "\"size\": 12, \"color\": \"red\""));
+        assertRejected(MINIMAL.replace("{\"type\": \"field\", \"field\": \"product\", \"font\": \"body\", \"titleFont\": \"body\"}", ""));
+    }
+
+    @Test(expected = IOException.class)
+    public void readReportsMalformedJson() throws IOException {
+        LabelTemplate.read(new java.io.ByteArrayInputStream("{\"width\":".getBytes()));
+    }
+
+    private static void assertRejected(String json) {
+        try {
+            LabelTemplate.parse(json);
+            fail("Accepted " + json);
+        } catch (JSONException expected) {
+            // Rejected with a message for the page
+            assertNotNull(expected.getMessage());
+        }
+    }
+}
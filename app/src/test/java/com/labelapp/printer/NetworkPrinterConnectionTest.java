@@ -0,0 +1,369 @@
+package com.labelapp.printer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs NetworkPrinterConnection against a local TCP stand-in that records the raster stream
+ */
+public class NetworkPrinterConnectionTest {
+
+    // Sent first on every new socket
+    private static final byte[] HEADER = concat(QLRasterEncoder.statusRequest(), QLRasterEncoder.jobHeader());
+
+    private StandInPrinter printer;
+
+    @Before
+    public void setUp() throws IOException {
+        printer = new StandInPrinter();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        printer.close();
+    }
+
+    @Test
+    public void pagesArePipelinedOverOneConnection() throws Exception {
+        byte[] first = page(1, 5000);
+        byte[] second = page(2, 7000);
+        byte[] third = page(3, 300);
+
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        try (NetworkPrinterConnection connection = new NetworkPrinterConnection("127.0.0.1", printer.getPort())) {
+            connection.enqueue(first, () -> written.add(1));
+            connection.enqueue(second, () -> written.add(2));
+            connection.enqueue(third, () -> written.add(3));
+            connection.flush();
+            assertEquals(3, connection.getPagesWritten());
+            assertEquals(Arrays.asList(1, 2, 3), written);
+        }
+
+        printer.awaitConnections(1);
+        byte[] expected = concat(HEADER, first, second, third);
+        assertArrayEquals(expected, printer.awaitBytes(0, expected.length));
+        assertEquals(1, printer.getConnectionCount());
+    }
+
+    @Test
+    public void reconnectsAndResendsAfterPrinterDropsConnection() throws Exception {
+        byte[] first = page(1, 4000);
+        byte[] second = page(2, 4000);
+        printer.closeAfterBytes(HEADER.length + first.length);
+
+        try (NetworkPrinterConnection connection = new NetworkPrinterConnection("127.0.0.1", printer.getPort())) {
+            connection.enqueue(first, () -> { });
+            connection.flush();
+            printer.awaitDropped();
+
+            connection.enqueue(second, () -> { });
+            connection.flush();
+            assertEquals(2, connection.getPagesWritten());
+        }
+
+        printer.awaitConnections(2);
+        assertArrayEquals(concat(HEADER, first), printer.awaitBytes(0, HEADER.length + first.length));
+        assertArrayEquals(concat(HEADER, second), printer.awaitBytes(1, HEADER.length + second.length));
+    }
+
+    @Test
+    public void restartsJobWhenConnectionDropsMidPage() throws Exception {
+        // Larger than the socket buffers, so the write is still running when the printer drops it
+        byte[] page = page(1, 16 * 1024 * 1024);
+        printer.closeAfterBytes(HEADER.length + 1000);
+
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        try (NetworkPrinterConnection connection = new NetworkPrinterConnection("127.0.0.1", printer.getPort())) {
+            connection.enqueue(page, () -> written.add(1));
+            connection.flush();
+            assertEquals(1, connection.getReconnectCount());
+        }
+        assertEquals(Collections.singletonList(1), written);
+
+        // The continuation page must not arrive on the new socket without the job header
+        printer.awaitConnections(2);
+        assertArrayEquals(concat(HEADER, page), printer.awaitBytes(1, HEADER.length + page.length));
+    }
+
+    @Test
+    public void reportsPagesOncePrinterConfirmsThem() throws Exception {
+        printer.replyWithStatus(-1);
+        byte[] first = printedPage(1, 3000);
+        byte[] second = printedPage(2, 500);
+
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        try (NetworkPrinterConnection connection = new NetworkPrinterConnection("127.0.0.1", printer.getPort())) {
+            connection.enqueue(first, () -> written.add(1));
+            connection.enqueue(second, () -> written.add(2));
+            connection.flush();
+        }
+        assertEquals(Arrays.asList(1, 2), written);
+        assertEquals(2, printer.getPagesConfirmed());
+
+        byte[] expected = concat(HEADER, first, second);
+        assertArrayEquals(expected, printer.awaitBytes(0, expected.length));
+    }
+
+    @Test
+    public void failsPageThePrinterReportsAnErrorFor() throws Exception {
+        printer.replyWithStatus(1);
+
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        try (NetworkPrinterConnection connection = new NetworkPrinterConnection("127.0.0.1", printer.getPort())) {
+            connection.enqueue(printedPage(1, 100), () -> written.add(1));
+            connection.enqueue(printedPage(2, 100), () -> written.add(2));
+            connection.enqueue(printedPage(3, 100), () -> written.add(3));
+            try {
+                connection.flush();
+                fail();
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Капакът е отворен"));
+            }
+            // An error the printer reports is not retried on a new socket
+            assertEquals(0, connection.getReconnectCount());
+        }
+        assertEquals(Collections.singletonList(1), written);
+    }
+
+    @Test
+    public void closeDoesNotWaitForThePrinter() throws Exception {
+        // Answers the status request, then never reports the page printed
+        printer.replyWithStatus(-1);
+        printer.confirmPages(false);
+        byte[] page = printedPage(1, 100);
+
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        NetworkPrinterConnection connection = new NetworkPrinterConnection("127.0.0.1", printer.getPort());
+        connection.enqueue(page, () -> written.add(1));
+        printer.awaitConnections(1);
+        printer.awaitBytes(0, HEADER.length + page.length);
+
+        long start = System.currentTimeMillis();
+        connection.close();
+        assertTrue(System.currentTimeMillis() - start < 500);
+        try {
+            connection.flush();
+            fail();
+        } catch (IOException e) {
+            // Expected - the page was not confirmed
+        }
+        assertTrue(written.isEmpty());
+        assertEquals(0, connection.getReconnectCount());
+    }
+
+    @Test
+    public void failsWhenPrinterIsUnreachable() throws Exception {
+        int port = printer.getPort();
+        printer.close();
+
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        try (NetworkPrinterConnection connection = new NetworkPrinterConnection("127.0.0.1", port, 2)) {
+            // Queued pages behind the failed one are dropped unreported, so their labels print again elsewhere
+            connection.enqueue(page(1, 10), () -> written.add(1));
+            connection.enqueue(page(2, 10), () -> written.add(2));
+            try {
+                connection.flush();
+                fail();
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+        assertTrue(written.isEmpty());
+    }
+
+    private static byte[] page(int seed, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed * 31 + i);
+        }
+        return data;
+    }
+
+    /**
+     * Page ending in a print command, with no other byte the stand-in takes for a command
+     */
+    private static byte[] printedPage(int seed, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length - 1; i++) {
+            data[i] = (byte) (0x20 + (seed * 31 + i) % 0x5F);
+        }
+        data[length - 1] = 0x1A;
+        return data;
+    }
+
+    private static byte[] status(int type, int errorInfo2) {
+        byte[] status = new byte[QLStatus.LENGTH];
+        status[0] = (byte) 0x80;
+        status[1] = 0x20;
+        status[2] = 'B';
+        status[3] = '4';
+        status[9] = (byte) errorInfo2;
+        status[18] = (byte) type;
+        return status;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Accepts connections and records everything received on each of them.
+     * Optionally answers status requests and reports every print command like a QL printer.
+     */
+    private static class StandInPrinter {
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private final List<ByteArrayOutputStream> streams = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch dropped = new CountDownLatch(1);
+        private volatile int closeAfterBytes = -1;
+        private volatile boolean statusReplies = false;
+        private volatile int errorPage = -1;
+        private volatile boolean confirmPages = true;
+        private final AtomicInteger pagesConfirmed = new AtomicInteger();
+
+        StandInPrinter() throws IOException {
+            Thread acceptor = new Thread(this::acceptLoop, "StandInPrinter");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void closeAfterBytes(int bytes) {
+            closeAfterBytes = bytes;
+        }
+
+        /**
+         * @param errorPage Page (from 0) to report "cover open" for instead of printed, or -1
+         */
+        void replyWithStatus(int errorPage) {
+            this.errorPage = errorPage;
+            statusReplies = true;
+        }
+
+        void confirmPages(boolean confirm) {
+            confirmPages = confirm;
+        }
+
+        int getPagesConfirmed() {
+            return pagesConfirmed.get();
+        }
+
+        int getConnectionCount() {
+            return streams.size();
+        }
+
+        void awaitDropped() throws InterruptedException {
+            assertTrue(dropped.await(5, TimeUnit.SECONDS));
+        }
+
+        void awaitConnections(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (streams.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(streams.size() >= count);
+        }
+
+        byte[] awaitBytes(int connection, int length) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            ByteArrayOutputStream stream = streams.get(connection);
+            while (System.currentTimeMillis() < deadline) {
+                synchronized (stream) {
+                    if (stream.size() >= length) {
+                        return stream.toByteArray();
+                    }
+                }
+                Thread.sleep(10);
+            }
+            synchronized (stream) {
+                return stream.toByteArray();
+            }
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        private void acceptLoop() {
+            try {
+                while (true) {
+                    Socket client = serverSocket.accept();
+                    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                    streams.add(stream);
+                    boolean dropAfterLimit = closeAfterBytes >= 0 && streams.size() == 1;
+                    Thread reader = new Thread(() -> record(client, stream, dropAfterLimit));
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+            } catch (IOException e) {
+                // Server closed
+            }
+        }
+
+        private void record(Socket client, ByteArrayOutputStream stream, boolean dropAfterLimit) {
+            try (Socket socket = client; InputStream in = socket.getInputStream()) {
+                OutputStream out = socket.getOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                int pages = 0;
+                // Last three bytes, to spot ESC i S across reads
+                int recent = 0;
+                while ((read = in.read(buffer)) != -1) {
+                    synchronized (stream) {
+                        stream.write(buffer, 0, read);
+                        if (dropAfterLimit && stream.size() >= closeAfterBytes) {
+                            break;
+                        }
+                    }
+                    if (!statusReplies) {
+                        continue;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        int b = buffer[i] & 0xFF;
+                        recent = ((recent << 8) | b) & 0xFFFFFF;
+                        if (recent == 0x1B6953) {
+                            out.write(status(QLStatus.TYPE_REPLY, 0));
+                        } else if ((b == 0x0C || b == 0x1A) && confirmPages) {
+                            if (pages++ == errorPage) {
+                                out.write(status(QLStatus.TYPE_ERROR, 0x10));
+                            } else {
+                                out.write(status(QLStatus.TYPE_PHASE_CHANGE, 0));
+                                out.write(status(QLStatus.TYPE_PRINTING_COMPLETED, 0));
+                                pagesConfirmed.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Connection dropped
+            } finally {
+                if (dropAfterLimit) {
+                    dropped.countDown();
+                }
+            }
+        }
+    }
+}
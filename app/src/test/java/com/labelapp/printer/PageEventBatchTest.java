@@ -0,0 +1,79 @@
+package com.labelapp.printer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Coalesces progress between frames without losing or reordering the events that matter
+ */
+public class PageEventBatchTest {
+
+    @Test
+    public void drainsNothingWhenEmpty() {
+        PageEventBatch batch = new PageEventBatch();
+        assertTrue(batch.isEmpty());
+        assertNull(batch.drain());
+    }
+
+    @Test
+    public void reportsOnlyTheFirstEventOfAFrame() {
+        PageEventBatch batch = new PageEventBatch();
+        assertTrue(batch.add(PageEventBatch.PROGRESS, PageEventBatch.event("printed", 1), true));
+        assertFalse(batch.add(PageEventBatch.PROGRESS, PageEventBatch.event("printed", 2), true));
+        assertFalse(batch.add(PageEventBatch.HISTORY, PageEventBatch.event("value", "Италия"), false));
+
+        assertNotNull(batch.drain());
+        assertTrue(batch.isEmpty());
+        assertTrue(batch.add(PageEventBatch.PROGRESS, PageEventBatch.event("printed", 3), true));
+    }
+
+    @Test
+    public void keepsOnlyTheLatestProgress() {
+        PageEventBatch batch = new PageEventBatch();
+        for (int printed = 1; printed <= 500; printed++) {
+            batch.add(PageEventBatch.PROGRESS, PageEventBatch.event("printed", printed, "total", 500), true);
+        }
+        JSONArray events = new JSONArray(batch.drain());
+        assertEquals(1, events.length());
+        assertEquals(PageEventBatch.PROGRESS, events.getJSONObject(0).getString(PageEventBatch.TYPE));
+        assertEquals(500, events.getJSONObject(0).getInt("printed"));
+    }
+
+    @Test
+    public void deliversEveryOtherEventInOrder() {
+        PageEventBatch batch = new PageEventBatch();
+        batch.add(PageEventBatch.PROGRESS, PageEventBatch.event("printed", 1), true);
+        batch.add(PageEventBatch.HISTORY, PageEventBatch.event("value", "Италия"), false);
+        batch.add(PageEventBatch.HISTORY, PageEventBatch.event("value", "Турция"), false);
+        batch.add(PageEventBatch.PROGRESS, PageEventBatch.event("printed", 2), true);
+        batch.add(PageEventBatch.JOB, PageEventBatch.event("status", "complete"), false);
+
+        JSONArray events = new JSONArray(batch.drain());
+        assertEquals(4, events.length());
+        assertEquals("Италия", events.getJSONObject(0).getString("value"));
+        assertEquals("Турция", events.getJSONObject(1).getString("value"));
+        // The replacement goes after what was queued since the one it replaced
+        assertEquals(2, events.getJSONObject(2).getInt("printed"));
+        assertEquals(PageEventBatch.JOB, events.getJSONObject(3).getString(PageEventBatch.TYPE));
+    }
+
+    @Test
+    public void drainsEventsForTheNativeForm() {
+        PageEventBatch batch = new PageEventBatch();
+        batch.add(PageEventBatch.PRINTER, PageEventBatch.event("state", "SEARCHING_PRINTER"), true);
+        batch.add(PageEventBatch.PRINTER, PageEventBatch.event("state", "SUCCESS"), true);
+        batch.add(PageEventBatch.IMPORT_FINISHED, PageEventBatch.event("summary", "Готово"), false);
+
+        List<JSONObject> events = batch.drainEvents();
+        assertEquals(2, events.size());
+        assertEquals("SUCCESS", events.get(0).getString("state"));
+        assertEquals(PageEventBatch.IMPORT_FINISHED, events.get(1).getString(PageEventBatch.TYPE));
+        assertTrue(batch.isEmpty());
+        assertTrue(batch.drainEvents().isEmpty());
+    }
+}
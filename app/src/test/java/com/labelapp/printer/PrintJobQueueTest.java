@@ -0,0 +1,129 @@
+package com.labelapp.printer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reopens PrintJobQueue from its directory to simulate an app restart mid-job
+ */
+public class PrintJobQueueTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("print_queue").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void resumesFromFirstUnprintedLabelAfterRestart() throws IOException {
+        PrintJobQueue queue = new PrintJobQueue(directory);
+        PrintJobQueue.Job job = queue.add("{\"product\":\"Блуза\"}", 5);
+        queue.markPrinted(job, 0);
+        queue.markPrinted(job, 1);
+        queue.markPrinted(job, 3);
+        queue.close();
+
+        PrintJobQueue reopened = new PrintJobQueue(directory);
+        PrintJobQueue.Job restored = reopened.peek();
+        assertNotNull(restored);
+        assertEquals("{\"product\":\"Блуза\"}", restored.payload);
+        assertEquals(5, restored.labelCount);
+        assertEquals(3, reopened.getPrintedCount(restored));
+        assertEquals(2, reopened.firstUnprinted(restored));
+        assertEquals(Arrays.asList(2, 4), reopened.getRemainingLabels(restored));
+    }
+
+    @Test
+    public void acceptsJobsWhilePrintingAndKeepsOrder() throws IOException {
+        PrintJobQueue queue = new PrintJobQueue(directory);
+        PrintJobQueue.Job first = queue.add("first", 2);
+        queue.markPrinted(first, 0);
+        PrintJobQueue.Job second = queue.add("second", 1);
+        assertEquals(2, queue.size());
+        assertSame(first, queue.peek());
+
+        queue.markPrinted(first, 1);
+        queue.remove(first);
+        assertSame(second, queue.peek());
+        queue.close();
+
+        PrintJobQueue reopened = new PrintJobQueue(directory);
+        assertEquals(1, reopened.size());
+        assertEquals("second", reopened.peek().payload);
+
+        // New ids continue after the stored ones
+        PrintJobQueue.Job third = reopened.add("third", 1);
+        assertTrue(third.id > reopened.peek().id);
+    }
+
+    @Test
+    public void ignoresPartialProgressRecord() throws IOException {
+        PrintJobQueue queue = new PrintJobQueue(directory);
+        PrintJobQueue.Job job = queue.add("job", 3);
+        queue.markPrinted(job, 0);
+        queue.close();
+
+        // App killed in the middle of writing the next record
+        try (FileOutputStream out = new FileOutputStream(new File(directory, job.id + ".done"), true)) {
+            out.write(new byte[] {0, 0});
+        }
+
+        PrintJobQueue reopened = new PrintJobQueue(directory);
+        assertEquals(Arrays.asList(1, 2), reopened.getRemainingLabels(reopened.peek()));
+    }
+
+    @Test
+    public void keepsProgressAlignedAfterPartialRecord() throws IOException {
+        PrintJobQueue queue = new PrintJobQueue(directory);
+        PrintJobQueue.Job job = queue.add("job", 4);
+        queue.markPrinted(job, 0);
+        queue.close();
+        try (FileOutputStream out = new FileOutputStream(new File(directory, job.id + ".done"), true)) {
+            out.write(new byte[] {0, 0, 0});
+        }
+
+        // Progress recorded after the first crash must survive a second one
+        PrintJobQueue reopened = new PrintJobQueue(directory);
+        reopened.markPrinted(reopened.peek(), 2);
+        reopened.close();
+        assertEquals(8, new File(directory, job.id + ".done").length());
+
+        PrintJobQueue again = new PrintJobQueue(directory);
+        assertEquals(Arrays.asList(1, 3), again.getRemainingLabels(again.peek()));
+    }
+
+    @Test
+    public void dropsFinishedJobLeftOnDisk() throws IOException {
+        PrintJobQueue queue = new PrintJobQueue(directory);
+        PrintJobQueue.Job job = queue.add("job", 2);
+        queue.markPrinted(job, 1);
+        queue.markPrinted(job, 0);
+        queue.close();
+
+        PrintJobQueue reopened = new PrintJobQueue(directory);
+        assertNull(reopened.peek());
+        assertEquals(Collections.emptyList(), Arrays.asList(directory.list()));
+    }
+}
@@ -0,0 +1,156 @@
+package com.labelapp.printer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Jobs whose labels no printer accepts, printed with PrintScheduler from a PrintJobQueue
+ */
+public class PrintSchedulerTest {
+
+    /**
+     * A printer that opens but fails every label, as with a label it cannot take
+     */
+    private static final class FailingPrinter implements PrintScheduler.PrinterTarget<Integer> {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void print(Integer label, boolean cut, Runnable printed) throws IOException {
+            attempts.incrementAndGet();
+            throw new IOException("Етикетът не може да бъде отпечатан");
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Records one run of a job
+     */
+    private static final class Result implements PrintScheduler.Listener {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger printedLabels = new AtomicInteger();
+        final AtomicInteger failedPrinters = new AtomicInteger();
+        volatile boolean failed;
+
+        @Override
+        public void onLabelPrinted(int labelIndex, int printedCount, int totalCount) {
+            printedLabels.incrementAndGet();
+        }
+
+        @Override
+        public void onPrinterFailed(int printerIndex, String error) {
+            failedPrinters.incrementAndGet();
+        }
+
+        @Override
+        public void onJobComplete(int totalCount) {
+            done.countDown();
+        }
+
+        @Override
+        public void onJobFailed(int printedCount, int totalCount, String error) {
+            failed = true;
+            done.countDown();
+        }
+    }
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("print_queue").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void labelNoPrinterAcceptsFailsTheJob() throws InterruptedException {
+        List<FailingPrinter> printers = Arrays.asList(new FailingPrinter(), new FailingPrinter());
+
+        Result result = submit(Arrays.asList(0, 1, 2), printers);
+
+        assertTrue(result.failed);
+        assertEquals(0, result.printedLabels.get());
+        assertEquals(2, result.failedPrinters.get());
+    }
+
+    @Test
+    public void jobFailingEveryAttemptIsDropped() throws IOException, InterruptedException {
+        PrintJobQueue queue = new PrintJobQueue(directory);
+        PrintJobQueue.Job job = queue.add("job", 3);
+        PrintJobQueue.Job next = queue.add("next", 1);
+        FailingPrinter printer = new FailingPrinter();
+
+        // As the spooler does: every resume prints the head of the queue again
+        int attempts = 0;
+        boolean dropped = false;
+        while (!dropped && attempts < 10) {
+            Result result = submit(queue.getRemainingLabels(job), Collections.singletonList(printer));
+            assertTrue(result.failed);
+            attempts++;
+            dropped = queue.recordFailedAttempt(job);
+        }
+
+        assertEquals(PrintJobQueue.MAX_FAILED_ATTEMPTS, attempts);
+        assertEquals(PrintJobQueue.MAX_FAILED_ATTEMPTS, printer.attempts.get());
+        assertSame(next, queue.peek());
+        assertFalse(new File(directory, job.id + ".job").exists());
+        queue.close();
+    }
+
+    @Test
+    public void printedLabelGivesTheJobFreshAttempts() throws IOException {
+        PrintJobQueue queue = new PrintJobQueue(directory);
+        PrintJobQueue.Job job = queue.add("job", 3);
+
+        for (int i = 1; i < PrintJobQueue.MAX_FAILED_ATTEMPTS; i++) {
+            assertFalse(queue.recordFailedAttempt(job));
+        }
+        // A printer ran out of tape after this label; the job itself prints
+        queue.markPrinted(job, 0);
+        assertFalse(queue.recordFailedAttempt(job));
+        assertSame(job, queue.peek());
+        queue.close();
+    }
+
+    private static Result submit(List<Integer> labels, List<FailingPrinter> printers) throws InterruptedException {
+        Result result = new Result();
+        CutPolicy.Plan cuts = new CutPolicy(CutPolicy.Mode.EVERY_LABEL, 1).plan(labels, labelIndex -> "");
+        new PrintScheduler().submit(3, new ArrayList<>(labels), printers, labelIndex -> labelIndex, cuts, result);
+        assertTrue(result.done.await(5, TimeUnit.SECONDS));
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+package com.labelapp.printer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Byte-for-byte checks of the QL raster command stream
+ */
+public class QLRasterEncoderTest {
+
+    private static final int[] JOB_HEADER = {
+        0x1B, 0x40,                   // initialize
+        0x1B, 0x69, 0x61, 0x01,       // raster mode
+    };
+
+    @Test
+    public void packBitsMatchesReferenceVector() {
+        // Apple TN1023 reference sample
+        byte[] input = bytes(0xAA, 0xAA, 0xAA, 0x80, 0x00, 0x2A, 0xAA, 0xAA, 0xAA, 0xAA, 0x80, 0x00, 0x2A, 0x22,
+            0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA);
+        byte[] expected = bytes(0xFE, 0xAA, 0x02, 0x80, 0x00, 0x2A, 0xFD, 0xAA, 0x03, 0x80, 0x00, 0x2A, 0x22, 0xF7, 0xAA);
+
+        byte[] out = new byte[input.length * 2];
+        int length = QLRasterEncoder.packBits(input, 0, input.length, out);
+
+        assertArrayEquals(expected, Arrays.copyOf(out, length));
+    }
+
+    @Test
+    public void packBitsSplitsLongRuns() {
+        byte[] input = new byte[200];
+        byte[] out = new byte[300];
+        int length = QLRasterEncoder.packBits(input, 0, input.length, out);
+
+        // 128 + 72 zero bytes
+        assertArrayEquals(bytes(0x81, 0x00, 0xB9, 0x00), Arrays.copyOf(out, length));
+    }
+
+    @Test
+    public void compressedLabelStream() {
+        MonoRaster label = new MonoRaster(QLRasterEncoder.ROLL_62_DOTS, 3);
+        label.set(0, 1, true);
+        label.fillSpan(2, 0, QLRasterEncoder.ROLL_62_DOTS);
+
+        byte[] encoded = new QLRasterEncoder(true, true, false).encodeLabel(label);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(new byte[200], 0, 200);
+        write(expected, JOB_HEADER);
+        write(expected, 0x1B, 0x69, 0x7A, 0xCE, 0x0A, 0x3E, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00); // print information
+        write(expected, 0x1B, 0x69, 0x4D, 0x40);       // auto cut
+        write(expected, 0x1B, 0x69, 0x41, 0x01);       // cut every label
+        write(expected, 0x1B, 0x69, 0x4B, 0x08);       // cut at end
+        write(expected, 0x1B, 0x69, 0x64, 0x23, 0x00); // 35 dot feed margin
+        write(expected, 0x4D, 0x02);                   // TIFF compression
+        write(expected, 0x5A);                         // blank line
+        // Dot 0 lands on head dot 707 (mirrored, 12 dot margin): 88 zero bytes, 0x10, 0x00
+        write(expected, 0x67, 0x00, 0x05, 0xA9, 0x00, 0x01, 0x10, 0x00);
+        // Full line covers head dots 12..707: 00 0F FF*86 F0 00
+        write(expected, 0x67, 0x00, 0x08, 0x01, 0x00, 0x0F, 0xAB, 0xFF, 0x01, 0xF0, 0x00);
+        write(expected, 0x1A);                         // print last page
+
+        assertArrayEquals(expected.toByteArray(), encoded);
+    }
+
+    @Test
+    public void uncompressedPageBreakWithoutHeader() {
+        MonoRaster label = new MonoRaster(QLRasterEncoder.ROLL_62_DOTS, 2);
+
+        byte[] encoded = new QLRasterEncoder(false, false, true).encodePage(label, false, false);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        write(expected, 0x1B, 0x69, 0x7A, 0xCE, 0x0A, 0x3E, 0x00, 0x02, 0x00, 0x00, 0x00, 0x01, 0x00);
+        write(expected, 0x1B, 0x69, 0x4D, 0x00);       // no auto cut
+        write(expected, 0x1B, 0x69, 0x4B, 0x48);       // cut at end, 600 dpi
+        write(expected, 0x1B, 0x69, 0x64, 0x23, 0x00);
+        write(expected, 0x4D, 0x00);                   // no compression
+        for (int row = 0; row < 2; row++) {
+            write(expected, 0x67, 0x00, 0x5A);
+            expected.write(new byte[90], 0, 90);
+        }
+        write(expected, 0x0C);                         // page break
+
+        assertArrayEquals(expected.toByteArray(), encoded);
+    }
+
+    @Test
+    public void uncutPageEndsWithCutMark() {
+        MonoRaster label = new MonoRaster(QLRasterEncoder.ROLL_62_DOTS, 1);
+
+        byte[] encoded = new QLRasterEncoder(false, true, true).encodePage(label, false, false, false);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        // One label line and the mark, two lines thick at 600 dpi
+        write(expected, 0x1B, 0x69, 0x7A, 0xCE, 0x0A, 0x3E, 0x00, 0x03, 0x00, 0x00, 0x00, 0x01, 0x00);
+        write(expected, 0x1B, 0x69, 0x4D, 0x00);       // no auto cut on this page
+        write(expected, 0x1B, 0x69, 0x4B, 0x48);
+        write(expected, 0x1B, 0x69, 0x64, 0x23, 0x00);
+        write(expected, 0x4D, 0x00);
+        write(expected, 0x67, 0x00, 0x5A);
+        expected.write(new byte[90], 0, 90);
+
+        // 8 dots on, 8 off from tape dot 0, mirrored onto the head after the 12 dot margin
+        byte[] mark = new byte[90];
+        for (int x = 0; x < QLRasterEncoder.ROLL_62_DOTS; x++) {
+            if ((x / 8) % 2 == 0) {
+                int dot = 719 - (12 + x);
+                mark[dot >> 3] |= 0x80 >> (dot & 7);
+            }
+        }
+        for (int row = 0; row < 2; row++) {
+            write(expected, 0x67, 0x00, 0x5A);
+            expected.write(mark, 0, 90);
+        }
+        write(expected, 0x0C);
+
+        assertArrayEquals(expected.toByteArray(), encoded);
+    }
+
+    @Test
+    public void cutPageEndsTheJob() {
+        MonoRaster label = new MonoRaster(QLRasterEncoder.ROLL_62_DOTS, 1);
+        byte[] encoded = new QLRasterEncoder(true, false, false).encodePage(label, false, true, true);
+
+        // Auto cut every label, one blank line, print last page
+        byte[] modes = bytes(0x1B, 0x69, 0x4D, 0x40, 0x1B, 0x69, 0x41, 0x01);
+        assertArrayEquals(modes, Arrays.copyOfRange(encoded, 13, 13 + modes.length));
+        assertEquals(0x5A, encoded[encoded.length - 2]);
+        assertEquals(0x1A, encoded[encoded.length - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWrongWidth() {
+        new QLRasterEncoder(true, true, false).encodeLabel(new MonoRaster(702, 10));
+    }
+
+    @Test
+    public void rotate270MovesTopRightToTopLeft() {
+        // 3 x 2 white source with its top-right pixel black
+        byte[] luminance = bytes(255, 255, 0, 255, 255, 255);
+
+        MonoRaster raster = MonoRaster.fromLuminanceRotated270(luminance, 3, 2, 2, MonoRaster.DEFAULT_THRESHOLD);
+
+        assertEquals(2, raster.width);
+        assertEquals(3, raster.height);
+        assertTrue(raster.get(0, 0));
+        assertFalse(raster.get(1, 0));
+        assertTrue(raster.isRowBlank(1));
+        assertTrue(raster.isRowBlank(2));
+    }
+
+    @Test
+    public void rotate270AveragesWhenDownscaling() {
+        // 2 x 4 source scaled to 2 dots across: each dot covers a 2 x 2 block
+        byte[] luminance = bytes(
+            0, 0,
+            0, 255,
+            255, 255,
+            255, 0);
+
+        MonoRaster raster = MonoRaster.fromLuminanceRotated270(luminance, 2, 4, 2, MonoRaster.DEFAULT_THRESHOLD);
+
+        assertEquals(1, raster.height);
+        assertTrue(raster.get(0, 0));   // 3 of 4 black
+        assertFalse(raster.get(1, 0));  // 1 of 4 black
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    private static void write(ByteArrayOutputStream out, int... values) {
+        for (int value : values) {
+            out.write(value);
+        }
+    }
+}
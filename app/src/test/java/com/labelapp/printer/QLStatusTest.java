@@ -0,0 +1,78 @@
+package com.labelapp.printer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parsing of QL status messages
+ */
+public class QLStatusTest {
+
+    @Test
+    public void readsTypeAndErrorBits() throws IOException {
+        QLStatus completed = QLStatus.parse(status(QLStatus.TYPE_PRINTING_COMPLETED, 0, 0), 0);
+        assertTrue(completed.isPrintingCompleted());
+        assertFalse(completed.isError());
+
+        // No media and cover open, reported as an error
+        QLStatus error = QLStatus.parse(status(QLStatus.TYPE_ERROR, 0x01, 0x10), 0);
+        assertTrue(error.isError());
+        assertFalse(error.isPrintingCompleted());
+        assertEquals("Няма лента, Капакът е отворен", error.describeError());
+
+        // An error bit counts even in a plain reply
+        assertTrue(QLStatus.parse(status(QLStatus.TYPE_REPLY, 0, 0x01), 0).isError());
+        assertEquals("Принтерът е изключен", QLStatus.parse(status(QLStatus.TYPE_TURNED_OFF, 0, 0), 0).describeError());
+    }
+
+    @Test
+    public void rejectsOtherReplies() {
+        byte[] reply = status(QLStatus.TYPE_REPLY, 0, 0);
+        reply[0] = 0x1B;
+        try {
+            QLStatus.parse(reply, 0);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void readSkipsToNextMessage() throws IOException {
+        // The tail of a message cut off earlier, then two whole ones
+        byte[] first = status(QLStatus.TYPE_PHASE_CHANGE, 0, 0);
+        byte[] second = status(QLStatus.TYPE_PRINTING_COMPLETED, 0, 0);
+        byte[] stream = new byte[5 + 2 * QLStatus.LENGTH];
+        System.arraycopy(status(QLStatus.TYPE_REPLY, 0, 0), QLStatus.LENGTH - 5, stream, 0, 5);
+        stream[0] = (byte) 0x80;
+        System.arraycopy(first, 0, stream, 5, QLStatus.LENGTH);
+        System.arraycopy(second, 0, stream, 5 + QLStatus.LENGTH, QLStatus.LENGTH);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(stream);
+        assertEquals(QLStatus.TYPE_PHASE_CHANGE, QLStatus.read(in).type);
+        assertEquals(QLStatus.TYPE_PRINTING_COMPLETED, QLStatus.read(in).type);
+        try {
+            QLStatus.read(in);
+            fail();
+        } catch (EOFException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] status(int type, int errorInfo1, int errorInfo2) {
+        byte[] status = new byte[QLStatus.LENGTH];
+        status[0] = (byte) 0x80;
+        status[1] = 0x20;
+        status[2] = 'B';
+        status[3] = '4';
+        status[8] = (byte) errorInfo1;
+        status[9] = (byte) errorInfo2;
+        status[18] = (byte) type;
+        return status;
+    }
+}
@@ -0,0 +1,98 @@
+package com.labelapp.printer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stores rasters, reopens the cache as after a restart and checks eviction order
+ */
+public class RasterCacheTest {
+
+    // 696 x 100 dots packed, plus the header
+    private static final long ENTRY_BYTES = 87 * 100 + 16;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("rasters").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static LabelData label(String product, String size) {
+        return new LabelData(size, product, "Турция", Arrays.asList(new Material(100, "Памук")),
+            "Текстил ООД", "Внос ЕООД", "10.00", "19.56");
+    }
+
+    private static MonoRaster raster(int seed) {
+        MonoRaster raster = new MonoRaster(696, 100);
+        raster.fillSpan(seed % 100, seed, seed + 300);
+        return raster;
+    }
+
+    @Test
+    public void returnsRasterAfterRestart() {
+        RasterCache cache = new RasterCache(directory, 1, RasterCache.DEFAULT_BUDGET_BYTES);
+        MonoRaster stored = raster(7);
+        cache.put(label("Блуза", "M"), false, stored);
+
+        RasterCache reopened = new RasterCache(directory, 1, RasterCache.DEFAULT_BUDGET_BYTES);
+        MonoRaster loaded = reopened.get(label("Блуза", "M"), false);
+        assertNotNull(loaded);
+        assertEquals(696, loaded.width);
+        assertEquals(100, loaded.height);
+        assertArrayEquals(stored.data, loaded.data);
+        assertEquals(ENTRY_BYTES, reopened.getTotalBytes());
+    }
+
+    @Test
+    public void keysOnContentSizeResolutionAndLayout() {
+        RasterCache cache = new RasterCache(directory, 1, RasterCache.DEFAULT_BUDGET_BYTES);
+        cache.put(label("Блуза", "M"), false, raster(1));
+
+        assertTrue(cache.contains(label("Блуза", "M"), false));
+        assertNull(cache.get(label("Блуза", "L"), false));
+        assertNull(cache.get(label("Блуза", "M"), true));
+        assertNull(cache.get(label("Риза", "M"), false));
+        assertNull(new RasterCache(directory, 2, RasterCache.DEFAULT_BUDGET_BYTES).get(label("Блуза", "M"), false));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondBudget() {
+        RasterCache cache = new RasterCache(directory, 1, ENTRY_BYTES * 3);
+        cache.put(label("Артикул 0", "M"), false, raster(0));
+        cache.put(label("Артикул 1", "M"), false, raster(1));
+        cache.put(label("Артикул 2", "M"), false, raster(2));
+
+        // Reading refreshes an entry, so the untouched one goes first
+        assertNotNull(cache.get(label("Артикул 0", "M"), false));
+        cache.put(label("Артикул 3", "M"), false, raster(3));
+
+        assertEquals(3, cache.size());
+        assertTrue(cache.contains(label("Артикул 0", "M"), false));
+        assertFalse(cache.contains(label("Артикул 1", "M"), false));
+        assertEquals(3, directory.listFiles().length);
+
+        cache.setBudget(ENTRY_BYTES);
+        assertEquals(1, cache.size());
+        assertTrue(cache.contains(label("Артикул 3", "M"), false));
+    }
+}
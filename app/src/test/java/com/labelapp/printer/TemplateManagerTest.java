@@ -0,0 +1,153 @@
+package com.labelapp.printer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Saves templates, searches them like the autocomplete and reopens the store
+ */
+public class TemplateManagerTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("templates").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static String payload(String product, String manufacturer, String priceBgn, String... sizes) {
+        LabelData label = new LabelData("", product, "Турция",
+            Arrays.asList(new Material(100, "Памук")), manufacturer, "Внос ЕООД", "10.00", priceBgn);
+        return LabelPayload.encode(label, Arrays.asList(sizes));
+    }
+
+    @Test
+    public void searchesByProductWordAndSupplierPrefix() throws IOException {
+        TemplateManager templates = new TemplateManager(directory);
+        templates.save(payload("Мъжки Панталон", "Текстил ООД", "19.56", "M"));
+        templates.save(payload("Дамска Блуза", "Шивашки Цех", "25.00", "S", "M"));
+
+        assertEquals("Мъжки Панталон", single(templates.search("пант", TemplateManager.MAX_SEARCH_RESULTS)).getBaseLabel().product);
+        assertEquals("Дамска Блуза", single(templates.search("шиваш", TemplateManager.MAX_SEARCH_RESULTS)).getBaseLabel().product);
+        assertEquals(2, templates.search("внос", TemplateManager.MAX_SEARCH_RESULTS).size());
+        assertTrue(templates.search("ъжки", TemplateManager.MAX_SEARCH_RESULTS).isEmpty());
+
+        // Most recently saved first
+        assertEquals("Дамска Блуза", templates.search("", TemplateManager.MAX_SEARCH_RESULTS).get(0).getBaseLabel().product);
+    }
+
+    @Test
+    public void replacesTemplateOfSameProductAndSupplier() throws IOException {
+        TemplateManager templates = new TemplateManager(directory);
+        TemplateManager.Template first = templates.save(payload("Блуза", "Текстил ООД", "19.56", "M"));
+        TemplateManager.Template second = templates.save(payload("БЛУЗА", "текстил ООД", "19.56", "L", "XL"));
+
+        assertEquals(1, templates.size());
+        assertEquals(first.id, second.id);
+        assertEquals(Arrays.asList("L", "XL"), templates.get(first.id).getSizes());
+    }
+
+    @Test
+    public void survivesRestart() throws IOException {
+        TemplateManager templates = new TemplateManager(directory);
+        TemplateManager.Template blouse = templates.save(payload("Блуза", "Текстил ООД", "19.56", "M", "L"));
+        templates.save(payload("Риза", "Текстил ООД", "25.00", "S"));
+        templates.markUsed(blouse);
+
+        TemplateManager reopened = new TemplateManager(directory);
+        assertEquals(2, reopened.size());
+        TemplateManager.Template restored = reopened.search("", TemplateManager.MAX_SEARCH_RESULTS).get(0);
+        assertEquals(blouse.id, restored.id);
+        assertEquals(blouse.payload, restored.payload);
+        assertEquals(Arrays.asList("M", "L"), TemplateManager.distinctSizes(restored));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTemplates() throws IOException {
+        TemplateManager templates = new TemplateManager(directory);
+        TemplateManager.Template oldest = templates.save(payload("Артикул 0", "Текстил ООД", "10.00", "M"));
+        TemplateManager.Template second = templates.save(payload("Артикул 1", "Текстил ООД", "10.00", "M"));
+        for (int i = 2; i < TemplateManager.MAX_TEMPLATES; i++) {
+            templates.save(payload("Артикул " + i, "Текстил ООД", "10.00", "M"));
+        }
+        templates.markUsed(oldest);
+        templates.save(payload("Нов артикул", "Текстил ООД", "10.00", "M"));
+
+        assertEquals(TemplateManager.MAX_TEMPLATES, templates.size());
+        assertNotNull(templates.get(oldest.id));
+        assertNull(templates.get(second.id));
+        assertEquals(TemplateManager.MAX_TEMPLATES, new TemplateManager(directory).size());
+    }
+
+    @Test
+    public void mergesTemplatesFromAnotherTabletByUseTime() throws IOException {
+        File otherDirectory = Files.createTempDirectory("other").toFile();
+        File snapshot = File.createTempFile("templates", LabelSnapshot.FILE_SUFFIX);
+        try {
+            TemplateManager other = new TemplateManager(otherDirectory);
+            other.save(payload("Риза", "Текстил ООД", "25.00", "S"));
+
+            TemplateManager templates = new TemplateManager(directory);
+            templates.save(payload("Блуза", "Текстил ООД", "19.56", "M"));
+            try (LabelSnapshot.Writer writer = new LabelSnapshot.Writer(new FileOutputStream(snapshot))) {
+                other.export(writer);
+            }
+
+            try (InputStream in = new FileInputStream(snapshot)) {
+                LabelSnapshot.read(in, new LabelSnapshot.Sink() {
+                    @Override
+                    public void history(String field, String value) {
+                    }
+
+                    @Override
+                    public void template(String payload, long lastUsed) throws IOException {
+                        assertTrue(templates.merge(payload, lastUsed));
+                    }
+                });
+            }
+            assertEquals(2, templates.size());
+            // The import was used before the local template was saved
+            assertEquals("Блуза", templates.search("", TemplateManager.MAX_SEARCH_RESULTS).get(0).getBaseLabel().product);
+
+            // Same product and supplier in other casing: the most recently used one wins
+            assertFalse(templates.merge(payload("БЛУЗА", "текстил ООД", "30.00", "L"), 1));
+            assertTrue(templates.merge(payload("БЛУЗА", "текстил ООД", "30.00", "L"), Long.MAX_VALUE));
+            assertEquals(2, new TemplateManager(directory).size());
+            assertEquals("30.00", single(templates.search("блуза", TemplateManager.MAX_SEARCH_RESULTS)).getBaseLabel().priceBgn);
+        } finally {
+            for (File file : otherDirectory.listFiles()) {
+                file.delete();
+            }
+            otherDirectory.delete();
+            snapshot.delete();
+        }
+    }
+
+    private static TemplateManager.Template single(List<TemplateManager.Template> results) {
+        assertEquals(1, results.size());
+        return results.get(0);
+    }
+}
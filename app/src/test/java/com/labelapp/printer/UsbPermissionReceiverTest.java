@@ -0,0 +1,26 @@
+package com.labelapp.printer;
+
+import android.content.Intent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reading the answer to the USB permission dialog
+ */
+public class UsbPermissionReceiverTest {
+
+    @Test
+    public void grantWithoutExtraIsReadFromUsbManager() {
+        List<Boolean> results = new ArrayList<>();
+        // A broadcast without EXTRA_PERMISSION_GRANTED, as an immutable PendingIntent delivers it
+        new UsbPermissionReceiver(() -> true, results::add).onReceive(null, new Intent("com.labelapp.printer.USB_PERMISSION"));
+        new UsbPermissionReceiver(() -> false, results::add).onReceive(null, new Intent("com.labelapp.printer.USB_PERMISSION"));
+        assertEquals(Arrays.asList(true, false), results);
+    }
+}
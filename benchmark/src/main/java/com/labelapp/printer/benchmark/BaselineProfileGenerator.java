@@ -0,0 +1,42 @@
+package com.labelapp.printer.benchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+/**
+ * BaselineProfileGenerator - Records the baseline and startup profile bundled with the release
+ * The scenario is a cold start followed by printing one label, so the welcome screen, the form
+ * bridge, payload decoding, LabelDrawer and the raster encoder are all compiled ahead of time.
+ *
+ * Run with ./gradlew :app:generateBaselineProfile on a tablet with the printer attached;
+ * the result is written to app/src/release/generated/baselineProfiles.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void printLabel() {
+        baselineProfileRule.collect(
+            LabelAppScenario.PACKAGE_NAME,
+            15,
+            3,
+            null,
+            true, // also the startup profile, which lays out the dex for the launch
+            scope -> {
+                scope.pressHome();
+                scope.startActivityAndWait();
+                LabelAppScenario.waitForForm(scope.getDevice());
+                LabelAppScenario.printSampleLabel(scope.getDevice());
+                return Unit.INSTANCE;
+            });
+    }
+}
\ No newline at end of file
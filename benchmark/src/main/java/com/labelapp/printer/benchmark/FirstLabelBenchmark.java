@@ -0,0 +1,69 @@
+package com.labelapp.printer.benchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.ExperimentalMetricApi;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import kotlin.Unit;
+
+/**
+ * FirstLabelBenchmark - First print after a cold start, from the tap until the label reaches the printer
+ * Measures the LabelApp.firstLabel trace section: payload decoding, the job queue, LabelDrawer
+ * and raster encoding all run for the first time in the process. Needs a QL printer attached.
+ */
+@RunWith(Parameterized.class)
+public class FirstLabelBenchmark {
+
+    // Same as StartupTrace.FIRST_LABEL in the app
+    private static final String FIRST_LABEL = "LabelApp.firstLabel";
+
+    // The print itself takes a few seconds; the section ends once the label is sent
+    private static final long PRINT_WAIT_MS = 5_000;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> compilationModes() {
+        return Arrays.asList(
+            new Object[] {new CompilationMode.None()},
+            new Object[] {new CompilationMode.Partial(BaselineProfileMode.Require)});
+    }
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    private final CompilationMode compilationMode;
+
+    public FirstLabelBenchmark(CompilationMode compilationMode) {
+        this.compilationMode = compilationMode;
+    }
+
+    @Test
+    @ExperimentalMetricApi
+    public void firstLabel() {
+        benchmarkRule.measureRepeated(
+            LabelAppScenario.PACKAGE_NAME,
+            Collections.singletonList(new TraceSectionMetric(FIRST_LABEL, TraceSectionMetric.Mode.First.INSTANCE)),
+            compilationMode,
+            StartupMode.COLD,
+            5,
+            scope -> {
+                scope.pressHome();
+                scope.startActivityAndWait();
+                LabelAppScenario.waitForForm(scope.getDevice());
+                LabelAppScenario.printSampleLabel(scope.getDevice());
+                scope.getDevice().waitForWindowUpdate(LabelAppScenario.PACKAGE_NAME, PRINT_WAIT_MS);
+                return Unit.INSTANCE;
+            });
+    }
+}
\ No newline at end of file
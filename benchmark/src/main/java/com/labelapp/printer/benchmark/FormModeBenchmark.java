@@ -0,0 +1,77 @@
+package com.labelapp.printer.benchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.ExperimentalMetricApi;
+import androidx.benchmark.macro.MemoryUsageMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+
+import kotlin.Unit;
+
+/**
+ * FormModeBenchmark - WebView form against the native form: cold start and memory
+ * Each mode is launched with the NATIVE_FORM extra (FormMode in the app) and measured until
+ * the form can be used, with the bundled baseline profile. Memory is read from the process
+ * at the end of each iteration: Java heap, anonymous RSS (where Chromium's heaps land) and
+ * file-backed RSS (mapped libraries and dex).
+ *
+ * Run against the release build on the 2 GB tablets: ./gradlew :benchmark:connectedBenchmarkReleaseAndroidTest
+ */
+@RunWith(Parameterized.class)
+public class FormModeBenchmark {
+
+    // Same as StartupTrace.FIRST_USABLE_FORM and FormMode.EXTRA_NATIVE_FORM in the app
+    private static final String FIRST_USABLE_FORM = "LabelApp.firstUsableForm";
+    private static final String EXTRA_NATIVE_FORM = "NATIVE_FORM";
+
+    @Parameterized.Parameters(name = "native={0}")
+    public static List<Object[]> formModes() {
+        return Arrays.asList(new Object[] {false}, new Object[] {true});
+    }
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    private final boolean nativeForm;
+
+    public FormModeBenchmark(boolean nativeForm) {
+        this.nativeForm = nativeForm;
+    }
+
+    @Test
+    @ExperimentalMetricApi
+    public void coldStartToForm() {
+        benchmarkRule.measureRepeated(
+            LabelAppScenario.PACKAGE_NAME,
+            Arrays.asList(
+                new StartupTimingMetric(),
+                new TraceSectionMetric(FIRST_USABLE_FORM, TraceSectionMetric.Mode.First.INSTANCE),
+                new MemoryUsageMetric(MemoryUsageMetric.Mode.Last, Arrays.asList(
+                    MemoryUsageMetric.SubMetric.HeapSize,
+                    MemoryUsageMetric.SubMetric.RssAnon,
+                    MemoryUsageMetric.SubMetric.RssFile))),
+            new CompilationMode.Partial(BaselineProfileMode.Require),
+            StartupMode.COLD,
+            10,
+            scope -> {
+                scope.pressHome();
+                scope.startActivityAndWait(intent -> {
+                    intent.putExtra(EXTRA_NATIVE_FORM, nativeForm);
+                    return Unit.INSTANCE;
+                });
+                LabelAppScenario.waitForForm(scope.getDevice());
+                return Unit.INSTANCE;
+            });
+    }
+}
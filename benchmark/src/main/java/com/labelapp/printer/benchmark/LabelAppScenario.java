@@ -0,0 +1,70 @@
+package com.labelapp.printer.benchmark;
+
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.BySelector;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+/**
+ * LabelAppScenario - The scripted user flow shared by the benchmarks and the profile generator
+ * Fields are found by their placeholder and option texts, which the WebView form and the
+ * native form share, so the same flow drives either.
+ */
+final class LabelAppScenario {
+
+    static final String PACKAGE_NAME = "com.labelapp.printer";
+
+    private static final long TIMEOUT_MS = 15_000;
+
+    private LabelAppScenario() {
+    }
+
+    /**
+     * Wait on the welcome screen until it moves on to the form, skipping a missing printer
+     */
+    static void waitForForm(UiDevice device) {
+        UiObject2 skip = device.wait(Until.findObject(By.res(PACKAGE_NAME, "skipButton")), TIMEOUT_MS / 3);
+        if (skip != null) {
+            skip.click();
+        }
+        find(device, By.text("Печат на Етикет"));
+    }
+
+    /**
+     * Fill in a one-material, one-size article and print it
+     */
+    static void printSampleLabel(UiDevice device) {
+        choose(device, "Изберете държава...", "България");
+        type(device, "Въведете производителска компания", "Текстил ООД");
+        type(device, "Въведете вносителска компания", "Внос ЕООД");
+        type(device, "Въведете артикул", "Тениска");
+        choose(device, "Изберете материал...", "Памук");
+        type(device, "%", "100");
+        choose(device, "Изберете размер...", "M");
+        type(device, "0.00", "19.99");
+
+        find(device, By.text("Печат на Етикет")).click();
+        device.waitForIdle();
+    }
+
+    private static void type(UiDevice device, String hint, String text) {
+        UiObject2 field = find(device, By.hint(hint));
+        field.click();
+        field.setText(text);
+        device.pressBack(); // hide the keyboard so the next field is on screen
+    }
+
+    private static void choose(UiDevice device, String placeholder, String option) {
+        find(device, By.text(placeholder)).click();
+        find(device, By.text(option)).click();
+    }
+
+    private static UiObject2 find(UiDevice device, BySelector selector) {
+        UiObject2 found = device.wait(Until.findObject(selector), TIMEOUT_MS);
+        if (found == null) {
+            throw new AssertionError("Не е намерено: " + selector);
+        }
+        return found;
+    }
+}
\ No newline at end of file
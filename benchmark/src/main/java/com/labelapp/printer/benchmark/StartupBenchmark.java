@@ -0,0 +1,68 @@
+package com.labelapp.printer.benchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.ExperimentalMetricApi;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+
+import kotlin.Unit;
+
+/**
+ * StartupBenchmark - Cold start until the label form can be used
+ * StartupTimingMetric covers the welcome screen's first frame; the LabelApp.firstUsableForm
+ * trace section runs from WelcomeActivity.onCreate until the form page has loaded, with or
+ * without a printer attached (the skip button is tapped when detection fails).
+ * Runs without AOT compilation and with the bundled baseline profile, so the two can be compared.
+ *
+ * Run against the release build: ./gradlew :benchmark:connectedBenchmarkReleaseAndroidTest
+ */
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+
+    // Same as StartupTrace.FIRST_USABLE_FORM in the app
+    private static final String FIRST_USABLE_FORM = "LabelApp.firstUsableForm";
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> compilationModes() {
+        return Arrays.asList(
+            new Object[] {new CompilationMode.None()},
+            new Object[] {new CompilationMode.Partial(BaselineProfileMode.Require)});
+    }
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    private final CompilationMode compilationMode;
+
+    public StartupBenchmark(CompilationMode compilationMode) {
+        this.compilationMode = compilationMode;
+    }
+
+    @Test
+    @ExperimentalMetricApi
+    public void coldStartToForm() {
+        benchmarkRule.measureRepeated(
+            LabelAppScenario.PACKAGE_NAME,
+            Arrays.asList(new StartupTimingMetric(), new TraceSectionMetric(FIRST_USABLE_FORM, TraceSectionMetric.Mode.First.INSTANCE)),
+            compilationMode,
+            StartupMode.COLD,
+            10,
+            scope -> {
+                scope.pressHome();
+                scope.startActivityAndWait();
+                LabelAppScenario.waitForForm(scope.getDevice());
+                return Unit.INSTANCE;
+            });
+    }
+}
\ No newline at end of file